@@ -0,0 +1,75 @@
+package net.simplesoft.jmemcached.benchmarks;
+
+import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
+import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark-logback.xml")
+public class ConverterBenchmark {
+
+    @Param({"100", "10240"})
+    public int dataSize;
+
+    private final DefaultRequestConverter requestConverter = new DefaultRequestConverter();
+    private final DefaultResponseConverter responseConverter = new DefaultResponseConverter();
+    private Request request;
+    private Response response;
+    private byte[] encodedRequest;
+    private byte[] encodedResponse;
+    private ByteArrayOutputStream buffer;
+    private DataOutputStream outputStream;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] data = new byte[dataSize];
+        request = new Request(Command.PUT, "benchmark-key", 60_000L, data);
+        response = new Response(Status.GOTTEN, data);
+        buffer = new ByteArrayOutputStream(dataSize + 64);
+        // a data stream is passed to the converters the same way as the client and server do it
+        outputStream = new DataOutputStream(buffer);
+        requestConverter.writeRequest(outputStream, request);
+        encodedRequest = buffer.toByteArray();
+        buffer.reset();
+        responseConverter.writeResponse(outputStream, response);
+        encodedResponse = buffer.toByteArray();
+    }
+
+    @Benchmark
+    public int writeRequest() throws IOException {
+        buffer.reset();
+        requestConverter.writeRequest(outputStream, request);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public Request readRequest() throws IOException {
+        return requestConverter.readRequest(new ByteArrayInputStream(encodedRequest));
+    }
+
+    @Benchmark
+    public int writeResponse() throws IOException {
+        buffer.reset();
+        responseConverter.writeResponse(outputStream, response);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public Response readResponse() throws IOException {
+        return responseConverter.readResponse(new ByteArrayInputStream(encodedResponse));
+    }
+}
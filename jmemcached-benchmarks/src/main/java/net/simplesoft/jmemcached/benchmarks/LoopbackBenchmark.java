@@ -0,0 +1,101 @@
+package net.simplesoft.jmemcached.benchmarks;
+
+import net.simplesoft.jmemcached.client.Client;
+import net.simplesoft.jmemcached.client.impl.JMemcachedClientFactory;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.Server;
+import net.simplesoft.jmemcached.server.impl.JMemcachedServerFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// End-to-end client/server round trips over the loopback interface: throughput and latency percentiles
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark-logback.xml")
+@Threads(4)
+public class LoopbackBenchmark {
+
+    private static final String HOST = "localhost";
+    private static final int PORT = 19010;
+    private static final int KEY_COUNT = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+
+        @Param({"blocking", "nio"})
+        public String serverMode;
+
+        private Server server;
+
+        @Setup
+        public void setup() throws Exception {
+            Properties properties = new Properties();
+            properties.setProperty("jmemcached.server.port", String.valueOf(PORT));
+            properties.setProperty("jmemcached.server.mode", serverMode);
+            server = JMemcachedServerFactory.buildNewServer(properties);
+            server.start();
+            try (Client client = connect()) {
+                for (int i = 0; i < KEY_COUNT; i++) {
+                    client.put("key-" + i, "value-" + i);
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            server.stop();
+        }
+    }
+
+    // DefaultClient owns a single socket and is not thread safe, so every benchmark thread has its own
+    @State(Scope.Thread)
+    public static class ClientState {
+
+        private Client client;
+
+        @Setup
+        public void setup(ServerState serverState) throws Exception {
+            client = connect();
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            client.close();
+        }
+    }
+
+    private static Client connect() throws IOException, InterruptedException {
+        // server socket is bound asynchronously by the main server thread
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return JMemcachedClientFactory.buildNewClient(HOST, PORT);
+            } catch (ConnectException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+
+    private static String randomKey() {
+        return "key-" + ThreadLocalRandom.current().nextInt(KEY_COUNT);
+    }
+
+    @Benchmark
+    public Object get(ClientState clientState) throws IOException {
+        return clientState.client.get(randomKey());
+    }
+
+    @Benchmark
+    public Status put(ClientState clientState) throws IOException {
+        return clientState.client.put(randomKey(), "value");
+    }
+}
@@ -0,0 +1,57 @@
+package net.simplesoft.jmemcached.benchmarks;
+
+import net.simplesoft.jmemcached.protocol.ObjectSerializer;
+import net.simplesoft.jmemcached.protocol.impl.DefaultObjectSerializer;
+import net.simplesoft.jmemcached.protocol.impl.TypedObjectSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark-logback.xml")
+public class ObjectSerializerBenchmark {
+
+    @Param({"default", "typed"})
+    public String serializer;
+
+    @Param({"string", "long", "bytes", "map"})
+    public String valueType;
+
+    private ObjectSerializer objectSerializer;
+    private Object value;
+    private byte[] serializedValue;
+
+    @Setup
+    public void setup() {
+        objectSerializer = "typed".equals(serializer) ? new TypedObjectSerializer() : new DefaultObjectSerializer();
+        if ("map".equals(valueType)) {
+            HashMap<String, Object> map = new HashMap<>();
+            for (int i = 0; i < 10; i++) {
+                map.put("field-" + i, i % 2 == 0 ? (Object) ("value-" + i) : (Object) i);
+            }
+            value = map;
+        } else if ("long".equals(valueType)) {
+            value = 1234567890123L;
+        } else if ("bytes".equals(valueType)) {
+            value = new byte[100];
+        } else {
+            value = "benchmark value of about fifty characters in total";
+        }
+        serializedValue = objectSerializer.toByteArray(value);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() {
+        return objectSerializer.toByteArray(value);
+    }
+
+    @Benchmark
+    public Object fromByteArray() {
+        return objectSerializer.fromByteArray(serializedValue);
+    }
+}
@@ -0,0 +1,86 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.server.Storage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Lives in the server impl package because storages and DefaultServerConfig are package private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark-logback.xml")
+@Threads(4)
+public class StorageBenchmark {
+
+    private static final int KEY_COUNT = 100_000;
+
+    @Param({"heap", "segmented", "offheap"})
+    public String storageType;
+
+    @Param({"100"})
+    public int dataSize;
+
+    private DefaultServerConfig serverConfig;
+    private Storage storage;
+    private String[] keys;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.type", storageType);
+        serverConfig = new DefaultServerConfig(properties);
+        storage = serverConfig.getStorage();
+        data = new byte[dataSize];
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key-" + i;
+            storage.put(keys[i], null, data);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        serverConfig.close();
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)];
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return storage.get(randomKey());
+    }
+
+    @Benchmark
+    public Object put() {
+        return storage.put(randomKey(), null, data);
+    }
+
+    @Benchmark
+    public Object putRemove() {
+        String key = "tmp-" + Thread.currentThread().getId();
+        storage.put(key, null, data);
+        return storage.remove(key);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public byte[] mixedGet() {
+        return storage.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Object mixedPut() {
+        return storage.put(randomKey(), null, data);
+    }
+}
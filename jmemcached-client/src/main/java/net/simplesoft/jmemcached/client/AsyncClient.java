@@ -0,0 +1,25 @@
+package net.simplesoft.jmemcached.client;
+
+import net.simplesoft.jmemcached.protocol.model.Status;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Futures are completed by the single IO thread of the client or by its timeout thread, so dependent stages should not
+// block: blocking work belongs to the *Async stage methods with an executor.
+public interface AsyncClient extends AutoCloseable {
+
+    CompletableFuture<Status> putAsync(String key, Object object);
+
+    CompletableFuture<Status> putAsync(String key, Object object, Integer ttl, TimeUnit timeUnit);
+
+    <T> CompletableFuture<T> getAsync(String key);
+
+    CompletableFuture<Status> removeAsync(String key);
+
+    CompletableFuture<Status> clearAsync();
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,27 @@
+package net.simplesoft.jmemcached.client;
+
+// a value read together with its cas token, the token is passed back to Client.cas to replace the value
+// only if nobody has changed it since it was read
+public class CasValue<T> {
+
+    private final T value;
+    private final long cas;
+
+    public CasValue(T value, long cas) {
+        this.value = value;
+        this.cas = cas;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getCas() {
+        return cas;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cas=%s", value, cas);
+    }
+}
@@ -3,6 +3,8 @@ package net.simplesoft.jmemcached.client;
 import net.simplesoft.jmemcached.protocol.model.Status;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 public interface Client extends AutoCloseable {
@@ -11,11 +13,58 @@ public interface Client extends AutoCloseable {
 
     Status put(String key, Object object, Integer ttl, TimeUnit timeUnit) throws IOException;
 
+    // add stores the value only if the key has no value (ADDED or EXISTS), replace only if it has one
+    // (REPLACED or NOT_FOUND), so that concurrent clients filling the same key do not overwrite each other
+    Status add(String key, Object object) throws IOException;
+
+    Status add(String key, Object object, Integer ttl, TimeUnit timeUnit) throws IOException;
+
+    Status replace(String key, Object object) throws IOException;
+
+    Status replace(String key, Object object, Integer ttl, TimeUnit timeUnit) throws IOException;
+
     <T> T get(String key) throws IOException;
 
     Status remove(String key) throws IOException;
 
+    // Sliding expiration: the ttl of an existing value is set without sending the value again,
+    // null ttl makes the value never expire. touch returns TOUCHED or NOT_FOUND, getAndTouch returns the value or null
+    Status touch(String key, Integer ttl, TimeUnit timeUnit) throws IOException;
+
+    <T> T getAndTouch(String key, Integer ttl, TimeUnit timeUnit) throws IOException;
+
     Status clear() throws IOException;
 
+    // Optimistic concurrency: gets returns the value with its cas token (null if not found) and cas replaces
+    // the value only if the token was not changed by another write. Returns REPLACED, EXISTS or NOT_FOUND.
+    <T> CasValue<T> gets(String key) throws IOException;
+
+    Status cas(String key, Object object, long cas) throws IOException;
+
+    Status cas(String key, Object object, long cas, Integer ttl, TimeUnit timeUnit) throws IOException;
+
+    // Counters are unsigned 64-bit values updated by the server: a missing counter is created with 0 and the ttl,
+    // increments wrap around and decrements stop at 0. Counters are read by get as Long.
+    long incr(String key, long delta) throws IOException;
+
+    long incr(String key, long delta, Integer ttl, TimeUnit timeUnit) throws IOException;
+
+    long decr(String key, long delta) throws IOException;
+
+    long decr(String key, long delta, Integer ttl, TimeUnit timeUnit) throws IOException;
+
+    <T> Map<String, T> getAll(Collection<String> keys) throws IOException;
+
+    Map<String, Status> putAll(Map<String, ?> objects) throws IOException;
+
+    Map<String, Status> putAll(Map<String, ?> objects, Integer ttl, TimeUnit timeUnit) throws IOException;
+
+    Map<String, Status> removeAll(Collection<String> keys) throws IOException;
+
+    Pipeline pipelined();
+
+    // server statistics: counters, storage gauges and per command latency percentiles
+    Map<String, String> stats() throws IOException;
+
 }
 
@@ -3,6 +3,7 @@ package net.simplesoft.jmemcached.client;
 import net.simplesoft.jmemcached.protocol.ObjectSerializer;
 import net.simplesoft.jmemcached.protocol.RequestConverter;
 import net.simplesoft.jmemcached.protocol.ResponseConverter;
+import net.simplesoft.jmemcached.protocol.ValueCompressor;
 
 public interface ClientConfig {
 
@@ -15,4 +16,19 @@ public interface ClientConfig {
     ResponseConverter getResponseConverter();
 
     ObjectSerializer getObjectSerializer();
+
+    ValueCompressor getValueCompressor();
+
+    int getCompressionThresholdInBytes();
+
+    int getPoolMinConnections();
+
+    int getPoolMaxConnections();
+
+    long getPoolBorrowTimeoutInMs();
+
+    long getPoolIdleTimeoutInMs();
+
+    // time to wait for the response of an async request, 0 - no timeout
+    long getRequestTimeoutInMs();
 }
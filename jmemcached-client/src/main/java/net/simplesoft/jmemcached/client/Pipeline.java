@@ -0,0 +1,20 @@
+package net.simplesoft.jmemcached.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public interface Pipeline {
+
+    Pipeline put(String key, Object object);
+
+    Pipeline put(String key, Object object, Integer ttl, TimeUnit timeUnit);
+
+    Pipeline get(String key);
+
+    Pipeline remove(String key);
+
+    Pipeline clear();
+
+    List<Object> execute() throws IOException;
+}
@@ -0,0 +1,338 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.AsyncClient;
+import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.RequestConverter;
+import net.simplesoft.jmemcached.protocol.ResponseConverter;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+class DefaultAsyncClient implements AsyncClient {
+
+    private static final int INIT_READ_BUFFER_SIZE = 16 * 1024;
+
+    private final RequestConverter requestConverter;
+    private final ResponseConverter responseConverter;
+    private final ValueTranscoder valueTranscoder;
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey selectionKey;
+    private final Queue<ByteBuffer> pendingWrites;
+    private final Deque<ByteBuffer> writeQueue;
+    private final Map<Integer, CompletableFuture<Response>> pendingRequests;
+    private final AtomicInteger correlationIdGenerator;
+    private final Thread ioThread;
+    private final long requestTimeoutInMs;
+    private final ScheduledExecutorService timeoutExecutorService;
+    private ByteBuffer readBuffer;
+    private volatile boolean closed;
+
+    DefaultAsyncClient(ClientConfig clientConfig) throws IOException {
+        this.valueTranscoder = new ValueTranscoder(clientConfig);
+        this.requestConverter = clientConfig.getRequestConverter();
+        this.responseConverter = clientConfig.getResponseConverter();
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.writeQueue = new ArrayDeque<>();
+        this.pendingRequests = new ConcurrentHashMap<>();
+        this.correlationIdGenerator = new AtomicInteger();
+        this.readBuffer = ByteBuffer.allocate(INIT_READ_BUFFER_SIZE);
+        this.requestTimeoutInMs = clientConfig.getRequestTimeoutInMs();
+        this.timeoutExecutorService = createTimeoutExecutorService();
+        this.channel = createChannel(clientConfig);
+        this.selector = Selector.open();
+        this.selectionKey = channel.register(selector, SelectionKey.OP_READ);
+        this.ioThread = createIoThread();
+        this.ioThread.start();
+    }
+
+    protected SocketChannel createChannel(ClientConfig clientConfig) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(clientConfig.getHost(), clientConfig.getPort()));
+        channel.socket().setKeepAlive(true);
+        channel.socket().setTcpNoDelay(true);
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    protected Thread createIoThread() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runIoLoop();
+            }
+        }, "JMemcachedAsyncClientIoThread");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    protected ScheduledExecutorService createTimeoutExecutorService() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "JMemcachedAsyncClientTimeoutThread");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // most requests are answered in time, their cancelled timeouts must not pile up in the queue
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @Override
+    public CompletableFuture<Status> putAsync(String key, Object object) {
+        return putAsync(key, object, null, null);
+    }
+
+    @Override
+    public CompletableFuture<Status> putAsync(String key, Object object, Integer ttl, TimeUnit timeUnit) {
+        Request request;
+        try {
+            request = valueTranscoder.toRequest(Command.PUT, key, object, ttl, timeUnit);
+        } catch (RuntimeException e) {
+            return failedFuture(e);
+        }
+        return makeRequest(request).thenApply(toStatus());
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getAsync(String key) {
+        return makeRequest(new Request(Command.GET, key)).thenApply(new Function<Response, T>() {
+            @Override
+            public T apply(Response response) {
+                return (T) valueTranscoder.toObject(response);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Status> removeAsync(String key) {
+        return makeRequest(new Request(Command.REMOVE, key)).thenApply(toStatus());
+    }
+
+    @Override
+    public CompletableFuture<Status> clearAsync() {
+        return makeRequest(new Request(Command.CLEAR)).thenApply(toStatus());
+    }
+
+    protected CompletableFuture<Response> makeRequest(Request request) {
+        if (closed) {
+            return failedFuture(new JMemcachedException("Client is closed"));
+        }
+        int correlationId = correlationIdGenerator.incrementAndGet();
+        request.setCorrelationId(correlationId);
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        try {
+            requestConverter.writeRequest(frame, request);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        pendingRequests.put(correlationId, future);
+        if (requestTimeoutInMs > 0) {
+            scheduleTimeout(correlationId, future);
+        }
+        pendingWrites.add(ByteBuffer.wrap(frame.toByteArray()));
+        if (closed) {
+            // close() may have drained pending requests before this one was registered
+            failPendingRequests(new JMemcachedException("Client is closed"));
+        } else {
+            selector.wakeup();
+        }
+        return future;
+    }
+
+    // the request is forgotten on timeout, so its late response is dropped like a response to an unknown request
+    protected void scheduleTimeout(final int correlationId, final CompletableFuture<Response> future) {
+        final ScheduledFuture<?> timeout;
+        try {
+            timeout = timeoutExecutorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (pendingRequests.remove(correlationId, future)) {
+                        future.completeExceptionally(
+                                new JMemcachedException("Request timed out after " + requestTimeoutInMs + " ms"));
+                    }
+                }
+            }, requestTimeoutInMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the client is closed, close() fails the pending requests
+            return;
+        }
+        future.whenComplete(new BiConsumer<Response, Throwable>() {
+            @Override
+            public void accept(Response response, Throwable cause) {
+                timeout.cancel(false);
+            }
+        });
+    }
+
+    protected void runIoLoop() {
+        Exception cause = new JMemcachedException("Client is closed");
+        try {
+            while (!closed) {
+                selector.select();
+                selector.selectedKeys().clear();
+                write();
+                if (selectionKey.isValid() && selectionKey.isReadable()) {
+                    read();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the connection can't be trusted any more: fail every request still waiting for a response
+            cause = e;
+        } finally {
+            closeChannel();
+            failPendingRequests(cause);
+        }
+    }
+
+    protected void write() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = pendingWrites.poll()) != null) {
+            writeQueue.add(buffer);
+        }
+        if (writeQueue.isEmpty()) {
+            return;
+        }
+        // all queued frames go out with one gathering write
+        channel.write(writeQueue.toArray(new ByteBuffer[writeQueue.size()]));
+        while (!writeQueue.isEmpty() && !writeQueue.peekFirst().hasRemaining()) {
+            writeQueue.pollFirst();
+        }
+        selectionKey.interestOps(writeQueue.isEmpty()
+                ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    protected void read() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            growReadBuffer();
+        }
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException("Connection closed by server");
+        }
+        readBuffer.flip();
+        readResponses();
+        readBuffer.compact();
+    }
+
+    protected void readResponses() throws IOException {
+        while (readBuffer.hasRemaining()) {
+            int frameStart = readBuffer.position();
+            int remaining = readBuffer.remaining();
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(
+                    readBuffer.array(), readBuffer.arrayOffset() + frameStart, remaining);
+            Response response;
+            try {
+                response = responseConverter.readResponse(inputStream);
+            } catch (EOFException e) {
+                // incomplete frame: keep buffered bytes until the next read
+                break;
+            }
+            readBuffer.position(frameStart + remaining - inputStream.available());
+            CompletableFuture<Response> future = response.hasCorrelationId()
+                    ? pendingRequests.remove(response.getCorrelationId()) : null;
+            if (future == null) {
+                continue;
+            }
+            if (response.getStatus() == Status.SERVER_ERROR) {
+                future.completeExceptionally(new JMemcachedException("Server failed to handle request"));
+            } else {
+                future.complete(response);
+            }
+        }
+    }
+
+    protected void growReadBuffer() {
+        ByteBuffer newReadBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+        readBuffer.flip();
+        newReadBuffer.put(readBuffer);
+        readBuffer = newReadBuffer;
+    }
+
+    protected void failPendingRequests(Exception cause) {
+        Iterator<CompletableFuture<Response>> iterator = pendingRequests.values().iterator();
+        while (iterator.hasNext()) {
+            CompletableFuture<Response> future = iterator.next();
+            iterator.remove();
+            future.completeExceptionally(cause);
+        }
+    }
+
+    protected void closeChannel() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore: the connection is going away anyway
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore: the connection is going away anyway
+        }
+    }
+
+    int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPendingRequests(new JMemcachedException("Client is closed"));
+        timeoutExecutorService.shutdownNow();
+    }
+
+    private Function<Response, Status> toStatus() {
+        return new Function<Response, Status>() {
+            @Override
+            public Status apply(Response response) {
+                return response.getStatus();
+            }
+        };
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+}
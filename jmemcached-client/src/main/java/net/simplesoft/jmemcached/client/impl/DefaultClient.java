@@ -1,8 +1,10 @@
 package net.simplesoft.jmemcached.client.impl;
 
+import net.simplesoft.jmemcached.client.CasValue;
 import net.simplesoft.jmemcached.client.Client;
 import net.simplesoft.jmemcached.client.ClientConfig;
-import net.simplesoft.jmemcached.protocol.ObjectSerializer;
+import net.simplesoft.jmemcached.client.Pipeline;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.protocol.RequestConverter;
 import net.simplesoft.jmemcached.protocol.ResponseConverter;
 import net.simplesoft.jmemcached.protocol.model.Command;
@@ -10,29 +12,47 @@ import net.simplesoft.jmemcached.protocol.model.Request;
 import net.simplesoft.jmemcached.protocol.model.Response;
 import net.simplesoft.jmemcached.protocol.model.Status;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 public class DefaultClient implements Client {
 
+    private static final int PIPELINE_WINDOW_SIZE = 128;
+    // the usual default socket buffer size
+    private static final int PIPELINE_WINDOW_BYTES = 64 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
     private final RequestConverter requestConverter;
     private final ResponseConverter responseConverter;
-    private final ObjectSerializer objectSerializer;
+    private final ValueTranscoder valueTranscoder;
 
     private final Socket socket;
     private final InputStream inputStream;
     private final OutputStream outputStream;
+    // true from the first written byte of a request until its last response is read, a call which failed meanwhile
+    // may leave a partial frame in the streams
+    private boolean requestInFlight;
 
     DefaultClient(ClientConfig clientConfig) throws IOException {
-        this.objectSerializer = clientConfig.getObjectSerializer();
+        this.valueTranscoder = new ValueTranscoder(clientConfig);
         this.requestConverter = clientConfig.getRequestConverter();
         this.responseConverter = clientConfig.getResponseConverter();
         this.socket = createSocket(clientConfig);
-        this.inputStream = socket.getInputStream();
-        this.outputStream = socket.getOutputStream();
+        this.inputStream = createInputStream(socket);
+        this.outputStream = createOutputStream(socket);
     }
 
     protected Socket createSocket(ClientConfig clientConfig) throws IOException {
@@ -41,9 +61,99 @@ public class DefaultClient implements Client {
         return socket;
     }
 
+    protected InputStream createInputStream(Socket socket) throws IOException {
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+    }
+
+    protected OutputStream createOutputStream(Socket socket) throws IOException {
+        // a whole frame is collected in the buffer and sent with one socket write on flush
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+    }
+
     protected Response makeRequest(Request request) throws IOException {
+        requestInFlight = true;
         requestConverter.writeRequest(outputStream, request);
-        return responseConverter.readResponse(inputStream);
+        outputStream.flush();
+        Response response = responseConverter.readResponse(inputStream);
+        requestInFlight = false;
+        if (response.getStatus() == Status.SERVER_ERROR) {
+            throw new JMemcachedException("Server failed to handle request: " + request.getCommand());
+        }
+        return response;
+    }
+
+    protected List<Response> makeRequests(List<Request> requests) throws IOException {
+        List<Response> responses = new ArrayList<>(requests.size());
+        requestInFlight = true;
+        int windowSize = getPipelineWindowSize();
+        int windowBytes = getPipelineWindowBytes();
+        int from = 0;
+        while (from < requests.size()) {
+            // requests are sent in windows so that neither side blocks on a full socket buffer forever,
+            // a window holds at least one request however large it is
+            int to = from;
+            long writtenBytes = 0;
+            do {
+                Request request = requests.get(to++);
+                requestConverter.writeRequest(outputStream, request);
+                writtenBytes += getRequestSize(request);
+            } while (to < requests.size() && to - from < windowSize && writtenBytes < windowBytes);
+            outputStream.flush();
+            for (int i = from; i < to; i++) {
+                responses.add(responseConverter.readResponse(inputStream));
+            }
+            from = to;
+        }
+        requestInFlight = false;
+        return responses;
+    }
+
+    // encoded size of the request in the jmemcached protocol, other converters only need a comparable estimate
+    protected long getRequestSize(Request request) {
+        long size = 3 + getRequestFieldsSize(request);
+        if (request.hasCorrelationId()) {
+            size += 4;
+        }
+        if (request.hasCas()) {
+            size += 8;
+        }
+        if (request.hasBatch()) {
+            size += 4;
+            for (Request entry : request.getBatch()) {
+                size += 1 + getRequestFieldsSize(entry);
+            }
+        }
+        return size;
+    }
+
+    protected long getRequestFieldsSize(Request request) {
+        long size = 0;
+        if (request.hasKey()) {
+            size += 1 + request.getKey().length();
+        }
+        if (request.hasTTL()) {
+            size += 8;
+        }
+        if (request.hasData()) {
+            size += 4 + request.getData().length;
+        }
+        return size;
+    }
+
+    boolean isRequestInFlight() {
+        return requestInFlight;
+    }
+
+    protected int getPipelineWindowSize() {
+        return PIPELINE_WINDOW_SIZE;
+    }
+
+    protected int getPipelineWindowBytes() {
+        return PIPELINE_WINDOW_BYTES;
+    }
+
+    protected Request buildPutRequest(Command command, String key, Object object, Integer ttl, TimeUnit timeUnit) {
+        return valueTranscoder.toRequest(command, key, object, ttl, timeUnit);
     }
 
 
@@ -54,16 +164,48 @@ public class DefaultClient implements Client {
 
     @Override
     public Status put(String key, Object object, Integer ttl, TimeUnit timeUnit) throws IOException {
-        byte[] data = objectSerializer.toByteArray(object);
-        Long requestTTL = (ttl != null && timeUnit != null) ? timeUnit.toMillis(ttl) : null;
-        Response response = makeRequest(new Request(Command.PUT, key, requestTTL, data));
+        Response response = makeRequest(buildPutRequest(Command.PUT, key, object, ttl, timeUnit));
         return response.getStatus();
     }
 
+    @Override
+    public Status add(String key, Object object) throws IOException {
+        return add(key, object, null, null);
+    }
+
+    @Override
+    public Status add(String key, Object object, Integer ttl, TimeUnit timeUnit) throws IOException {
+        return makeRequest(buildPutRequest(Command.ADD, key, object, ttl, timeUnit)).getStatus();
+    }
+
+    @Override
+    public Status replace(String key, Object object) throws IOException {
+        return replace(key, object, null, null);
+    }
+
+    @Override
+    public Status replace(String key, Object object, Integer ttl, TimeUnit timeUnit) throws IOException {
+        return makeRequest(buildPutRequest(Command.REPLACE, key, object, ttl, timeUnit)).getStatus();
+    }
+
     @Override
     public <T> T get(String key) throws IOException {
         Response response = makeRequest(new Request(Command.GET, key));
-        return (T) objectSerializer.fromByteArray(response.getData());
+        return (T) valueTranscoder.toObject(response);
+    }
+
+    @Override
+    public Status touch(String key, Integer ttl, TimeUnit timeUnit) throws IOException {
+        Long requestTTL = ValueTranscoder.toRequestTTL(ttl, timeUnit);
+        Response response = makeRequest(new Request(Command.TOUCH, key, requestTTL, null));
+        return response.getStatus();
+    }
+
+    @Override
+    public <T> T getAndTouch(String key, Integer ttl, TimeUnit timeUnit) throws IOException {
+        Long requestTTL = ValueTranscoder.toRequestTTL(ttl, timeUnit);
+        Response response = makeRequest(new Request(Command.GAT, key, requestTTL, null));
+        return (T) valueTranscoder.toObject(response);
     }
 
     @Override
@@ -78,8 +220,175 @@ public class DefaultClient implements Client {
         return response.getStatus();
     }
 
+    @Override
+    public <T> CasValue<T> gets(String key) throws IOException {
+        Response response = makeRequest(new Request(Command.GET, key));
+        if (response.getStatus() != Status.GOTTEN) {
+            return null;
+        }
+        return new CasValue<>((T) valueTranscoder.toObject(response), response.getCas());
+    }
+
+    @Override
+    public Status cas(String key, Object object, long cas) throws IOException {
+        return cas(key, object, cas, null, null);
+    }
+
+    @Override
+    public Status cas(String key, Object object, long cas, Integer ttl, TimeUnit timeUnit) throws IOException {
+        Request request = buildPutRequest(Command.CAS, key, object, ttl, timeUnit);
+        request.setCas(cas);
+        return makeRequest(request).getStatus();
+    }
+
+    @Override
+    public long incr(String key, long delta) throws IOException {
+        return incr(key, delta, null, null);
+    }
+
+    @Override
+    public long incr(String key, long delta, Integer ttl, TimeUnit timeUnit) throws IOException {
+        Response response = makeRequest(ValueTranscoder.toCounterRequest(Command.INCR, key, delta, ttl, timeUnit));
+        return ValueTranscoder.toCounter(key, response);
+    }
+
+    @Override
+    public long decr(String key, long delta) throws IOException {
+        return decr(key, delta, null, null);
+    }
+
+    @Override
+    public long decr(String key, long delta, Integer ttl, TimeUnit timeUnit) throws IOException {
+        Response response = makeRequest(ValueTranscoder.toCounterRequest(Command.DECR, key, delta, ttl, timeUnit));
+        return ValueTranscoder.toCounter(key, response);
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys) throws IOException {
+        List<Request> batch = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            batch.add(new Request(Command.MGET, key));
+        }
+        List<Response> responses = makeBatchRequest(Command.MGET, batch);
+        Map<String, T> result = new LinkedHashMap<>();
+        for (int i = 0; i < responses.size(); i++) {
+            Response response = responses.get(i);
+            if (response.getStatus() == Status.GOTTEN) {
+                result.put(batch.get(i).getKey(), (T) valueTranscoder.toObject(response));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Status> putAll(Map<String, ?> objects) throws IOException {
+        return putAll(objects, null, null);
+    }
+
+    @Override
+    public Map<String, Status> putAll(Map<String, ?> objects, Integer ttl, TimeUnit timeUnit) throws IOException {
+        List<Request> batch = new ArrayList<>(objects.size());
+        for (Map.Entry<String, ?> entry : objects.entrySet()) {
+            batch.add(buildPutRequest(Command.MSET, entry.getKey(), entry.getValue(), ttl, timeUnit));
+        }
+        return toStatusMap(batch, makeBatchRequest(Command.MSET, batch));
+    }
+
+    @Override
+    public Map<String, Status> removeAll(Collection<String> keys) throws IOException {
+        List<Request> batch = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            batch.add(new Request(Command.MDEL, key));
+        }
+        return toStatusMap(batch, makeBatchRequest(Command.MDEL, batch));
+    }
+
+    protected List<Response> makeBatchRequest(Command command, List<Request> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Request request = new Request(command);
+        request.setBatch(batch);
+        return makeRequest(request).getBatch();
+    }
+
+    protected Map<String, Status> toStatusMap(List<Request> batch, List<Response> responses) {
+        Map<String, Status> result = new LinkedHashMap<>();
+        for (int i = 0; i < responses.size(); i++) {
+            result.put(batch.get(i).getKey(), responses.get(i).getStatus());
+        }
+        return result;
+    }
+
+    @Override
+    public Pipeline pipelined() {
+        return new DefaultPipeline();
+    }
+
+    @Override
+    public Map<String, String> stats() throws IOException {
+        return ValueTranscoder.toStatistics(makeRequest(new Request(Command.STATS)));
+    }
+
+    boolean isConnected() {
+        return this.socket.isConnected() && !this.socket.isClosed() && !this.socket.isInputShutdown();
+    }
+
     @Override
     public void close() throws IOException {
         this.socket.close();
     }
+
+    protected class DefaultPipeline implements Pipeline {
+        private final List<Request> requests = new ArrayList<>();
+
+        @Override
+        public Pipeline put(String key, Object object) {
+            return put(key, object, null, null);
+        }
+
+        @Override
+        public Pipeline put(String key, Object object, Integer ttl, TimeUnit timeUnit) {
+            requests.add(buildPutRequest(Command.PUT, key, object, ttl, timeUnit));
+            return this;
+        }
+
+        @Override
+        public Pipeline get(String key) {
+            requests.add(new Request(Command.GET, key));
+            return this;
+        }
+
+        @Override
+        public Pipeline remove(String key) {
+            requests.add(new Request(Command.REMOVE, key));
+            return this;
+        }
+
+        @Override
+        public Pipeline clear() {
+            requests.add(new Request(Command.CLEAR));
+            return this;
+        }
+
+        @Override
+        public List<Object> execute() throws IOException {
+            // a failed pipeline is not executed again with the next calls
+            try {
+                List<Response> responses = makeRequests(requests);
+                List<Object> results = new ArrayList<>(responses.size());
+                for (int i = 0; i < responses.size(); i++) {
+                    Response response = responses.get(i);
+                    if (requests.get(i).getCommand() == Command.GET) {
+                        results.add(valueTranscoder.toObject(response));
+                    } else {
+                        results.add(response.getStatus());
+                    }
+                }
+                return results;
+            } finally {
+                requests.clear();
+            }
+        }
+    }
 }
@@ -1,27 +1,97 @@
 package net.simplesoft.jmemcached.client.impl;
 
 import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
 import net.simplesoft.jmemcached.protocol.ObjectSerializer;
 import net.simplesoft.jmemcached.protocol.RequestConverter;
 import net.simplesoft.jmemcached.protocol.ResponseConverter;
+import net.simplesoft.jmemcached.protocol.ValueCompressor;
 import net.simplesoft.jmemcached.protocol.impl.DefaultObjectSerializer;
+import net.simplesoft.jmemcached.protocol.impl.DeflateValueCompressor;
 import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
 import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
 
 class DefaultClientConfig implements ClientConfig {
 
+    static final int DEFAULT_POOL_MIN_CONNECTIONS = 1;
+    static final int DEFAULT_POOL_MAX_CONNECTIONS = 8;
+    static final long DEFAULT_POOL_BORROW_TIMEOUT_IN_MS = 5000;
+    static final long DEFAULT_POOL_IDLE_TIMEOUT_IN_MS = 60000;
+    static final int DEFAULT_COMPRESSION_THRESHOLD_IN_BYTES = 16 * 1024;
+    static final long DEFAULT_REQUEST_TIMEOUT_IN_MS = 5000;
+
     private final String host;
     private final int port;
     private final RequestConverter requestConverter;
     private final ResponseConverter responseConverter;
     private final ObjectSerializer objectSerializer;
+    private final ValueCompressor valueCompressor;
+    private final int compressionThresholdInBytes;
+    private final int poolMinConnections;
+    private final int poolMaxConnections;
+    private final long poolBorrowTimeoutInMs;
+    private final long poolIdleTimeoutInMs;
+    private final long requestTimeoutInMs;
 
     DefaultClientConfig(String host, int port) {
+        this(host, port, DEFAULT_POOL_MIN_CONNECTIONS, DEFAULT_POOL_MAX_CONNECTIONS,
+                DEFAULT_POOL_BORROW_TIMEOUT_IN_MS, DEFAULT_POOL_IDLE_TIMEOUT_IN_MS);
+    }
+
+    DefaultClientConfig(String host, int port, ObjectSerializer objectSerializer) {
+        this(host, port, DEFAULT_POOL_MIN_CONNECTIONS, DEFAULT_POOL_MAX_CONNECTIONS,
+                DEFAULT_POOL_BORROW_TIMEOUT_IN_MS, DEFAULT_POOL_IDLE_TIMEOUT_IN_MS, objectSerializer);
+    }
+
+    DefaultClientConfig(String host, int port, int poolMinConnections, int poolMaxConnections,
+                        long poolBorrowTimeoutInMs, long poolIdleTimeoutInMs) {
+        this(host, port, poolMinConnections, poolMaxConnections, poolBorrowTimeoutInMs, poolIdleTimeoutInMs,
+                new DefaultObjectSerializer());
+    }
+
+    DefaultClientConfig(String host, int port, int poolMinConnections, int poolMaxConnections,
+                        long poolBorrowTimeoutInMs, long poolIdleTimeoutInMs, ObjectSerializer objectSerializer) {
+        this(host, port, poolMinConnections, poolMaxConnections, poolBorrowTimeoutInMs, poolIdleTimeoutInMs,
+                objectSerializer, DEFAULT_COMPRESSION_THRESHOLD_IN_BYTES);
+    }
+
+    DefaultClientConfig(String host, int port, int poolMinConnections, int poolMaxConnections,
+                        long poolBorrowTimeoutInMs, long poolIdleTimeoutInMs, ObjectSerializer objectSerializer,
+                        int compressionThresholdInBytes) {
+        this(host, port, poolMinConnections, poolMaxConnections, poolBorrowTimeoutInMs, poolIdleTimeoutInMs,
+                objectSerializer, compressionThresholdInBytes, DEFAULT_REQUEST_TIMEOUT_IN_MS);
+    }
+
+    DefaultClientConfig(String host, int port, int poolMinConnections, int poolMaxConnections,
+                        long poolBorrowTimeoutInMs, long poolIdleTimeoutInMs, ObjectSerializer objectSerializer,
+                        int compressionThresholdInBytes, long requestTimeoutInMs) {
+        if (objectSerializer == null) {
+            throw new JMemcachedConfigException("objectSerializer is required");
+        }
+        if (poolMinConnections < 0 || poolMaxConnections < 1 || poolMinConnections > poolMaxConnections) {
+            throw new JMemcachedConfigException("pool connections should be 0 <= min <= max and max >= 1");
+        }
+        if (poolBorrowTimeoutInMs < 0 || poolIdleTimeoutInMs < 1) {
+            throw new JMemcachedConfigException("pool borrow timeout should be >= 0 and idle timeout should be >= 1");
+        }
+        if (compressionThresholdInBytes < 0) {
+            throw new JMemcachedConfigException("compression threshold should be >= 0");
+        }
+        if (requestTimeoutInMs < 0) {
+            throw new JMemcachedConfigException("request timeout should be >= 0");
+        }
         this.host = host;
         this.port = port;
         this.requestConverter = new DefaultRequestConverter();
         this.responseConverter = new DefaultResponseConverter();
-        this.objectSerializer = new DefaultObjectSerializer();
+        this.objectSerializer = objectSerializer;
+        this.valueCompressor = new DeflateValueCompressor();
+        this.compressionThresholdInBytes = compressionThresholdInBytes;
+        this.poolMinConnections = poolMinConnections;
+        this.poolMaxConnections = poolMaxConnections;
+        this.poolBorrowTimeoutInMs = poolBorrowTimeoutInMs;
+        this.poolIdleTimeoutInMs = poolIdleTimeoutInMs;
+        this.requestTimeoutInMs = requestTimeoutInMs;
     }
 
     @Override
@@ -48,4 +118,39 @@ class DefaultClientConfig implements ClientConfig {
     public ObjectSerializer getObjectSerializer() {
         return this.objectSerializer;
     }
-}
\ No newline at end of file
+
+    @Override
+    public ValueCompressor getValueCompressor() {
+        return this.valueCompressor;
+    }
+
+    @Override
+    public int getCompressionThresholdInBytes() {
+        return this.compressionThresholdInBytes;
+    }
+
+    @Override
+    public int getPoolMinConnections() {
+        return this.poolMinConnections;
+    }
+
+    @Override
+    public int getPoolMaxConnections() {
+        return this.poolMaxConnections;
+    }
+
+    @Override
+    public long getPoolBorrowTimeoutInMs() {
+        return this.poolBorrowTimeoutInMs;
+    }
+
+    @Override
+    public long getPoolIdleTimeoutInMs() {
+        return this.poolIdleTimeoutInMs;
+    }
+
+    @Override
+    public long getRequestTimeoutInMs() {
+        return this.requestTimeoutInMs;
+    }
+}
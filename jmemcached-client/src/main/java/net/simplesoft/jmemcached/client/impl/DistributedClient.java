@@ -0,0 +1,549 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.CasValue;
+import net.simplesoft.jmemcached.client.Client;
+import net.simplesoft.jmemcached.client.Pipeline;
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Spreads keys over several servers with a ketama hash ring. A server which failed with IOException is skipped
+// for the retry interval: its keys are remapped to the next server on the ring and the call is retried there.
+// Only idempotent calls are retried, a conditional write or a counter update may have been applied by the failed
+// server, so its failure is thrown to the caller.
+class DistributedClient implements Client {
+
+    static final int DEFAULT_VIRTUAL_NODE_COUNT = 160;
+    static final long DEFAULT_RETRY_INTERVAL_IN_MS = 30000;
+    private static final int DEFAULT_PORT = 9010;
+
+    private final List<Node> nodes;
+    private final KetamaHashRing<Node> hashRing;
+    private final long retryIntervalInMs;
+
+    DistributedClient(List<String> servers) throws IOException {
+        this(servers, DEFAULT_VIRTUAL_NODE_COUNT, DEFAULT_RETRY_INTERVAL_IN_MS);
+    }
+
+    DistributedClient(List<String> servers, int virtualNodeCount, long retryIntervalInMs) throws IOException {
+        if (servers == null || servers.isEmpty()) {
+            throw new JMemcachedConfigException("At least one server is required");
+        }
+        this.retryIntervalInMs = retryIntervalInMs;
+        this.nodes = new ArrayList<>(servers.size());
+        Map<String, Node> nodesByName = new LinkedHashMap<>();
+        for (String server : servers) {
+            Node node = createNode(server);
+            if (nodesByName.put(node.name, node) != null) {
+                throw new JMemcachedConfigException("Duplicate server address: " + server);
+            }
+            this.nodes.add(node);
+        }
+        this.hashRing = new KetamaHashRing<>(nodesByName, virtualNodeCount);
+    }
+
+    protected Node createNode(String server) throws IOException {
+        String[] parts = server.trim().split(":");
+        if (parts.length > 2 || parts[0].isEmpty()) {
+            throw new JMemcachedConfigException("Invalid server address: " + server);
+        }
+        int port = DEFAULT_PORT;
+        if (parts.length == 2) {
+            try {
+                port = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new JMemcachedConfigException("Invalid server address: " + server, e);
+            }
+        }
+        return new Node(parts[0] + ":" + port, createNodeClient(parts[0], port));
+    }
+
+    protected Client createNodeClient(String host, int port) throws IOException {
+        // connections are opened lazily, so that one unavailable server doesn't prevent client creation
+        return new PooledClient(new DefaultClientConfig(host, port, 0, DefaultClientConfig.DEFAULT_POOL_MAX_CONNECTIONS,
+                DefaultClientConfig.DEFAULT_POOL_BORROW_TIMEOUT_IN_MS, DefaultClientConfig.DEFAULT_POOL_IDLE_TIMEOUT_IN_MS));
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    protected Node getNode(String key) {
+        final long now = currentTimeMillis();
+        return hashRing.getNode(key, new Predicate<Node>() {
+            @Override
+            public boolean test(Node node) {
+                return node.isAvailable(now);
+            }
+        });
+    }
+
+    protected void markFailed(Node node) {
+        node.failedUntil = currentTimeMillis() + retryIntervalInMs;
+    }
+
+    protected <T> T execute(String key, NodeOperation<T> operation) throws IOException {
+        return execute(key, true, operation);
+    }
+
+    protected <T> T execute(String key, boolean retry, NodeOperation<T> operation) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < nodes.size(); attempt++) {
+            Node node = getNode(key);
+            if (node == null) {
+                break;
+            }
+            try {
+                return operation.execute(node.client);
+            } catch (IOException e) {
+                markFailed(node);
+                if (!retry) {
+                    throw e;
+                }
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        throw new JMemcachedException("No available servers for key: " + key);
+    }
+
+    protected <T> Map<String, T> executeAll(Collection<String> keys, BatchOperation<T> operation) throws IOException {
+        Map<String, T> results = new LinkedHashMap<>();
+        List<String> remaining = new ArrayList<>(keys);
+        IOException failure = null;
+        for (int attempt = 0; attempt < nodes.size() && !remaining.isEmpty(); attempt++) {
+            Map<Node, List<String>> keysByNode = groupByNode(remaining);
+            if (keysByNode == null) {
+                break;
+            }
+            remaining = new ArrayList<>();
+            for (Map.Entry<Node, List<String>> entry : keysByNode.entrySet()) {
+                try {
+                    results.putAll(operation.execute(entry.getKey().client, entry.getValue()));
+                } catch (IOException e) {
+                    markFailed(entry.getKey());
+                    remaining.addAll(entry.getValue());
+                    failure = e;
+                }
+            }
+        }
+        if (!remaining.isEmpty()) {
+            if (failure != null) {
+                throw failure;
+            }
+            throw new JMemcachedException("No available servers for keys: " + remaining);
+        }
+        // restore the order of requested keys
+        Map<String, T> orderedResults = new LinkedHashMap<>();
+        for (String key : keys) {
+            if (results.containsKey(key)) {
+                orderedResults.put(key, results.get(key));
+            }
+        }
+        return orderedResults;
+    }
+
+    protected Map<Node, List<String>> groupByNode(Collection<String> keys) {
+        Map<Node, List<String>> keysByNode = new LinkedHashMap<>();
+        for (String key : keys) {
+            Node node = getNode(key);
+            if (node == null) {
+                return null;
+            }
+            List<String> nodeKeys = keysByNode.get(node);
+            if (nodeKeys == null) {
+                nodeKeys = new ArrayList<>();
+                keysByNode.put(node, nodeKeys);
+            }
+            nodeKeys.add(key);
+        }
+        return keysByNode;
+    }
+
+    @Override
+    public Status put(String key, Object object) throws IOException {
+        return put(key, object, null, null);
+    }
+
+    @Override
+    public Status put(final String key, final Object object, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(key, new NodeOperation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.put(key, object, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Status add(String key, Object object) throws IOException {
+        return add(key, object, null, null);
+    }
+
+    @Override
+    public Status add(final String key, final Object object, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(key, false, new NodeOperation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.add(key, object, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Status replace(String key, Object object) throws IOException {
+        return replace(key, object, null, null);
+    }
+
+    @Override
+    public Status replace(final String key, final Object object, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(key, false, new NodeOperation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.replace(key, object, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public <T> T get(final String key) throws IOException {
+        return execute(key, new NodeOperation<T>() {
+            @Override
+            public T execute(Client client) throws IOException {
+                return client.get(key);
+            }
+        });
+    }
+
+    @Override
+    public Status touch(final String key, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(key, new NodeOperation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.touch(key, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public <T> T getAndTouch(final String key, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(key, new NodeOperation<T>() {
+            @Override
+            public T execute(Client client) throws IOException {
+                return client.getAndTouch(key, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Status remove(final String key) throws IOException {
+        return execute(key, new NodeOperation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.remove(key);
+            }
+        });
+    }
+
+    @Override
+    public <T> CasValue<T> gets(final String key) throws IOException {
+        return execute(key, new NodeOperation<CasValue<T>>() {
+            @Override
+            public CasValue<T> execute(Client client) throws IOException {
+                return client.gets(key);
+            }
+        });
+    }
+
+    @Override
+    public Status cas(String key, Object object, long cas) throws IOException {
+        return cas(key, object, cas, null, null);
+    }
+
+    @Override
+    public Status cas(final String key, final Object object, final long cas, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(key, false, new NodeOperation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.cas(key, object, cas, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public long incr(String key, long delta) throws IOException {
+        return incr(key, delta, null, null);
+    }
+
+    @Override
+    public long incr(final String key, final long delta, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(key, false, new NodeOperation<Long>() {
+            @Override
+            public Long execute(Client client) throws IOException {
+                return client.incr(key, delta, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public long decr(String key, long delta) throws IOException {
+        return decr(key, delta, null, null);
+    }
+
+    @Override
+    public long decr(final String key, final long delta, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(key, false, new NodeOperation<Long>() {
+            @Override
+            public Long execute(Client client) throws IOException {
+                return client.decr(key, delta, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Status clear() throws IOException {
+        IOException failure = null;
+        long now = currentTimeMillis();
+        for (Node node : nodes) {
+            if (!node.isAvailable(now)) {
+                continue;
+            }
+            try {
+                node.client.clear();
+            } catch (IOException e) {
+                markFailed(node);
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return Status.CLEARED;
+    }
+
+    // statistics of every available server prefixed with its "host:port/", failed servers are skipped unless all fail
+    @Override
+    public Map<String, String> stats() throws IOException {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        IOException failure = null;
+        long now = currentTimeMillis();
+        for (Node node : nodes) {
+            if (!node.isAvailable(now)) {
+                continue;
+            }
+            try {
+                for (Map.Entry<String, String> entry : node.client.stats().entrySet()) {
+                    statistics.put(node.name + "/" + entry.getKey(), entry.getValue());
+                }
+            } catch (IOException e) {
+                markFailed(node);
+                failure = e;
+            }
+        }
+        if (failure != null && statistics.isEmpty()) {
+            throw failure;
+        }
+        return statistics;
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys) throws IOException {
+        return executeAll(keys, new BatchOperation<T>() {
+            @Override
+            public Map<String, T> execute(Client client, List<String> nodeKeys) throws IOException {
+                return client.getAll(nodeKeys);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Status> putAll(Map<String, ?> objects) throws IOException {
+        return putAll(objects, null, null);
+    }
+
+    @Override
+    public Map<String, Status> putAll(final Map<String, ?> objects, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return executeAll(objects.keySet(), new BatchOperation<Status>() {
+            @Override
+            public Map<String, Status> execute(Client client, List<String> nodeKeys) throws IOException {
+                Map<String, Object> nodeObjects = new LinkedHashMap<>();
+                for (String key : nodeKeys) {
+                    nodeObjects.put(key, objects.get(key));
+                }
+                return client.putAll(nodeObjects, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Status> removeAll(Collection<String> keys) throws IOException {
+        return executeAll(keys, new BatchOperation<Status>() {
+            @Override
+            public Map<String, Status> execute(Client client, List<String> nodeKeys) throws IOException {
+                return client.removeAll(nodeKeys);
+            }
+        });
+    }
+
+    @Override
+    public Pipeline pipelined() {
+        return new DistributedPipeline();
+    }
+
+    @Override
+    public void close() throws Exception {
+        Exception failure = null;
+        for (Node node : nodes) {
+            try {
+                node.client.close();
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    protected interface NodeOperation<T> {
+        T execute(Client client) throws IOException;
+    }
+
+    protected interface BatchOperation<T> {
+        Map<String, T> execute(Client client, List<String> keys) throws IOException;
+    }
+
+    static class Node {
+        private final String name;
+        private final Client client;
+        private volatile long failedUntil;
+
+        Node(String name, Client client) {
+            this.name = name;
+            this.client = client;
+        }
+
+        boolean isAvailable(long now) {
+            return failedUntil <= now;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Client getClient() {
+            return client;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // every node gets its own pipeline with the calls for its keys, results are put back in the call order
+    protected class DistributedPipeline implements Pipeline {
+        private final Map<Node, Pipeline> pipelines = new LinkedHashMap<>();
+        private final Map<Node, List<Integer>> resultIndexes = new LinkedHashMap<>();
+        private int callCount;
+
+        @Override
+        public Pipeline put(String key, Object object) {
+            return put(key, object, null, null);
+        }
+
+        @Override
+        public Pipeline put(String key, Object object, Integer ttl, TimeUnit timeUnit) {
+            pipelineFor(getNodeOrFail(key), callCount++).put(key, object, ttl, timeUnit);
+            return this;
+        }
+
+        @Override
+        public Pipeline get(String key) {
+            pipelineFor(getNodeOrFail(key), callCount++).get(key);
+            return this;
+        }
+
+        @Override
+        public Pipeline remove(String key) {
+            pipelineFor(getNodeOrFail(key), callCount++).remove(key);
+            return this;
+        }
+
+        @Override
+        public Pipeline clear() {
+            int index = callCount++;
+            long now = currentTimeMillis();
+            for (Node node : nodes) {
+                if (node.isAvailable(now)) {
+                    pipelineFor(node, index).clear();
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public List<Object> execute() throws IOException {
+            Object[] results = new Object[callCount];
+            try {
+                for (Map.Entry<Node, Pipeline> entry : pipelines.entrySet()) {
+                    List<Object> nodeResults;
+                    try {
+                        nodeResults = entry.getValue().execute();
+                    } catch (IOException e) {
+                        markFailed(entry.getKey());
+                        throw e;
+                    }
+                    List<Integer> indexes = resultIndexes.get(entry.getKey());
+                    for (int i = 0; i < nodeResults.size(); i++) {
+                        results[indexes.get(i)] = nodeResults.get(i);
+                    }
+                }
+            } finally {
+                pipelines.clear();
+                resultIndexes.clear();
+                callCount = 0;
+            }
+            List<Object> resultList = new ArrayList<>(results.length);
+            for (Object result : results) {
+                resultList.add(result);
+            }
+            return resultList;
+        }
+
+        private Node getNodeOrFail(String key) {
+            Node node = getNode(key);
+            if (node == null) {
+                throw new JMemcachedException("No available servers for key: " + key);
+            }
+            return node;
+        }
+
+        private Pipeline pipelineFor(Node node, int resultIndex) {
+            Pipeline pipeline = pipelines.get(node);
+            if (pipeline == null) {
+                pipeline = node.client.pipelined();
+                pipelines.put(node, pipeline);
+                resultIndexes.put(node, new ArrayList<Integer>());
+            }
+            resultIndexes.get(node).add(resultIndex);
+            return pipeline;
+        }
+    }
+}
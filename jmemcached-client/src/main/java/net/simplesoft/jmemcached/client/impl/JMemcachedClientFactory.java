@@ -1,8 +1,12 @@
 package net.simplesoft.jmemcached.client.impl;
 
+import net.simplesoft.jmemcached.client.AsyncClient;
 import net.simplesoft.jmemcached.client.Client;
+import net.simplesoft.jmemcached.protocol.ObjectSerializer;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 public class JMemcachedClientFactory {
 
@@ -10,6 +14,19 @@ public class JMemcachedClientFactory {
         return new DefaultClient(new DefaultClientConfig(host, port));
     }
 
+    // e.g. TypedObjectSerializer which avoids java serialization for strings, byte arrays and primitives
+    public static Client buildNewClient(String host, int port, ObjectSerializer objectSerializer) throws IOException {
+        return new DefaultClient(new DefaultClientConfig(host, port, objectSerializer));
+    }
+
+    // values serialized to at least compressionThresholdInBytes are sent compressed, 0 disables compression
+    public static Client buildNewClient(String host, int port, ObjectSerializer objectSerializer,
+                                        int compressionThresholdInBytes) throws IOException {
+        return new DefaultClient(new DefaultClientConfig(host, port, DefaultClientConfig.DEFAULT_POOL_MIN_CONNECTIONS,
+                DefaultClientConfig.DEFAULT_POOL_MAX_CONNECTIONS, DefaultClientConfig.DEFAULT_POOL_BORROW_TIMEOUT_IN_MS,
+                DefaultClientConfig.DEFAULT_POOL_IDLE_TIMEOUT_IN_MS, objectSerializer, compressionThresholdInBytes));
+    }
+
     public static Client buildNewClient(String host) throws IOException {
         return buildNewClient(host, 9010);
     }
@@ -17,4 +34,52 @@ public class JMemcachedClientFactory {
     public static Client buildNewClient() throws IOException {
         return buildNewClient("localhost");
     }
+
+    // thread safe client which can be shared by application threads
+    public static Client buildNewPooledClient(String host, int port) throws IOException {
+        return new PooledClient(new DefaultClientConfig(host, port));
+    }
+
+    public static Client buildNewPooledClient(String host, int port, ObjectSerializer objectSerializer)
+            throws IOException {
+        return new PooledClient(new DefaultClientConfig(host, port, objectSerializer));
+    }
+
+    public static Client buildNewPooledClient(String host, int port, int minConnections, int maxConnections,
+                                              long borrowTimeoutInMs, long idleTimeoutInMs) throws IOException {
+        return new PooledClient(new DefaultClientConfig(host, port, minConnections, maxConnections,
+                borrowTimeoutInMs, idleTimeoutInMs));
+    }
+
+    // servers are "host:port" addresses, keys are spread over them by consistent hashing
+    public static Client buildNewDistributedClient(List<String> servers) throws IOException {
+        return new DistributedClient(servers);
+    }
+
+    public static Client buildNewDistributedClient(String... servers) throws IOException {
+        return buildNewDistributedClient(Arrays.asList(servers));
+    }
+
+    // non-blocking client which multiplexes concurrent requests over one connection
+    public static AsyncClient buildNewAsyncClient(String host, int port) throws IOException {
+        return new DefaultAsyncClient(new DefaultClientConfig(host, port));
+    }
+
+    public static AsyncClient buildNewAsyncClient(String host, int port, ObjectSerializer objectSerializer)
+            throws IOException {
+        return new DefaultAsyncClient(new DefaultClientConfig(host, port, objectSerializer));
+    }
+
+    // requests without a response within requestTimeoutInMs fail, 0 disables the timeout
+    public static AsyncClient buildNewAsyncClient(String host, int port, ObjectSerializer objectSerializer,
+                                                  long requestTimeoutInMs) throws IOException {
+        return new DefaultAsyncClient(new DefaultClientConfig(host, port, DefaultClientConfig.DEFAULT_POOL_MIN_CONNECTIONS,
+                DefaultClientConfig.DEFAULT_POOL_MAX_CONNECTIONS, DefaultClientConfig.DEFAULT_POOL_BORROW_TIMEOUT_IN_MS,
+                DefaultClientConfig.DEFAULT_POOL_IDLE_TIMEOUT_IN_MS, objectSerializer,
+                DefaultClientConfig.DEFAULT_COMPRESSION_THRESHOLD_IN_BYTES, requestTimeoutInMs));
+    }
+
+    public static AsyncClient buildNewAsyncClient() throws IOException {
+        return buildNewAsyncClient("localhost", 9010);
+    }
 }
@@ -0,0 +1,79 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+// Ketama consistent hash ring: every node owns many points on a 32 bit circle, a key belongs to the first node
+// clockwise from the key hash. Adding or removing one of N nodes moves only about 1/N of the keys.
+class KetamaHashRing<T> {
+
+    // one md5 digest gives 4 ring points
+    private static final int POINTS_PER_DIGEST = 4;
+
+    private final NavigableMap<Long, T> ring = new TreeMap<>();
+
+    KetamaHashRing(Map<String, T> nodes, int virtualNodeCount) {
+        if (virtualNodeCount < 1) {
+            throw new JMemcachedException("Virtual node count should be >= 1: " + virtualNodeCount);
+        }
+        int digestCount = (virtualNodeCount + POINTS_PER_DIGEST - 1) / POINTS_PER_DIGEST;
+        for (Map.Entry<String, T> node : nodes.entrySet()) {
+            for (int i = 0; i < digestCount; i++) {
+                byte[] digest = md5(node.getKey() + "-" + i);
+                for (int point = 0; point < POINTS_PER_DIGEST; point++) {
+                    ring.put(toLong(digest, point * 4), node.getValue());
+                }
+            }
+        }
+    }
+
+    T getNode(String key) {
+        return getNode(key, null);
+    }
+
+    // nodes rejected by the filter hand their keys over to the next node clockwise
+    T getNode(String key, Predicate<T> filter) {
+        long hash = hash(key);
+        for (T node : ring.tailMap(hash, true).values()) {
+            if (filter == null || filter.test(node)) {
+                return node;
+            }
+        }
+        for (T node : ring.headMap(hash, false).values()) {
+            if (filter == null || filter.test(node)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return ring.size();
+    }
+
+    static long hash(String key) {
+        return toLong(md5(key), 0);
+    }
+
+    private static long toLong(byte[] digest, int offset) {
+        return ((long) (digest[offset + 3] & 0xFF) << 24)
+                | ((long) (digest[offset + 2] & 0xFF) << 16)
+                | ((long) (digest[offset + 1] & 0xFF) << 8)
+                | (digest[offset] & 0xFF);
+    }
+
+    private static byte[] md5(String value) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new JMemcachedException("MD5 is not supported: " + e.getMessage(), e);
+        }
+    }
+}
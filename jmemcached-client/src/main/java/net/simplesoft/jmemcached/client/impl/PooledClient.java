@@ -0,0 +1,470 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.CasValue;
+import net.simplesoft.jmemcached.client.Client;
+import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.client.Pipeline;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Thread safe client: every call borrows a DefaultClient connection from the pool and returns it afterwards.
+// A connection which failed in the middle of a request or a response is closed, because its streams may hold
+// a partial frame. Failures after a complete response like server errors leave the connection in sync, so it is reused.
+class PooledClient implements Client {
+
+    private final ClientConfig clientConfig;
+    // most recently used connections are taken first, so that the rest can reach idle timeout
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService idleEvictionExecutorService;
+    private volatile boolean closed;
+
+    PooledClient(ClientConfig clientConfig) throws IOException {
+        this.clientConfig = clientConfig;
+        this.permits = new Semaphore(clientConfig.getPoolMaxConnections(), true);
+        for (int i = 0; i < clientConfig.getPoolMinConnections(); i++) {
+            this.idleConnections.add(new PooledConnection(createConnection()));
+        }
+        this.idleEvictionExecutorService = createIdleEvictionExecutorService();
+        long evictionInterval = Math.max(1, clientConfig.getPoolIdleTimeoutInMs() / 2);
+        this.idleEvictionExecutorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    protected DefaultClient createConnection() throws IOException {
+        return new DefaultClient(this.clientConfig);
+    }
+
+    protected ScheduledExecutorService createIdleEvictionExecutorService() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "JMemcachedPoolIdleEvictionThread");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    protected boolean isValid(PooledConnection connection) {
+        return connection.client.isConnected();
+    }
+
+    protected PooledConnection borrow() throws IOException {
+        if (this.closed) {
+            throw new JMemcachedException("Client is closed");
+        }
+        try {
+            if (!this.permits.tryAcquire(this.clientConfig.getPoolBorrowTimeoutInMs(), TimeUnit.MILLISECONDS)) {
+                throw new JMemcachedException("Timeout waiting for a free connection: "
+                        + this.clientConfig.getPoolBorrowTimeoutInMs() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMemcachedException("Interrupted while waiting for a free connection", e);
+        }
+        try {
+            PooledConnection connection;
+            while ((connection = this.idleConnections.pollFirst()) != null) {
+                if (isValid(connection)) {
+                    return connection;
+                }
+                closeQuietly(connection);
+            }
+            return new PooledConnection(createConnection());
+        } catch (IOException | RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    protected void release(PooledConnection connection, boolean broken) {
+        try {
+            if (broken || this.closed) {
+                closeQuietly(connection);
+            } else {
+                connection.lastUsedTime = System.currentTimeMillis();
+                this.idleConnections.offerFirst(connection);
+                // close() may have drained the idle connections between the closed check and the offer
+                if (this.closed && this.idleConnections.remove(connection)) {
+                    closeQuietly(connection);
+                }
+            }
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    protected void evictIdleConnections() {
+        long idleSince = System.currentTimeMillis() - this.clientConfig.getPoolIdleTimeoutInMs();
+        // the eldest connections are at the end of the deque
+        Iterator<PooledConnection> iterator = this.idleConnections.descendingIterator();
+        while (iterator.hasNext() && this.idleConnections.size() > this.clientConfig.getPoolMinConnections()) {
+            PooledConnection connection = iterator.next();
+            if ((connection.lastUsedTime < idleSince || !isValid(connection))
+                    && this.idleConnections.removeLastOccurrence(connection)) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private void closeQuietly(PooledConnection connection) {
+        try {
+            connection.client.close();
+        } catch (IOException e) {
+            // connection is discarded anyway
+        }
+    }
+
+    int getIdleConnectionCount() {
+        return this.idleConnections.size();
+    }
+
+    int getActiveConnectionCount() {
+        return this.clientConfig.getPoolMaxConnections() - this.permits.availablePermits();
+    }
+
+    protected <T> T execute(Operation<T> operation) throws IOException {
+        PooledConnection connection = borrow();
+        boolean broken = false;
+        try {
+            return operation.execute(connection.client);
+        } catch (IOException | RuntimeException e) {
+            broken = e instanceof IOException || connection.client.isRequestInFlight();
+            throw e;
+        } finally {
+            release(connection, broken);
+        }
+    }
+
+    @Override
+    public Status put(final String key, final Object object) throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.put(key, object);
+            }
+        });
+    }
+
+    @Override
+    public Status put(final String key, final Object object, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.put(key, object, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Status add(String key, Object object) throws IOException {
+        return add(key, object, null, null);
+    }
+
+    @Override
+    public Status add(final String key, final Object object, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.add(key, object, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Status replace(String key, Object object) throws IOException {
+        return replace(key, object, null, null);
+    }
+
+    @Override
+    public Status replace(final String key, final Object object, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.replace(key, object, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public <T> T get(final String key) throws IOException {
+        return execute(new Operation<T>() {
+            @Override
+            public T execute(Client client) throws IOException {
+                return client.get(key);
+            }
+        });
+    }
+
+    @Override
+    public Status touch(final String key, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.touch(key, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public <T> T getAndTouch(final String key, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(new Operation<T>() {
+            @Override
+            public T execute(Client client) throws IOException {
+                return client.getAndTouch(key, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Status remove(final String key) throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.remove(key);
+            }
+        });
+    }
+
+    @Override
+    public Status clear() throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.clear();
+            }
+        });
+    }
+
+    @Override
+    public <T> CasValue<T> gets(final String key) throws IOException {
+        return execute(new Operation<CasValue<T>>() {
+            @Override
+            public CasValue<T> execute(Client client) throws IOException {
+                return client.gets(key);
+            }
+        });
+    }
+
+    @Override
+    public Status cas(String key, Object object, long cas) throws IOException {
+        return cas(key, object, cas, null, null);
+    }
+
+    @Override
+    public Status cas(final String key, final Object object, final long cas, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(new Operation<Status>() {
+            @Override
+            public Status execute(Client client) throws IOException {
+                return client.cas(key, object, cas, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public long incr(String key, long delta) throws IOException {
+        return incr(key, delta, null, null);
+    }
+
+    @Override
+    public long incr(final String key, final long delta, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(new Operation<Long>() {
+            @Override
+            public Long execute(Client client) throws IOException {
+                return client.incr(key, delta, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public long decr(String key, long delta) throws IOException {
+        return decr(key, delta, null, null);
+    }
+
+    @Override
+    public long decr(final String key, final long delta, final Integer ttl, final TimeUnit timeUnit) throws IOException {
+        return execute(new Operation<Long>() {
+            @Override
+            public Long execute(Client client) throws IOException {
+                return client.decr(key, delta, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, String> stats() throws IOException {
+        return execute(new Operation<Map<String, String>>() {
+            @Override
+            public Map<String, String> execute(Client client) throws IOException {
+                return client.stats();
+            }
+        });
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(final Collection<String> keys) throws IOException {
+        return execute(new Operation<Map<String, T>>() {
+            @Override
+            public Map<String, T> execute(Client client) throws IOException {
+                return client.getAll(keys);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Status> putAll(Map<String, ?> objects) throws IOException {
+        return putAll(objects, null, null);
+    }
+
+    @Override
+    public Map<String, Status> putAll(final Map<String, ?> objects, final Integer ttl, final TimeUnit timeUnit)
+            throws IOException {
+        return execute(new Operation<Map<String, Status>>() {
+            @Override
+            public Map<String, Status> execute(Client client) throws IOException {
+                return client.putAll(objects, ttl, timeUnit);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Status> removeAll(final Collection<String> keys) throws IOException {
+        return execute(new Operation<Map<String, Status>>() {
+            @Override
+            public Map<String, Status> execute(Client client) throws IOException {
+                return client.removeAll(keys);
+            }
+        });
+    }
+
+    @Override
+    public Pipeline pipelined() {
+        return new PooledPipeline();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.idleEvictionExecutorService.shutdownNow();
+        PooledConnection connection;
+        while ((connection = this.idleConnections.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    protected interface Operation<T> {
+        T execute(Client client) throws IOException;
+    }
+
+    protected static class PooledConnection {
+        private final DefaultClient client;
+        private volatile long lastUsedTime = System.currentTimeMillis();
+
+        protected PooledConnection(DefaultClient client) {
+            this.client = client;
+        }
+
+        protected DefaultClient getClient() {
+            return client;
+        }
+    }
+
+    // collects the calls and replays them on one borrowed connection on execute
+    protected class PooledPipeline implements Pipeline {
+        private final List<PipelineCall> calls = new ArrayList<>();
+
+        @Override
+        public Pipeline put(final String key, final Object object) {
+            return put(key, object, null, null);
+        }
+
+        @Override
+        public Pipeline put(final String key, final Object object, final Integer ttl, final TimeUnit timeUnit) {
+            calls.add(new PipelineCall() {
+                @Override
+                public void apply(Pipeline pipeline) {
+                    pipeline.put(key, object, ttl, timeUnit);
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public Pipeline get(final String key) {
+            calls.add(new PipelineCall() {
+                @Override
+                public void apply(Pipeline pipeline) {
+                    pipeline.get(key);
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public Pipeline remove(final String key) {
+            calls.add(new PipelineCall() {
+                @Override
+                public void apply(Pipeline pipeline) {
+                    pipeline.remove(key);
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public Pipeline clear() {
+            calls.add(new PipelineCall() {
+                @Override
+                public void apply(Pipeline pipeline) {
+                    pipeline.clear();
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public List<Object> execute() throws IOException {
+            // a failed pipeline is not executed again with the next calls
+            try {
+                return PooledClient.this.execute(new Operation<List<Object>>() {
+                    @Override
+                    public List<Object> execute(Client client) throws IOException {
+                        Pipeline pipeline = client.pipelined();
+                        for (PipelineCall call : calls) {
+                            call.apply(pipeline);
+                        }
+                        return pipeline.execute();
+                    }
+                });
+            } finally {
+                calls.clear();
+            }
+        }
+    }
+
+    private interface PipelineCall {
+        void apply(Pipeline pipeline);
+    }
+}
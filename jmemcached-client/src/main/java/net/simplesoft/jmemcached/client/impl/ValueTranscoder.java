@@ -0,0 +1,91 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.ObjectSerializer;
+import net.simplesoft.jmemcached.protocol.ValueCompressor;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Converts objects to request data and response data back to objects. Serialized values larger than the
+// threshold are compressed by the client and marked with the compressed flag, the server never decompresses them.
+class ValueTranscoder {
+
+    private final ObjectSerializer objectSerializer;
+    private final ValueCompressor valueCompressor;
+    // 0 disables compression of new values, compressed values written by other clients are still readable
+    private final int compressionThresholdInBytes;
+
+    ValueTranscoder(ClientConfig clientConfig) {
+        this.objectSerializer = clientConfig.getObjectSerializer();
+        this.valueCompressor = clientConfig.getValueCompressor();
+        this.compressionThresholdInBytes = clientConfig.getCompressionThresholdInBytes();
+    }
+
+    Request toRequest(Command command, String key, Object object, Integer ttl, TimeUnit timeUnit) {
+        byte[] data = objectSerializer.toByteArray(object);
+        Request request = new Request(command, key, toRequestTTL(ttl, timeUnit), data);
+        if (compressionThresholdInBytes > 0 && valueCompressor != null && data != null
+                && data.length >= compressionThresholdInBytes) {
+            byte[] compressed = valueCompressor.compress(data);
+            // incompressible values are sent as is
+            if (compressed.length < data.length) {
+                request.setData(compressed);
+                request.setCompressed(true);
+            }
+        }
+        return request;
+    }
+
+    Object toObject(Response response) {
+        byte[] data = response.getData();
+        if (data != null && response.isCounter()) {
+            return ByteBuffer.wrap(data).getLong();
+        }
+        if (data != null && response.isCompressed()) {
+            if (valueCompressor == null) {
+                throw new JMemcachedException("Can't read compressed value: value compressor is not configured");
+            }
+            data = valueCompressor.decompress(data);
+        }
+        return objectSerializer.fromByteArray(data);
+    }
+
+    // the delta is sent as 8 bytes big-endian data
+    static Request toCounterRequest(Command command, String key, long delta, Integer ttl, TimeUnit timeUnit) {
+        return new Request(command, key, toRequestTTL(ttl, timeUnit), ByteBuffer.allocate(8).putLong(delta).array());
+    }
+
+    static Long toRequestTTL(Integer ttl, TimeUnit timeUnit) {
+        return (ttl != null && timeUnit != null) ? timeUnit.toMillis(ttl) : null;
+    }
+
+    static long toCounter(String key, Response response) {
+        if (response.getStatus() == Status.NOT_NUMERIC) {
+            throw new JMemcachedException("Value is not a counter for key: " + key);
+        }
+        return ByteBuffer.wrap(response.getData()).getLong();
+    }
+
+    // statistics are sent by the server as UTF-8 "name=value" lines
+    static Map<String, String> toStatistics(Response response) {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        if (response.getData() != null) {
+            for (String line : new String(response.getData(), StandardCharsets.UTF_8).split("\n")) {
+                int separator = line.indexOf('=');
+                if (separator > 0) {
+                    statistics.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,169 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.impl.DefaultObjectSerializer;
+import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
+import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultAsyncClientTest {
+
+    private final DefaultRequestConverter requestConverter = new DefaultRequestConverter();
+    private final DefaultResponseConverter responseConverter = new DefaultResponseConverter();
+    private final DefaultObjectSerializer objectSerializer = new DefaultObjectSerializer();
+
+    private ServerSocket serverSocket;
+    private ClientConfig clientConfig;
+    private DefaultAsyncClient asyncClient;
+    private Socket server;
+
+    @Before
+    public void before() throws IOException {
+        serverSocket = new ServerSocket(0);
+        clientConfig = mock(ClientConfig.class);
+        when(clientConfig.getHost()).thenReturn("localhost");
+        when(clientConfig.getPort()).thenReturn(serverSocket.getLocalPort());
+        when(clientConfig.getObjectSerializer()).thenReturn(objectSerializer);
+        when(clientConfig.getRequestConverter()).thenReturn(requestConverter);
+        when(clientConfig.getResponseConverter()).thenReturn(responseConverter);
+        asyncClient = new DefaultAsyncClient(clientConfig);
+        server = serverSocket.accept();
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void after() throws IOException {
+        asyncClient.close();
+        server.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void responsesOutOfOrder() throws Exception {
+        CompletableFuture<String> get = asyncClient.getAsync("key");
+        CompletableFuture<Status> put = asyncClient.putAsync("key", "value", 1, TimeUnit.SECONDS);
+        CompletableFuture<Status> remove = asyncClient.removeAsync("key");
+
+        InputStream in = server.getInputStream();
+        Request getRequest = requestConverter.readRequest(in);
+        Request putRequest = requestConverter.readRequest(in);
+        Request removeRequest = requestConverter.readRequest(in);
+        assertEquals(Command.GET, getRequest.getCommand());
+        assertEquals(Long.valueOf(1000), putRequest.getTtl());
+        assertEquals("value", objectSerializer.fromByteArray(putRequest.getData()));
+        assertEquals(Command.REMOVE, removeRequest.getCommand());
+        assertEquals(3, asyncClient.getPendingRequestCount());
+
+        // answered in reverse order: futures are matched by correlation id
+        OutputStream out = server.getOutputStream();
+        responseConverter.writeResponse(out, response(removeRequest, new Response(Status.REMOVED)));
+        responseConverter.writeResponse(out, response(putRequest, new Response(Status.ADDED)));
+        responseConverter.writeResponse(out, response(getRequest,
+                new Response(Status.GOTTEN, objectSerializer.toByteArray("value"))));
+        out.flush();
+
+        assertEquals(Status.REMOVED, remove.get(5, TimeUnit.SECONDS));
+        assertEquals(Status.ADDED, put.get(5, TimeUnit.SECONDS));
+        assertEquals("value", get.get(5, TimeUnit.SECONDS));
+        assertEquals(0, asyncClient.getPendingRequestCount());
+    }
+
+    @Test
+    public void clearAsync() throws Exception {
+        CompletableFuture<Status> clear = asyncClient.clearAsync();
+        Request request = requestConverter.readRequest(server.getInputStream());
+        assertEquals(Command.CLEAR, request.getCommand());
+        responseConverter.writeResponse(server.getOutputStream(), response(request, new Response(Status.CLEARED)));
+        assertEquals(Status.CLEARED, clear.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void connectionClosedByServer() throws Exception {
+        CompletableFuture<Status> remove = asyncClient.removeAsync("key");
+        requestConverter.readRequest(server.getInputStream());
+        server.close();
+        try {
+            remove.get(5, TimeUnit.SECONDS);
+            fail("ExecutionException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void requestAfterClose() throws Exception {
+        asyncClient.close();
+        try {
+            asyncClient.getAsync("key").get(5, TimeUnit.SECONDS);
+            fail("ExecutionException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JMemcachedException);
+            assertEquals("Client is closed", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void serverError() throws Exception {
+        CompletableFuture<Status> remove = asyncClient.removeAsync("key");
+        Request request = requestConverter.readRequest(server.getInputStream());
+        responseConverter.writeResponse(server.getOutputStream(), response(request, new Response(Status.SERVER_ERROR)));
+        try {
+            remove.get(5, TimeUnit.SECONDS);
+            fail("ExecutionException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JMemcachedException);
+            assertEquals("Server failed to handle request", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void requestTimeout() throws Exception {
+        when(clientConfig.getRequestTimeoutInMs()).thenReturn(100L);
+        try (DefaultAsyncClient timeoutClient = new DefaultAsyncClient(clientConfig);
+             Socket timeoutServer = serverSocket.accept()) {
+            CompletableFuture<Status> remove = timeoutClient.removeAsync("key");
+            Request request = requestConverter.readRequest(timeoutServer.getInputStream());
+            try {
+                remove.get(5, TimeUnit.SECONDS);
+                fail("ExecutionException expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof JMemcachedException);
+                assertEquals("Request timed out after 100 ms", e.getCause().getMessage());
+            }
+            assertEquals(0, timeoutClient.getPendingRequestCount());
+
+            // a late response is dropped and the connection keeps working
+            CompletableFuture<Status> clear = timeoutClient.clearAsync();
+            Request clearRequest = requestConverter.readRequest(timeoutServer.getInputStream());
+            OutputStream out = timeoutServer.getOutputStream();
+            responseConverter.writeResponse(out, response(request, new Response(Status.REMOVED)));
+            responseConverter.writeResponse(out, response(clearRequest, new Response(Status.CLEARED)));
+            assertEquals(Status.CLEARED, clear.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private Response response(Request request, Response response) {
+        response.setCorrelationId(request.getCorrelationId());
+        return response;
+    }
+}
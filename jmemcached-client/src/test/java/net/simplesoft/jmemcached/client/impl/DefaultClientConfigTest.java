@@ -1,14 +1,24 @@
 package net.simplesoft.jmemcached.client.impl;
 
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
 import net.simplesoft.jmemcached.protocol.impl.DefaultObjectSerializer;
 import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
 import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
+import net.simplesoft.jmemcached.protocol.impl.DeflateValueCompressor;
+import net.simplesoft.jmemcached.protocol.impl.TypedObjectSerializer;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
+import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class DefaultClientConfigTest {
 
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
     private final DefaultClientConfig defaultClientConfig = new DefaultClientConfig("localhost", 9010);
 
     @Test
@@ -35,4 +45,52 @@ public class DefaultClientConfigTest {
     public void getObjectSerializer() {
         assertEquals(DefaultObjectSerializer.class, defaultClientConfig.getObjectSerializer().getClass());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getPoolDefaults() {
+        assertEquals(1, defaultClientConfig.getPoolMinConnections());
+        assertEquals(8, defaultClientConfig.getPoolMaxConnections());
+        assertEquals(5000, defaultClientConfig.getPoolBorrowTimeoutInMs());
+        assertEquals(60000, defaultClientConfig.getPoolIdleTimeoutInMs());
+    }
+
+    @Test
+    public void getRequestTimeout() {
+        assertEquals(5000, defaultClientConfig.getRequestTimeoutInMs());
+        assertEquals(0, new DefaultClientConfig("localhost", 9010, 1, 8, 100, 100, new TypedObjectSerializer(), 0, 0)
+                .getRequestTimeoutInMs());
+    }
+
+    @Test
+    public void invalidRequestTimeout() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("request timeout should be >= 0"));
+        new DefaultClientConfig("localhost", 9010, 1, 8, 100, 100, new TypedObjectSerializer(), 0, -1);
+    }
+
+    @Test
+    public void invalidPoolConnections() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("pool connections should be 0 <= min <= max and max >= 1"));
+        new DefaultClientConfig("localhost", 9010, 3, 2, 100, 100);
+    }
+
+    @Test
+    public void getCustomObjectSerializer() {
+        TypedObjectSerializer objectSerializer = new TypedObjectSerializer();
+        assertSame(objectSerializer, new DefaultClientConfig("localhost", 9010, objectSerializer).getObjectSerializer());
+    }
+
+    @Test
+    public void nullObjectSerializer() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("objectSerializer is required"));
+        new DefaultClientConfig("localhost", 9010, null);
+    }
+
+    @Test
+    public void getCompressionDefaults() {
+        assertEquals(DeflateValueCompressor.class, defaultClientConfig.getValueCompressor().getClass());
+        assertEquals(16 * 1024, defaultClientConfig.getCompressionThresholdInBytes());
+    }
+}
@@ -1,25 +1,47 @@
 package net.simplesoft.jmemcached.client.impl;
 
+import net.simplesoft.jmemcached.client.CasValue;
 import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.client.Pipeline;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.protocol.ObjectSerializer;
 import net.simplesoft.jmemcached.protocol.RequestConverter;
 import net.simplesoft.jmemcached.protocol.ResponseConverter;
+import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
 import net.simplesoft.jmemcached.protocol.model.Command;
 import net.simplesoft.jmemcached.protocol.model.Request;
 import net.simplesoft.jmemcached.protocol.model.Response;
 import net.simplesoft.jmemcached.protocol.model.Status;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class DefaultClientTest {
@@ -56,6 +78,16 @@ public class DefaultClientTest {
             protected Socket createSocket(ClientConfig clientConfig) throws IOException {
                 return socket;
             }
+
+            @Override
+            protected InputStream createInputStream(Socket socket) throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            protected OutputStream createOutputStream(Socket socket) throws IOException {
+                return socket.getOutputStream();
+            }
         };
     }
 
@@ -71,6 +103,17 @@ public class DefaultClientTest {
         verify(responseConverter).readResponse(inputStream);
     }
 
+    @Test
+    public void makeRequestServerError() throws IOException {
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.SERVER_ERROR));
+        try {
+            defaultClient.get("key");
+            fail("JMemcachedException expected");
+        } catch (JMemcachedException e) {
+            assertEquals("Server failed to handle request: GET", e.getMessage());
+        }
+    }
+
     @Test
     public void putSimple() throws IOException {
         String key = "key";
@@ -155,6 +198,328 @@ public class DefaultClientTest {
                 same(outputStream), equalTo(new Request(Command.CLEAR)));
     }
 
+    @Test
+    public void stats() throws IOException {
+        when(responseConverter.readResponse(inputStream)).thenReturn(
+                new Response(Status.GOTTEN, "items=1\nget_hit_ratio=0.75\n".getBytes(StandardCharsets.UTF_8)));
+
+        Map<String, String> stats = defaultClient.stats();
+        assertEquals(Arrays.asList("items", "get_hit_ratio"), new ArrayList<>(stats.keySet()));
+        assertEquals("0.75", stats.get("get_hit_ratio"));
+        verify(requestConverter).writeRequest(
+                same(outputStream), equalTo(new Request(Command.STATS)));
+    }
+
+    @Test
+    public void incr() throws IOException {
+        Response response = new Response(Status.GOTTEN, ByteBuffer.allocate(8).putLong(7).array());
+        response.setCounter(true);
+        when(responseConverter.readResponse(inputStream)).thenReturn(response);
+
+        assertEquals(7, defaultClient.incr("key", 2, 1, TimeUnit.SECONDS));
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(requestConverter).writeRequest(same(outputStream), request.capture());
+        assertEquals(Command.INCR, request.getValue().getCommand());
+        assertEquals("key", request.getValue().getKey());
+        assertEquals(Long.valueOf(1000), request.getValue().getTtl());
+        assertArrayEquals(ByteBuffer.allocate(8).putLong(2).array(), request.getValue().getData());
+    }
+
+    @Test
+    public void touchAndGetAndTouch() throws IOException {
+        byte[] data = {1, 2, 3};
+        when(objectSerializer.fromByteArray(data)).thenReturn("value");
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.TOUCHED), new Response(Status.GOTTEN, data));
+
+        assertEquals(Status.TOUCHED, defaultClient.touch("key", 1, TimeUnit.SECONDS));
+        assertEquals("value", defaultClient.getAndTouch("key", null, null));
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(requestConverter, times(2)).writeRequest(same(outputStream), request.capture());
+        assertEquals(Command.TOUCH, request.getAllValues().get(0).getCommand());
+        assertEquals(Long.valueOf(1000), request.getAllValues().get(0).getTtl());
+        assertNull(request.getAllValues().get(0).getData());
+        assertEquals(Command.GAT, request.getAllValues().get(1).getCommand());
+        assertNull(request.getAllValues().get(1).getTtl());
+    }
+
+    @Test
+    public void addAndReplace() throws IOException {
+        byte[] data = {1, 2, 3};
+        when(objectSerializer.toByteArray("value")).thenReturn(data);
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.EXISTS), new Response(Status.REPLACED));
+
+        assertEquals(Status.EXISTS, defaultClient.add("key", "value", 1, TimeUnit.SECONDS));
+        assertEquals(Status.REPLACED, defaultClient.replace("key", "value"));
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(requestConverter, times(2)).writeRequest(same(outputStream), request.capture());
+        assertEquals(Command.ADD, request.getAllValues().get(0).getCommand());
+        assertEquals(Long.valueOf(1000), request.getAllValues().get(0).getTtl());
+        assertEquals(Command.REPLACE, request.getAllValues().get(1).getCommand());
+        assertArrayEquals(data, request.getAllValues().get(1).getData());
+    }
+
+    @Test
+    public void gets() throws IOException {
+        byte[] data = {1, 2, 3};
+        Response response = new Response(Status.GOTTEN, data);
+        response.setCas(42L);
+        when(responseConverter.readResponse(inputStream)).thenReturn(response);
+        when(objectSerializer.fromByteArray(data)).thenReturn("value");
+
+        CasValue<String> value = defaultClient.gets("key");
+        assertEquals("value", value.getValue());
+        assertEquals(42, value.getCas());
+    }
+
+    @Test
+    public void getsNotFound() throws IOException {
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.NOT_FOUND));
+        assertNull(defaultClient.gets("key"));
+    }
+
+    @Test
+    public void cas() throws IOException {
+        byte[] data = {1, 2, 3};
+        when(objectSerializer.toByteArray("value")).thenReturn(data);
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.EXISTS));
+
+        assertEquals(Status.EXISTS, defaultClient.cas("key", "value", 42, 1, TimeUnit.SECONDS));
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(requestConverter).writeRequest(same(outputStream), request.capture());
+        assertEquals(Command.CAS, request.getValue().getCommand());
+        assertEquals(Long.valueOf(42), request.getValue().getCas());
+        assertEquals(Long.valueOf(1000), request.getValue().getTtl());
+        assertArrayEquals(data, request.getValue().getData());
+    }
+
+    @Test
+    public void decrNotNumeric() throws IOException {
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.NOT_NUMERIC));
+        try {
+            defaultClient.decr("key", 1);
+            fail("JMemcachedException expected");
+        } catch (JMemcachedException e) {
+            assertEquals("Value is not a counter for key: key", e.getMessage());
+        }
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(requestConverter).writeRequest(same(outputStream), request.capture());
+        assertEquals(Command.DECR, request.getValue().getCommand());
+        assertNull(request.getValue().getTtl());
+    }
+
+    @Test
+    public void getCounter() throws IOException {
+        Response response = new Response(Status.GOTTEN, ByteBuffer.allocate(8).putLong(7).array());
+        response.setCounter(true);
+        when(responseConverter.readResponse(inputStream)).thenReturn(response);
+
+        assertEquals(Long.valueOf(7), defaultClient.get("key"));
+        verifyZeroInteractions(objectSerializer);
+    }
+
+    @Test
+    public void pipelined() throws IOException {
+        byte[] array = {1, 2, 3};
+        when(objectSerializer.toByteArray("value")).thenReturn(array);
+        when(objectSerializer.fromByteArray(array)).thenReturn("value");
+        when(responseConverter.readResponse(inputStream))
+                .thenReturn(new Response(Status.ADDED))
+                .thenReturn(new Response(Status.GOTTEN, array))
+                .thenReturn(new Response(Status.REMOVED))
+                .thenReturn(new Response(Status.CLEARED));
+
+        List<Object> results = defaultClient.pipelined()
+                .put("key", "value")
+                .get("key")
+                .remove("key")
+                .clear()
+                .execute();
+
+        assertEquals(Arrays.<Object>asList(Status.ADDED, "value", Status.REMOVED, Status.CLEARED), results);
+        InOrder inOrder = inOrder(requestConverter, outputStream, responseConverter);
+        inOrder.verify(requestConverter).writeRequest(same(outputStream), equalTo(new Request(Command.PUT, "key", null, array)));
+        inOrder.verify(requestConverter).writeRequest(same(outputStream), equalTo(new Request(Command.GET, "key")));
+        inOrder.verify(requestConverter).writeRequest(same(outputStream), equalTo(new Request(Command.REMOVE, "key")));
+        inOrder.verify(requestConverter).writeRequest(same(outputStream), equalTo(new Request(Command.CLEAR)));
+        inOrder.verify(outputStream).flush();
+        inOrder.verify(responseConverter, times(4)).readResponse(inputStream);
+    }
+
+    @Test
+    public void pipelineClearedAfterFailure() throws IOException {
+        when(responseConverter.readResponse(inputStream))
+                .thenThrow(new IOException("Connection reset"))
+                .thenReturn(new Response(Status.CLEARED));
+        Pipeline pipeline = defaultClient.pipelined().remove("key");
+        try {
+            pipeline.execute();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+        assertTrue(defaultClient.isRequestInFlight());
+
+        assertEquals(Collections.<Object>singletonList(Status.CLEARED), pipeline.clear().execute());
+        assertFalse(defaultClient.isRequestInFlight());
+        verify(requestConverter, times(1)).writeRequest(same(outputStream), equalTo(new Request(Command.REMOVE, "key")));
+    }
+
+    @Test
+    public void getAll() throws IOException {
+        byte[] array = {1, 2, 3};
+        when(objectSerializer.fromByteArray(array)).thenReturn("value");
+        Response response = new Response(Status.PROCESSED);
+        response.setBatch(Arrays.asList(new Response(Status.GOTTEN, array), new Response(Status.NOT_FOUND)));
+        when(responseConverter.readResponse(inputStream)).thenReturn(response);
+
+        Map<String, String> result = defaultClient.getAll(Arrays.asList("1", "2"));
+
+        assertEquals(Collections.singletonMap("1", "value"), result);
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(requestConverter).writeRequest(same(outputStream), captor.capture());
+        assertEquals(Command.MGET, captor.getValue().getCommand());
+        assertEquals(2, captor.getValue().getBatch().size());
+        assertEquals("2", captor.getValue().getBatch().get(1).getKey());
+    }
+
+    @Test
+    public void putAll() throws IOException {
+        byte[] array = {1, 2, 3};
+        when(objectSerializer.toByteArray("value")).thenReturn(array);
+        Response response = new Response(Status.PROCESSED);
+        response.setBatch(Arrays.asList(new Response(Status.ADDED), new Response(Status.REPLACED)));
+        when(responseConverter.readResponse(inputStream)).thenReturn(response);
+        Map<String, Object> objects = new LinkedHashMap<>();
+        objects.put("1", "value");
+        objects.put("2", "value");
+
+        Map<String, Status> result = defaultClient.putAll(objects, 1, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(Status.ADDED, Status.REPLACED), new ArrayList<>(result.values()));
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(requestConverter).writeRequest(same(outputStream), captor.capture());
+        assertEquals(Command.MSET, captor.getValue().getCommand());
+        assertEquals(Long.valueOf(1000L), captor.getValue().getBatch().get(0).getTtl());
+        assertArrayEquals(array, captor.getValue().getBatch().get(1).getData());
+    }
+
+    @Test
+    public void removeAll() throws IOException {
+        Response response = new Response(Status.PROCESSED);
+        response.setBatch(Collections.singletonList(new Response(Status.REMOVED)));
+        when(responseConverter.readResponse(inputStream)).thenReturn(response);
+
+        Map<String, Status> result = defaultClient.removeAll(Collections.singletonList("key"));
+
+        assertEquals(Collections.singletonMap("key", Status.REMOVED), result);
+    }
+
+    @Test
+    public void removeAllEmpty() throws IOException {
+        assertTrue(defaultClient.removeAll(Collections.<String>emptyList()).isEmpty());
+        verifyZeroInteractions(requestConverter, responseConverter);
+    }
+
+    @Test
+    public void makeRequestsInWindows() throws IOException {
+        defaultClient = new DefaultClient(clientConfig) {
+            @Override
+            protected Socket createSocket(ClientConfig clientConfig) throws IOException {
+                return socket;
+            }
+
+            @Override
+            protected InputStream createInputStream(Socket socket) throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            protected OutputStream createOutputStream(Socket socket) throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            protected int getPipelineWindowSize() {
+                return 2;
+            }
+        };
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.CLEARED));
+        List<Request> requests = Arrays.asList(
+                new Request(Command.CLEAR), new Request(Command.CLEAR), new Request(Command.CLEAR));
+
+        List<Response> responses = defaultClient.makeRequests(requests);
+
+        assertEquals(3, responses.size());
+        verify(outputStream, times(2)).flush();
+        verify(responseConverter, times(3)).readResponse(inputStream);
+    }
+
+    @Test
+    public void makeRequestsInByteBoundedWindows() throws IOException {
+        defaultClient = new DefaultClient(clientConfig) {
+            @Override
+            protected Socket createSocket(ClientConfig clientConfig) throws IOException {
+                return socket;
+            }
+
+            @Override
+            protected InputStream createInputStream(Socket socket) throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            protected OutputStream createOutputStream(Socket socket) throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            protected int getPipelineWindowBytes() {
+                return 40;
+            }
+        };
+        when(responseConverter.readResponse(inputStream)).thenReturn(new Response(Status.ADDED));
+        // 25 bytes each, so the second request fills the first window
+        List<Request> requests = Arrays.asList(
+                new Request(Command.PUT, "1", null, new byte[16]),
+                new Request(Command.PUT, "2", null, new byte[16]),
+                new Request(Command.PUT, "3", null, new byte[16]));
+
+        List<Response> responses = defaultClient.makeRequests(requests);
+
+        assertEquals(3, responses.size());
+        InOrder inOrder = inOrder(requestConverter, outputStream, responseConverter);
+        inOrder.verify(requestConverter, times(2)).writeRequest(eq(outputStream), any(Request.class));
+        inOrder.verify(outputStream).flush();
+        inOrder.verify(responseConverter, times(2)).readResponse(inputStream);
+        inOrder.verify(requestConverter).writeRequest(outputStream, requests.get(2));
+        inOrder.verify(outputStream).flush();
+        inOrder.verify(responseConverter).readResponse(inputStream);
+    }
+
+    @Test
+    public void getRequestSize() throws IOException {
+        Request request = new Request(Command.MSET, "key", 5L, new byte[10]);
+        request.setCorrelationId(1);
+        request.setCas(2L);
+        request.setBatch(Arrays.asList(new Request(Command.MSET, "1", null, new byte[3]), new Request(Command.MSET, "2")));
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        new DefaultRequestConverter().writeRequest(encoded, request);
+
+        assertEquals(encoded.size(), defaultClient.getRequestSize(request));
+    }
+
+    @Test
+    public void createBufferedStreams() throws IOException {
+        defaultClient = new DefaultClient(clientConfig) {
+            @Override
+            protected Socket createSocket(ClientConfig clientConfig) throws IOException {
+                return socket;
+            }
+        };
+        assertTrue(defaultClient.createInputStream(socket) instanceof DataInputStream);
+        assertTrue(defaultClient.createOutputStream(socket) instanceof DataOutputStream);
+    }
+
     @Test
     public void close() throws IOException {
         defaultClient.close();
@@ -0,0 +1,320 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.CasValue;
+import net.simplesoft.jmemcached.client.Client;
+import net.simplesoft.jmemcached.client.Pipeline;
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DistributedClientTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private Map<String, Client> nodeClients;
+    private long currentTime;
+    private DistributedClient distributedClient;
+
+    @Before
+    public void before() throws IOException {
+        nodeClients = new LinkedHashMap<>();
+        currentTime = 1000;
+        distributedClient = createDistributedClient("a:9010", "b:9011", "c");
+    }
+
+    private DistributedClient createDistributedClient(String... servers) throws IOException {
+        return new DistributedClient(Arrays.asList(servers), 160, 30000) {
+            @Override
+            protected Client createNodeClient(String host, int port) {
+                Client client = mock(Client.class);
+                nodeClients.put(host + ":" + port, client);
+                return client;
+            }
+
+            @Override
+            protected long currentTimeMillis() {
+                return currentTime;
+            }
+        };
+    }
+
+    private Client nodeClient(String key) {
+        return distributedClient.getNode(key).getClient();
+    }
+
+    @Test
+    public void createNodes() {
+        assertEquals(Arrays.asList("a:9010", "b:9011", "c:9010"), new ArrayList<>(nodeClients.keySet()));
+    }
+
+    @Test
+    public void noServers() throws IOException {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("At least one server is required"));
+        createDistributedClient();
+    }
+
+    @Test
+    public void invalidServerAddress() throws IOException {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("Invalid server address: a:port"));
+        createDistributedClient("a:port");
+    }
+
+    @Test
+    public void duplicateServerAddress() throws IOException {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("Duplicate server address: a"));
+        createDistributedClient("a:9010", "a");
+    }
+
+    @Test
+    public void putGoesToKeyNode() throws IOException {
+        Client client = nodeClient("key");
+        when(client.put("key", "value", null, null)).thenReturn(Status.ADDED);
+        assertEquals(Status.ADDED, distributedClient.put("key", "value"));
+        for (Client other : nodeClients.values()) {
+            if (other != client) {
+                verifyZeroInteractions(other);
+            }
+        }
+    }
+
+    @Test
+    public void getRemappedOnNodeFailure() throws IOException {
+        Client failed = nodeClient("key");
+        when(failed.get("key")).thenThrow(new IOException("Connection refused"));
+
+        assertNull(distributedClient.get("key"));
+
+        Client next = nodeClient("key");
+        assertNotSame(failed, next);
+        verify(next).get("key");
+        // failed node is skipped without a call until retry interval expires
+        distributedClient.get("key");
+        verify(failed, times(1)).get("key");
+
+        currentTime += 30000;
+        assertSame(failed, nodeClient("key"));
+    }
+
+    @Test
+    public void incrNotRetriedOnNodeFailure() throws IOException {
+        Client failed = nodeClient("key");
+        when(failed.incr("key", 1, null, null)).thenThrow(new IOException("Connection reset"));
+        try {
+            distributedClient.incr("key", 1);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+        // the failed server may have applied the increment, so it is not repeated on the next one
+        for (Client other : nodeClients.values()) {
+            if (other != failed) {
+                verifyZeroInteractions(other);
+            }
+        }
+        assertNotSame(failed, nodeClient("key"));
+    }
+
+    @Test
+    public void allNodesFailed() throws IOException {
+        thrown.expect(IOException.class);
+        thrown.expectMessage(is("Connection refused"));
+        for (Client client : nodeClients.values()) {
+            when(client.remove("key")).thenThrow(new IOException("Connection refused"));
+        }
+        distributedClient.remove("key");
+    }
+
+    @Test
+    public void noAvailableNodes() throws IOException {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("No available servers for key: key"));
+        while (distributedClient.getNode("key") != null) {
+            distributedClient.markFailed(distributedClient.getNode("key"));
+        }
+        distributedClient.get("key");
+    }
+
+    @Test
+    public void getAllSplitsKeysPerNode() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            keys.add("key" + i);
+        }
+        for (Client client : nodeClients.values()) {
+            when(client.getAll(anyCollection())).thenAnswer(new Answer<Map<String, Object>>() {
+                @Override
+                public Map<String, Object> answer(InvocationOnMock invocation) {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    for (String key : (Collection<String>) invocation.getArgument(0)) {
+                        result.put(key, key.toUpperCase());
+                    }
+                    return result;
+                }
+            });
+        }
+
+        Map<String, Object> result = distributedClient.getAll(keys);
+
+        assertEquals(keys, new ArrayList<>(result.keySet()));
+        assertEquals("KEY7", result.get("key7"));
+        for (Client client : nodeClients.values()) {
+            verify(client, times(1)).getAll(anyCollection());
+        }
+    }
+
+    @Test
+    public void putAllRetriesFailedNodeKeys() throws IOException {
+        Client failed = nodeClient("key1");
+        when(failed.putAll(anyMap(), (Integer) any(), (TimeUnit) any())).thenThrow(new IOException("Connection reset"));
+        Map<String, Object> objects = new LinkedHashMap<>();
+        objects.put("key1", "value1");
+        for (Client client : nodeClients.values()) {
+            if (client != failed) {
+                when(client.putAll(anyMap(), (Integer) any(), (TimeUnit) any())).thenAnswer(new Answer<Map<String, Status>>() {
+                    @Override
+                    public Map<String, Status> answer(InvocationOnMock invocation) {
+                        Map<String, Status> result = new LinkedHashMap<>();
+                        for (String key : ((Map<String, ?>) invocation.getArgument(0)).keySet()) {
+                            result.put(key, Status.ADDED);
+                        }
+                        return result;
+                    }
+                });
+            }
+        }
+
+        assertEquals(Collections.singletonMap("key1", Status.ADDED), distributedClient.putAll(objects));
+        assertNotSame(failed, nodeClient("key1"));
+    }
+
+    @Test
+    public void clearAllNodes() throws IOException {
+        assertEquals(Status.CLEARED, distributedClient.clear());
+        for (Client client : nodeClients.values()) {
+            verify(client).clear();
+        }
+    }
+
+    @Test
+    public void incrAndDecrRoutedByKey() throws IOException {
+        Client client = nodeClient("key");
+        when(client.incr("key", 2, null, null)).thenReturn(2L);
+        when(client.decr("key", 1, 1, TimeUnit.MINUTES)).thenReturn(1L);
+        assertEquals(2, distributedClient.incr("key", 2));
+        assertEquals(1, distributedClient.decr("key", 1, 1, TimeUnit.MINUTES));
+        for (Client other : nodeClients.values()) {
+            if (other != client) {
+                verifyZeroInteractions(other);
+            }
+        }
+    }
+
+    @Test
+    public void touchRoutedByKey() throws IOException {
+        Client client = nodeClient("key");
+        when(client.touch("key", 1, TimeUnit.MINUTES)).thenReturn(Status.TOUCHED);
+        when(client.getAndTouch("key", null, null)).thenReturn("value");
+        assertEquals(Status.TOUCHED, distributedClient.touch("key", 1, TimeUnit.MINUTES));
+        assertEquals("value", distributedClient.getAndTouch("key", null, null));
+        for (Client other : nodeClients.values()) {
+            if (other != client) {
+                verifyZeroInteractions(other);
+            }
+        }
+    }
+
+    @Test
+    public void addAndReplaceRoutedByKey() throws IOException {
+        Client client = nodeClient("key");
+        when(client.add("key", "value", null, null)).thenReturn(Status.EXISTS);
+        when(client.replace("key", "value", 1, TimeUnit.MINUTES)).thenReturn(Status.NOT_FOUND);
+        assertEquals(Status.EXISTS, distributedClient.add("key", "value"));
+        assertEquals(Status.NOT_FOUND, distributedClient.replace("key", "value", 1, TimeUnit.MINUTES));
+        for (Client other : nodeClients.values()) {
+            if (other != client) {
+                verifyZeroInteractions(other);
+            }
+        }
+    }
+
+    @Test
+    public void getsAndCasRoutedByKey() throws IOException {
+        Client client = nodeClient("key");
+        CasValue<Object> value = new CasValue<Object>("value", 42);
+        when(client.gets("key")).thenReturn(value);
+        when(client.cas("key", "new", 42, 1, TimeUnit.MINUTES)).thenReturn(Status.EXISTS);
+        assertSame(value, distributedClient.gets("key"));
+        assertEquals(Status.EXISTS, distributedClient.cas("key", "new", 42, 1, TimeUnit.MINUTES));
+        for (Client other : nodeClients.values()) {
+            if (other != client) {
+                verifyZeroInteractions(other);
+            }
+        }
+    }
+
+    @Test
+    public void statsPrefixedWithServer() throws IOException {
+        when(nodeClients.get("a:9010").stats()).thenReturn(Collections.singletonMap("items", "1"));
+        when(nodeClients.get("b:9011").stats()).thenThrow(new IOException("Down"));
+        when(nodeClients.get("c:9010").stats()).thenReturn(Collections.singletonMap("items", "2"));
+
+        Map<String, String> stats = distributedClient.stats();
+        assertEquals(2, stats.size());
+        assertEquals("1", stats.get("a:9010/items"));
+        assertEquals("2", stats.get("c:9010/items"));
+    }
+
+    @Test
+    public void pipelinedPerNode() throws IOException {
+        Client first = nodeClient("key1");
+        String otherKey = "key2";
+        for (int i = 3; nodeClient(otherKey) == first; i++) {
+            otherKey = "key" + i;
+        }
+        Client second = nodeClient(otherKey);
+        Pipeline firstPipeline = mock(Pipeline.class);
+        Pipeline secondPipeline = mock(Pipeline.class);
+        when(first.pipelined()).thenReturn(firstPipeline);
+        when(second.pipelined()).thenReturn(secondPipeline);
+        when(firstPipeline.execute()).thenReturn(Arrays.<Object>asList("value1", Status.REMOVED));
+        when(secondPipeline.execute()).thenReturn(Collections.<Object>singletonList(Status.ADDED));
+
+        List<Object> results = distributedClient.pipelined()
+                .get("key1").put(otherKey, "value").remove("key1").execute();
+
+        assertEquals(Arrays.<Object>asList("value1", Status.ADDED, Status.REMOVED), results);
+        verify(secondPipeline).put(otherKey, "value", null, null);
+    }
+
+    @Test
+    public void close() throws Exception {
+        distributedClient.close();
+        for (Client client : nodeClients.values()) {
+            verify(client).close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class KetamaHashRingTest {
+
+    private static final int KEY_COUNT = 10000;
+
+    private static KetamaHashRing<String> ring(String... nodes) {
+        Map<String, String> nodesByName = new LinkedHashMap<>();
+        for (String node : nodes) {
+            nodesByName.put(node, node);
+        }
+        return new KetamaHashRing<>(nodesByName, 160);
+    }
+
+    @Test
+    public void size() {
+        assertEquals(480, ring("a:9010", "b:9010", "c:9010").size());
+    }
+
+    @Test(expected = JMemcachedException.class)
+    public void invalidVirtualNodeCount() {
+        new KetamaHashRing<>(new HashMap<String, String>(), 0);
+    }
+
+    @Test
+    public void getNodeEmptyRing() {
+        assertNull(ring().getNode("key"));
+    }
+
+    @Test
+    public void getNodeIsStable() {
+        assertEquals(ring("a:9010", "b:9010", "c:9010").getNode("key"), ring("c:9010", "b:9010", "a:9010").getNode("key"));
+    }
+
+    @Test
+    public void keysAreBalanced() {
+        KetamaHashRing<String> ring = ring("a:9010", "b:9010", "c:9010");
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String node = ring.getNode("key" + i);
+            counts.put(node, counts.containsKey(node) ? counts.get(node) + 1 : 1);
+        }
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("Unbalanced ring: " + counts, count > KEY_COUNT / 3 * 0.8 && count < KEY_COUNT / 3 * 1.2);
+        }
+    }
+
+    @Test
+    public void addNodeMovesOnlyItsShare() {
+        KetamaHashRing<String> before = ring("a:9010", "b:9010", "c:9010");
+        KetamaHashRing<String> after = ring("a:9010", "b:9010", "c:9010", "d:9010");
+        int moved = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String node = after.getNode("key" + i);
+            if (!node.equals(before.getNode("key" + i))) {
+                assertEquals("d:9010", node);
+                moved++;
+            }
+        }
+        assertTrue("Moved keys: " + moved, moved > KEY_COUNT / 4 * 0.8 && moved < KEY_COUNT / 4 * 1.2);
+    }
+
+    @Test
+    public void getNodeSkipsFilteredNodes() {
+        KetamaHashRing<String> ring = ring("a:9010", "b:9010", "c:9010");
+        KetamaHashRing<String> withoutB = ring("a:9010", "c:9010");
+        Predicate<String> skipB = new Predicate<String>() {
+            @Override
+            public boolean test(String node) {
+                return !"b:9010".equals(node);
+            }
+        };
+        for (int i = 0; i < 1000; i++) {
+            // keys of the failed node go where they would go if it was removed from the ring
+            assertEquals(withoutB.getNode("key" + i), ring.getNode("key" + i, skipB));
+        }
+    }
+
+    @Test
+    public void getNodeAllFiltered() {
+        assertNull(ring("a:9010").getNode("key", new Predicate<String>() {
+            @Override
+            public boolean test(String node) {
+                return false;
+            }
+        }));
+    }
+}
@@ -0,0 +1,293 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.CasValue;
+import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.client.Pipeline;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PooledClientTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private ClientConfig clientConfig;
+    private ScheduledExecutorService idleEvictionExecutorService;
+    private List<DefaultClient> connections;
+    private PooledClient pooledClient;
+
+    @Before
+    public void before() throws IOException {
+        clientConfig = mock(ClientConfig.class);
+        when(clientConfig.getPoolMinConnections()).thenReturn(1);
+        when(clientConfig.getPoolMaxConnections()).thenReturn(2);
+        when(clientConfig.getPoolBorrowTimeoutInMs()).thenReturn(100L);
+        when(clientConfig.getPoolIdleTimeoutInMs()).thenReturn(60000L);
+        idleEvictionExecutorService = mock(ScheduledExecutorService.class);
+        connections = Collections.synchronizedList(new ArrayList<DefaultClient>());
+        pooledClient = createPooledClient();
+    }
+
+    private PooledClient createPooledClient() throws IOException {
+        return new PooledClient(clientConfig) {
+            @Override
+            protected DefaultClient createConnection() throws IOException {
+                DefaultClient connection = mock(DefaultClient.class);
+                when(connection.isConnected()).thenReturn(true);
+                when(connection.put(anyString(), any())).thenReturn(Status.ADDED);
+                connections.add(connection);
+                return connection;
+            }
+
+            @Override
+            protected ScheduledExecutorService createIdleEvictionExecutorService() {
+                return idleEvictionExecutorService;
+            }
+        };
+    }
+
+    @Test
+    public void createMinConnections() {
+        assertEquals(1, connections.size());
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+        verify(idleEvictionExecutorService).scheduleWithFixedDelay(any(Runnable.class), eq(30000L), eq(30000L),
+                eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reuseConnection() throws IOException {
+        assertEquals(Status.ADDED, pooledClient.put("key", "value"));
+        assertEquals(Status.ADDED, pooledClient.put("key", "value"));
+        assertEquals(1, connections.size());
+        verify(connections.get(0), times(2)).put("key", "value");
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+        assertEquals(0, pooledClient.getActiveConnectionCount());
+    }
+
+    @Test
+    public void incrAndDecr() throws IOException {
+        DefaultClient connection = connections.get(0);
+        when(connection.incr("key", 2, 1, TimeUnit.SECONDS)).thenReturn(3L);
+        when(connection.decr("key", 1, null, null)).thenReturn(2L);
+        assertEquals(3, pooledClient.incr("key", 2, 1, TimeUnit.SECONDS));
+        assertEquals(2, pooledClient.decr("key", 1));
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+    }
+
+    @Test
+    public void touchAndGetAndTouch() throws IOException {
+        DefaultClient connection = connections.get(0);
+        when(connection.touch("key", 1, TimeUnit.SECONDS)).thenReturn(Status.TOUCHED);
+        when(connection.getAndTouch("key", 1, TimeUnit.SECONDS)).thenReturn("value");
+        assertEquals(Status.TOUCHED, pooledClient.touch("key", 1, TimeUnit.SECONDS));
+        assertEquals("value", pooledClient.getAndTouch("key", 1, TimeUnit.SECONDS));
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+    }
+
+    @Test
+    public void addAndReplace() throws IOException {
+        DefaultClient connection = connections.get(0);
+        when(connection.add("key", "value", 1, TimeUnit.SECONDS)).thenReturn(Status.ADDED);
+        when(connection.replace("key", "value", null, null)).thenReturn(Status.REPLACED);
+        assertEquals(Status.ADDED, pooledClient.add("key", "value", 1, TimeUnit.SECONDS));
+        assertEquals(Status.REPLACED, pooledClient.replace("key", "value"));
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+    }
+
+    @Test
+    public void getsAndCas() throws IOException {
+        DefaultClient connection = connections.get(0);
+        CasValue<Object> value = new CasValue<Object>("value", 42);
+        when(connection.gets("key")).thenReturn(value);
+        when(connection.cas("key", "new", 42, null, null)).thenReturn(Status.REPLACED);
+        assertSame(value, pooledClient.gets("key"));
+        assertEquals(Status.REPLACED, pooledClient.cas("key", "new", 42));
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+    }
+
+    @Test
+    public void closeBrokenConnection() throws IOException {
+        DefaultClient connection = connections.get(0);
+        when(connection.get("key")).thenThrow(new IOException("Connection reset"));
+        try {
+            pooledClient.get("key");
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+        verify(connection).close();
+        assertEquals(0, pooledClient.getIdleConnectionCount());
+        assertEquals(0, pooledClient.getActiveConnectionCount());
+
+        pooledClient.put("key", "value");
+        assertEquals(2, connections.size());
+    }
+
+    @Test
+    public void keepConnectionAfterServerError() throws IOException {
+        DefaultClient connection = connections.get(0);
+        when(connection.get("key")).thenThrow(new JMemcachedException("Server failed to handle request: GET"));
+        try {
+            pooledClient.get("key");
+            fail("JMemcachedException expected");
+        } catch (JMemcachedException e) {
+            assertEquals("Server failed to handle request: GET", e.getMessage());
+        }
+        verify(connection, never()).close();
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+        assertEquals(0, pooledClient.getActiveConnectionCount());
+    }
+
+    @Test
+    public void closeConnectionFailedWithRequestInFlight() throws IOException {
+        DefaultClient connection = connections.get(0);
+        when(connection.put("key", "value")).thenThrow(new JMemcachedException("Unsupported command"));
+        when(connection.isRequestInFlight()).thenReturn(true);
+        try {
+            pooledClient.put("key", "value");
+            fail("JMemcachedException expected");
+        } catch (JMemcachedException e) {
+            assertEquals("Unsupported command", e.getMessage());
+        }
+        verify(connection).close();
+        assertEquals(0, pooledClient.getIdleConnectionCount());
+    }
+
+    @Test
+    public void closeWhileConnectionIsBorrowed() throws IOException {
+        final DefaultClient connection = connections.get(0);
+        when(connection.remove("key")).thenAnswer(new Answer<Status>() {
+            @Override
+            public Status answer(InvocationOnMock invocation) throws Throwable {
+                pooledClient.close();
+                return Status.REMOVED;
+            }
+        });
+        assertEquals(Status.REMOVED, pooledClient.remove("key"));
+        verify(connection).close();
+        assertEquals(0, pooledClient.getIdleConnectionCount());
+        assertEquals(0, pooledClient.getActiveConnectionCount());
+    }
+
+    @Test
+    public void replaceInvalidIdleConnection() throws IOException {
+        DefaultClient connection = connections.get(0);
+        when(connection.isConnected()).thenReturn(false);
+        pooledClient.put("key", "value");
+        verify(connection).close();
+        verify(connection, never()).put("key", "value");
+        verify(connections.get(1)).put("key", "value");
+    }
+
+    @Test
+    public void borrowTimeout() throws IOException {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Timeout waiting for a free connection: 100 ms"));
+        pooledClient.borrow();
+        pooledClient.borrow();
+        pooledClient.put("key", "value");
+    }
+
+    @Test
+    public void concurrentCallsShareConnections() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<Status>> futures = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            futures.add(executorService.submit(new Callable<Status>() {
+                @Override
+                public Status call() throws Exception {
+                    return pooledClient.put("key", "value");
+                }
+            }));
+        }
+        for (Future<Status> future : futures) {
+            assertEquals(Status.ADDED, future.get());
+        }
+        executorService.shutdown();
+        assertTrue(connections.size() <= 2);
+        assertEquals(0, pooledClient.getActiveConnectionCount());
+    }
+
+    @Test
+    public void evictIdleConnections() throws IOException {
+        when(clientConfig.getPoolIdleTimeoutInMs()).thenReturn(-1L);
+        PooledClient.PooledConnection first = pooledClient.borrow();
+        PooledClient.PooledConnection second = pooledClient.borrow();
+        pooledClient.release(first, false);
+        pooledClient.release(second, false);
+        assertEquals(2, pooledClient.getIdleConnectionCount());
+
+        pooledClient.evictIdleConnections();
+
+        // min connections stay in the pool
+        assertEquals(1, pooledClient.getIdleConnectionCount());
+        verify(first.getClient()).close();
+        verify(second.getClient(), never()).close();
+    }
+
+    @Test
+    public void pipelinedOnOneConnection() throws IOException {
+        DefaultClient connection = connections.get(0);
+        Pipeline pipeline = mock(Pipeline.class);
+        when(connection.pipelined()).thenReturn(pipeline);
+        when(pipeline.execute()).thenReturn(Collections.<Object>singletonList(Status.ADDED));
+
+        List<Object> results = pooledClient.pipelined().put("key", "value").get("key").remove("key").clear().execute();
+
+        assertEquals(Collections.<Object>singletonList(Status.ADDED), results);
+        verify(pipeline).put("key", "value", null, null);
+        verify(pipeline).get("key");
+        verify(pipeline).remove("key");
+        verify(pipeline).clear();
+    }
+
+    @Test
+    public void failedPipelineIsCleared() throws IOException {
+        DefaultClient connection = connections.get(0);
+        Pipeline pipeline = mock(Pipeline.class);
+        when(connection.pipelined()).thenReturn(pipeline);
+        when(pipeline.execute()).thenThrow(new JMemcachedException("Server failed to handle request: PUT"))
+                .thenReturn(Collections.<Object>singletonList(Status.CLEARED));
+        Pipeline pooledPipeline = pooledClient.pipelined().put("key", "value");
+        try {
+            pooledPipeline.execute();
+            fail("JMemcachedException expected");
+        } catch (JMemcachedException e) {
+            assertEquals("Server failed to handle request: PUT", e.getMessage());
+        }
+
+        assertEquals(Collections.<Object>singletonList(Status.CLEARED), pooledPipeline.clear().execute());
+        verify(pipeline, times(1)).put("key", "value", null, null);
+    }
+
+    @Test
+    public void close() throws IOException {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Client is closed"));
+        pooledClient.close();
+        verify(connections.get(0)).close();
+        verify(idleEvictionExecutorService).shutdownNow();
+        pooledClient.put("key", "value");
+    }
+}
@@ -0,0 +1,112 @@
+package net.simplesoft.jmemcached.client.impl;
+
+import net.simplesoft.jmemcached.client.ClientConfig;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.ObjectSerializer;
+import net.simplesoft.jmemcached.protocol.ValueCompressor;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ValueTranscoderTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private ClientConfig clientConfig;
+    private ObjectSerializer objectSerializer;
+    private ValueCompressor valueCompressor;
+
+    @Before
+    public void before() {
+        clientConfig = mock(ClientConfig.class);
+        objectSerializer = mock(ObjectSerializer.class);
+        valueCompressor = mock(ValueCompressor.class);
+        when(clientConfig.getObjectSerializer()).thenReturn(objectSerializer);
+        when(clientConfig.getValueCompressor()).thenReturn(valueCompressor);
+        when(clientConfig.getCompressionThresholdInBytes()).thenReturn(4);
+    }
+
+    @Test
+    public void toRequestBelowThreshold() {
+        when(objectSerializer.toByteArray("value")).thenReturn(new byte[]{1, 2, 3});
+        Request request = new ValueTranscoder(clientConfig).toRequest(Command.PUT, "key", "value", 2, TimeUnit.SECONDS);
+        assertArrayEquals(new byte[]{1, 2, 3}, request.getData());
+        assertEquals(Long.valueOf(2000), request.getTtl());
+        assertFalse(request.isCompressed());
+        verifyZeroInteractions(valueCompressor);
+    }
+
+    @Test
+    public void toRequestCompressed() {
+        when(objectSerializer.toByteArray("value")).thenReturn(new byte[]{1, 1, 1, 1, 1});
+        when(valueCompressor.compress(new byte[]{1, 1, 1, 1, 1})).thenReturn(new byte[]{5, 1});
+        Request request = new ValueTranscoder(clientConfig).toRequest(Command.PUT, "key", "value", null, null);
+        assertArrayEquals(new byte[]{5, 1}, request.getData());
+        assertTrue(request.isCompressed());
+    }
+
+    @Test
+    public void toRequestIncompressible() {
+        when(objectSerializer.toByteArray("value")).thenReturn(new byte[]{1, 2, 3, 4});
+        when(valueCompressor.compress(new byte[]{1, 2, 3, 4})).thenReturn(new byte[]{0, 0, 0, 4, 1, 2, 3, 4});
+        Request request = new ValueTranscoder(clientConfig).toRequest(Command.PUT, "key", "value", null, null);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, request.getData());
+        assertFalse(request.isCompressed());
+    }
+
+    @Test
+    public void toRequestCompressionDisabled() {
+        when(clientConfig.getCompressionThresholdInBytes()).thenReturn(0);
+        when(objectSerializer.toByteArray("value")).thenReturn(new byte[]{1, 1, 1, 1, 1});
+        Request request = new ValueTranscoder(clientConfig).toRequest(Command.PUT, "key", "value", null, null);
+        assertFalse(request.isCompressed());
+        verifyZeroInteractions(valueCompressor);
+    }
+
+    @Test
+    public void toObjectCompressed() {
+        Response response = new Response(Status.GOTTEN, new byte[]{5, 1});
+        response.setCompressed(true);
+        when(valueCompressor.decompress(new byte[]{5, 1})).thenReturn(new byte[]{1, 1, 1, 1, 1});
+        when(objectSerializer.fromByteArray(new byte[]{1, 1, 1, 1, 1})).thenReturn("value");
+        assertEquals("value", new ValueTranscoder(clientConfig).toObject(response));
+    }
+
+    @Test
+    public void toObjectCompressedWithoutCompressor() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Can't read compressed value: value compressor is not configured"));
+        when(clientConfig.getValueCompressor()).thenReturn(null);
+        Response response = new Response(Status.GOTTEN, new byte[]{5, 1});
+        response.setCompressed(true);
+        new ValueTranscoder(clientConfig).toObject(response);
+    }
+
+    @Test
+    public void toObjectCounter() {
+        Response response = new Response(Status.GOTTEN, new byte[]{0, 0, 0, 0, 0, 0, 1, 2});
+        response.setCounter(true);
+        assertEquals(258L, new ValueTranscoder(clientConfig).toObject(response));
+        verifyZeroInteractions(objectSerializer);
+    }
+
+    @Test
+    public void toCounterRequest() {
+        Request request = ValueTranscoder.toCounterRequest(Command.DECR, "key", 258, 2, TimeUnit.SECONDS);
+        assertEquals(Command.DECR, request.getCommand());
+        assertEquals(Long.valueOf(2000), request.getTtl());
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 1, 2}, request.getData());
+    }
+}
@@ -0,0 +1,14 @@
+package net.simplesoft.jmemcached.protocol;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public interface ObjectCodec<T> {
+
+    Class<T> getType();
+
+    void write(DataOutput out, T object) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
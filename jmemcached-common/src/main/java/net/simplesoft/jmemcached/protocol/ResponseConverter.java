@@ -11,4 +11,7 @@ public interface ResponseConverter {
     Response readResponse(InputStream inputStream) throws IOException;
 
     void writeResponse(OutputStream outputStream, Response response) throws IOException;
+
+    // writes everything except the data bytes, which the caller sends right after the header
+    void writeResponseHeader(OutputStream outputStream, Response response) throws IOException;
 }
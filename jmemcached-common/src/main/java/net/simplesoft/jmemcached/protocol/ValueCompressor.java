@@ -0,0 +1,8 @@
+package net.simplesoft.jmemcached.protocol;
+
+public interface ValueCompressor {
+
+    byte[] compress(byte[] data);
+
+    byte[] decompress(byte[] data);
+}
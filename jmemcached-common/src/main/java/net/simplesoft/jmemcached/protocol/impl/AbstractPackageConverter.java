@@ -3,6 +3,11 @@ package net.simplesoft.jmemcached.protocol.impl;
 import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.protocol.model.Version;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 abstract class AbstractPackageConverter {
 
     protected void checkProtocolVersion(byte versionByte) {
@@ -12,6 +17,21 @@ abstract class AbstractPackageConverter {
         }
     }
 
+    protected DataInputStream toDataInputStream(InputStream inputStream) {
+        // per-connection data streams are reused as is, so decoding a package doesn't allocate a new wrapper
+        if (inputStream instanceof DataInputStream) {
+            return (DataInputStream) inputStream;
+        }
+        return new DataInputStream(inputStream);
+    }
+
+    protected DataOutputStream toDataOutputStream(OutputStream outputStream) {
+        if (outputStream instanceof DataOutputStream) {
+            return (DataOutputStream) outputStream;
+        }
+        return new DataOutputStream(outputStream);
+    }
+
     protected byte getVersionByte() {
         return Version.VERSION_1_0.getByteCode();
     }
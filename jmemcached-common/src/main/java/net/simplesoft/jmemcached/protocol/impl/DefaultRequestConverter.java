@@ -8,20 +8,61 @@ import org.apache.commons.io.IOUtils;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DefaultRequestConverter extends AbstractPackageConverter implements RequestConverter {
 
+    private static final int MAX_INIT_BATCH_CAPACITY = 1024;
+
+    private final int maxRequestSize;
+
+    public DefaultRequestConverter() {
+        this(Integer.MAX_VALUE);
+    }
+
+    // data lengths and batch sizes above the max request size are rejected before anything is allocated for them
+    public DefaultRequestConverter(int maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
     @Override
     public Request readRequest(InputStream inputStream) throws IOException {
-        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        DataInputStream dataInputStream = toDataInputStream(inputStream);
         checkProtocolVersion(dataInputStream.readByte());
         byte command = dataInputStream.readByte();
         byte flags = dataInputStream.readByte();
         boolean hasKey = (flags & 1) != 0;
         boolean hasTTL = (flags & 2) != 0;
         boolean hasData = (flags & 4) != 0;
+        boolean hasBatch = (flags & 8) != 0;
+        boolean hasCorrelationId = (flags & 16) != 0;
+        boolean compressed = (flags & 32) != 0;
+        boolean hasCas = (flags & 64) != 0;
+
+        Integer correlationId = hasCorrelationId ? dataInputStream.readInt() : null;
+        Long cas = hasCas ? dataInputStream.readLong() : null;
+        Request request = readRequest(command, hasKey, hasTTL, hasData, dataInputStream);
+        request.setCorrelationId(correlationId);
+        request.setCas(cas);
+        request.setCompressed(compressed);
+        if (hasBatch) {
+            request.setBatch(readBatch(command, dataInputStream));
+        }
+        return request;
+    }
 
-        return readRequest(command, hasKey, hasTTL, hasData, dataInputStream);
+    protected List<Request> readBatch(byte cmd, DataInputStream dis) throws IOException {
+        int size = dis.readInt();
+        checkLength("Batch size", size);
+        List<Request> batch = new ArrayList<>(Math.min(size, MAX_INIT_BATCH_CAPACITY));
+        for (int i = 0; i < size; i++) {
+            byte flags = dis.readByte();
+            Request entry = readRequest(cmd, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, dis);
+            entry.setCompressed((flags & 32) != 0);
+            batch.add(entry);
+        }
+        return batch;
     }
 
     protected Request readRequest(byte cmd, boolean hasKey, boolean hasTTL, boolean hasData, DataInputStream dis)
@@ -29,6 +70,7 @@ public class DefaultRequestConverter extends AbstractPackageConverter implements
         Request request = new Request(Command.valueOf(cmd));
         if (hasKey) {
             byte keyLength = dis.readByte();
+            checkLength("Key length", keyLength);
             byte[] keyBytes = IOUtils.readFully(dis, keyLength);
             request.setKey(new String(keyBytes, StandardCharsets.US_ASCII));
         }
@@ -37,18 +79,40 @@ public class DefaultRequestConverter extends AbstractPackageConverter implements
         }
         if (hasData) {
             int dataLength = dis.readInt();
+            checkLength("Data length", dataLength);
             byte[] data = IOUtils.readFully(dis, dataLength);
             request.setData(data);
         }
         return request;
     }
 
+    protected void checkLength(String name, int length) {
+        if (length < 0 || length > maxRequestSize) {
+            throw new JMemcachedException(name + " should be between 0 and " + maxRequestSize + ": " + length);
+        }
+    }
+
     @Override
     public void writeRequest(OutputStream outputStream, Request request) throws IOException {
-        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        // keys are checked before the first byte is written, so that a rejected request leaves no partial frame
+        checkKeys(request);
+        DataOutputStream dataOutputStream = toDataOutputStream(outputStream);
         dataOutputStream.writeByte(getVersionByte());
         dataOutputStream.writeByte(request.getCommand().getByteCode());
         dataOutputStream.writeByte(getFlagsByte(request));
+        if (request.hasCorrelationId()) {
+            dataOutputStream.writeInt(request.getCorrelationId());
+        }
+        if (request.hasCas()) {
+            dataOutputStream.writeLong(request.getCas());
+        }
+        writeRequestFields(dataOutputStream, request);
+        if (request.hasBatch()) {
+            writeBatch(dataOutputStream, request.getBatch());
+        }
+    }
+
+    protected void writeRequestFields(DataOutputStream dataOutputStream, Request request) throws IOException {
         if (request.hasKey()) {
             writeKey(dataOutputStream, request);
         }
@@ -59,7 +123,14 @@ public class DefaultRequestConverter extends AbstractPackageConverter implements
             dataOutputStream.writeInt(request.getData().length);
             dataOutputStream.write(request.getData());
         }
-        dataOutputStream.flush();
+    }
+
+    protected void writeBatch(DataOutputStream dataOutputStream, List<Request> batch) throws IOException {
+        dataOutputStream.writeInt(batch.size());
+        for (Request entry : batch) {
+            dataOutputStream.writeByte(getFlagsByte(entry));
+            writeRequestFields(dataOutputStream, entry);
+        }
     }
 
     protected byte getFlagsByte(Request request) {
@@ -73,14 +144,43 @@ public class DefaultRequestConverter extends AbstractPackageConverter implements
         if (request.hasData()) {
             flags |= 4;
         }
+        if (request.hasBatch()) {
+            flags |= 8;
+        }
+        if (request.hasCorrelationId()) {
+            flags |= 16;
+        }
+        if (request.isCompressed()) {
+            flags |= 32;
+        }
+        if (request.hasCas()) {
+            flags |= 64;
+        }
         return flags;
     }
 
+    protected void checkKeys(Request request) {
+        if (request.hasKey()) {
+            checkKey(request.getKey());
+        }
+        if (request.hasBatch()) {
+            for (Request entry : request.getBatch()) {
+                if (entry.hasKey()) {
+                    checkKey(entry.getKey());
+                }
+            }
+        }
+    }
+
+    protected void checkKey(String key) {
+        if (key.getBytes(StandardCharsets.US_ASCII).length > 127) {
+            throw new JMemcachedException("Key length should be <=127 bytes for key: " + key);
+        }
+    }
+
     protected void writeKey(DataOutputStream dataOutputStream, Request request) throws IOException {
+        checkKey(request.getKey());
         byte[] key = request.getKey().getBytes(StandardCharsets.US_ASCII);
-        if (key.length > 127) {
-            throw new JMemcachedException("Key length should be <=127 bytes for key: " + request.getKey());
-        }
         dataOutputStream.writeByte(key.length);
         dataOutputStream.write(key);
     }
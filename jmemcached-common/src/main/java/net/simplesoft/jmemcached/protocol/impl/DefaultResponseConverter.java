@@ -1,39 +1,121 @@
 package net.simplesoft.jmemcached.protocol.impl;
 
+import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.protocol.ResponseConverter;
 import net.simplesoft.jmemcached.protocol.model.Response;
 import net.simplesoft.jmemcached.protocol.model.Status;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DefaultResponseConverter extends AbstractPackageConverter implements ResponseConverter {
 
+    private static final int MAX_INIT_BATCH_CAPACITY = 1024;
+
     @Override
     public Response readResponse(InputStream inputStream) throws IOException {
-        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        DataInputStream dataInputStream = toDataInputStream(inputStream);
         checkProtocolVersion(dataInputStream.readByte());
+        return readResponseFields(dataInputStream);
+    }
+
+    protected Response readResponseFields(DataInputStream dataInputStream) throws IOException {
         byte status = dataInputStream.readByte();
         Response response = new Response(Status.valueOf(status));
-        byte data = dataInputStream.readByte();
-        if (data == 1) {
+        byte flags = dataInputStream.readByte();
+        response.setCompressed((flags & 8) != 0);
+        response.setCounter((flags & 16) != 0);
+        if ((flags & 4) != 0) {
+            response.setCorrelationId(dataInputStream.readInt());
+        }
+        if ((flags & 32) != 0) {
+            response.setCas(dataInputStream.readLong());
+        }
+        if ((flags & 1) != 0) {
             int dataLength = dataInputStream.readInt();
             response.setData(IOUtils.readFully(dataInputStream, dataLength));
         }
+        if ((flags & 2) != 0) {
+            response.setBatch(readBatch(dataInputStream));
+        }
         return response;
     }
 
+    protected List<Response> readBatch(DataInputStream dataInputStream) throws IOException {
+        int size = dataInputStream.readInt();
+        List<Response> batch = new ArrayList<>(Math.min(size, MAX_INIT_BATCH_CAPACITY));
+        for (int i = 0; i < size; i++) {
+            batch.add(readResponseFields(dataInputStream));
+        }
+        return batch;
+    }
+
     @Override
     public void writeResponse(OutputStream outputStream, Response response) throws IOException {
-        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        DataOutputStream dataOutputStream = toDataOutputStream(outputStream);
+        dataOutputStream.writeByte(getVersionByte());
+        writeResponseFields(dataOutputStream, response);
+    }
+
+    @Override
+    public void writeResponseHeader(OutputStream outputStream, Response response) throws IOException {
+        if (response.hasBatch()) {
+            throw new JMemcachedException("Batch response can't be written without data: " + response);
+        }
+        DataOutputStream dataOutputStream = toDataOutputStream(outputStream);
         dataOutputStream.writeByte(getVersionByte());
+        writeHeaderFields(dataOutputStream, response);
+    }
+
+    protected void writeHeaderFields(DataOutputStream dataOutputStream, Response response) throws IOException {
         dataOutputStream.writeByte(response.getStatus().getByteCode());
-        dataOutputStream.writeByte(response.hasData() ? 1 : 0);
+        dataOutputStream.writeByte(getFlagsByte(response));
+        if (response.hasCorrelationId()) {
+            dataOutputStream.writeInt(response.getCorrelationId());
+        }
+        if (response.hasCas()) {
+            dataOutputStream.writeLong(response.getCas());
+        }
         if (response.hasData()) {
             dataOutputStream.writeInt(response.getData().length);
+        }
+    }
+
+    protected void writeResponseFields(DataOutputStream dataOutputStream, Response response) throws IOException {
+        writeHeaderFields(dataOutputStream, response);
+        if (response.hasData()) {
             dataOutputStream.write(response.getData());
         }
-        dataOutputStream.flush();
+        if (response.hasBatch()) {
+            dataOutputStream.writeInt(response.getBatch().size());
+            for (Response entry : response.getBatch()) {
+                writeResponseFields(dataOutputStream, entry);
+            }
+        }
+    }
 
+    protected byte getFlagsByte(Response response) {
+        byte flags = 0;
+        if (response.hasData()) {
+            flags |= 1;
+        }
+        if (response.hasBatch()) {
+            flags |= 2;
+        }
+        if (response.hasCorrelationId()) {
+            flags |= 4;
+        }
+        if (response.isCompressed()) {
+            flags |= 8;
+        }
+        if (response.isCounter()) {
+            flags |= 16;
+        }
+        if (response.hasCas()) {
+            flags |= 32;
+        }
+        return flags;
     }
 }
@@ -0,0 +1,84 @@
+package net.simplesoft.jmemcached.protocol.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.ValueCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Compressed value is the original length (int) followed by a zlib stream
+public class DeflateValueCompressor implements ValueCompressor {
+
+    private static final int LENGTH_SIZE = 4;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // deflate can't compress better than about 1032:1
+    private static final int MAX_COMPRESSION_RATIO = 1032;
+
+    private final int level;
+
+    public DeflateValueCompressor() {
+        // fast level: values are compressed on every put, so latency matters more than the last few percent
+        this(Deflater.BEST_SPEED);
+    }
+
+    public DeflateValueCompressor(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + LENGTH_SIZE);
+            out.write(ByteBuffer.allocate(LENGTH_SIZE).putInt(data.length).array(), 0, LENGTH_SIZE);
+            byte[] buffer = new byte[Math.min(BUFFER_SIZE, data.length + 64)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) {
+        if (data.length < LENGTH_SIZE) {
+            throw new JMemcachedException("Can't decompress value: " + data.length + " bytes is too short");
+        }
+        int length = ByteBuffer.wrap(data).getInt();
+        if (length < 0 || length > (long) (data.length - LENGTH_SIZE) * MAX_COMPRESSION_RATIO) {
+            throw new JMemcachedException("Can't decompress value: invalid length " + length);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, LENGTH_SIZE, data.length - LENGTH_SIZE);
+            byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int count = inflater.inflate(result, offset, length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += count;
+            }
+            // the end of stream marker may still be unread when all bytes are already inflated
+            if (offset == length && !inflater.finished() && inflater.inflate(new byte[1]) != 0) {
+                offset++;
+            }
+            if (offset != length || !inflater.finished()) {
+                throw new JMemcachedException("Can't decompress value: corrupted data");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new JMemcachedException("Can't decompress value: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package net.simplesoft.jmemcached.protocol.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.ObjectCodec;
+import net.simplesoft.jmemcached.protocol.ObjectSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The first byte of a value is a type tag. Strings, byte arrays, primitive boxes and types with a registered codec
+// are written without java serialization. Other objects fall back to DefaultObjectSerializer: its stream magic
+// starts with 0xAC which is never used as a tag, so values written by DefaultObjectSerializer stay readable.
+public class TypedObjectSerializer implements ObjectSerializer {
+
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_BYTES = 2;
+    private static final byte TAG_INTEGER = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_SHORT = 5;
+    private static final byte TAG_BYTE = 6;
+    private static final byte TAG_BOOLEAN = 7;
+    private static final byte TAG_CHARACTER = 8;
+    private static final byte TAG_FLOAT = 9;
+    private static final byte TAG_DOUBLE = 10;
+    private static final byte TAG_CODEC = 32;
+
+    private final ObjectSerializer fallbackSerializer;
+    private final Map<Class<?>, Integer> codecIds = new ConcurrentHashMap<>();
+    private final Map<Integer, ObjectCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    public TypedObjectSerializer() {
+        this(new DefaultObjectSerializer());
+    }
+
+    public TypedObjectSerializer(ObjectSerializer fallbackSerializer) {
+        this.fallbackSerializer = fallbackSerializer;
+    }
+
+    // codec id is written with every value, so it must stay the same for all clients sharing the cache
+    public synchronized <T> TypedObjectSerializer register(int codecId, ObjectCodec<T> codec) {
+        if (codecId < 0 || codecId > 0xFFFF) {
+            throw new JMemcachedException("Codec id should be between 0 and 65535: " + codecId);
+        }
+        if (codecs.containsKey(codecId)) {
+            throw new JMemcachedException("Codec id already registered: " + codecId);
+        }
+        if (codecIds.containsKey(codec.getType())) {
+            throw new JMemcachedException("Codec already registered for class: " + codec.getType().getName());
+        }
+        codecs.put(codecId, codec);
+        codecIds.put(codec.getType(), codecId);
+        return this;
+    }
+
+    @Override
+    public byte[] toByteArray(Object object) {
+        if (object == null) {
+            return null;
+        }
+        Class<?> type = object.getClass();
+        if (type == String.class) {
+            return tagged(TAG_STRING, ((String) object).getBytes(StandardCharsets.UTF_8));
+        } else if (type == byte[].class) {
+            return tagged(TAG_BYTES, (byte[]) object);
+        } else if (type == Integer.class) {
+            return allocate(TAG_INTEGER, 4).putInt((Integer) object).array();
+        } else if (type == Long.class) {
+            return allocate(TAG_LONG, 8).putLong((Long) object).array();
+        } else if (type == Short.class) {
+            return allocate(TAG_SHORT, 2).putShort((Short) object).array();
+        } else if (type == Byte.class) {
+            return new byte[]{TAG_BYTE, (Byte) object};
+        } else if (type == Boolean.class) {
+            return new byte[]{TAG_BOOLEAN, (byte) ((Boolean) object ? 1 : 0)};
+        } else if (type == Character.class) {
+            return allocate(TAG_CHARACTER, 2).putChar((Character) object).array();
+        } else if (type == Float.class) {
+            return allocate(TAG_FLOAT, 4).putFloat((Float) object).array();
+        } else if (type == Double.class) {
+            return allocate(TAG_DOUBLE, 8).putDouble((Double) object).array();
+        }
+        Integer codecId = codecIds.get(type);
+        if (codecId != null) {
+            return writeWithCodec(codecId, object);
+        }
+        return fallbackSerializer.toByteArray(object);
+    }
+
+    @Override
+    public Object fromByteArray(byte[] array) {
+        if (array == null) {
+            return null;
+        }
+        if (array.length == 0) {
+            throw new JMemcachedException("Can't convert empty byte array to object");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(array, 1, array.length - 1);
+        try {
+            switch (array[0]) {
+                case TAG_STRING:
+                    return new String(array, 1, array.length - 1, StandardCharsets.UTF_8);
+                case TAG_BYTES:
+                    return Arrays.copyOfRange(array, 1, array.length);
+                case TAG_INTEGER:
+                    return buffer.getInt();
+                case TAG_LONG:
+                    return buffer.getLong();
+                case TAG_SHORT:
+                    return buffer.getShort();
+                case TAG_BYTE:
+                    return buffer.get();
+                case TAG_BOOLEAN:
+                    return buffer.get() != 0;
+                case TAG_CHARACTER:
+                    return buffer.getChar();
+                case TAG_FLOAT:
+                    return buffer.getFloat();
+                case TAG_DOUBLE:
+                    return buffer.getDouble();
+                case TAG_CODEC:
+                    return readWithCodec(array);
+                default:
+                    return fallbackSerializer.fromByteArray(array);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new JMemcachedException("Can't convert byte array to object: truncated value", e);
+        }
+    }
+
+    private byte[] writeWithCodec(int codecId, Object object) {
+        ObjectCodec<Object> codec = (ObjectCodec<Object>) codecs.get(codecId);
+        try {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+            out.writeByte(TAG_CODEC);
+            out.writeShort(codecId);
+            codec.write(out, object);
+            out.flush();
+            return byteArrayOutputStream.toByteArray();
+        } catch (IOException e) {
+            throw new JMemcachedException("Can't convert object to byte array: " + e.getMessage(), e);
+        }
+    }
+
+    private Object readWithCodec(byte[] array) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(array, 1, array.length - 1));
+            int codecId = in.readUnsignedShort();
+            ObjectCodec<?> codec = codecs.get(codecId);
+            if (codec == null) {
+                throw new JMemcachedException("Codec is not registered: " + codecId);
+            }
+            return codec.read(in);
+        } catch (IOException e) {
+            throw new JMemcachedException("Can't convert byte array to object: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] tagged(byte tag, byte[] value) {
+        byte[] result = new byte[value.length + 1];
+        result[0] = tag;
+        System.arraycopy(value, 0, result, 1, value.length);
+        return result;
+    }
+
+    private static ByteBuffer allocate(byte tag, int size) {
+        return ByteBuffer.allocate(size + 1).put(tag);
+    }
+}
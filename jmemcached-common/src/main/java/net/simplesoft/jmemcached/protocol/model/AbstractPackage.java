@@ -2,6 +2,9 @@ package net.simplesoft.jmemcached.protocol.model;
 
 abstract class AbstractPackage {
     private byte[] data;
+    private Integer correlationId;
+    private boolean compressed;
+    private Long cas;
 
     AbstractPackage(byte[] data) {
         this.data = data;
@@ -22,4 +25,38 @@ abstract class AbstractPackage {
         return data != null && data.length > 0;
     }
 
+    public Integer getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(Integer correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public final boolean hasCorrelationId() {
+        return correlationId != null;
+    }
+
+    // data holds a value compressed by the client, the server stores and returns it as is
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    // version stamp of the item: returned by GET and expected by CAS
+    public Long getCas() {
+        return cas;
+    }
+
+    public void setCas(Long cas) {
+        this.cas = cas;
+    }
+
+    public final boolean hasCas() {
+        return cas != null;
+    }
+
 }
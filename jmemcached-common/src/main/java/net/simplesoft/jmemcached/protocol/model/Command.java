@@ -3,7 +3,8 @@ package net.simplesoft.jmemcached.protocol.model;
 import net.simplesoft.jmemcached.exception.JMemcachedException;
 
 public enum Command {
-    CLEAR(0), PUT(1), GET(2), REMOVE(3);
+    CLEAR(0), PUT(1), GET(2), REMOVE(3), MGET(4), MSET(5), MDEL(6), STATS(7), INCR(8), DECR(9), CAS(10),
+    ADD(11), REPLACE(12), APPEND(13), PREPEND(14), TOUCH(15), GAT(16);
 
     private byte code;
 
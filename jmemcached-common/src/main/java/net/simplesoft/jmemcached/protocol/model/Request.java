@@ -1,11 +1,13 @@
 package net.simplesoft.jmemcached.protocol.model;
 
 import java.util.Date;
+import java.util.List;
 
 public class Request extends AbstractPackage {
     private final Command command;
     private String key;
     private Long ttl;
+    private List<Request> batch;
 
     public Request(Command command) {
         this.command = command;
@@ -43,6 +45,14 @@ public class Request extends AbstractPackage {
         this.ttl = ttl;
     }
 
+    public List<Request> getBatch() {
+        return batch;
+    }
+
+    public void setBatch(List<Request> batch) {
+        this.batch = batch;
+    }
+
     public boolean hasKey() {
         return this.key != null;
     }
@@ -51,6 +61,10 @@ public class Request extends AbstractPackage {
         return this.ttl != null;
     }
 
+    public boolean hasBatch() {
+        return this.batch != null;
+    }
+
     @Override
     public String toString() {
 
@@ -60,10 +74,22 @@ public class Request extends AbstractPackage {
         }
         if (hasData()) {
             sb.append("=").append(getData().length).append(" bytes");
+            if (isCompressed()) {
+                sb.append(" compressed");
+            }
         }
         if (hasTTL()) {
             sb.append(" (").append(new Date(getTtl())).append(')');
         }
+        if (hasCas()) {
+            sb.append(" cas=").append(getCas());
+        }
+        if (hasBatch()) {
+            sb.append(" {").append(getBatch().size()).append(" entries}");
+        }
+        if (hasCorrelationId()) {
+            sb.append(" #").append(getCorrelationId());
+        }
 
         return sb.toString();
     }
@@ -1,7 +1,11 @@
 package net.simplesoft.jmemcached.protocol.model;
 
+import java.util.List;
+
 public class Response extends AbstractPackage {
     private final Status status;
+    private List<Response> batch;
+    private boolean counter;
 
     public Response(Status status, byte[] data) {
         super(data);
@@ -16,11 +20,44 @@ public class Response extends AbstractPackage {
         return status;
     }
 
+    public List<Response> getBatch() {
+        return batch;
+    }
+
+    public void setBatch(List<Response> batch) {
+        this.batch = batch;
+    }
+
+    public boolean hasBatch() {
+        return batch != null;
+    }
+
+    // data holds a counter as 8 bytes big-endian unsigned long instead of a serialized object
+    public boolean isCounter() {
+        return counter;
+    }
+
+    public void setCounter(boolean counter) {
+        this.counter = counter;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(status.name());
         if (hasData()) {
-            sb.append(" [").append(getData().length).append(" bytes]");
+            sb.append(" [").append(getData().length).append(isCompressed() ? " bytes compressed]" : " bytes]");
+            if (isCounter()) {
+                sb.append(" counter");
+            }
+        }
+        if (hasCas()) {
+            sb.append(" cas=").append(getCas());
+        }
+        if (hasBatch()) {
+            sb.append(" {").append(getBatch().size()).append(" entries}");
+        }
+        if (hasCorrelationId()) {
+            sb.append(" #").append(getCorrelationId());
         }
         return sb.toString();
     }
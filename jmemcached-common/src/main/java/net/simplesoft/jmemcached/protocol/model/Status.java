@@ -3,7 +3,8 @@ package net.simplesoft.jmemcached.protocol.model;
 import net.simplesoft.jmemcached.exception.JMemcachedException;
 
 public enum Status {
-    ADDED(0), REPLACED(1), GOTTEN(2), NOT_FOUND(3), REMOVED(4), CLEARED(5);
+    ADDED(0), REPLACED(1), GOTTEN(2), NOT_FOUND(3), REMOVED(4), CLEARED(5), PROCESSED(6), NOT_NUMERIC(7), EXISTS(8),
+    TOUCHED(9), NOT_STORED(10), SERVER_ERROR(11);
 
     private byte code;
 
@@ -5,8 +5,15 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class AbstractPackageConverterTest {
@@ -32,6 +39,20 @@ public class AbstractPackageConverterTest {
         converter.checkProtocolVersion((byte) 0);
     }
 
+    @Test
+    public void toDataInputStreamReused() {
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(new byte[0]));
+        assertSame(dataInputStream, converter.toDataInputStream(dataInputStream));
+        assertNotNull(converter.toDataInputStream(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    public void toDataOutputStreamReused() {
+        DataOutputStream dataOutputStream = new DataOutputStream(new ByteArrayOutputStream());
+        assertSame(dataOutputStream, converter.toDataOutputStream(dataOutputStream));
+        assertNotNull(converter.toDataOutputStream(new ByteArrayOutputStream()));
+    }
+
     @Test
     public void getVersionByte() {
         assertEquals(16, converter.getVersionByte());
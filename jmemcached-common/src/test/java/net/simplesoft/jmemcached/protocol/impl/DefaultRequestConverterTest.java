@@ -10,6 +10,8 @@ import org.junit.rules.ExpectedException;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
@@ -56,6 +58,19 @@ public class DefaultRequestConverterTest {
 
     }
 
+    @Test
+    public void writeRequestWithLongBatchKeyWritesNothing() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Request request = new Request(Command.MGET);
+        request.setBatch(Arrays.asList(new Request(Command.GET, "key"), new Request(Command.GET, StringUtils.repeat("a", 128))));
+        try {
+            defaultRequestConverter.writeRequest(outputStream, request);
+            fail("JMemcachedException expected");
+        } catch (JMemcachedException e) {
+            assertEquals(0, outputStream.size());
+        }
+    }
+
     @Test
     public void readRequestWithoutDataSuccess() throws IOException {
         Request request = defaultRequestConverter.readRequest(new ByteArrayInputStream(requestClear));
@@ -79,6 +94,32 @@ public class DefaultRequestConverterTest {
         assertArrayEquals(new byte[]{1, 2, 3}, request.getData());
     }
 
+    @Test
+    public void readPutWithTooLargeData() throws IOException {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Data length should be between 0 and 2: 3"));
+
+        new DefaultRequestConverter(2).readRequest(new ByteArrayInputStream(new byte[]{
+                16, 1, 7, 1, 49, 0, 0, 0, 0, 0, 0, 0, 5, 0, 0, 0, 3
+        }));
+    }
+
+    @Test
+    public void readGetWithNegativeKeyLength() throws IOException {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Key length should be between 0 and 2147483647: -1"));
+
+        defaultRequestConverter.readRequest(new ByteArrayInputStream(new byte[]{16, 2, 1, -1}));
+    }
+
+    @Test
+    public void readBatchWithTooLargeSize() throws IOException {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Batch size should be between 0 and 2: 3"));
+
+        new DefaultRequestConverter(2).readRequest(new ByteArrayInputStream(new byte[]{16, 4, 8, 0, 0, 0, 3}));
+    }
+
     @Test
     public void writeRequestWithoutData() throws IOException {
         Request request = new Request(Command.CLEAR);
@@ -96,4 +137,152 @@ public class DefaultRequestConverterTest {
         }, byteArrayOutputStream.toByteArray());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getFlagsByteBatch() {
+        Request request = new Request(Command.MGET);
+        request.setBatch(Collections.singletonList(new Request(Command.MGET, "key")));
+        assertEquals(8, defaultRequestConverter.getFlagsByte(request));
+    }
+
+    @Test
+    public void writeBatchRequest() throws IOException {
+        Request request = new Request(Command.MSET);
+        request.setBatch(Arrays.asList(
+                new Request(Command.MSET, "1", 5L, new byte[]{1}),
+                new Request(Command.MSET, "2", null, new byte[]{2, 3})));
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultRequestConverter.writeRequest(byteArrayOutputStream, request);
+        assertArrayEquals(new byte[]{
+                //version command flags batch size
+                16, 5, 8, 0, 0, 0, 2,
+                //entry flags key ttl data
+                7, 1, 49, 0, 0, 0, 0, 0, 0, 0, 5, 0, 0, 0, 1, 1,
+                5, 1, 50, 0, 0, 0, 2, 2, 3
+        }, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readBatchRequest() throws IOException {
+        Request request = defaultRequestConverter.readRequest(new ByteArrayInputStream(new byte[]{
+                16, 4, 8, 0, 0, 0, 2, 1, 1, 49, 1, 1, 50
+        }));
+        assertEquals(Command.MGET, request.getCommand());
+        assertFalse(request.hasKey());
+        assertEquals(2, request.getBatch().size());
+        assertEquals("1", request.getBatch().get(0).getKey());
+        assertEquals("2", request.getBatch().get(1).getKey());
+        assertFalse(request.getBatch().get(1).hasData());
+    }
+
+    @Test
+    public void writeRequestWithCorrelationId() throws IOException {
+        Request request = new Request(Command.GET, "1");
+        request.setCorrelationId(258);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultRequestConverter.writeRequest(byteArrayOutputStream, request);
+        //version command flags correlationId key
+        assertArrayEquals(new byte[]{16, 2, 17, 0, 0, 1, 2, 1, 49}, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readRequestWithCorrelationId() throws IOException {
+        Request request = defaultRequestConverter.readRequest(new ByteArrayInputStream(new byte[]{
+                16, 2, 17, 0, 0, 1, 2, 1, 49
+        }));
+        assertEquals(Command.GET, request.getCommand());
+        assertEquals(Integer.valueOf(258), request.getCorrelationId());
+        assertEquals("1", request.getKey());
+    }
+
+    @Test
+    public void writeCasRequest() throws IOException {
+        Request request = new Request(Command.CAS, "1", null, new byte[]{9});
+        request.setCas(258L);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultRequestConverter.writeRequest(byteArrayOutputStream, request);
+        //version command flags cas key data
+        assertArrayEquals(new byte[]{16, 10, 69, 0, 0, 0, 0, 0, 0, 1, 2, 1, 49, 0, 0, 0, 1, 9},
+                byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readCasRequest() throws IOException {
+        Request request = defaultRequestConverter.readRequest(new ByteArrayInputStream(new byte[]{
+                16, 10, 69, 0, 0, 0, 0, 0, 0, 1, 2, 1, 49, 0, 0, 0, 1, 9
+        }));
+        assertEquals(Command.CAS, request.getCommand());
+        assertEquals(Long.valueOf(258), request.getCas());
+        assertEquals("1", request.getKey());
+        assertArrayEquals(new byte[]{9}, request.getData());
+    }
+
+    @Test
+    public void writeCompressedRequest() throws IOException {
+        Request request = new Request(Command.PUT, "1", null, new byte[]{9});
+        request.setCompressed(true);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultRequestConverter.writeRequest(byteArrayOutputStream, request);
+        //version command flags key data
+        assertArrayEquals(new byte[]{16, 1, 37, 1, 49, 0, 0, 0, 1, 9}, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readCompressedBatchEntry() throws IOException {
+        Request request = defaultRequestConverter.readRequest(new ByteArrayInputStream(new byte[]{
+                16, 5, 8, 0, 0, 0, 2, 37, 1, 49, 0, 0, 0, 1, 9, 5, 1, 50, 0, 0, 0, 1, 8
+        }));
+        assertFalse(request.isCompressed());
+        assertTrue(request.getBatch().get(0).isCompressed());
+        assertFalse(request.getBatch().get(1).isCompressed());
+    }
+
+    @Test
+    public void writeRequestSocketWriteCount() throws IOException {
+        Request request = new Request(Command.PUT, "123", 5L, new byte[]{1, 2, 3});
+        WriteCountingOutputStream raw = new WriteCountingOutputStream();
+        defaultRequestConverter.writeRequest(raw, request);
+        // every header field goes to the unbuffered stream separately
+        assertTrue(raw.writeCount > 5);
+
+        WriteCountingOutputStream buffered = new WriteCountingOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(buffered));
+        defaultRequestConverter.writeRequest(dataOutputStream, request);
+        defaultRequestConverter.writeRequest(dataOutputStream, request);
+        dataOutputStream.flush();
+        assertEquals(1, buffered.writeCount);
+        assertArrayEquals(buffered.toByteArray(), concat(raw.toByteArray(), raw.toByteArray()));
+    }
+
+    @Test
+    public void readRequestsFromReusedStream() throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(new byte[]{
+                16, 0, 0, 16, 2, 1, 3, 49, 50, 51
+        }));
+        assertEquals(Command.CLEAR, defaultRequestConverter.readRequest(dataInputStream).getCommand());
+        Request request = defaultRequestConverter.readRequest(dataInputStream);
+        assertEquals(Command.GET, request.getCommand());
+        assertEquals("123", request.getKey());
+    }
+
+    private byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static class WriteCountingOutputStream extends ByteArrayOutputStream {
+        private int writeCount;
+
+        @Override
+        public synchronized void write(int b) {
+            writeCount++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writeCount++;
+            super.write(b, off, len);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.simplesoft.jmemcached.protocol.impl;
 
+import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.protocol.model.Response;
 import net.simplesoft.jmemcached.protocol.model.Status;
 import org.junit.Test;
@@ -7,6 +8,7 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
 
@@ -54,4 +56,126 @@ public class DefaultResponseConverterTest {
         //version status flag length byte array
         assertArrayEquals(new byte[]{16, 0, 1, 0, 0, 0, 3, 1, 2, 3}, byteArrayOutputStream.toByteArray());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void writeBatchResponse() throws IOException {
+        Response response = new Response(Status.PROCESSED);
+        response.setBatch(Arrays.asList(new Response(Status.GOTTEN, new byte[]{1, 2}), new Response(Status.NOT_FOUND)));
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultResponseConverter.writeResponse(byteArrayOutputStream, response);
+        assertArrayEquals(new byte[]{
+                //version status flags batch size
+                16, 6, 2, 0, 0, 0, 2,
+                //status flags data
+                2, 1, 0, 0, 0, 2, 1, 2,
+                3, 0
+        }, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readBatchResponse() throws IOException {
+        Response response = defaultResponseConverter.readResponse(new ByteArrayInputStream(new byte[]{
+                16, 6, 2, 0, 0, 0, 2, 2, 1, 0, 0, 0, 2, 1, 2, 3, 0
+        }));
+        assertEquals(Status.PROCESSED, response.getStatus());
+        assertFalse(response.hasData());
+        assertEquals(2, response.getBatch().size());
+        assertEquals(Status.GOTTEN, response.getBatch().get(0).getStatus());
+        assertArrayEquals(new byte[]{1, 2}, response.getBatch().get(0).getData());
+        assertEquals(Status.NOT_FOUND, response.getBatch().get(1).getStatus());
+        assertFalse(response.getBatch().get(1).hasBatch());
+    }
+
+    @Test
+    public void writeResponseWithCorrelationId() throws IOException {
+        Response response = new Response(Status.GOTTEN, new byte[]{1});
+        response.setCorrelationId(258);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultResponseConverter.writeResponse(byteArrayOutputStream, response);
+        //version status flags correlationId length data
+        assertArrayEquals(new byte[]{16, 2, 5, 0, 0, 1, 2, 0, 0, 0, 1, 1}, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readResponseWithCorrelationId() throws IOException {
+        Response response = defaultResponseConverter.readResponse(new ByteArrayInputStream(new byte[]{
+                16, 2, 5, 0, 0, 1, 2, 0, 0, 0, 1, 1
+        }));
+        assertEquals(Status.GOTTEN, response.getStatus());
+        assertEquals(Integer.valueOf(258), response.getCorrelationId());
+        assertArrayEquals(new byte[]{1}, response.getData());
+    }
+
+    @Test
+    public void writeCompressedResponse() throws IOException {
+        Response response = new Response(Status.GOTTEN, new byte[]{1});
+        response.setCompressed(true);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultResponseConverter.writeResponse(byteArrayOutputStream, response);
+        assertArrayEquals(new byte[]{16, 2, 9, 0, 0, 0, 1, 1}, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readCompressedResponse() throws IOException {
+        Response response = defaultResponseConverter.readResponse(new ByteArrayInputStream(new byte[]{
+                16, 2, 9, 0, 0, 0, 1, 1
+        }));
+        assertTrue(response.isCompressed());
+        assertArrayEquals(new byte[]{1}, response.getData());
+    }
+
+    @Test
+    public void writeCasResponse() throws IOException {
+        Response response = new Response(Status.GOTTEN, new byte[]{1});
+        response.setCas(258L);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultResponseConverter.writeResponse(byteArrayOutputStream, response);
+        //version status flags cas length data
+        assertArrayEquals(new byte[]{16, 2, 33, 0, 0, 0, 0, 0, 0, 1, 2, 0, 0, 0, 1, 1}, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readCasResponse() throws IOException {
+        Response response = defaultResponseConverter.readResponse(new ByteArrayInputStream(new byte[]{
+                16, 2, 33, 0, 0, 0, 0, 0, 0, 1, 2, 0, 0, 0, 1, 1
+        }));
+        assertEquals(Long.valueOf(258), response.getCas());
+        assertArrayEquals(new byte[]{1}, response.getData());
+    }
+
+    @Test
+    public void writeCounterResponse() throws IOException {
+        Response response = new Response(Status.GOTTEN, new byte[]{1});
+        response.setCounter(true);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultResponseConverter.writeResponse(byteArrayOutputStream, response);
+        assertArrayEquals(new byte[]{16, 2, 17, 0, 0, 0, 1, 1}, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void readCounterResponse() throws IOException {
+        Response response = defaultResponseConverter.readResponse(new ByteArrayInputStream(new byte[]{
+                16, 2, 17, 0, 0, 0, 1, 1
+        }));
+        assertTrue(response.isCounter());
+        assertFalse(response.isCompressed());
+        assertArrayEquals(new byte[]{1}, response.getData());
+    }
+
+    @Test
+    public void writeResponseHeader() throws IOException {
+        Response response = new Response(Status.GOTTEN, new byte[]{1, 2, 3});
+        response.setCorrelationId(1);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        defaultResponseConverter.writeResponseHeader(byteArrayOutputStream, response);
+        //version status flags correlationId length
+        assertArrayEquals(new byte[]{16, 2, 5, 0, 0, 0, 1, 0, 0, 0, 3}, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test(expected = JMemcachedException.class)
+    public void writeBatchResponseHeader() throws IOException {
+        Response response = new Response(Status.PROCESSED);
+        response.setBatch(Arrays.asList(new Response(Status.NOT_FOUND)));
+        defaultResponseConverter.writeResponseHeader(new ByteArrayOutputStream(), response);
+    }
+}
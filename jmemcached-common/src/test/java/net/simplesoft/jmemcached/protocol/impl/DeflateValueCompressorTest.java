@@ -0,0 +1,67 @@
+package net.simplesoft.jmemcached.protocol.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class DeflateValueCompressorTest {
+
+    private final DeflateValueCompressor deflateValueCompressor = new DeflateValueCompressor();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void compressRepetitiveData() {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+        }
+        byte[] data = json.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflateValueCompressor.compress(data);
+        assertTrue(compressed.length < data.length / 4);
+        assertArrayEquals(data, deflateValueCompressor.decompress(compressed));
+    }
+
+    @Test
+    public void compressRandomData() {
+        byte[] data = new byte[100 * 1024];
+        new Random(1).nextBytes(data);
+        assertArrayEquals(data, deflateValueCompressor.decompress(deflateValueCompressor.compress(data)));
+    }
+
+    @Test
+    public void compressEmpty() {
+        assertArrayEquals(new byte[0], deflateValueCompressor.decompress(deflateValueCompressor.compress(new byte[0])));
+    }
+
+    @Test
+    public void decompressTooShort() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Can't decompress value: 2 bytes is too short"));
+        deflateValueCompressor.decompress(new byte[]{0, 1});
+    }
+
+    @Test
+    public void decompressInvalidLength() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Can't decompress value: invalid length 2147483647"));
+        deflateValueCompressor.decompress(new byte[]{127, -1, -1, -1, 1});
+    }
+
+    @Test
+    public void decompressTruncated() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Can't decompress value: corrupted data"));
+        byte[] compressed = deflateValueCompressor.compress(new byte[1000]);
+        deflateValueCompressor.decompress(Arrays.copyOf(compressed, compressed.length - 2));
+    }
+}
@@ -0,0 +1,123 @@
+package net.simplesoft.jmemcached.protocol.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.ObjectCodec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class TypedObjectSerializerTest {
+
+    private final TypedObjectSerializer typedObjectSerializer = new TypedObjectSerializer();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void toByteArrayNull() {
+        assertNull(typedObjectSerializer.toByteArray(null));
+        assertNull(typedObjectSerializer.fromByteArray(null));
+    }
+
+    @Test
+    public void toByteArrayString() {
+        assertArrayEquals(new byte[]{1, 116, 101, 115, 116}, typedObjectSerializer.toByteArray("test"));
+    }
+
+    @Test
+    public void toByteArrayInteger() {
+        assertArrayEquals(new byte[]{3, 0, 0, 1, 2}, typedObjectSerializer.toByteArray(258));
+    }
+
+    @Test
+    public void roundTrip() {
+        for (Object object : Arrays.<Object>asList("тест", 1, -2L, (short) 3, (byte) 4, true, false, 'c', 1.5f, 2.5d)) {
+            assertEquals(object, typedObjectSerializer.fromByteArray(typedObjectSerializer.toByteArray(object)));
+        }
+        byte[] bytes = {1, 2, 3};
+        assertArrayEquals(bytes, (byte[]) typedObjectSerializer.fromByteArray(typedObjectSerializer.toByteArray(bytes)));
+    }
+
+    @Test
+    public void fallbackToJavaSerialization() {
+        Map<String, Integer> map = new HashMap<>();
+        map.put("key", 1);
+        byte[] array = typedObjectSerializer.toByteArray(map);
+        assertArrayEquals(new DefaultObjectSerializer().toByteArray(map), array);
+        assertEquals(map, typedObjectSerializer.fromByteArray(array));
+    }
+
+    @Test
+    public void readDefaultObjectSerializerValue() {
+        assertEquals("test", typedObjectSerializer.fromByteArray(new DefaultObjectSerializer().toByteArray("test")));
+    }
+
+    @Test
+    public void codec() {
+        typedObjectSerializer.register(7, new PointCodec());
+        byte[] array = typedObjectSerializer.toByteArray(new Point(1, 2));
+        assertArrayEquals(new byte[]{32, 0, 7, 0, 0, 0, 1, 0, 0, 0, 2}, array);
+        Point point = (Point) typedObjectSerializer.fromByteArray(array);
+        assertEquals(1, point.x);
+        assertEquals(2, point.y);
+    }
+
+    @Test
+    public void codecNotRegistered() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Codec is not registered: 7"));
+        typedObjectSerializer.fromByteArray(new byte[]{32, 0, 7, 0, 0, 0, 1, 0, 0, 0, 2});
+    }
+
+    @Test
+    public void duplicateCodecId() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Codec id already registered: 7"));
+        typedObjectSerializer.register(7, new PointCodec()).register(7, new PointCodec());
+    }
+
+    @Test
+    public void truncatedValue() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Can't convert byte array to object: truncated value"));
+        typedObjectSerializer.fromByteArray(new byte[]{4, 0, 0});
+    }
+
+    private static class Point {
+        private final int x;
+        private final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static class PointCodec implements ObjectCodec<Point> {
+        @Override
+        public Class<Point> getType() {
+            return Point.class;
+        }
+
+        @Override
+        public void write(DataOutput out, Point point) throws IOException {
+            out.writeInt(point.x);
+            out.writeInt(point.y);
+        }
+
+        @Override
+        public Point read(DataInput in) throws IOException {
+            return new Point(in.readInt(), in.readInt());
+        }
+    }
+}
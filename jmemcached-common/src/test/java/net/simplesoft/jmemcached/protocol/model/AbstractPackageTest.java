@@ -30,4 +30,11 @@ public class AbstractPackageTest {
         assertTrue(abstractPackage.hasData());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void hasCorrelationId() {
+        AbstractPackage abstractPackage = newInstance(null);
+        assertFalse(abstractPackage.hasCorrelationId());
+        abstractPackage.setCorrelationId(1);
+        assertTrue(abstractPackage.hasCorrelationId());
+    }
+}
@@ -19,6 +19,19 @@ public class CommandTest {
         assertEquals(Command.PUT, Command.valueOf((byte) 1));
         assertEquals(Command.GET, Command.valueOf((byte) 2));
         assertEquals(Command.REMOVE, Command.valueOf((byte) 3));
+        assertEquals(Command.MGET, Command.valueOf((byte) 4));
+        assertEquals(Command.MSET, Command.valueOf((byte) 5));
+        assertEquals(Command.MDEL, Command.valueOf((byte) 6));
+        assertEquals(Command.STATS, Command.valueOf((byte) 7));
+        assertEquals(Command.INCR, Command.valueOf((byte) 8));
+        assertEquals(Command.DECR, Command.valueOf((byte) 9));
+        assertEquals(Command.CAS, Command.valueOf((byte) 10));
+        assertEquals(Command.ADD, Command.valueOf((byte) 11));
+        assertEquals(Command.REPLACE, Command.valueOf((byte) 12));
+        assertEquals(Command.APPEND, Command.valueOf((byte) 13));
+        assertEquals(Command.PREPEND, Command.valueOf((byte) 14));
+        assertEquals(Command.TOUCH, Command.valueOf((byte) 15));
+        assertEquals(Command.GAT, Command.valueOf((byte) 16));
     }
 
     @Test
@@ -34,5 +47,18 @@ public class CommandTest {
         assertEquals(1, Command.PUT.getByteCode());
         assertEquals(2, Command.GET.getByteCode());
         assertEquals(3, Command.REMOVE.getByteCode());
+        assertEquals(4, Command.MGET.getByteCode());
+        assertEquals(5, Command.MSET.getByteCode());
+        assertEquals(6, Command.MDEL.getByteCode());
+        assertEquals(7, Command.STATS.getByteCode());
+        assertEquals(8, Command.INCR.getByteCode());
+        assertEquals(9, Command.DECR.getByteCode());
+        assertEquals(10, Command.CAS.getByteCode());
+        assertEquals(11, Command.ADD.getByteCode());
+        assertEquals(12, Command.REPLACE.getByteCode());
+        assertEquals(13, Command.APPEND.getByteCode());
+        assertEquals(14, Command.PREPEND.getByteCode());
+        assertEquals(15, Command.TOUCH.getByteCode());
+        assertEquals(16, Command.GAT.getByteCode());
     }
 }
\ No newline at end of file
@@ -3,6 +3,9 @@ package net.simplesoft.jmemcached.protocol.model;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.Assert.*;
 
 public class RequestTest {
@@ -65,4 +68,24 @@ public class RequestTest {
         assertEquals("PUT[key]=3 bytes (Wed Jan 11 23:24:00 MSK 2017)", request.toString());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void hasBatch() {
+        assertFalse(request.hasBatch());
+        request.setBatch(Collections.singletonList(new Request(Command.MGET, "key")));
+        assertTrue(request.hasBatch());
+    }
+
+    @Test
+    public void toStringBatch() {
+        request = new Request(Command.MGET);
+        request.setBatch(Arrays.asList(new Request(Command.MGET, "a"), new Request(Command.MGET, "b")));
+        assertEquals("MGET {2 entries}", request.toString());
+    }
+
+    @Test
+    public void toStringWithCorrelationId() {
+        request = new Request(Command.GET, "key");
+        request.setCorrelationId(7);
+        assertEquals("GET[key] #7", request.toString());
+    }
+}
@@ -18,4 +18,25 @@ public class ResponseTest {
         assertEquals("GOTTEN [3 bytes]", response.toString());
     }
 
+    @Test
+    public void toStringWithCompressedData() {
+        Response response = new Response(Status.GOTTEN, new byte[]{1, 2, 3});
+        response.setCompressed(true);
+        assertEquals("GOTTEN [3 bytes compressed]", response.toString());
+    }
+
+    @Test
+    public void toStringWithCas() {
+        Response response = new Response(Status.GOTTEN, new byte[]{1, 2, 3});
+        response.setCas(5L);
+        assertEquals("GOTTEN [3 bytes] cas=5", response.toString());
+    }
+
+    @Test
+    public void toStringWithCounter() {
+        Response response = new Response(Status.GOTTEN, new byte[8]);
+        response.setCounter(true);
+        assertEquals("GOTTEN [8 bytes] counter", response.toString());
+    }
+
 }
\ No newline at end of file
@@ -20,6 +20,12 @@ public class StatusTest {
         assertEquals(Status.REMOVED, Status.valueOf((byte) 4));
         assertEquals(Status.REPLACED, Status.valueOf((byte) 1));
         assertEquals(Status.NOT_FOUND, Status.valueOf((byte) 3));
+        assertEquals(Status.PROCESSED, Status.valueOf((byte) 6));
+        assertEquals(Status.NOT_NUMERIC, Status.valueOf((byte) 7));
+        assertEquals(Status.EXISTS, Status.valueOf((byte) 8));
+        assertEquals(Status.TOUCHED, Status.valueOf((byte) 9));
+        assertEquals(Status.NOT_STORED, Status.valueOf((byte) 10));
+        assertEquals(Status.SERVER_ERROR, Status.valueOf((byte) 11));
     }
 
     @Test
@@ -37,5 +43,11 @@ public class StatusTest {
         assertEquals(3, Status.NOT_FOUND.getByteCode());
         assertEquals(4, Status.REMOVED.getByteCode());
         assertEquals(5, Status.CLEARED.getByteCode());
+        assertEquals(6, Status.PROCESSED.getByteCode());
+        assertEquals(7, Status.NOT_NUMERIC.getByteCode());
+        assertEquals(8, Status.EXISTS.getByteCode());
+        assertEquals(9, Status.TOUCHED.getByteCode());
+        assertEquals(10, Status.NOT_STORED.getByteCode());
+        assertEquals(11, Status.SERVER_ERROR.getByteCode());
     }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package net.simplesoft.jmemcached.server;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+
+public enum EvictionPolicyType {
+    LRU("lru"), TINY_LFU("tinylfu");
+
+    private final String code;
+
+    EvictionPolicyType(String code) {
+        this.code = code;
+    }
+
+    public static EvictionPolicyType of(String code) {
+        for (EvictionPolicyType evictionPolicyType : EvictionPolicyType.values()) {
+            if (evictionPolicyType.getCode().equalsIgnoreCase(code)) {
+                return evictionPolicyType;
+            }
+        }
+        throw new JMemcachedConfigException("Unsupported eviction policy: " + code);
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
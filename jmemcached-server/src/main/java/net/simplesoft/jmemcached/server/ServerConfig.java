@@ -18,14 +18,42 @@ public interface ServerConfig extends AutoCloseable {
 
     CommandHandler getCommandHandler();
 
+    ServerMetrics getServerMetrics();
+
     int getClearDataIntervalInMills();
 
+    StorageType getStorageType();
+
+    int getSegmentCount();
+
+    long getMaxMemoryInBytes();
+
+    EvictionPolicyType getEvictionPolicyType();
+
+    String getSnapshotFile();
+
+    int getSnapshotIntervalInMs();
+
+    String getAppendOnlyLogFile();
+
+    int getLogCompactionIntervalInMs();
+
+    long getLogCompactionMinSizeInBytes();
+
     int getServerPort();
 
     int getInitThreadCount();
 
     int getMaxThreadCount();
 
+    ServerMode getServerMode();
+
+    int getEventLoopCount();
+
+    int getMaxRequestSizeInBytes();
+
+    boolean isJmxEnabled();
+
     ClientSocketHandler buildNewClientSocketHandler(Socket clientSocket);
 
 }
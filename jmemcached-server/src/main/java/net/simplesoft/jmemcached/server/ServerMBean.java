@@ -0,0 +1,27 @@
+package net.simplesoft.jmemcached.server;
+
+// registered as net.simplesoft.jmemcached:type=Server for the pooled blocking server
+public interface ServerMBean {
+
+    int getActiveConnections();
+
+    int getQueuedConnections();
+
+    long getAcceptedConnections();
+
+    long getCompletedConnections();
+
+    long getRejectedConnections();
+
+    int getPoolSize();
+
+    int getLargestPoolSize();
+
+    int getInitThreadCount();
+
+    void setInitThreadCount(int initThreadCount);
+
+    int getMaxThreadCount();
+
+    void setMaxThreadCount(int maxThreadCount);
+}
@@ -0,0 +1,17 @@
+package net.simplesoft.jmemcached.server;
+
+import net.simplesoft.jmemcached.protocol.model.Command;
+
+import java.util.Map;
+
+public interface ServerMetrics {
+
+    void recordConnection();
+
+    void recordCommand(Command command, long durationInNanos);
+
+    void recordGet(boolean hit);
+
+    // statistic name -> value, ordered for display
+    Map<String, String> getStatistics();
+}
@@ -0,0 +1,31 @@
+package net.simplesoft.jmemcached.server;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+
+public enum ServerMode {
+    BLOCKING("blocking"), VIRTUAL("virtual"), NIO("nio");
+
+    private final String code;
+
+    ServerMode(String code) {
+        this.code = code;
+    }
+
+    public static ServerMode of(String code) {
+        for (ServerMode serverMode : ServerMode.values()) {
+            if (serverMode.getCode().equalsIgnoreCase(code)) {
+                return serverMode;
+            }
+        }
+        throw new JMemcachedConfigException("Unsupported server mode: " + code);
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
@@ -6,9 +6,47 @@ public interface Storage extends AutoCloseable {
 
     Status put(String key, Long ttl, byte[] data);
 
+    Status put(String key, Long ttl, byte[] data, long flags);
+
     byte[] get(String key);
 
+    StoredValue getValue(String key);
+
     Status remove(String key);
 
+    // sets a new ttl of the live value without changing its data and cas token, null ttl removes the expiration.
+    // Returns the touched item or null if there is no live value
+    StoredValue touch(String key, Long ttl);
+
+    // stores the value only if there is no live value for the key. Returns ADDED or EXISTS
+    Status add(String key, Long ttl, byte[] data, long flags);
+
+    // stores the value only if there is a live value for the key. Returns REPLACED or NOT_FOUND
+    Status replace(String key, Long ttl, byte[] data, long flags);
+
+    // atomically appends or prepends the data to the live value keeping its flags and expiration time.
+    // Returns the updated item or null if there is no live value. Compressed values and counters can't be
+    // concatenated, they are returned unchanged
+    StoredValue concat(String key, byte[] data, boolean append);
+
+    // replaces the live value only if its cas token was not changed since it was read.
+    // Returns REPLACED, EXISTS if the value was changed or NOT_FOUND if there is no live value
+    Status compareAndSet(String key, long cas, Long ttl, byte[] data, long flags);
+
+    // atomically adds or subtracts the delta, a missing key is created with the ttl and 0 before the update,
+    // the expiration time of an existing counter is kept. Returns the updated counter item or null
+    // if the key holds a value which is not a counter
+    StoredValue updateCounter(String key, Long ttl, long delta, boolean increment);
+
     Status clear();
+
+    // visits live items, concurrent modifications may or may not be seen
+    void forEach(StorageVisitor visitor);
+
+    // expired items which are not removed yet are counted too
+    long getItemCount();
+
+    long getUsedMemoryInBytes();
+
+    long getEvictionCount();
 }
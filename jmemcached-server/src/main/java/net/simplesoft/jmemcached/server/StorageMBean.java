@@ -0,0 +1,21 @@
+package net.simplesoft.jmemcached.server;
+
+// registered as net.simplesoft.jmemcached:type=Storage for the heap storage
+public interface StorageMBean {
+
+    long getItemCount();
+
+    long getUsedMemoryInBytes();
+
+    long getEvictionCount();
+
+    long getExpiredCount();
+
+    double getExpiredPerSecond();
+
+    double getLastSweepDurationInMs();
+
+    int getClearDataIntervalInMs();
+
+    void setClearDataIntervalInMs(int clearDataIntervalInMs);
+}
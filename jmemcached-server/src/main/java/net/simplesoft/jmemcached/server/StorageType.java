@@ -0,0 +1,31 @@
+package net.simplesoft.jmemcached.server;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+
+public enum StorageType {
+    HEAP("heap"), OFF_HEAP("offheap"), SEGMENTED("segmented");
+
+    private final String code;
+
+    StorageType(String code) {
+        this.code = code;
+    }
+
+    public static StorageType of(String code) {
+        for (StorageType storageType : StorageType.values()) {
+            if (storageType.getCode().equalsIgnoreCase(code)) {
+                return storageType;
+            }
+        }
+        throw new JMemcachedConfigException("Unsupported storage type: " + code);
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
@@ -0,0 +1,7 @@
+package net.simplesoft.jmemcached.server;
+
+public interface StorageVisitor {
+
+    // expiresAt is the absolute expiration time in ms or null
+    void visit(String key, Long expiresAt, byte[] data, long flags);
+}
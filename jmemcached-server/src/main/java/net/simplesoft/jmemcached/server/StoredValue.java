@@ -0,0 +1,39 @@
+package net.simplesoft.jmemcached.server;
+
+public class StoredValue {
+    private final byte[] data;
+    private final long flags;
+    private final Long expiresAt;
+    private final long cas;
+
+    public StoredValue(byte[] data, long flags) {
+        this(data, flags, null, 0);
+    }
+
+    public StoredValue(byte[] data, long flags, Long expiresAt, long cas) {
+        this.data = data;
+        this.flags = flags;
+        this.expiresAt = expiresAt;
+        this.cas = cas;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    // item flags which are stored and returned together with the data. The low 32 bits are opaque client flags,
+    // the high bits are reserved for the flags of the server
+    public long getFlags() {
+        return flags;
+    }
+
+    // absolute expiration time in ms or null
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    // changed by every write of the item
+    public long getCas() {
+        return cas;
+    }
+}
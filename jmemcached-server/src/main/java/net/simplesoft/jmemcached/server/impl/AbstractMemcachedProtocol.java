@@ -0,0 +1,129 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.protocol.model.Version;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StoredValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Memcached text and binary protocols served on the same storage as the jmemcached protocol. The protocol of
+// a connection is detected by its first byte: jmemcached frames start with a protocol version byte, binary memcached
+// requests with the 0x80 magic and text commands with a letter. Memcached client flags are kept in the low 32 bits
+// of the item flags, the server flags above them are neither set nor returned to memcached clients.
+abstract class AbstractMemcachedProtocol {
+
+    static final int BINARY_REQUEST_MAGIC = 0x80;
+    static final String VERSION = "1.0";
+    // memcached treats larger expiration times as unix times in seconds
+    private static final long MAX_RELATIVE_EXPIRATION_IN_SECONDS = TimeUnit.DAYS.toSeconds(30);
+    private static final int MAX_COUNTER_LENGTH = 20;
+    static final long CLIENT_FLAGS_MASK = 0xFFFFFFFFL;
+    static final byte[] EMPTY = new byte[0];
+
+    protected final Storage storage;
+    protected final ServerMetrics serverMetrics;
+
+    AbstractMemcachedProtocol(ServerConfig serverConfig) {
+        this.storage = serverConfig.getStorage();
+        this.serverMetrics = serverConfig.getServerMetrics();
+    }
+
+    // null if the connection speaks the jmemcached protocol
+    static AbstractMemcachedProtocol create(int firstByte, ServerConfig serverConfig) {
+        if (firstByte == BINARY_REQUEST_MAGIC) {
+            return new MemcachedBinaryProtocol(serverConfig);
+        }
+        for (Version version : Version.values()) {
+            if (version.getByteCode() == (byte) firstByte) {
+                return null;
+            }
+        }
+        return new MemcachedTextProtocol(serverConfig);
+    }
+
+    // reads one request, executes it and writes its responses, nothing is written until the whole request is read.
+    // Throws EOFException if the request is not complete. Returns false if the connection should be closed
+    abstract boolean handle(InputStream inputStream, OutputStream outputStream) throws IOException;
+
+    // 0 - never expires, up to 30 days - seconds from now, otherwise - unix time in seconds
+    protected Long toTtl(long expiration) {
+        if (expiration == 0) {
+            return null;
+        }
+        long ttl = TimeUnit.SECONDS.toMillis(expiration);
+        if (expiration > MAX_RELATIVE_EXPIRATION_IN_SECONDS) {
+            ttl -= System.currentTimeMillis();
+        }
+        // an item with an expiration time in the past is stored expired, like in memcached
+        return ttl > 0 ? ttl : -1L;
+    }
+
+    protected int getClientFlags(StoredValue value) {
+        return (int) (value.getFlags() & CLIENT_FLAGS_MASK);
+    }
+
+    // jmemcached clients can store null values, memcached clients get them as empty values
+    protected byte[] getData(StoredValue value) {
+        return value.getData() != null ? value.getData() : EMPTY;
+    }
+
+    protected StoredValue get(String key, boolean touch, Long ttl) {
+        StoredValue value = touch ? this.storage.touch(key, ttl) : this.storage.getValue(key);
+        this.serverMetrics.recordGet(value != null);
+        return value;
+    }
+
+    // Memcached counters are unsigned decimal numbers stored as text, so they are updated with a cas loop
+    // instead of Storage.updateCounter. A missing counter is created with the initial value if it is not null.
+    // Returns null if there is no value, throws NumberFormatException if the value is not a counter
+    protected Long updateCounter(String key, long delta, boolean increment, Long initial, Long ttl) {
+        while (true) {
+            StoredValue value = this.storage.getValue(key);
+            if (value == null) {
+                if (initial == null) {
+                    return null;
+                }
+                if (this.storage.add(key, ttl, toCounterData(initial), 0) == Status.ADDED) {
+                    return initial;
+                }
+                continue;
+            }
+            long counter = CounterValue.update(toCounter(value.getData()), delta, increment);
+            Long expiresAt = value.getExpiresAt();
+            Long remainingTtl = expiresAt == null ? null : Math.max(1, expiresAt - System.currentTimeMillis());
+            Status status = this.storage.compareAndSet(key, value.getCas(), remainingTtl, toCounterData(counter),
+                    value.getFlags());
+            if (status == Status.REPLACED) {
+                return counter;
+            }
+        }
+    }
+
+    protected long toCounter(byte[] data) {
+        if (data == null || data.length == 0 || data.length > MAX_COUNTER_LENGTH) {
+            throw new NumberFormatException("Value is not a counter");
+        }
+        for (byte b : data) {
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Value is not a counter");
+            }
+        }
+        return Long.parseUnsignedLong(new String(data, StandardCharsets.US_ASCII));
+    }
+
+    protected byte[] toCounterData(long counter) {
+        return Long.toUnsignedString(counter).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    protected void recordCommand(Command command, long start) {
+        this.serverMetrics.recordCommand(command, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,442 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// File layout: magic, version and records (PUT: type, key length, key, expires at or 0, flags, data length or -1, data;
+// REMOVE: type, key length, key; CLEAR: type; TOUCH: type, key length, key, expires at or 0). Appended records are written and fsynced by a single writer thread,
+// so all records appended while the previous batch is being synced are committed with one fsync.
+// Version 1 logs have int flags with the server flags in the low bits, they are rewritten in the current version on replay.
+// Callers apply the storage operation and append its record while holding the log monitor to keep both orders equal.
+class AppendOnlyLog implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppendOnlyLog.class);
+
+    static final int MAGIC = 0x4A4D4C47;
+    static final byte VERSION = 2;
+    static final byte LEGACY_VERSION = 1;
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+    static final byte CLEAR = 3;
+    static final byte TOUCH = 4;
+    private static final int HEADER_SIZE = 5;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    // guards channel replacement, held by the writer thread while a batch is written and by the compaction swap
+    private final Object fileLock = new Object();
+    private final ByteArrayOutputStream pendingRecords = new ByteArrayOutputStream();
+    private FileChannel channel;
+    private ExecutorService writerExecutorService;
+    // records appended while the compaction copies the storage, written after the copy
+    private ByteArrayOutputStream compactionTail;
+    private long appendedSequence;
+    private long syncedSequence;
+    // read by shouldCompact without the file lock
+    private volatile long compactedSizeInBytes = HEADER_SIZE;
+    private IOException failure;
+    private boolean closed;
+
+    AppendOnlyLog(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    static byte[] putRecord(String key, Long expiresAt, byte[] data, long flags) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + keyBytes.length + 8 + 8 + 4 + (data != null ? data.length : 0));
+        buffer.put(PUT).putShort((short) keyBytes.length).put(keyBytes);
+        buffer.putLong(expiresAt != null ? expiresAt : 0).putLong(flags);
+        if (data == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(data.length).put(data);
+        }
+        return buffer.array();
+    }
+
+    static byte[] removeRecord(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 2 + keyBytes.length).put(REMOVE).putShort((short) keyBytes.length).put(keyBytes).array();
+    }
+
+    static byte[] touchRecord(String key, Long expiresAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 2 + keyBytes.length + 8).put(TOUCH).putShort((short) keyBytes.length).put(keyBytes)
+                .putLong(expiresAt != null ? expiresAt : 0).array();
+    }
+
+    static byte[] clearRecord() {
+        return new byte[]{CLEAR};
+    }
+
+    // returns the number of replayed records, a partially written last record is cut off
+    int replay(Storage storage) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        if (file.length() < HEADER_SIZE) {
+            // the server stopped while the header of a new log was being written
+            truncate(0);
+            return 0;
+        }
+        long start = currentTimeMillis();
+        long validLength = HEADER_SIZE;
+        int replayed = 0;
+        byte version = VERSION;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            int magic = in.readInt();
+            version = in.readByte();
+            if (magic != MAGIC || (version != VERSION && version != LEGACY_VERSION)) {
+                throw new JMemcachedException("Unsupported append only log file: " + file);
+            }
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == PUT) {
+                    byte[] key = readBytes(in, in.readUnsignedShort());
+                    long expiresAt = in.readLong();
+                    long flags = version == VERSION ? in.readLong() : fromLegacyFlags(in.readInt());
+                    int dataLength = in.readInt();
+                    byte[] data = dataLength < 0 ? null : readBytes(in, dataLength);
+                    if (expiresAt == 0) {
+                        storage.put(new String(key, StandardCharsets.UTF_8), null, data, flags);
+                    } else if (expiresAt > start) {
+                        storage.put(new String(key, StandardCharsets.UTF_8), expiresAt - start, data, flags);
+                    } else {
+                        // the expired value still replaced the previous one
+                        storage.remove(new String(key, StandardCharsets.UTF_8));
+                    }
+                    validLength += 1 + 2 + key.length + 8 + (version == VERSION ? 8 : 4) + 4 + (data != null ? data.length : 0);
+                } else if (type == REMOVE) {
+                    byte[] key = readBytes(in, in.readUnsignedShort());
+                    storage.remove(new String(key, StandardCharsets.UTF_8));
+                    validLength += 1 + 2 + key.length;
+                } else if (type == TOUCH) {
+                    byte[] key = readBytes(in, in.readUnsignedShort());
+                    long expiresAt = in.readLong();
+                    if (expiresAt == 0 || expiresAt > start) {
+                        storage.touch(new String(key, StandardCharsets.UTF_8), expiresAt == 0 ? null : expiresAt - start);
+                    } else {
+                        storage.remove(new String(key, StandardCharsets.UTF_8));
+                    }
+                    validLength += 1 + 2 + key.length + 8;
+                } else if (type == CLEAR) {
+                    storage.clear();
+                    validLength += 1;
+                } else {
+                    LOGGER.warn("Unknown record type {} in append only log {} at {}", type, file, validLength);
+                    break;
+                }
+                replayed++;
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("Append only log {} ends with a partially written record at {}", file, validLength);
+        }
+        if (version == LEGACY_VERSION) {
+            upgrade(storage);
+            validLength = file.length();
+        } else if (validLength < file.length()) {
+            truncate(validLength);
+        }
+        compactedSizeInBytes = validLength;
+        LOGGER.info("Replayed {} records from append only log {} in {} ms", replayed, file, currentTimeMillis() - start);
+        return replayed;
+    }
+
+    static long fromLegacyFlags(int flags) {
+        long result = flags & ~3 & 0xFFFFFFFFL;
+        if ((flags & 1) != 0) {
+            result |= DefaultCommandHandler.ITEM_FLAG_COMPRESSED;
+        }
+        if ((flags & 2) != 0) {
+            result |= CounterValue.ITEM_FLAG_COUNTER;
+        }
+        return result;
+    }
+
+    // replaces a legacy log with PUT records of the replayed items, so records of the current version are never
+    // appended to it
+    private void upgrade(Storage storage) throws IOException {
+        File tempFile = new File(file.getPath() + ".upgrade");
+        try {
+            int count = writeItems(tempFile, storage);
+            try (FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                tempChannel.force(true);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            LOGGER.info("Upgraded append only log {} to version {} with {} items", file, VERSION, count);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    // a rename is only durable once the directory entry is synced
+    protected void syncDirectory() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        try (FileChannel directoryChannel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // directories can not be opened or synced on some platforms, e.g. on Windows
+            LOGGER.debug("Can't sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private void truncate(long size) throws IOException {
+        try (FileChannel truncateChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            truncateChannel.truncate(size);
+        }
+    }
+
+    private byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    void open() throws IOException {
+        channel = openChannel();
+        writerExecutorService = createWriterExecutorService();
+        writerExecutorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                writeRecords();
+            }
+        });
+    }
+
+    protected FileChannel openChannel() throws IOException {
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (fileChannel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION);
+            header.flip();
+            fileChannel.write(header);
+            fileChannel.force(true);
+        }
+        fileChannel.position(fileChannel.size());
+        return fileChannel;
+    }
+
+    protected ExecutorService createWriterExecutorService() {
+        return Executors.newSingleThreadExecutor(createWriterThreadFactory());
+    }
+
+    protected ThreadFactory createWriterThreadFactory() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread writerThread = new Thread(runnable, "AppendOnlyLogWriterThread");
+                writerThread.setDaemon(true);
+                return writerThread;
+            }
+        };
+    }
+
+    // must be called while holding the log monitor, returns the sequence to await
+    long append(byte[] record) {
+        if (closed) {
+            throw new JMemcachedException("Append only log is closed");
+        }
+        pendingRecords.write(record, 0, record.length);
+        if (compactionTail != null) {
+            compactionTail.write(record, 0, record.length);
+        }
+        notifyAll();
+        return ++appendedSequence;
+    }
+
+    synchronized void awaitSync(long sequence) {
+        while (syncedSequence < sequence) {
+            if (failure != null) {
+                throw new JMemcachedException("Append only log write failed: " + failure.getMessage(), failure);
+            }
+            if (closed && writerExecutorService.isTerminated()) {
+                throw new JMemcachedException("Append only log is closed");
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JMemcachedException("Interrupted while waiting for append only log sync", e);
+            }
+        }
+    }
+
+    protected void writeRecords() {
+        LOGGER.debug("AppendOnlyLogWriterThread started for {}", file);
+        try {
+            while (awaitPendingRecords()) {
+                synchronized (fileLock) {
+                    byte[] batch;
+                    long sequence;
+                    synchronized (this) {
+                        batch = pendingRecords.toByteArray();
+                        pendingRecords.reset();
+                        sequence = appendedSequence;
+                    }
+                    if (batch.length > 0) {
+                        ByteBuffer buffer = ByteBuffer.wrap(batch);
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        channel.force(false);
+                    }
+                    synchronized (this) {
+                        syncedSequence = Math.max(syncedSequence, sequence);
+                        notifyAll();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Append only log write failed: " + e.getMessage(), e);
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("AppendOnlyLogWriterThread interrupted");
+        }
+    }
+
+    // false when the log is closed and all pending records are written
+    private synchronized boolean awaitPendingRecords() throws InterruptedException {
+        while (pendingRecords.size() == 0) {
+            if (closed) {
+                return false;
+            }
+            wait();
+        }
+        return true;
+    }
+
+    long getSizeInBytes() throws IOException {
+        synchronized (fileLock) {
+            return channel.size();
+        }
+    }
+
+    // a log is worth compacting when it has doubled since the last compaction and reached the min size
+    boolean shouldCompact(long minSizeInBytes) throws IOException {
+        long size = getSizeInBytes();
+        return size >= minSizeInBytes && size >= 2 * compactedSizeInBytes;
+    }
+
+    // rewrites the log as PUT records of the live items, appends are only blocked while the new log replaces the old one
+    int compact(Storage storage) throws IOException {
+        long start = System.currentTimeMillis();
+        File tempFile = new File(file.getPath() + ".compact");
+        synchronized (this) {
+            compactionTail = new ByteArrayOutputStream();
+        }
+        int count;
+        try {
+            count = writeItems(tempFile, storage);
+            synchronized (fileLock) {
+                synchronized (this) {
+                    try (FileOutputStream out = new FileOutputStream(tempFile, true)) {
+                        compactionTail.writeTo(out);
+                        out.getFD().sync();
+                    }
+                    channel.close();
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    syncDirectory();
+                    channel = openChannel();
+                    // every pending record is in the copied storage state or in the compaction tail
+                    pendingRecords.reset();
+                    syncedSequence = appendedSequence;
+                    compactedSizeInBytes = channel.size();
+                    notifyAll();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                compactionTail = null;
+            }
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        LOGGER.info("Compacted append only log {} to {} items in {} ms", file, count, System.currentTimeMillis() - start);
+        return count;
+    }
+
+    // writes a log of the current version with PUT records of the live items, returns the number of items
+    private int writeItems(File logFile, Storage storage) throws IOException {
+        final int[] count = {0};
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(logFile), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            storage.forEach(new StorageVisitor() {
+                @Override
+                public void visit(String key, Long expiresAt, byte[] data, long flags) {
+                    try {
+                        out.write(putRecord(key, expiresAt, data, flags));
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() throws Exception {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (writerExecutorService != null) {
+            writerExecutorService.shutdown();
+            writerExecutorService.awaitTermination(1, TimeUnit.MINUTES);
+            synchronized (this) {
+                // wakes up callers which wait for records the writer thread did not sync
+                notifyAll();
+            }
+        }
+        synchronized (fileLock) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import java.nio.ByteBuffer;
+
+// Counters are stored as 8 bytes big-endian and marked with the item flag, so they are updated without
+// deserialization. Like memcached counters they are unsigned: increments wrap around, decrements stop at 0.
+final class CounterValue {
+
+    // above the 32 bits of memcached client flags like DefaultCommandHandler.ITEM_FLAG_COMPRESSED
+    static final long ITEM_FLAG_COUNTER = 1L << 33;
+    static final int SIZE_IN_BYTES = 8;
+
+    private CounterValue() {
+    }
+
+    static boolean isCounter(byte[] data, long flags) {
+        return (flags & ITEM_FLAG_COUNTER) != 0 && data != null && data.length == SIZE_IN_BYTES;
+    }
+
+    static long update(long value, long delta, boolean increment) {
+        if (increment) {
+            return value + delta;
+        }
+        return Long.compareUnsigned(value, delta) < 0 ? 0 : value - delta;
+    }
+
+    static byte[] toByteArray(long value) {
+        return ByteBuffer.allocate(SIZE_IN_BYTES).putLong(value).array();
+    }
+
+    static long toLong(byte[] data) {
+        return ByteBuffer.wrap(data).getLong();
+    }
+}
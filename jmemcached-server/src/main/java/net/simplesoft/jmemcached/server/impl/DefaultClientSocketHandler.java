@@ -10,6 +10,10 @@ import net.simplesoft.jmemcached.server.ServerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -20,6 +24,7 @@ import java.net.SocketException;
 public class DefaultClientSocketHandler implements ClientSocketHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultClientSocketHandler.class);
+    private static final int BUFFER_SIZE = 16 * 1024;
     private final Socket socket;
     private final ServerConfig serverConfig;
 
@@ -28,6 +33,36 @@ public class DefaultClientSocketHandler implements ClientSocketHandler {
         this.serverConfig = serverConfig;
     }
 
+    protected InputStream createInputStream(Socket socket) throws IOException {
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+    }
+
+    protected OutputStream createOutputStream(Socket socket) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+    }
+
+    protected void flushIfNoPipelinedRequests(InputStream inputStream, OutputStream outputStream) throws IOException {
+        // responses for pipelined requests that have already arrived are coalesced into one flush
+        if (inputStream.available() == 0) {
+            outputStream.flush();
+        }
+    }
+
+    // the first byte of a connection is peeked to serve memcached clients, streams without mark support are
+    // always read with the jmemcached protocol
+    protected AbstractMemcachedProtocol detectMemcachedProtocol(InputStream inputStream) throws IOException {
+        if (!inputStream.markSupported()) {
+            return null;
+        }
+        inputStream.mark(1);
+        int firstByte = inputStream.read();
+        if (firstByte < 0) {
+            throw new EOFException("Connection closed before the first request");
+        }
+        inputStream.reset();
+        return AbstractMemcachedProtocol.create(firstByte, this.serverConfig);
+    }
+
     protected boolean interrupted() {
         return Thread.interrupted();
     }
@@ -38,19 +73,38 @@ public class DefaultClientSocketHandler implements ClientSocketHandler {
             RequestConverter requestConverter = this.serverConfig.getRequestConverter();
             ResponseConverter responseConverter = this.serverConfig.getResponseConverter();
             CommandHandler commandHandler = serverConfig.getCommandHandler();
-            InputStream inputStream = socket.getInputStream();
-            OutputStream outputStream = socket.getOutputStream();
+            InputStream inputStream = createInputStream(socket);
+            OutputStream outputStream = createOutputStream(socket);
+            AbstractMemcachedProtocol memcachedProtocol = detectMemcachedProtocol(inputStream);
+            if (memcachedProtocol != null) {
+                while (!interrupted() && memcachedProtocol.handle(inputStream, outputStream)) {
+                    flushIfNoPipelinedRequests(inputStream, outputStream);
+                }
+                outputStream.flush();
+                return;
+            }
 
             while (!interrupted()) {
+                Request request;
                 try {
-                    Request request = requestConverter.readRequest(inputStream);
-                    Response response = commandHandler.handle(request);
-                    responseConverter.writeResponse(outputStream, response);
-                    LOGGER.debug("Command {} -> {}", request, response);
+                    request = requestConverter.readRequest(inputStream);
+                } catch (RuntimeException e) {
+                    // the rest of the stream can't be framed any more: flush the answered requests and disconnect
+                    LOGGER.error("Decode request failed: " + e.getMessage(), e);
+                    outputStream.flush();
+                    return;
+                }
+                Response response;
+                try {
+                    response = commandHandler.handle(request);
                 } catch (RuntimeException e) {
                     LOGGER.error("Handle request failed: " + e.getMessage(), e);
+                    // the client must not wait for a response which never comes
+                    response = DefaultCommandHandler.serverErrorResponse(request);
                 }
-
+                responseConverter.writeResponse(outputStream, response);
+                LOGGER.debug("Command {} -> {}", request, response);
+                flushIfNoPipelinedRequests(inputStream, outputStream);
             }
         } catch (EOFException | SocketException e) {
             LOGGER.info("Remote client connection closed: "
@@ -7,33 +7,176 @@ import net.simplesoft.jmemcached.protocol.model.Response;
 import net.simplesoft.jmemcached.protocol.model.Status;
 import net.simplesoft.jmemcached.server.CommandHandler;
 import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
 import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StoredValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class DefaultCommandHandler implements CommandHandler {
 
+    // compressed values are stored as is, the flag is kept to mark them in GET responses. It is above the 32 bits
+    // of memcached client flags, so memcached clients can neither set nor see it
+    static final long ITEM_FLAG_COMPRESSED = 1L << 32;
+
     private final Storage storage;
+    private final ServerMetrics serverMetrics;
 
     DefaultCommandHandler(ServerConfig serverConfig) {
         this.storage = serverConfig.getStorage();
+        this.serverMetrics = serverConfig.getServerMetrics();
     }
 
     @Override
     public Response handle(Request request) {
-        Status status;
-        byte[] data = null;
+        long start = System.nanoTime();
+        Response response;
+        if (request.getCommand() == Command.MGET || request.getCommand() == Command.MSET
+                || request.getCommand() == Command.MDEL) {
+            response = handleBatch(request);
+        } else {
+            response = handleCommand(request);
+        }
+        // multiplexing clients match responses to requests by the echoed correlation id
+        response.setCorrelationId(request.getCorrelationId());
+        this.serverMetrics.recordCommand(request.getCommand(), System.nanoTime() - start);
+        return response;
+    }
+
+    // the answer to a request which failed with an unexpected exception, request is null if it could not be read
+    static Response serverErrorResponse(Request request) {
+        Response response = new Response(Status.SERVER_ERROR);
+        if (request != null) {
+            response.setCorrelationId(request.getCorrelationId());
+        }
+        return response;
+    }
+
+    protected Response handleCommand(Request request) {
         if (request.getCommand() == Command.CLEAR) {
-            status = this.storage.clear();
+            return new Response(this.storage.clear());
         } else if (request.getCommand() == Command.PUT) {
-            status = this.storage.put(request.getKey(), request.getTtl(), request.getData());
+            return handlePut(request);
         } else if (request.getCommand() == Command.REMOVE) {
-            status = this.storage.remove(request.getKey());
-        } else if (request.getCommand() == Command.GET) {
-            data = this.storage.get(request.getKey());
-            status = data == null ? Status.NOT_FOUND : Status.GOTTEN;
+            return new Response(this.storage.remove(request.getKey()));
+        } else if (request.getCommand() == Command.GET || request.getCommand() == Command.GAT) {
+            return handleGet(request);
+        } else if (request.getCommand() == Command.TOUCH) {
+            return handleTouch(request);
+        } else if (request.getCommand() == Command.STATS) {
+            return handleStats();
+        } else if (request.getCommand() == Command.INCR || request.getCommand() == Command.DECR) {
+            return handleCounter(request);
+        } else if (request.getCommand() == Command.CAS) {
+            return handleCas(request);
+        } else if (request.getCommand() == Command.ADD || request.getCommand() == Command.REPLACE) {
+            return handleConditionalPut(request);
+        } else if (request.getCommand() == Command.APPEND || request.getCommand() == Command.PREPEND) {
+            return handleConcat(request);
         } else {
             throw new JMemcachedException("Unsupported command: " + request.getCommand());
         }
+    }
+
+    protected Response handlePut(Request request) {
+        long flags = request.isCompressed() ? ITEM_FLAG_COMPRESSED : 0;
+        return new Response(this.storage.put(request.getKey(), request.getTtl(), request.getData(), flags));
+    }
+
+    protected Response handleConditionalPut(Request request) {
+        long flags = request.isCompressed() ? ITEM_FLAG_COMPRESSED : 0;
+        if (request.getCommand() == Command.ADD) {
+            return new Response(this.storage.add(request.getKey(), request.getTtl(), request.getData(), flags));
+        }
+        return new Response(this.storage.replace(request.getKey(), request.getTtl(), request.getData(), flags));
+    }
+
+    // the data is concatenated as is, so it can't be compressed separately from the stored value
+    protected Response handleConcat(Request request) {
+        if (request.isCompressed()) {
+            throw new JMemcachedException("Compressed data can't be concatenated for command: " + request.getCommand());
+        }
+        StoredValue value = this.storage.concat(request.getKey(), request.getData(),
+                request.getCommand() == Command.APPEND);
+        if (value == null) {
+            return new Response(Status.NOT_FOUND);
+        }
+        return new Response(DefaultStorage.isConcatenable(value.getFlags()) ? Status.REPLACED : Status.NOT_STORED);
+    }
+
+    protected Response handleTouch(Request request) {
+        StoredValue value = this.storage.touch(request.getKey(), request.getTtl());
+        return new Response(value == null ? Status.NOT_FOUND : Status.TOUCHED);
+    }
+
+    // GAT sets the request ttl as the new ttl of the value
+    protected Response handleGet(Request request) {
+        StoredValue value = request.getCommand() == Command.GAT ? this.storage.touch(request.getKey(), request.getTtl())
+                : this.storage.getValue(request.getKey());
+        this.serverMetrics.recordGet(value != null);
+        if (value == null) {
+            return new Response(Status.NOT_FOUND);
+        }
+        Response response = new Response(Status.GOTTEN, value.getData());
+        response.setCompressed((value.getFlags() & ITEM_FLAG_COMPRESSED) != 0);
+        response.setCounter(CounterValue.isCounter(value.getData(), value.getFlags()));
+        response.setCas(value.getCas());
+        return response;
+    }
+
+    protected Response handleCas(Request request) {
+        if (!request.hasCas()) {
+            throw new JMemcachedException("CAS token is required for command: " + request.getCommand());
+        }
+        long flags = request.isCompressed() ? ITEM_FLAG_COMPRESSED : 0;
+        return new Response(this.storage.compareAndSet(request.getKey(), request.getCas(), request.getTtl(),
+                request.getData(), flags));
+    }
 
-        return new Response(status, data);
+    // the delta is sent as 8 bytes big-endian, the ttl is applied only if the counter is created
+    protected Response handleCounter(Request request) {
+        byte[] delta = request.getData();
+        if (delta == null || delta.length != CounterValue.SIZE_IN_BYTES) {
+            throw new JMemcachedException("Counter delta should be 8 bytes for command: " + request.getCommand());
+        }
+        StoredValue value = this.storage.updateCounter(request.getKey(), request.getTtl(), CounterValue.toLong(delta),
+                request.getCommand() == Command.INCR);
+        if (value == null) {
+            return new Response(Status.NOT_NUMERIC);
+        }
+        Response response = new Response(Status.GOTTEN, value.getData());
+        response.setCounter(true);
+        return response;
+    }
+
+    // statistics are sent as UTF-8 "name=value" lines
+    protected Response handleStats() {
+        StringBuilder statistics = new StringBuilder();
+        for (Map.Entry<String, String> entry : this.serverMetrics.getStatistics().entrySet()) {
+            statistics.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        return new Response(Status.GOTTEN, statistics.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected Response handleBatch(Request request) {
+        if (!request.hasBatch()) {
+            throw new JMemcachedException("Batch is required for command: " + request.getCommand());
+        }
+        List<Response> batch = new ArrayList<>(request.getBatch().size());
+        for (Request entry : request.getBatch()) {
+            if (request.getCommand() == Command.MGET) {
+                batch.add(handleGet(entry));
+            } else if (request.getCommand() == Command.MSET) {
+                batch.add(handlePut(entry));
+            } else {
+                batch.add(new Response(this.storage.remove(entry.getKey())));
+            }
+        }
+        Response response = new Response(Status.PROCESSED);
+        response.setBatch(batch);
+        return response;
     }
 }
@@ -3,13 +3,19 @@ package net.simplesoft.jmemcached.server.impl;
 import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.server.Server;
 import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMBean;
+import net.simplesoft.jmemcached.server.ServerMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DefaultServer implements Server {
 
@@ -18,6 +24,9 @@ public class DefaultServer implements Server {
     private final ServerSocket serverSocket;
     private final ExecutorService executorService;
     private final Thread mainServerThread;
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    // null if jmx is disabled or the worker threads are not pooled
+    private volatile ObjectName serverObjectName;
     private volatile boolean serverStopped;
 
     public DefaultServer(ServerConfig serverConfig) {
@@ -39,6 +48,9 @@ public class DefaultServer implements Server {
     }
 
     protected ExecutorService createExecutorService() {
+        if (this.serverConfig.getServerMode() == ServerMode.VIRTUAL) {
+            return createVirtualThreadExecutorService();
+        }
         ThreadFactory threadFactory = this.serverConfig.getWorkerThreadFactory();
         int initThreadCount = this.serverConfig.getInitThreadCount();
         int maxThreadCount = this.serverConfig.getMaxThreadCount();
@@ -54,6 +66,19 @@ public class DefaultServer implements Server {
         );
     }
 
+    protected ExecutorService createVirtualThreadExecutorService() {
+        try {
+            // looked up reflectively, so that the server is still built and run with pre JDK 21 runtimes
+            Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factoryMethod.invoke(null);
+        } catch (NoSuchMethodException e) {
+            LOGGER.warn("Virtual threads are not supported by current JVM. Unbounded worker thread pool will be used");
+            return Executors.newCachedThreadPool(this.serverConfig.getWorkerThreadFactory());
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new JMemcachedException("Can't create virtual thread executor: " + e.getMessage(), e);
+        }
+    }
+
     protected Thread createMainServerThread(Runnable r) {
         Thread thread = new Thread(r, "Main Server Thread");
         thread.setPriority(Thread.MAX_PRIORITY);
@@ -68,11 +93,13 @@ public class DefaultServer implements Server {
                 while (!mainServerThread.isInterrupted()) {
                     try {
                         Socket clientSocket = serverSocket.accept();
+                        serverConfig.getServerMetrics().recordConnection();
                         try {
                             executorService.submit(serverConfig.buildNewClientSocketHandler(clientSocket));
                             LOGGER.info("A new client connection established: "
                                     + clientSocket.getRemoteSocketAddress().toString());
                         } catch (RejectedExecutionException e) {
+                            rejectedConnections.incrementAndGet();
                             LOGGER.error("All worker threads are busy. A new connection rejected: " + e.getMessage());
                             clientSocket.close();
                         }
@@ -88,6 +115,18 @@ public class DefaultServer implements Server {
         };
     }
 
+    protected ObjectName registerServerMBean() {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return MBeanRegistrar.register("Server",
+                    new ServerManagement((ThreadPoolExecutor) executorService, rejectedConnections), ServerMBean.class);
+        }
+        return null;
+    }
+
+    long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
     protected Thread getShutdownHook() {
         return new Thread(new Runnable() {
             @Override
@@ -105,6 +144,7 @@ public class DefaultServer implements Server {
         } catch (Exception e) {
             LOGGER.error("Close server config failed: " + e.getMessage(), e);
         }
+        MBeanRegistrar.unregister(serverObjectName);
         executorService.shutdownNow();
         LOGGER.info("Server stopped");
         serverStopped = true;
@@ -116,6 +156,9 @@ public class DefaultServer implements Server {
             throw new JMemcachedException("Current JMemcached server already started or stopped! Please create a new server instance");
         }
         Runtime.getRuntime().addShutdownHook(getShutdownHook());
+        if (serverConfig.isJmxEnabled()) {
+            serverObjectName = registerServerMBean();
+        }
         mainServerThread.start();
         LOGGER.info("Server started: " + serverConfig);
     }
@@ -1,28 +1,51 @@
 package net.simplesoft.jmemcached.server.impl;
 
 import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.protocol.RequestConverter;
 import net.simplesoft.jmemcached.protocol.ResponseConverter;
 import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
 import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
 import net.simplesoft.jmemcached.server.ClientSocketHandler;
 import net.simplesoft.jmemcached.server.CommandHandler;
+import net.simplesoft.jmemcached.server.EvictionPolicyType;
 import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import net.simplesoft.jmemcached.server.ServerMode;
 import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageMBean;
+import net.simplesoft.jmemcached.server.StorageType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class DefaultServerConfig implements ServerConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultServerConfig.class);
 
     private final Properties applicationProperties = new Properties();
     private final RequestConverter requestConverter;
     private final ResponseConverter responseConverter;
     private final Storage storage;
+    private final ServerMetrics serverMetrics;
     private final CommandHandler commandHandler;
+    // null if snapshots are disabled
+    private final StorageSnapshot storageSnapshot;
+    private final ScheduledExecutorService snapshotExecutorService;
+    // null if the durable mode is disabled
+    private final AppendOnlyLog appendOnlyLog;
+    private final ScheduledExecutorService logCompactionExecutorService;
+    // null if jmx is disabled or the storage has no mbean
+    private final ObjectName storageObjectName;
 
     DefaultServerConfig(Properties overrideApplicationProperties) {
         loadApplicationProperties("server.properties");
@@ -31,12 +54,48 @@ public class DefaultServerConfig implements ServerConfig {
         }
         this.requestConverter = createRequestConverter();
         this.responseConverter = createResponseConverter();
-        this.storage = createStorage(); // must be initialized before command handler
+        Storage storage = createStorage();
+        this.appendOnlyLog = createAppendOnlyLog();
+        if (this.appendOnlyLog != null) {
+            openAppendOnlyLog(storage);
+            storage = new LoggedStorage(storage, this.appendOnlyLog);
+        }
+        this.storage = storage; // must be initialized before server metrics and command handler
+        this.serverMetrics = createServerMetrics();
         this.commandHandler = createCommandHandler();
+        this.storageSnapshot = createStorageSnapshot();
+        if (this.storageSnapshot != null) {
+            if (this.appendOnlyLog == null) {
+                loadStorageSnapshot();
+            }
+            this.snapshotExecutorService = createSnapshotExecutorService();
+            int snapshotIntervalInMs = getSnapshotIntervalInMs();
+            this.snapshotExecutorService.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    saveStorageSnapshot();
+                }
+            }, snapshotIntervalInMs, snapshotIntervalInMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotExecutorService = null;
+        }
+        if (this.appendOnlyLog != null) {
+            this.logCompactionExecutorService = createLogCompactionExecutorService();
+            int logCompactionIntervalInMs = getLogCompactionIntervalInMs();
+            this.logCompactionExecutorService.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    compactAppendOnlyLog();
+                }
+            }, logCompactionIntervalInMs, logCompactionIntervalInMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.logCompactionExecutorService = null;
+        }
+        this.storageObjectName = isJmxEnabled() ? registerStorageMBean() : null;
     }
 
     protected RequestConverter createRequestConverter() {
-        return new DefaultRequestConverter();
+        return new DefaultRequestConverter(getMaxRequestSizeInBytes());
     }
 
     protected ResponseConverter createResponseConverter() {
@@ -44,13 +103,110 @@ public class DefaultServerConfig implements ServerConfig {
     }
 
     protected Storage createStorage() {
+        StorageType storageType = getStorageType();
+        if (storageType == StorageType.OFF_HEAP) {
+            return new OffHeapStorage(this);
+        } else if (storageType == StorageType.SEGMENTED) {
+            return new SegmentedStorage(this);
+        }
         return new DefaultStorage(this);
     }
 
+    protected ServerMetrics createServerMetrics() {
+        return new DefaultServerMetrics(this);
+    }
+
     protected CommandHandler createCommandHandler() {
         return new DefaultCommandHandler(this);
     }
 
+    protected StorageSnapshot createStorageSnapshot() {
+        String snapshotFile = getSnapshotFile();
+        return snapshotFile != null ? new StorageSnapshot(new File(snapshotFile)) : null;
+    }
+
+    protected ScheduledExecutorService createSnapshotExecutorService() {
+        return Executors.newSingleThreadScheduledExecutor(createSnapshotThreadFactory());
+    }
+
+    protected ThreadFactory createSnapshotThreadFactory() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread snapshotJobThread = new Thread(runnable, "StorageSnapshotJobThread");
+                snapshotJobThread.setPriority(Thread.MIN_PRIORITY);
+                snapshotJobThread.setDaemon(true);
+                return snapshotJobThread;
+            }
+        };
+    }
+
+    // a broken snapshot must not prevent the server from starting with an empty cache
+    protected void loadStorageSnapshot() {
+        try {
+            storageSnapshot.load(storage);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Can't load storage snapshot from " + storageSnapshot.getFile() + ": " + e.getMessage(), e);
+        }
+    }
+
+    protected void saveStorageSnapshot() {
+        try {
+            storageSnapshot.save(storage);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Can't save storage snapshot to " + storageSnapshot.getFile() + ": " + e.getMessage(), e);
+        }
+    }
+
+    protected AppendOnlyLog createAppendOnlyLog() {
+        String logFile = getAppendOnlyLogFile();
+        return logFile != null ? new AppendOnlyLog(new File(logFile)) : null;
+    }
+
+    // unlike a snapshot the log is appended to after startup, so it must not be silently ignored
+    protected void openAppendOnlyLog(Storage storage) {
+        try {
+            appendOnlyLog.replay(storage);
+            appendOnlyLog.open();
+        } catch (IOException e) {
+            throw new JMemcachedException("Can't open append only log " + appendOnlyLog.getFile() + ": " + e.getMessage(), e);
+        }
+    }
+
+    protected ScheduledExecutorService createLogCompactionExecutorService() {
+        return Executors.newSingleThreadScheduledExecutor(createLogCompactionThreadFactory());
+    }
+
+    protected ThreadFactory createLogCompactionThreadFactory() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread logCompactionThread = new Thread(runnable, "AppendOnlyLogCompactionThread");
+                logCompactionThread.setPriority(Thread.MIN_PRIORITY);
+                logCompactionThread.setDaemon(true);
+                return logCompactionThread;
+            }
+        };
+    }
+
+    protected void compactAppendOnlyLog() {
+        try {
+            if (appendOnlyLog.shouldCompact(getLogCompactionMinSizeInBytes())) {
+                appendOnlyLog.compact(storage);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Can't compact append only log " + appendOnlyLog.getFile() + ": " + e.getMessage(), e);
+        }
+    }
+
+    protected ObjectName registerStorageMBean() {
+        Storage storage = this.storage instanceof LoggedStorage ? ((LoggedStorage) this.storage).getStorage() : this.storage;
+        if (storage instanceof DefaultStorage) {
+            return MBeanRegistrar.register("Storage", new StorageManagement((DefaultStorage) storage), StorageMBean.class);
+        }
+        return null;
+    }
+
     protected InputStream getClassPathResourceInputStream(String classPathResource) {
         return getClass().getClassLoader().getResourceAsStream(classPathResource);
     }
@@ -103,6 +259,11 @@ public class DefaultServerConfig implements ServerConfig {
         return this.commandHandler;
     }
 
+    @Override
+    public ServerMetrics getServerMetrics() {
+        return this.serverMetrics;
+    }
+
     @Override
     public int getClearDataIntervalInMills() {
         String value = applicationProperties.getProperty("jmemcached.storage.clear.data.interval.ms");
@@ -117,6 +278,106 @@ public class DefaultServerConfig implements ServerConfig {
         }
     }
 
+    @Override
+    public StorageType getStorageType() {
+        String value = applicationProperties.getProperty("jmemcached.storage.type");
+        if (value == null) {
+            throw new JMemcachedConfigException("jmemcached.storage.type should be defined");
+        }
+        return StorageType.of(value.trim());
+    }
+
+    @Override
+    public int getSegmentCount() {
+        String value = applicationProperties.getProperty("jmemcached.storage.segment.count");
+        try {
+            int segmentCount = Integer.parseInt(value);
+            if (segmentCount < 1 || Integer.bitCount(segmentCount) != 1) {
+                throw new JMemcachedConfigException("jmemcached.storage.segment.count should be a power of two");
+            }
+            return segmentCount;
+        } catch (NumberFormatException e) {
+            throw new JMemcachedConfigException("jmemcached.storage.segment.count should be a number", e);
+        }
+    }
+
+    @Override
+    public long getMaxMemoryInBytes() {
+        String value = applicationProperties.getProperty("jmemcached.storage.max.memory.bytes");
+        try {
+            long maxMemory = Long.parseLong(value);
+            if (maxMemory < 0) {
+                throw new JMemcachedConfigException("jmemcached.storage.max.memory.bytes should be >= 0");
+            }
+            return maxMemory;
+        } catch (NumberFormatException e) {
+            throw new JMemcachedConfigException("jmemcached.storage.max.memory.bytes should be a number", e);
+        }
+    }
+
+    @Override
+    public EvictionPolicyType getEvictionPolicyType() {
+        String value = applicationProperties.getProperty("jmemcached.storage.eviction.policy");
+        if (value == null) {
+            throw new JMemcachedConfigException("jmemcached.storage.eviction.policy should be defined");
+        }
+        return EvictionPolicyType.of(value.trim());
+    }
+
+    @Override
+    public String getSnapshotFile() {
+        String value = applicationProperties.getProperty("jmemcached.storage.snapshot.file");
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    @Override
+    public int getSnapshotIntervalInMs() {
+        String value = applicationProperties.getProperty("jmemcached.storage.snapshot.interval.ms");
+        try {
+            int interval = Integer.parseInt(value);
+            if (interval < 1000) {
+                throw new JMemcachedConfigException("jmemcached.storage.snapshot.interval.ms should be >= 1000");
+            }
+            return interval;
+        } catch (NumberFormatException e) {
+            throw new JMemcachedConfigException("jmemcached.storage.snapshot.interval.ms should be a number", e);
+        }
+    }
+
+    @Override
+    public String getAppendOnlyLogFile() {
+        String value = applicationProperties.getProperty("jmemcached.storage.log.file");
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    @Override
+    public int getLogCompactionIntervalInMs() {
+        String value = applicationProperties.getProperty("jmemcached.storage.log.compaction.interval.ms");
+        try {
+            int interval = Integer.parseInt(value);
+            if (interval < 1000) {
+                throw new JMemcachedConfigException("jmemcached.storage.log.compaction.interval.ms should be >= 1000");
+            }
+            return interval;
+        } catch (NumberFormatException e) {
+            throw new JMemcachedConfigException("jmemcached.storage.log.compaction.interval.ms should be a number", e);
+        }
+    }
+
+    @Override
+    public long getLogCompactionMinSizeInBytes() {
+        String value = applicationProperties.getProperty("jmemcached.storage.log.compaction.min.bytes");
+        try {
+            long minSize = Long.parseLong(value);
+            if (minSize < 0) {
+                throw new JMemcachedConfigException("jmemcached.storage.log.compaction.min.bytes should be >= 0");
+            }
+            return minSize;
+        } catch (NumberFormatException e) {
+            throw new JMemcachedConfigException("jmemcached.storage.log.compaction.min.bytes should be a number", e);
+        }
+    }
+
     @Override
     public int getServerPort() {
         String value = applicationProperties.getProperty("jmemcached.server.port");
@@ -154,6 +415,40 @@ public class DefaultServerConfig implements ServerConfig {
         return getThreadCount("jmemcached.server.max.thread.count");
     }
 
+    @Override
+    public ServerMode getServerMode() {
+        String value = applicationProperties.getProperty("jmemcached.server.mode");
+        if (value == null) {
+            throw new JMemcachedConfigException("jmemcached.server.mode should be defined");
+        }
+        return ServerMode.of(value.trim());
+    }
+
+    @Override
+    public int getEventLoopCount() {
+        return getThreadCount("jmemcached.server.nio.event.loop.count");
+    }
+
+    @Override
+    public int getMaxRequestSizeInBytes() {
+        String value = applicationProperties.getProperty("jmemcached.server.max.request.bytes");
+        try {
+            int maxRequestSize = Integer.parseInt(value);
+            if (maxRequestSize < 1) {
+                throw new JMemcachedConfigException("jmemcached.server.max.request.bytes should be >= 1");
+            }
+            return maxRequestSize;
+        } catch (NumberFormatException e) {
+            throw new JMemcachedConfigException("jmemcached.server.max.request.bytes should be a number", e);
+        }
+    }
+
+    @Override
+    public boolean isJmxEnabled() {
+        String value = applicationProperties.getProperty("jmemcached.server.jmx.enabled");
+        return value == null || Boolean.parseBoolean(value.trim());
+    }
+
     @Override
     public ClientSocketHandler buildNewClientSocketHandler(Socket clientSocket) {
         return new DefaultClientSocketHandler(clientSocket, this);
@@ -161,12 +456,24 @@ public class DefaultServerConfig implements ServerConfig {
 
     @Override
     public void close() throws Exception {
+        MBeanRegistrar.unregister(storageObjectName);
+        if (storageSnapshot != null) {
+            snapshotExecutorService.shutdownNow();
+            saveStorageSnapshot();
+        }
+        if (logCompactionExecutorService != null) {
+            logCompactionExecutorService.shutdownNow();
+            logCompactionExecutorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
         storage.close();
     }
 
     @Override
     public String toString() {
-        return String.format("DefaultServerConfig: port=%s, initThreadCount=%s, maxThreadCount=%s, clearDataIntervalInMs=%sms",
-                getServerPort(), getInitThreadCount(), getMaxThreadCount(), getClearDataIntervalInMills());
+        return String.format("DefaultServerConfig: port=%s, mode=%s, initThreadCount=%s, maxThreadCount=%s, eventLoopCount=%s, maxRequestSizeInBytes=%s, jmxEnabled=%s, clearDataIntervalInMs=%sms, storageType=%s, segmentCount=%s, maxMemoryInBytes=%s, evictionPolicy=%s, snapshotFile=%s, snapshotIntervalInMs=%sms, appendOnlyLogFile=%s, logCompactionIntervalInMs=%sms, logCompactionMinSizeInBytes=%s",
+                getServerPort(), getServerMode(), getInitThreadCount(), getMaxThreadCount(), getEventLoopCount(), getMaxRequestSizeInBytes(), isJmxEnabled(),
+                getClearDataIntervalInMills(), getStorageType(), getSegmentCount(), getMaxMemoryInBytes(),
+                getEvictionPolicyType(), getSnapshotFile(), getSnapshotIntervalInMs(),
+                getAppendOnlyLogFile(), getLogCompactionIntervalInMs(), getLogCompactionMinSizeInBytes());
     }
 }
@@ -0,0 +1,115 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import net.simplesoft.jmemcached.server.Storage;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hot path updates are LongAdder increments and histogram bucket increments, storage gauges are read on demand.
+class DefaultServerMetrics implements ServerMetrics {
+
+    private final ServerConfig serverConfig;
+    private final long startTimeInMs;
+    private final LongAdder connectionCount = new LongAdder();
+    private final LongAdder getHitCount = new LongAdder();
+    private final LongAdder getMissCount = new LongAdder();
+    private final Map<Command, LatencyHistogram> commandLatencies = new EnumMap<>(Command.class);
+
+    DefaultServerMetrics(ServerConfig serverConfig) {
+        this.serverConfig = serverConfig;
+        this.startTimeInMs = currentTimeMillis();
+        for (Command command : Command.values()) {
+            commandLatencies.put(command, new LatencyHistogram());
+        }
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void recordConnection() {
+        connectionCount.increment();
+    }
+
+    @Override
+    public void recordCommand(Command command, long durationInNanos) {
+        commandLatencies.get(command).record(durationInNanos);
+    }
+
+    @Override
+    public void recordGet(boolean hit) {
+        if (hit) {
+            getHitCount.increment();
+        } else {
+            getMissCount.increment();
+        }
+    }
+
+    long getConnectionCount() {
+        return connectionCount.sum();
+    }
+
+    long getGetHitCount() {
+        return getHitCount.sum();
+    }
+
+    long getGetMissCount() {
+        return getMissCount.sum();
+    }
+
+    LatencyHistogram getCommandLatency(Command command) {
+        return commandLatencies.get(command);
+    }
+
+    @Override
+    public Map<String, String> getStatistics() {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        long uptimeInMs = Math.max(1, currentTimeMillis() - startTimeInMs);
+        long commandCount = 0;
+        for (LatencyHistogram latency : commandLatencies.values()) {
+            commandCount += latency.getCount();
+        }
+        long hits = getHitCount.sum();
+        long misses = getMissCount.sum();
+        statistics.put("uptime_seconds", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(uptimeInMs)));
+        statistics.put("total_connections", String.valueOf(connectionCount.sum()));
+        statistics.put("total_commands", String.valueOf(commandCount));
+        statistics.put("commands_per_second", format(commandCount * 1000.0 / uptimeInMs));
+        statistics.put("get_hits", String.valueOf(hits));
+        statistics.put("get_misses", String.valueOf(misses));
+        statistics.put("get_hit_ratio", format(hits + misses == 0 ? 0 : (double) hits / (hits + misses)));
+        Storage storage = serverConfig.getStorage();
+        statistics.put("items", String.valueOf(storage.getItemCount()));
+        statistics.put("bytes", String.valueOf(storage.getUsedMemoryInBytes()));
+        statistics.put("evictions", String.valueOf(storage.getEvictionCount()));
+        for (Map.Entry<Command, LatencyHistogram> entry : commandLatencies.entrySet()) {
+            LatencyHistogram latency = entry.getValue();
+            if (latency.getCount() > 0) {
+                String prefix = "cmd_" + entry.getKey().name().toLowerCase(Locale.ROOT);
+                statistics.put(prefix, String.valueOf(latency.getCount()));
+                statistics.put(prefix + "_mean_us", toMicros(latency.getMean()));
+                statistics.put(prefix + "_p50_us", toMicros(latency.getPercentile(50)));
+                statistics.put(prefix + "_p99_us", toMicros(latency.getPercentile(99)));
+                statistics.put(prefix + "_p999_us", toMicros(latency.getPercentile(99.9)));
+                statistics.put(prefix + "_max_us", toMicros(latency.getMax()));
+            }
+        }
+        return statistics;
+    }
+
+    private String toMicros(long nanos) {
+        return format(nanos / 1000.0);
+    }
+
+    private String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
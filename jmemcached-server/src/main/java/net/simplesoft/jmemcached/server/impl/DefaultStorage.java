@@ -1,31 +1,73 @@
 package net.simplesoft.jmemcached.server.impl;
 
 import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.EvictionPolicyType;
 import net.simplesoft.jmemcached.server.ServerConfig;
 import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 class DefaultStorage implements Storage {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultStorage.class);
+    protected static final int READ_BUFFER_DRAIN_THRESHOLD = 64;
+    protected static final int READ_BUFFER_CAPACITY = 1024;
 
     protected final Map<String, StorageItem> map;
     protected final ExecutorService executorService;
-    protected final Runnable clearExpiredDataJob;
+    protected final ExpiryIndex expiryIndex;
+    protected final ClearExpiredDataJob clearExpiredDataJob;
+    // null if the memory is unbounded, otherwise guards all map modifications
+    protected final EvictionPolicy evictionPolicy;
+    protected final AtomicLong evictionCount = new AtomicLong();
+    protected final AtomicLong casSequence = new AtomicLong();
+    // updated by every map change, so reading the used memory never walks the map
+    protected final LongAdder usedMemoryInBytes = new LongAdder();
+    // gets are buffered and replayed on the eviction policy in batches, so a get rarely takes the eviction policy lock.
+    // Gets which find the buffer full are not recorded, like in Caffeine the policy only needs an approximate history
+    protected final Queue<String> readBuffer = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger readBufferSize = new AtomicInteger();
+    protected final AtomicBoolean readBufferDraining = new AtomicBoolean();
 
     DefaultStorage(ServerConfig serverConfig) {
         int clearDataIntervalInMs = serverConfig.getClearDataIntervalInMills();
         this.map = this.createMap();
+        this.evictionPolicy = this.createEvictionPolicy(serverConfig);
+        this.expiryIndex = new ExpiryIndex();
         this.executorService = this.createClearExpiredDataExecutorService();
-        this.clearExpiredDataJob = new ClearExpiredDataJob(this.map, clearDataIntervalInMs);
+        this.clearExpiredDataJob = new ClearExpiredDataJob(this.map, this.expiryIndex, clearDataIntervalInMs) {
+            @Override
+            protected boolean removeExpiredItem(String key, StorageItem item) {
+                return removeItem(key, item);
+            }
+        };
         executorService.submit(clearExpiredDataJob);
 
     }
 
+    protected EvictionPolicy createEvictionPolicy(ServerConfig serverConfig) {
+        long maxMemoryInBytes = serverConfig.getMaxMemoryInBytes();
+        if (maxMemoryInBytes <= 0) {
+            return null;
+        }
+        if (serverConfig.getEvictionPolicyType() == EvictionPolicyType.TINY_LFU) {
+            return new TinyLfuEvictionPolicy(maxMemoryInBytes);
+        }
+        return new LruEvictionPolicy(maxMemoryInBytes);
+    }
+
     protected Map<String, StorageItem> createMap() {
         return new ConcurrentHashMap<>();
     }
@@ -48,54 +90,502 @@ class DefaultStorage implements Storage {
 
     @Override
     public Status put(String key, Long ttl, byte[] data) {
-        StorageItem oldItem = this.map.put(key, new StorageItem(key, ttl, data));
-        return oldItem == null ? Status.ADDED : Status.REPLACED;
+        return put(key, ttl, data, 0);
+    }
+
+    @Override
+    public Status put(String key, Long ttl, byte[] data, long flags) {
+        StorageItem item = new StorageItem(key, ttl, data, flags, nextCas());
+        if (this.evictionPolicy == null) {
+            StorageItem oldItem = this.map.put(key, item);
+            updateExpiryIndex(key, oldItem, item);
+            updateUsedMemory(oldItem, item);
+            return oldItem == null ? Status.ADDED : Status.REPLACED;
+        }
+        synchronized (this.evictionPolicy) {
+            StorageItem oldItem = this.map.put(key, item);
+            updateExpiryIndex(key, oldItem, item);
+            updateUsedMemory(oldItem, item);
+            return evictOnPut(key, item, oldItem == null ? Status.ADDED : Status.REPLACED);
+        }
+    }
+
+    // TinyLFU may reject the new item itself if its key is used less often than the keys it would replace
+    protected Status evictOnPut(String key, StorageItem item, Status status) {
+        evict(recordPut(key, item.getWeight()));
+        return this.map.get(key) == item ? status : Status.NOT_STORED;
+    }
+
+    // the buffered gets are replayed first, so that the eviction decision sees them, the caller holds the policy lock
+    protected List<String> recordPut(String key, long weight) {
+        drainReadBuffer();
+        return this.evictionPolicy.recordPut(key, weight);
+    }
+
+    protected long nextCas() {
+        return this.casSequence.incrementAndGet();
+    }
+
+    protected void updateExpiryIndex(String key, StorageItem oldItem, StorageItem newItem) {
+        if (oldItem != null && oldItem.ttl != null) {
+            this.expiryIndex.remove(key, oldItem.ttl);
+        }
+        if (newItem != null && newItem.ttl != null) {
+            this.expiryIndex.add(key, newItem.ttl);
+        }
+    }
+
+    protected void updateUsedMemory(StorageItem oldItem, StorageItem newItem) {
+        long delta = (newItem != null ? newItem.getWeight() : 0) - (oldItem != null ? oldItem.getWeight() : 0);
+        if (delta != 0) {
+            this.usedMemoryInBytes.add(delta);
+        }
+    }
+
+    protected void evict(List<String> keys) {
+        for (String key : keys) {
+            StorageItem item = this.map.remove(key);
+            if (item != null) {
+                updateExpiryIndex(key, item, null);
+                updateUsedMemory(item, null);
+                this.evictionCount.incrementAndGet();
+                LOGGER.debug("evicted storage item={}", item);
+            }
+        }
     }
 
     @Override
     public byte[] get(String key) {
+        StorageItem item = getItem(key);
+        return item == null ? null : item.data;
+    }
+
+    @Override
+    public StoredValue getValue(String key) {
+        StorageItem item = getItem(key);
+        return item == null ? null : item.toStoredValue();
+    }
+
+    protected StorageItem getItem(String key) {
         StorageItem item = this.map.get(key);
         if (item == null || item.isExpired()) {
             return null;
         }
-        return item.data;
+        if (this.evictionPolicy != null) {
+            recordRead(key);
+        }
+        return item;
+    }
+
+    protected void recordRead(String key) {
+        if (this.readBufferSize.incrementAndGet() > READ_BUFFER_CAPACITY) {
+            this.readBufferSize.decrementAndGet();
+        } else {
+            this.readBuffer.offer(key);
+        }
+        // only one reader drains the buffer, the others do not wait for the lock
+        if (this.readBufferSize.get() >= READ_BUFFER_DRAIN_THRESHOLD && this.readBufferDraining.compareAndSet(false, true)) {
+            try {
+                synchronized (this.evictionPolicy) {
+                    drainReadBuffer();
+                }
+            } finally {
+                this.readBufferDraining.set(false);
+            }
+        }
+    }
+
+    // the caller holds the eviction policy lock, at most the buffer capacity is drained so that readers can't stall it
+    protected void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_CAPACITY; i++) {
+            String key = this.readBuffer.poll();
+            if (key == null) {
+                return;
+            }
+            this.readBufferSize.decrementAndGet();
+            this.evictionPolicy.recordAccess(key);
+        }
     }
 
     @Override
     public Status remove(String key) {
-        StorageItem item = this.map.remove(key);
+        StorageItem item = removeItem(key);
         if (item == null || item.isExpired()) {
             return Status.NOT_FOUND;
         }
         return Status.REMOVED;
     }
 
+    @Override
+    public StoredValue touch(String key, Long ttl) {
+        Long expiresAt = (ttl != null) ? ttl + System.currentTimeMillis() : null;
+        if (this.evictionPolicy == null) {
+            StorageItem item = touchItem(key, expiresAt);
+            return item == null ? null : item.toStoredValue();
+        }
+        synchronized (this.evictionPolicy) {
+            StorageItem item = touchItem(key, expiresAt);
+            if (item == null) {
+                return null;
+            }
+            drainReadBuffer();
+            this.evictionPolicy.recordAccess(key);
+            return item.toStoredValue();
+        }
+    }
+
+    protected StorageItem touchItem(String key, Long expiresAt) {
+        while (true) {
+            StorageItem oldItem = this.map.get(key);
+            if (oldItem == null || oldItem.isExpired()) {
+                return null;
+            }
+            StorageItem newItem = oldItem.withExpiresAt(expiresAt);
+            if (this.map.replace(key, oldItem, newItem)) {
+                updateExpiryIndex(key, oldItem, newItem);
+                return newItem;
+            }
+        }
+    }
+
+    @Override
+    public Status add(String key, Long ttl, byte[] data, long flags) {
+        StorageItem item = new StorageItem(key, ttl, data, flags, nextCas());
+        if (this.evictionPolicy == null) {
+            return addItem(key, item);
+        }
+        synchronized (this.evictionPolicy) {
+            Status status = addItem(key, item);
+            return status == Status.ADDED ? evictOnPut(key, item, status) : status;
+        }
+    }
+
+    // an expired item counts as missing and is overwritten only if it was not changed concurrently
+    protected Status addItem(String key, StorageItem item) {
+        while (true) {
+            StorageItem oldItem = this.map.get(key);
+            if (oldItem != null && !oldItem.isExpired()) {
+                return Status.EXISTS;
+            }
+            if (oldItem == null ? this.map.putIfAbsent(key, item) == null : this.map.replace(key, oldItem, item)) {
+                updateExpiryIndex(key, oldItem, item);
+                updateUsedMemory(oldItem, item);
+                return Status.ADDED;
+            }
+        }
+    }
+
+    @Override
+    public Status replace(String key, Long ttl, byte[] data, long flags) {
+        StorageItem item = new StorageItem(key, ttl, data, flags, nextCas());
+        if (this.evictionPolicy == null) {
+            return replaceItem(key, item);
+        }
+        synchronized (this.evictionPolicy) {
+            Status status = replaceItem(key, item);
+            return status == Status.REPLACED ? evictOnPut(key, item, status) : status;
+        }
+    }
+
+    protected Status replaceItem(String key, StorageItem item) {
+        while (true) {
+            StorageItem oldItem = this.map.get(key);
+            if (oldItem == null || oldItem.isExpired()) {
+                return Status.NOT_FOUND;
+            }
+            if (this.map.replace(key, oldItem, item)) {
+                updateExpiryIndex(key, oldItem, item);
+                updateUsedMemory(oldItem, item);
+                return Status.REPLACED;
+            }
+        }
+    }
+
+    @Override
+    public StoredValue concat(String key, byte[] data, boolean append) {
+        if (this.evictionPolicy == null) {
+            StorageItem item = concatItem(key, data, append);
+            return item == null ? null : item.toStoredValue();
+        }
+        synchronized (this.evictionPolicy) {
+            StorageItem item = concatItem(key, data, append);
+            if (item == null) {
+                return null;
+            }
+            if (!isConcatenable(item.flags)) {
+                return item.toStoredValue();
+            }
+            evict(recordPut(key, item.getWeight()));
+            return item.toStoredValue();
+        }
+    }
+
+    protected StorageItem concatItem(String key, byte[] data, boolean append) {
+        while (true) {
+            StorageItem oldItem = this.map.get(key);
+            if (oldItem == null || oldItem.isExpired()) {
+                return null;
+            }
+            if (!isConcatenable(oldItem.flags)) {
+                return oldItem;
+            }
+            StorageItem newItem = oldItem.withData(concat(oldItem.data, data, append), nextCas());
+            if (this.map.replace(key, oldItem, newItem)) {
+                updateUsedMemory(oldItem, newItem);
+                return newItem;
+            }
+        }
+    }
+
+    // raw bytes appended to a compressed stream or to a binary counter would corrupt the value
+    static boolean isConcatenable(long flags) {
+        return (flags & (DefaultCommandHandler.ITEM_FLAG_COMPRESSED | CounterValue.ITEM_FLAG_COUNTER)) == 0;
+    }
+
+    // a new array, so that readers of the old value are not affected
+    static byte[] concat(byte[] data, byte[] other, boolean append) {
+        if (other == null || other.length == 0) {
+            return data;
+        }
+        if (data == null || data.length == 0) {
+            return other;
+        }
+        byte[] first = append ? data : other;
+        byte[] second = append ? other : data;
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    @Override
+    public StoredValue updateCounter(String key, Long ttl, long delta, boolean increment) {
+        if (this.evictionPolicy == null) {
+            StorageItem item = updateCounterItem(key, ttl, delta, increment);
+            return item == null ? null : item.toStoredValue();
+        }
+        synchronized (this.evictionPolicy) {
+            StorageItem item = updateCounterItem(key, ttl, delta, increment);
+            if (item == null) {
+                return null;
+            }
+            evict(recordPut(key, item.getWeight()));
+            return item.toStoredValue();
+        }
+    }
+
+    // the item is replaced only if it was not changed concurrently, otherwise the update is retried
+    protected StorageItem updateCounterItem(String key, Long ttl, long delta, boolean increment) {
+        while (true) {
+            StorageItem oldItem = this.map.get(key);
+            if (oldItem == null || oldItem.isExpired()) {
+                byte[] data = CounterValue.toByteArray(CounterValue.update(0, delta, increment));
+                StorageItem newItem = new StorageItem(key, ttl, data, CounterValue.ITEM_FLAG_COUNTER, nextCas());
+                if (oldItem == null ? this.map.putIfAbsent(key, newItem) == null : this.map.replace(key, oldItem, newItem)) {
+                    updateExpiryIndex(key, oldItem, newItem);
+                    updateUsedMemory(oldItem, newItem);
+                    return newItem;
+                }
+            } else if (!CounterValue.isCounter(oldItem.data, oldItem.flags)) {
+                return null;
+            } else {
+                long value = CounterValue.update(CounterValue.toLong(oldItem.data), delta, increment);
+                StorageItem newItem = oldItem.withData(CounterValue.toByteArray(value), nextCas());
+                if (this.map.replace(key, oldItem, newItem)) {
+                    updateUsedMemory(oldItem, newItem);
+                    return newItem;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Status compareAndSet(String key, long cas, Long ttl, byte[] data, long flags) {
+        StorageItem newItem = new StorageItem(key, ttl, data, flags, nextCas());
+        if (this.evictionPolicy == null) {
+            return replaceItem(key, cas, newItem);
+        }
+        synchronized (this.evictionPolicy) {
+            Status status = replaceItem(key, cas, newItem);
+            return status == Status.REPLACED ? evictOnPut(key, newItem, status) : status;
+        }
+    }
+
+    // a concurrent write between the check and the replace changes the cas token as well
+    protected Status replaceItem(String key, long cas, StorageItem newItem) {
+        StorageItem oldItem = this.map.get(key);
+        if (oldItem == null || oldItem.isExpired()) {
+            return Status.NOT_FOUND;
+        }
+        if (oldItem.cas != cas || !this.map.replace(key, oldItem, newItem)) {
+            return Status.EXISTS;
+        }
+        updateExpiryIndex(key, oldItem, newItem);
+        updateUsedMemory(oldItem, newItem);
+        return Status.REPLACED;
+    }
+
+    protected StorageItem removeItem(String key) {
+        if (this.evictionPolicy == null) {
+            StorageItem item = this.map.remove(key);
+            updateExpiryIndex(key, item, null);
+            updateUsedMemory(item, null);
+            return item;
+        }
+        synchronized (this.evictionPolicy) {
+            StorageItem item = this.map.remove(key);
+            if (item != null) {
+                updateExpiryIndex(key, item, null);
+                updateUsedMemory(item, null);
+                this.evictionPolicy.recordRemove(key);
+            }
+            return item;
+        }
+    }
+
+    // removes the item only if it was not replaced concurrently
+    protected boolean removeItem(String key, StorageItem item) {
+        if (this.evictionPolicy == null) {
+            if (this.map.remove(key, item)) {
+                updateUsedMemory(item, null);
+                return true;
+            }
+            return false;
+        }
+        synchronized (this.evictionPolicy) {
+            if (this.map.remove(key, item)) {
+                updateUsedMemory(item, null);
+                this.evictionPolicy.recordRemove(key);
+                return true;
+            }
+            return false;
+        }
+    }
+
     @Override
     public Status clear() {
-        this.map.clear();
+        if (this.evictionPolicy == null) {
+            // items are removed one by one, so that the used memory and the expiry index stay exact under
+            // concurrent writes
+            for (Map.Entry<String, StorageItem> entry : this.map.entrySet()) {
+                if (this.map.remove(entry.getKey(), entry.getValue())) {
+                    updateExpiryIndex(entry.getKey(), entry.getValue(), null);
+                    updateUsedMemory(entry.getValue(), null);
+                }
+            }
+            return Status.CLEARED;
+        }
+        synchronized (this.evictionPolicy) {
+            this.map.clear();
+            this.expiryIndex.clear();
+            drainReadBuffer();
+            this.evictionPolicy.clear();
+            this.usedMemoryInBytes.reset();
+        }
         return Status.CLEARED;
     }
 
+    @Override
+    public void forEach(StorageVisitor visitor) {
+        // the concurrent map iterator is weakly consistent, so puts and gets are not blocked
+        for (StorageItem item : this.map.values()) {
+            if (!item.isExpired()) {
+                visitor.visit(item.key, item.ttl, item.data, item.flags);
+            }
+        }
+    }
+
+    @Override
+    public long getItemCount() {
+        return this.map.size();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    long getExpiredCount() {
+        return this.clearExpiredDataJob.getExpiredCount();
+    }
+
+    @Override
+    public long getUsedMemoryInBytes() {
+        return this.usedMemoryInBytes.sum();
+    }
+
     @Override
     public void close() throws Exception {
-        //Do nothing. daemon threads are destroyed automatically.
+        this.executorService.shutdownNow();
     }
 
     protected static class StorageItem {
+        // approximate size of the map entry, item object, key string and array headers
+        protected static final int OVERHEAD_IN_BYTES = 96;
+
         private final String key;
         private final byte[] data;
         private final Long ttl;
+        private final long flags;
+        private final long cas;
 
         protected StorageItem(String key, Long ttl, byte[] data) {
+            this(key, ttl, data, 0, 0);
+        }
+
+        protected StorageItem(String key, Long ttl, byte[] data, long flags, long cas) {
+            this(key, data, flags, (ttl != null) ? ttl + System.currentTimeMillis() : null, cas);
+        }
+
+        private StorageItem(String key, byte[] data, long flags, Long expiresAt, long cas) {
             this.key = key;
             this.data = data;
-            this.ttl = (ttl != null) ? ttl + System.currentTimeMillis() : null;
+            this.ttl = expiresAt;
+            this.flags = flags;
+            this.cas = cas;
+        }
+
+        // a new item with the same key, expiration time and flags, the data of an item is never modified in place
+        protected StorageItem withData(byte[] data, long cas) {
+            return new StorageItem(this.key, data, this.flags, this.ttl, cas);
+        }
+
+        protected StorageItem withExpiresAt(Long expiresAt) {
+            return new StorageItem(this.key, this.data, this.flags, expiresAt, this.cas);
         }
 
         protected boolean isExpired() {
             return ttl != null && ttl.longValue() < System.currentTimeMillis();
         }
 
+        protected String getKey() {
+            return key;
+        }
+
+        protected byte[] getData() {
+            return data;
+        }
+
+        // expiration time in ms or null
+        protected Long getTtl() {
+            return ttl;
+        }
+
+        protected long getFlags() {
+            return flags;
+        }
+
+        protected long getCas() {
+            return cas;
+        }
+
+        protected StoredValue toStoredValue() {
+            return new StoredValue(data, flags, ttl, cas);
+        }
+
+        protected long getWeight() {
+            return OVERHEAD_IN_BYTES + 2L * key.length() + (data == null ? 0 : data.length);
+        }
+
         @Override
         public String toString() {
             final StringBuilder sb = new StringBuilder("[").append(key).append("]=");
@@ -114,10 +604,16 @@ class DefaultStorage implements Storage {
     protected static class ClearExpiredDataJob implements Runnable {
 
         private final Map<String, StorageItem> map;
-        private final int clearDataIntervalInMs;
+        private final ExpiryIndex expiryIndex;
+        private volatile int clearDataIntervalInMs;
+        private final AtomicLong expiredCount = new AtomicLong();
+        private volatile long lastSweepTimeInMs;
+        private volatile long lastSweepDurationInNanos;
+        private volatile double expiredPerSecond;
 
-        public ClearExpiredDataJob(Map<String, StorageItem> map, int clearDataIntervalInMs) {
+        public ClearExpiredDataJob(Map<String, StorageItem> map, ExpiryIndex expiryIndex, int clearDataIntervalInMs) {
             this.map = map;
+            this.expiryIndex = expiryIndex;
             this.clearDataIntervalInMs = clearDataIntervalInMs;
         }
 
@@ -125,8 +621,17 @@ class DefaultStorage implements Storage {
             return Thread.interrupted();
         }
 
-        protected void sleepClearExpiredDataJob() throws InterruptedException {
-            TimeUnit.MILLISECONDS.sleep(this.clearDataIntervalInMs);
+        protected boolean removeExpiredItem(String key, StorageItem item) {
+            return this.map.remove(key, item);
+        }
+
+        // woken up by an interval change, so that a shorter interval is applied without waiting for the old one
+        protected synchronized void sleepClearExpiredDataJob() throws InterruptedException {
+            wait(this.clearDataIntervalInMs);
+        }
+
+        protected long currentTimeMillis() {
+            return System.currentTimeMillis();
         }
 
         @Override
@@ -134,19 +639,7 @@ class DefaultStorage implements Storage {
             LOGGER.debug("ClearExpiredDataJobThread started with interval {} ms", clearDataIntervalInMs);
             while (!interrupted()) {
                 LOGGER.trace("Invoke clear job");
-                for (Map.Entry<String, StorageItem> entry : this.map.entrySet()) {
-                    if (entry.getValue().isExpired()) {
-                        StorageItem item = this.map.remove(entry.getKey());
-                        LOGGER.debug("removed expired storage item=" + item);
-                    }
-                }
-
-             /*   this.map.entrySet().stream()
-                        .filter(e->e.getValue().isExpired())
-                        .peek((item)->LOGGER.debug("removed expired storage item=" + item))
-                        .forEach(this.map::remove);*/
-                //    this.map.values().removeIf(StorageItem::isExpired);
-
+                sweep();
                 try {
                     sleepClearExpiredDataJob();
                 } catch (InterruptedException e) {
@@ -154,5 +647,46 @@ class DefaultStorage implements Storage {
                 }
             }
         }
+
+        protected void sweep() {
+            long start = System.nanoTime();
+            long now = currentTimeMillis();
+            int expired = 0;
+            // only the keys which are due are polled, the index may still hold stale keys of replaced items
+            for (String key : this.expiryIndex.pollExpired(now)) {
+                StorageItem item = this.map.get(key);
+                if (item != null && item.isExpired() && removeExpiredItem(key, item)) {
+                    expired++;
+                    LOGGER.debug("removed expired storage item=" + item);
+                }
+            }
+            this.expiredCount.addAndGet(expired);
+            this.lastSweepDurationInNanos = System.nanoTime() - start;
+            if (this.lastSweepTimeInMs > 0 && now > this.lastSweepTimeInMs) {
+                this.expiredPerSecond = expired * 1000.0 / (now - this.lastSweepTimeInMs);
+            }
+            this.lastSweepTimeInMs = now;
+        }
+
+        long getExpiredCount() {
+            return this.expiredCount.get();
+        }
+
+        int getClearDataIntervalInMs() {
+            return this.clearDataIntervalInMs;
+        }
+
+        synchronized void setClearDataIntervalInMs(int clearDataIntervalInMs) {
+            this.clearDataIntervalInMs = clearDataIntervalInMs;
+            notifyAll();
+        }
+
+        long getLastSweepDurationInNanos() {
+            return this.lastSweepDurationInNanos;
+        }
+
+        double getExpiredPerSecond() {
+            return this.expiredPerSecond;
+        }
     }
 }
@@ -0,0 +1,18 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import java.util.List;
+
+// Implementations are not thread safe: the owning storage guards every call with its own lock
+interface EvictionPolicy {
+
+    void recordAccess(String key);
+
+    // returns keys to remove from the storage to fit into the memory limit, the put key itself may be among them
+    List<String> recordPut(String key, long weight);
+
+    void recordRemove(String key);
+
+    void clear();
+
+    long getWeightedSize();
+}
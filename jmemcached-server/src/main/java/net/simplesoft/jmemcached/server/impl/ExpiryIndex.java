@@ -0,0 +1,65 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Keys ordered by expiration time, so a sweep touches only the entries which are already due.
+// Entries are hints only: the storage must recheck the item before removing it.
+class ExpiryIndex {
+
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+
+    void add(String key, long expiresAt) {
+        entries.add(new Entry(expiresAt, key));
+    }
+
+    void remove(String key, long expiresAt) {
+        entries.remove(new Entry(expiresAt, key));
+    }
+
+    List<String> pollExpired(long now) {
+        List<String> keys = new ArrayList<>();
+        Iterator<Entry> iterator = entries.headSet(new Entry(now, "")).iterator();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().key);
+            iterator.remove();
+        }
+        return keys;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final long expiresAt;
+        private final String key;
+
+        private Entry(long expiresAt, String key) {
+            this.expiresAt = expiresAt;
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = Long.compare(expiresAt, other.expiresAt);
+            return result != 0 ? result : key.compareTo(other.key);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && compareTo((Entry) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(expiresAt) + key.hashCode();
+        }
+    }
+}
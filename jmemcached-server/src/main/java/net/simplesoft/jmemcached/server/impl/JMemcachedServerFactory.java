@@ -1,14 +1,18 @@
 package net.simplesoft.jmemcached.server.impl;
 
 import net.simplesoft.jmemcached.server.Server;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMode;
 
 import java.util.Properties;
 
 public class JMemcachedServerFactory {
 
     public static Server buildNewServer(Properties overrideApplicationProperties) {
-        return new DefaultServer(new DefaultServerConfig(overrideApplicationProperties));
+        ServerConfig serverConfig = new DefaultServerConfig(overrideApplicationProperties);
+        if (serverConfig.getServerMode() == ServerMode.NIO) {
+            return new NioServer(serverConfig);
+        }
+        return new DefaultServer(serverConfig);
     }
-
-    ;
 }
@@ -0,0 +1,204 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
+
+// Durable storage mode: every modification is applied to the delegate and appended to the log,
+// the caller returns only after the record is fsynced together with the other records of its batch.
+class LoggedStorage implements Storage {
+
+    private final Storage storage;
+    private final AppendOnlyLog appendOnlyLog;
+
+    LoggedStorage(Storage storage, AppendOnlyLog appendOnlyLog) {
+        this.storage = storage;
+        this.appendOnlyLog = appendOnlyLog;
+    }
+
+    Storage getStorage() {
+        return storage;
+    }
+
+    AppendOnlyLog getAppendOnlyLog() {
+        return appendOnlyLog;
+    }
+
+    @Override
+    public Status put(String key, Long ttl, byte[] data) {
+        return put(key, ttl, data, 0);
+    }
+
+    @Override
+    public Status put(String key, Long ttl, byte[] data, long flags) {
+        byte[] record = AppendOnlyLog.putRecord(key, ttl != null ? ttl + System.currentTimeMillis() : null, data, flags);
+        Status status;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            status = storage.put(key, ttl, data, flags);
+            sequence = appendOnlyLog.append(record);
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return status;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return storage.get(key);
+    }
+
+    @Override
+    public StoredValue getValue(String key) {
+        return storage.getValue(key);
+    }
+
+    @Override
+    public Status remove(String key) {
+        byte[] record = AppendOnlyLog.removeRecord(key);
+        Status status;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            status = storage.remove(key);
+            sequence = appendOnlyLog.append(record);
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return status;
+    }
+
+    // only the key and the new expiration time are logged, the data is not written again
+    @Override
+    public StoredValue touch(String key, Long ttl) {
+        StoredValue value;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            value = storage.touch(key, ttl);
+            if (value == null) {
+                return null;
+            }
+            sequence = appendOnlyLog.append(AppendOnlyLog.touchRecord(key, value.getExpiresAt()));
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return value;
+    }
+
+    @Override
+    public Status add(String key, Long ttl, byte[] data, long flags) {
+        byte[] record = AppendOnlyLog.putRecord(key, ttl != null ? ttl + System.currentTimeMillis() : null, data, flags);
+        Status status;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            status = storage.add(key, ttl, data, flags);
+            if (status != Status.ADDED) {
+                return status;
+            }
+            sequence = appendOnlyLog.append(record);
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return status;
+    }
+
+    @Override
+    public Status replace(String key, Long ttl, byte[] data, long flags) {
+        byte[] record = AppendOnlyLog.putRecord(key, ttl != null ? ttl + System.currentTimeMillis() : null, data, flags);
+        Status status;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            status = storage.replace(key, ttl, data, flags);
+            if (status != Status.REPLACED) {
+                return status;
+            }
+            sequence = appendOnlyLog.append(record);
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return status;
+    }
+
+    // the whole concatenated value is logged as a put, like an updated counter
+    @Override
+    public StoredValue concat(String key, byte[] data, boolean append) {
+        StoredValue value;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            value = storage.concat(key, data, append);
+            if (value == null || !DefaultStorage.isConcatenable(value.getFlags())) {
+                return value;
+            }
+            sequence = appendOnlyLog.append(AppendOnlyLog.putRecord(key, value.getExpiresAt(), value.getData(), value.getFlags()));
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return value;
+    }
+
+    // the updated counter is logged as a put, so the replay does not depend on the order of expirations
+    @Override
+    public StoredValue updateCounter(String key, Long ttl, long delta, boolean increment) {
+        StoredValue value;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            value = storage.updateCounter(key, ttl, delta, increment);
+            if (value == null) {
+                return null;
+            }
+            sequence = appendOnlyLog.append(AppendOnlyLog.putRecord(key, value.getExpiresAt(), value.getData(), value.getFlags()));
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return value;
+    }
+
+    // only a successful swap is logged, a failed one does not modify the storage
+    @Override
+    public Status compareAndSet(String key, long cas, Long ttl, byte[] data, long flags) {
+        byte[] record = AppendOnlyLog.putRecord(key, ttl != null ? ttl + System.currentTimeMillis() : null, data, flags);
+        Status status;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            status = storage.compareAndSet(key, cas, ttl, data, flags);
+            if (status != Status.REPLACED) {
+                return status;
+            }
+            sequence = appendOnlyLog.append(record);
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return status;
+    }
+
+    @Override
+    public Status clear() {
+        Status status;
+        long sequence;
+        synchronized (appendOnlyLog) {
+            status = storage.clear();
+            sequence = appendOnlyLog.append(AppendOnlyLog.clearRecord());
+        }
+        appendOnlyLog.awaitSync(sequence);
+        return status;
+    }
+
+    @Override
+    public void forEach(StorageVisitor visitor) {
+        storage.forEach(visitor);
+    }
+
+    @Override
+    public long getItemCount() {
+        return storage.getItemCount();
+    }
+
+    @Override
+    public long getUsedMemoryInBytes() {
+        return storage.getUsedMemoryInBytes();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return storage.getEvictionCount();
+    }
+
+    @Override
+    public void close() throws Exception {
+        // pending records are synced before the delegate is closed
+        appendOnlyLog.close();
+        storage.close();
+    }
+}
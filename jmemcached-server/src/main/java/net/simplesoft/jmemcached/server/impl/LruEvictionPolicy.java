@@ -0,0 +1,61 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class LruEvictionPolicy implements EvictionPolicy {
+
+    private final long maxWeight;
+    private final LinkedHashMap<String, Long> weights = new LinkedHashMap<>(16, 0.75f, true);
+    private long weightedSize;
+
+    LruEvictionPolicy(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        weights.get(key);
+    }
+
+    @Override
+    public List<String> recordPut(String key, long weight) {
+        Long oldWeight = weights.put(key, weight);
+        weightedSize += weight - (oldWeight == null ? 0 : oldWeight);
+        if (weightedSize <= maxWeight) {
+            return Collections.emptyList();
+        }
+        List<String> victims = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> iterator = weights.entrySet().iterator();
+        while (weightedSize > maxWeight && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            weightedSize -= eldest.getValue();
+            victims.add(eldest.getKey());
+        }
+        return victims;
+    }
+
+    @Override
+    public void recordRemove(String key) {
+        Long weight = weights.remove(key);
+        if (weight != null) {
+            weightedSize -= weight;
+        }
+    }
+
+    @Override
+    public void clear() {
+        weights.clear();
+        weightedSize = 0;
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+}
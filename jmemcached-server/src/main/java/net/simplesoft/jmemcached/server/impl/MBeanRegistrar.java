@@ -0,0 +1,49 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+
+// JMX is a diagnostic channel only, so registration failures are logged and never stop the server
+class MBeanRegistrar {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MBeanRegistrar.class);
+
+    static final String DOMAIN = "net.simplesoft.jmemcached";
+
+    private MBeanRegistrar() {
+    }
+
+    // returns the registered name or null if the registration failed
+    static <T> ObjectName register(String type, T mbean, Class<T> mbeanInterface) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN, "type", type);
+            getMBeanServer().registerMBean(new StandardMBean(mbean, mbeanInterface), objectName);
+            LOGGER.debug("Registered MBean {}", objectName);
+            return objectName;
+        } catch (JMException e) {
+            LOGGER.warn("Can't register MBean of type " + type + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            getMBeanServer().unregisterMBean(objectName);
+            LOGGER.debug("Unregistered MBean {}", objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Can't unregister MBean " + objectName + ": " + e.getMessage(), e);
+        }
+    }
+
+    static MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+}
@@ -0,0 +1,415 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// memcached binary protocol: https://github.com/memcached/memcached/wiki/BinaryProtocolRevamped
+class MemcachedBinaryProtocol extends AbstractMemcachedProtocol {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemcachedBinaryProtocol.class);
+    private static final int RESPONSE_MAGIC = 0x81;
+    private static final int HEADER_SIZE = 24;
+    private static final long NO_INITIAL_VALUE = 0xFFFFFFFFL;
+
+    static final int OPCODE_GET = 0x00;
+    static final int OPCODE_SET = 0x01;
+    static final int OPCODE_ADD = 0x02;
+    static final int OPCODE_REPLACE = 0x03;
+    static final int OPCODE_DELETE = 0x04;
+    static final int OPCODE_INCREMENT = 0x05;
+    static final int OPCODE_DECREMENT = 0x06;
+    static final int OPCODE_QUIT = 0x07;
+    static final int OPCODE_FLUSH = 0x08;
+    static final int OPCODE_GETQ = 0x09;
+    static final int OPCODE_NOOP = 0x0a;
+    static final int OPCODE_VERSION = 0x0b;
+    static final int OPCODE_GETK = 0x0c;
+    static final int OPCODE_GETKQ = 0x0d;
+    static final int OPCODE_APPEND = 0x0e;
+    static final int OPCODE_PREPEND = 0x0f;
+    static final int OPCODE_STAT = 0x10;
+    static final int OPCODE_SETQ = 0x11;
+    static final int OPCODE_ADDQ = 0x12;
+    static final int OPCODE_REPLACEQ = 0x13;
+    static final int OPCODE_DELETEQ = 0x14;
+    static final int OPCODE_INCREMENTQ = 0x15;
+    static final int OPCODE_DECREMENTQ = 0x16;
+    static final int OPCODE_QUITQ = 0x17;
+    static final int OPCODE_FLUSHQ = 0x18;
+    static final int OPCODE_APPENDQ = 0x19;
+    static final int OPCODE_PREPENDQ = 0x1a;
+    static final int OPCODE_TOUCH = 0x1c;
+    static final int OPCODE_GAT = 0x1d;
+    static final int OPCODE_GATQ = 0x1e;
+    static final int OPCODE_GATK = 0x23;
+    static final int OPCODE_GATKQ = 0x24;
+
+    static final int STATUS_NO_ERROR = 0x0000;
+    static final int STATUS_KEY_NOT_FOUND = 0x0001;
+    static final int STATUS_KEY_EXISTS = 0x0002;
+    static final int STATUS_INVALID_ARGUMENTS = 0x0004;
+    static final int STATUS_ITEM_NOT_STORED = 0x0005;
+    static final int STATUS_NON_NUMERIC_VALUE = 0x0006;
+    static final int STATUS_UNKNOWN_COMMAND = 0x0081;
+    static final int STATUS_NOT_SUPPORTED = 0x0083;
+    static final int STATUS_INTERNAL_ERROR = 0x0084;
+
+    MemcachedBinaryProtocol(ServerConfig serverConfig) {
+        super(serverConfig);
+    }
+
+    @Override
+    boolean handle(InputStream inputStream, OutputStream outputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        if (dataInputStream.readUnsignedByte() != BINARY_REQUEST_MAGIC) {
+            LOGGER.warn("Invalid memcached binary request magic, closing connection");
+            return false;
+        }
+        BinaryRequest request = new BinaryRequest();
+        request.opcode = dataInputStream.readUnsignedByte();
+        int keyLength = dataInputStream.readUnsignedShort();
+        int extrasLength = dataInputStream.readUnsignedByte();
+        // data type and vbucket id are not used
+        dataInputStream.readUnsignedByte();
+        dataInputStream.readUnsignedShort();
+        int bodyLength = dataInputStream.readInt();
+        request.opaque = dataInputStream.readInt();
+        request.cas = dataInputStream.readLong();
+        if (bodyLength < 0 || bodyLength < keyLength + extrasLength) {
+            LOGGER.warn("Invalid memcached binary request body length {}, closing connection", bodyLength);
+            return false;
+        }
+        request.extras = new byte[extrasLength];
+        dataInputStream.readFully(request.extras);
+        byte[] key = new byte[keyLength];
+        dataInputStream.readFully(key);
+        request.key = new String(key, StandardCharsets.UTF_8);
+        request.value = new byte[bodyLength - keyLength - extrasLength];
+        dataInputStream.readFully(request.value);
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream(HEADER_SIZE);
+        boolean keepOpen = true;
+        try {
+            keepOpen = handleRequest(request, response);
+        } catch (RuntimeException e) {
+            LOGGER.error("Handle memcached request failed: " + e.getMessage(), e);
+            response.reset();
+            writeError(response, request, STATUS_INTERNAL_ERROR, String.valueOf(e.getMessage()));
+        }
+        response.writeTo(outputStream);
+        return keepOpen;
+    }
+
+    protected boolean handleRequest(BinaryRequest request, OutputStream response) throws IOException {
+        switch (request.opcode) {
+            case OPCODE_GET:
+            case OPCODE_GETQ:
+            case OPCODE_GETK:
+            case OPCODE_GETKQ:
+            case OPCODE_GAT:
+            case OPCODE_GATQ:
+            case OPCODE_GATK:
+            case OPCODE_GATKQ:
+                handleGet(request, response);
+                break;
+            case OPCODE_SET:
+            case OPCODE_SETQ:
+            case OPCODE_ADD:
+            case OPCODE_ADDQ:
+            case OPCODE_REPLACE:
+            case OPCODE_REPLACEQ:
+                handleStore(request, response);
+                break;
+            case OPCODE_APPEND:
+            case OPCODE_APPENDQ:
+            case OPCODE_PREPEND:
+            case OPCODE_PREPENDQ:
+                handleConcat(request, response);
+                break;
+            case OPCODE_DELETE:
+            case OPCODE_DELETEQ:
+                handleDelete(request, response);
+                break;
+            case OPCODE_INCREMENT:
+            case OPCODE_INCREMENTQ:
+            case OPCODE_DECREMENT:
+            case OPCODE_DECREMENTQ:
+                handleCounter(request, response);
+                break;
+            case OPCODE_TOUCH:
+                handleTouch(request, response);
+                break;
+            case OPCODE_FLUSH:
+            case OPCODE_FLUSHQ:
+                handleFlush(request, response);
+                break;
+            case OPCODE_STAT:
+                handleStat(request, response);
+                break;
+            case OPCODE_NOOP:
+                writeResponse(response, request, STATUS_NO_ERROR, EMPTY, "", EMPTY, 0);
+                break;
+            case OPCODE_VERSION:
+                writeResponse(response, request, STATUS_NO_ERROR, EMPTY, "",
+                        VERSION.getBytes(StandardCharsets.US_ASCII), 0);
+                break;
+            case OPCODE_QUIT:
+            case OPCODE_QUITQ:
+                writeSuccess(response, request);
+                return false;
+            default:
+                writeError(response, request, STATUS_UNKNOWN_COMMAND, "Unknown command");
+        }
+        return true;
+    }
+
+    protected void handleGet(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        int opcode = request.opcode;
+        boolean touch = opcode == OPCODE_GAT || opcode == OPCODE_GATQ || opcode == OPCODE_GATK
+                || opcode == OPCODE_GATKQ;
+        if (!checkRequest(request, touch ? 4 : 0, true, false, response)) {
+            return;
+        }
+        Long ttl = touch ? toTtl(ByteBuffer.wrap(request.extras).getInt() & 0xFFFFFFFFL) : null;
+        StoredValue value = get(request.key, touch, ttl);
+        recordCommand(touch ? Command.GAT : Command.GET, start);
+        boolean withKey = opcode == OPCODE_GETK || opcode == OPCODE_GETKQ || opcode == OPCODE_GATK
+                || opcode == OPCODE_GATKQ;
+        if (value != null) {
+            byte[] flags = ByteBuffer.allocate(4).putInt(getClientFlags(value)).array();
+            writeResponse(response, request, STATUS_NO_ERROR, flags, withKey ? request.key : "", getData(value),
+                    value.getCas());
+        } else if (!isQuiet(request)) {
+            writeResponse(response, request, STATUS_KEY_NOT_FOUND, EMPTY, withKey ? request.key : "",
+                    "Not found".getBytes(StandardCharsets.US_ASCII), 0);
+        }
+    }
+
+    protected void handleStore(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        if (!checkRequest(request, 8, true, true, response)) {
+            return;
+        }
+        ByteBuffer extras = ByteBuffer.wrap(request.extras);
+        long flags = extras.getInt() & CLIENT_FLAGS_MASK;
+        Long ttl = toTtl(extras.getInt() & 0xFFFFFFFFL);
+        int opcode = request.opcode;
+        Command command;
+        int status;
+        if ((opcode == OPCODE_SET || opcode == OPCODE_SETQ || opcode == OPCODE_REPLACE || opcode == OPCODE_REPLACEQ)
+                && request.cas != 0) {
+            command = Command.CAS;
+            Status result = this.storage.compareAndSet(request.key, request.cas, ttl, request.value, flags);
+            status = result == Status.REPLACED ? STATUS_NO_ERROR : result == Status.EXISTS ? STATUS_KEY_EXISTS
+                    : result == Status.NOT_STORED ? STATUS_ITEM_NOT_STORED : STATUS_KEY_NOT_FOUND;
+        } else if (opcode == OPCODE_SET || opcode == OPCODE_SETQ) {
+            command = Command.PUT;
+            Status result = this.storage.put(request.key, ttl, request.value, flags);
+            status = result == Status.NOT_STORED ? STATUS_ITEM_NOT_STORED : STATUS_NO_ERROR;
+        } else if (opcode == OPCODE_ADD || opcode == OPCODE_ADDQ) {
+            command = Command.ADD;
+            Status result = this.storage.add(request.key, ttl, request.value, flags);
+            status = result == Status.ADDED ? STATUS_NO_ERROR
+                    : result == Status.NOT_STORED ? STATUS_ITEM_NOT_STORED : STATUS_KEY_EXISTS;
+        } else {
+            command = Command.REPLACE;
+            Status result = this.storage.replace(request.key, ttl, request.value, flags);
+            status = result == Status.REPLACED ? STATUS_NO_ERROR
+                    : result == Status.NOT_STORED ? STATUS_ITEM_NOT_STORED : STATUS_KEY_NOT_FOUND;
+        }
+        recordCommand(command, start);
+        writeStatus(response, request, status);
+    }
+
+    protected void handleConcat(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        if (!checkRequest(request, 0, true, true, response) || !checkNoCas(request, response)) {
+            return;
+        }
+        boolean append = request.opcode == OPCODE_APPEND || request.opcode == OPCODE_APPENDQ;
+        StoredValue value = this.storage.concat(request.key, request.value, append);
+        recordCommand(append ? Command.APPEND : Command.PREPEND, start);
+        boolean stored = value != null && DefaultStorage.isConcatenable(value.getFlags());
+        writeStatus(response, request, stored ? STATUS_NO_ERROR : STATUS_ITEM_NOT_STORED);
+    }
+
+    protected void handleDelete(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        if (!checkRequest(request, 0, true, false, response) || !checkNoCas(request, response)) {
+            return;
+        }
+        Status result = this.storage.remove(request.key);
+        recordCommand(Command.REMOVE, start);
+        writeStatus(response, request, result == Status.REMOVED ? STATUS_NO_ERROR : STATUS_KEY_NOT_FOUND);
+    }
+
+    protected void handleCounter(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        if (!checkRequest(request, 20, true, false, response)) {
+            return;
+        }
+        ByteBuffer extras = ByteBuffer.wrap(request.extras);
+        long delta = extras.getLong();
+        long initial = extras.getLong();
+        long expiration = extras.getInt() & 0xFFFFFFFFL;
+        boolean increment = request.opcode == OPCODE_INCREMENT || request.opcode == OPCODE_INCREMENTQ;
+        Long counter;
+        try {
+            counter = expiration == NO_INITIAL_VALUE
+                    ? updateCounter(request.key, delta, increment, null, null)
+                    : updateCounter(request.key, delta, increment, initial, toTtl(expiration));
+        } catch (NumberFormatException e) {
+            writeError(response, request, STATUS_NON_NUMERIC_VALUE, "Non-numeric server-side value for incr or decr");
+            return;
+        }
+        recordCommand(increment ? Command.INCR : Command.DECR, start);
+        if (counter == null) {
+            writeError(response, request, STATUS_KEY_NOT_FOUND, "Not found");
+        } else if (!isQuiet(request)) {
+            writeResponse(response, request, STATUS_NO_ERROR, EMPTY, "",
+                    ByteBuffer.allocate(8).putLong(counter).array(), 0);
+        }
+    }
+
+    protected void handleTouch(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        if (!checkRequest(request, 4, true, false, response)) {
+            return;
+        }
+        Long ttl = toTtl(ByteBuffer.wrap(request.extras).getInt() & 0xFFFFFFFFL);
+        StoredValue value = this.storage.touch(request.key, ttl);
+        recordCommand(Command.TOUCH, start);
+        writeStatus(response, request, value != null ? STATUS_NO_ERROR : STATUS_KEY_NOT_FOUND);
+    }
+
+    protected void handleFlush(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        if (request.extras.length != 0 && request.extras.length != 4 || !request.key.isEmpty()) {
+            writeError(response, request, STATUS_INVALID_ARGUMENTS, "Invalid arguments");
+            return;
+        }
+        if (request.extras.length == 4 && ByteBuffer.wrap(request.extras).getInt() != 0) {
+            writeError(response, request, STATUS_NOT_SUPPORTED, "Delayed flush is not supported");
+            return;
+        }
+        this.storage.clear();
+        recordCommand(Command.CLEAR, start);
+        writeStatus(response, request, STATUS_NO_ERROR);
+    }
+
+    protected void handleStat(BinaryRequest request, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        // one response per statistic, terminated by a response with an empty key
+        for (Map.Entry<String, String> entry : this.serverMetrics.getStatistics().entrySet()) {
+            if (request.key.isEmpty() || request.key.equals(entry.getKey())) {
+                writeResponse(response, request, STATUS_NO_ERROR, EMPTY, entry.getKey(),
+                        entry.getValue().getBytes(StandardCharsets.US_ASCII), 0);
+            }
+        }
+        writeResponse(response, request, STATUS_NO_ERROR, EMPTY, "", EMPTY, 0);
+        recordCommand(Command.STATS, start);
+    }
+
+    protected boolean checkRequest(BinaryRequest request, int extrasLength, boolean withKey, boolean withValue,
+                                   OutputStream response) throws IOException {
+        if (request.extras.length != extrasLength || request.key.isEmpty() == withKey
+                || !withValue && request.value.length != 0) {
+            writeError(response, request, STATUS_INVALID_ARGUMENTS, "Invalid arguments");
+            return false;
+        }
+        return true;
+    }
+
+    protected boolean checkNoCas(BinaryRequest request, OutputStream response) throws IOException {
+        if (request.cas != 0) {
+            writeError(response, request, STATUS_NOT_SUPPORTED, "CAS is not supported for this command");
+            return false;
+        }
+        return true;
+    }
+
+    protected boolean isQuiet(BinaryRequest request) {
+        switch (request.opcode) {
+            case OPCODE_GETQ:
+            case OPCODE_GETKQ:
+            case OPCODE_GATQ:
+            case OPCODE_GATKQ:
+            case OPCODE_SETQ:
+            case OPCODE_ADDQ:
+            case OPCODE_REPLACEQ:
+            case OPCODE_DELETEQ:
+            case OPCODE_INCREMENTQ:
+            case OPCODE_DECREMENTQ:
+            case OPCODE_QUITQ:
+            case OPCODE_FLUSHQ:
+            case OPCODE_APPENDQ:
+            case OPCODE_PREPENDQ:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // quiet commands report errors only
+    protected void writeStatus(OutputStream response, BinaryRequest request, int status) throws IOException {
+        if (status == STATUS_NO_ERROR) {
+            writeSuccess(response, request);
+        } else {
+            writeError(response, request, status, status == STATUS_KEY_EXISTS ? "Data exists for key."
+                    : status == STATUS_ITEM_NOT_STORED ? "Not stored." : "Not found");
+        }
+    }
+
+    protected void writeSuccess(OutputStream response, BinaryRequest request) throws IOException {
+        if (!isQuiet(request)) {
+            writeResponse(response, request, STATUS_NO_ERROR, EMPTY, "", EMPTY, 0);
+        }
+    }
+
+    protected void writeError(OutputStream response, BinaryRequest request, int status, String message)
+            throws IOException {
+        writeResponse(response, request, status, EMPTY, "", message.getBytes(StandardCharsets.US_ASCII), 0);
+    }
+
+    protected void writeResponse(OutputStream response, BinaryRequest request, int status, byte[] extras, String key,
+                                 byte[] value, long cas) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        DataOutputStream dataOutputStream = new DataOutputStream(response);
+        dataOutputStream.writeByte(RESPONSE_MAGIC);
+        dataOutputStream.writeByte(request.opcode);
+        dataOutputStream.writeShort(keyBytes.length);
+        dataOutputStream.writeByte(extras.length);
+        dataOutputStream.writeByte(0);
+        dataOutputStream.writeShort(status);
+        dataOutputStream.writeInt(extras.length + keyBytes.length + value.length);
+        dataOutputStream.writeInt(request.opaque);
+        dataOutputStream.writeLong(cas);
+        dataOutputStream.write(extras);
+        dataOutputStream.write(keyBytes);
+        dataOutputStream.write(value);
+    }
+
+    static class BinaryRequest {
+        int opcode;
+        int opaque;
+        long cas;
+        byte[] extras;
+        String key;
+        byte[] value;
+    }
+}
@@ -0,0 +1,324 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// memcached text protocol: https://github.com/memcached/memcached/blob/master/doc/protocol.txt
+class MemcachedTextProtocol extends AbstractMemcachedProtocol {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemcachedTextProtocol.class);
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_KEY_LENGTH = 250;
+    private static final String NOREPLY = "noreply";
+
+    MemcachedTextProtocol(ServerConfig serverConfig) {
+        super(serverConfig);
+    }
+
+    @Override
+    boolean handle(InputStream inputStream, OutputStream outputStream) throws IOException {
+        String line = readLine(inputStream);
+        if (line == null) {
+            writeLine(outputStream, "CLIENT_ERROR line is too long");
+            return false;
+        }
+        String[] tokens = line.trim().split(" +");
+        String name = tokens[0];
+        // retrieval commands have no noreply option, their last token is a key
+        boolean noreply = !name.startsWith("get") && !name.startsWith("gat") && tokens.length > 1
+                && NOREPLY.equals(tokens[tokens.length - 1]);
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        boolean keepOpen = true;
+        try {
+            switch (name) {
+                case "get":
+                case "gets":
+                    handleGet(tokens, 1, name.endsWith("s"), false, null, response);
+                    break;
+                case "gat":
+                case "gats":
+                    checkArguments(tokens.length > 2, name);
+                    handleGet(tokens, 2, name.endsWith("s"), true, toTtl(parseUnsigned(tokens[1], name)), response);
+                    break;
+                case "set":
+                case "add":
+                case "replace":
+                case "append":
+                case "prepend":
+                case "cas":
+                    keepOpen = handleStore(inputStream, tokens, response);
+                    break;
+                case "delete":
+                    handleDelete(tokens, response);
+                    break;
+                case "incr":
+                case "decr":
+                    handleCounter(tokens, response);
+                    break;
+                case "touch":
+                    handleTouch(tokens, response);
+                    break;
+                case "flush_all":
+                    handleFlush(tokens, noreply, response);
+                    break;
+                case "stats":
+                    handleStats(tokens, response);
+                    break;
+                case "version":
+                    writeLine(response, "VERSION " + VERSION);
+                    break;
+                case "verbosity":
+                    writeLine(response, "OK");
+                    break;
+                case "quit":
+                    return false;
+                default:
+                    writeLine(response, "ERROR");
+            }
+        } catch (JMemcachedException e) {
+            response.reset();
+            writeLine(response, "CLIENT_ERROR " + e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.error("Handle memcached request failed: " + e.getMessage(), e);
+            response.reset();
+            writeLine(response, "SERVER_ERROR " + e.getMessage());
+        }
+        if (!noreply || !keepOpen) {
+            response.writeTo(outputStream);
+        }
+        return keepOpen;
+    }
+
+    // null if the line is longer than MAX_LINE_LENGTH
+    protected String readLine(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = inputStream.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Incomplete command line");
+            }
+            if (line.size() == MAX_LINE_LENGTH) {
+                return null;
+            }
+            line.write(b);
+        }
+        String result = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+
+    protected void handleGet(String[] tokens, int firstKey, boolean withCas, boolean touch, Long ttl,
+                             OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        checkArguments(tokens.length > firstKey, tokens[0]);
+        for (int i = firstKey; i < tokens.length; i++) {
+            String key = checkKey(tokens[i]);
+            StoredValue value = get(key, touch, ttl);
+            if (value != null) {
+                byte[] data = getData(value);
+                String header = "VALUE " + key + " " + Integer.toUnsignedString(getClientFlags(value)) + " " + data.length;
+                writeLine(response, withCas ? header + " " + value.getCas() : header);
+                response.write(data);
+                writeLine(response, "");
+            }
+        }
+        writeLine(response, "END");
+        recordCommand(touch ? Command.GAT : Command.GET, start);
+    }
+
+    // <command> <key> <flags> <exptime> <bytes> [<cas>] [noreply]\r\n<data>\r\n
+    // The data block is read before the other arguments are checked, so that it is never parsed as a command like in
+    // memcached. Without a valid length the end of the data block is unknown, so the connection is closed
+    protected boolean handleStore(InputStream inputStream, String[] tokens, OutputStream response)
+            throws IOException {
+        long start = System.nanoTime();
+        String name = tokens[0];
+        long length = tokens.length > 4 ? parseLength(tokens[4]) : -1;
+        if (length < 0) {
+            writeLine(response, "CLIENT_ERROR bad command line format for command: " + name);
+            return false;
+        }
+        byte[] data = new byte[(int) length];
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        dataInputStream.readFully(data);
+        if (dataInputStream.readUnsignedByte() != '\r' || dataInputStream.readUnsignedByte() != '\n') {
+            writeLine(response, "CLIENT_ERROR bad data chunk");
+            return false;
+        }
+        boolean cas = "cas".equals(name);
+        checkArguments(tokens.length >= (cas ? 6 : 5), name);
+        String key = checkKey(tokens[1]);
+        long flags = parseUnsigned(tokens[2], name);
+        checkArguments(flags <= CLIENT_FLAGS_MASK, name);
+        Long ttl = toTtl(Long.parseLong(checkNumber(tokens[3], name)));
+        long casToken = cas ? parseUnsigned(tokens[5], name) : 0;
+        boolean stored;
+        Command command;
+        switch (name) {
+            case "set":
+                command = Command.PUT;
+                stored = this.storage.put(key, ttl, data, flags) != Status.NOT_STORED;
+                break;
+            case "add":
+                command = Command.ADD;
+                stored = this.storage.add(key, ttl, data, flags) == Status.ADDED;
+                break;
+            case "replace":
+                command = Command.REPLACE;
+                stored = this.storage.replace(key, ttl, data, flags) == Status.REPLACED;
+                break;
+            case "append":
+            case "prepend":
+                // like in memcached the flags and the expiration time of the stored item are kept
+                command = "append".equals(name) ? Command.APPEND : Command.PREPEND;
+                StoredValue value = this.storage.concat(key, data, command == Command.APPEND);
+                stored = value != null && DefaultStorage.isConcatenable(value.getFlags());
+                break;
+            default:
+                Status status = this.storage.compareAndSet(key, casToken, ttl, data, flags);
+                recordCommand(Command.CAS, start);
+                writeLine(response, status == Status.REPLACED ? "STORED" : status == Status.EXISTS ? "EXISTS"
+                        : status == Status.NOT_STORED ? "NOT_STORED" : "NOT_FOUND");
+                return true;
+        }
+        recordCommand(command, start);
+        writeLine(response, stored ? "STORED" : "NOT_STORED");
+        return true;
+    }
+
+    // delete <key> [0] [noreply]
+    protected void handleDelete(String[] tokens, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        checkArguments(tokens.length > 1, tokens[0]);
+        String key = checkKey(tokens[1]);
+        if (tokens.length > 2 && !NOREPLY.equals(tokens[2]) && !"0".equals(tokens[2])) {
+            throw new JMemcachedException("bad command line format. Usage: delete <key> [noreply]");
+        }
+        Status status = this.storage.remove(key);
+        recordCommand(Command.REMOVE, start);
+        writeLine(response, status == Status.REMOVED ? "DELETED" : "NOT_FOUND");
+    }
+
+    // incr|decr <key> <value> [noreply]
+    protected void handleCounter(String[] tokens, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        String name = tokens[0];
+        checkArguments(tokens.length > 2, name);
+        String key = checkKey(tokens[1]);
+        long delta;
+        try {
+            delta = Long.parseUnsignedLong(tokens[2]);
+        } catch (NumberFormatException e) {
+            throw new JMemcachedException("invalid numeric delta argument");
+        }
+        boolean increment = "incr".equals(name);
+        Long counter;
+        try {
+            counter = updateCounter(key, delta, increment, null, null);
+        } catch (NumberFormatException e) {
+            throw new JMemcachedException("cannot increment or decrement non-numeric value");
+        }
+        recordCommand(increment ? Command.INCR : Command.DECR, start);
+        writeLine(response, counter == null ? "NOT_FOUND" : Long.toUnsignedString(counter));
+    }
+
+    // touch <key> <exptime> [noreply]
+    protected void handleTouch(String[] tokens, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        checkArguments(tokens.length > 2, tokens[0]);
+        String key = checkKey(tokens[1]);
+        StoredValue value = this.storage.touch(key, toTtl(Long.parseLong(checkNumber(tokens[2], tokens[0]))));
+        recordCommand(Command.TOUCH, start);
+        writeLine(response, value != null ? "TOUCHED" : "NOT_FOUND");
+    }
+
+    // flush_all [delay] [noreply]
+    protected void handleFlush(String[] tokens, boolean noreply, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        int arguments = noreply ? tokens.length - 1 : tokens.length;
+        if (arguments > 1 && parseUnsigned(tokens[1], tokens[0]) > 0) {
+            throw new JMemcachedException("delayed flush_all is not supported");
+        }
+        this.storage.clear();
+        recordCommand(Command.CLEAR, start);
+        writeLine(response, "OK");
+    }
+
+    protected void handleStats(String[] tokens, OutputStream response) throws IOException {
+        long start = System.nanoTime();
+        // stats groups like "stats items" are not supported, they are answered with no statistics
+        if (tokens.length == 1) {
+            for (Map.Entry<String, String> entry : this.serverMetrics.getStatistics().entrySet()) {
+                writeLine(response, "STAT " + entry.getKey() + " " + entry.getValue());
+            }
+        }
+        writeLine(response, "END");
+        recordCommand(Command.STATS, start);
+    }
+
+    protected String checkKey(String key) {
+        if (key.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_LENGTH) {
+            throw new JMemcachedException("key is too long");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.isISOControl(key.charAt(i))) {
+                throw new JMemcachedException("key contains control characters");
+            }
+        }
+        return key;
+    }
+
+    protected long parseUnsigned(String token, String name) {
+        long value = Long.parseLong(checkNumber(token, name));
+        checkArguments(value >= 0, name);
+        return value;
+    }
+
+    // -1 if the token is not a length of a data block
+    protected long parseLength(String token) {
+        if (token.isEmpty() || token.length() > 10) {
+            return -1;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return -1;
+            }
+        }
+        long length = Long.parseLong(token);
+        return length > Integer.MAX_VALUE - 2 ? -1 : length;
+    }
+
+    protected String checkNumber(String token, String name) {
+        int from = token.startsWith("-") ? 1 : 0;
+        checkArguments(token.length() > from && token.length() <= 19, name);
+        for (int i = from; i < token.length(); i++) {
+            checkArguments(Character.isDigit(token.charAt(i)), name);
+        }
+        return token;
+    }
+
+    protected void checkArguments(boolean valid, String name) {
+        if (!valid) {
+            throw new JMemcachedException("bad command line format for command: " + name);
+        }
+    }
+
+    protected void writeLine(OutputStream outputStream, String line) throws IOException {
+        outputStream.write(line.getBytes(StandardCharsets.UTF_8));
+        outputStream.write('\r');
+        outputStream.write('\n');
+    }
+}
@@ -0,0 +1,194 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.RequestConverter;
+import net.simplesoft.jmemcached.protocol.ResponseConverter;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.server.CommandHandler;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+class NioConnection {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioConnection.class);
+    private static final int INIT_READ_BUFFER_SIZE = 16 * 1024;
+    // smaller values are cheaper to copy into the response buffer than to send as a separate gathered buffer
+    private static final int ZERO_COPY_MIN_DATA_SIZE = 1024;
+
+    private final ServerConfig serverConfig;
+    private final SelectionKey selectionKey;
+    private final SocketChannel channel;
+    private final RequestConverter requestConverter;
+    private final ResponseConverter responseConverter;
+    private final CommandHandler commandHandler;
+    private final ByteArrayOutputStream responseBuffer;
+    private final Deque<ByteBuffer> writeQueue;
+    private final int maxReadBufferSize;
+    private ByteBuffer readBuffer;
+    private boolean protocolDetected;
+    private AbstractMemcachedProtocol memcachedProtocol;
+    private boolean closeAfterWrite;
+
+    NioConnection(SelectionKey selectionKey, ServerConfig serverConfig) {
+        this.serverConfig = serverConfig;
+        this.selectionKey = selectionKey;
+        this.channel = (SocketChannel) selectionKey.channel();
+        this.requestConverter = serverConfig.getRequestConverter();
+        this.responseConverter = serverConfig.getResponseConverter();
+        this.commandHandler = serverConfig.getCommandHandler();
+        this.responseBuffer = new ByteArrayOutputStream();
+        this.writeQueue = new ArrayDeque<>();
+        this.maxReadBufferSize = Math.max(serverConfig.getMaxRequestSizeInBytes(), INIT_READ_BUFFER_SIZE);
+        this.readBuffer = ByteBuffer.allocate(INIT_READ_BUFFER_SIZE);
+    }
+
+    void read() {
+        try {
+            if (!readBuffer.hasRemaining()) {
+                growReadBuffer();
+            }
+            if (channel.read(readBuffer) < 0) {
+                LOGGER.info("Remote client connection closed: " + channel.getRemoteAddress());
+                close();
+                return;
+            }
+            readBuffer.flip();
+            handleRequests();
+            readBuffer.compact();
+            flushResponseBuffer();
+            if (!writeQueue.isEmpty()) {
+                write();
+            } else if (closeAfterWrite) {
+                close();
+            }
+        } catch (IOException e) {
+            LOGGER.info("Remote client connection closed: " + e.getMessage());
+            close();
+        }
+    }
+
+    protected void handleRequests() throws IOException {
+        if (!protocolDetected && readBuffer.hasRemaining()) {
+            // memcached clients are recognized by the first byte of the connection
+            memcachedProtocol = AbstractMemcachedProtocol.create(readBuffer.get(readBuffer.position()) & 0xFF,
+                    serverConfig);
+            protocolDetected = true;
+        }
+        if (memcachedProtocol != null) {
+            handleMemcachedRequests();
+            return;
+        }
+        while (readBuffer.hasRemaining()) {
+            int frameStart = readBuffer.position();
+            int remaining = readBuffer.remaining();
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(
+                    readBuffer.array(), readBuffer.arrayOffset() + frameStart, remaining);
+            Request request;
+            try {
+                request = requestConverter.readRequest(inputStream);
+            } catch (EOFException e) {
+                // incomplete frame: keep buffered bytes until the next read
+                break;
+            } catch (RuntimeException e) {
+                // the rest of the stream can't be framed any more: answer the decoded requests and disconnect
+                LOGGER.error("Decode request failed: " + e.getMessage(), e);
+                readBuffer.position(readBuffer.limit());
+                closeAfterWrite = true;
+                break;
+            }
+            readBuffer.position(frameStart + remaining - inputStream.available());
+            Response response;
+            try {
+                response = commandHandler.handle(request);
+            } catch (RuntimeException e) {
+                LOGGER.error("Handle request failed: " + e.getMessage(), e);
+                // the client must not wait for a response which never comes
+                response = DefaultCommandHandler.serverErrorResponse(request);
+            }
+            writeResponse(response);
+            LOGGER.debug("Command {} -> {}", request, response);
+        }
+    }
+
+    protected void handleMemcachedRequests() throws IOException {
+        while (readBuffer.hasRemaining() && !closeAfterWrite) {
+            int frameStart = readBuffer.position();
+            int remaining = readBuffer.remaining();
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(
+                    readBuffer.array(), readBuffer.arrayOffset() + frameStart, remaining);
+            try {
+                closeAfterWrite = !memcachedProtocol.handle(inputStream, responseBuffer);
+                readBuffer.position(frameStart + remaining - inputStream.available());
+            } catch (EOFException e) {
+                // incomplete request: keep buffered bytes until the next read
+                break;
+            }
+        }
+    }
+
+    protected void writeResponse(Response response) throws IOException {
+        if (response.hasData() && !response.hasBatch() && response.getData().length >= ZERO_COPY_MIN_DATA_SIZE) {
+            // the stored array is never modified after put, so it is queued for the gathering write as is
+            responseConverter.writeResponseHeader(responseBuffer, response);
+            flushResponseBuffer();
+            writeQueue.add(ByteBuffer.wrap(response.getData()));
+        } else {
+            responseConverter.writeResponse(responseBuffer, response);
+        }
+    }
+
+    protected void flushResponseBuffer() {
+        if (responseBuffer.size() > 0) {
+            writeQueue.add(ByteBuffer.wrap(responseBuffer.toByteArray()));
+            responseBuffer.reset();
+        }
+    }
+
+    void write() {
+        try {
+            channel.write(writeQueue.toArray(new ByteBuffer[writeQueue.size()]));
+            while (!writeQueue.isEmpty() && !writeQueue.peekFirst().hasRemaining()) {
+                writeQueue.pollFirst();
+            }
+            if (writeQueue.isEmpty() && closeAfterWrite) {
+                close();
+                return;
+            }
+            // socket buffer is full: stop reading new requests until pending responses are flushed
+            selectionKey.interestOps(writeQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            LOGGER.info("Remote client connection closed: " + e.getMessage());
+            close();
+        }
+    }
+
+    protected void growReadBuffer() throws IOException {
+        if (readBuffer.capacity() >= maxReadBufferSize) {
+            throw new IOException("Request exceeds " + maxReadBufferSize + " bytes");
+        }
+        ByteBuffer newReadBuffer = ByteBuffer.allocate((int) Math.min(readBuffer.capacity() * 2L, maxReadBufferSize));
+        readBuffer.flip();
+        newReadBuffer.put(readBuffer);
+        readBuffer = newReadBuffer;
+    }
+
+    void close() {
+        selectionKey.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.error("Close channel failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+class NioEventLoop implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioEventLoop.class);
+    private final ServerConfig serverConfig;
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels;
+    private final Thread thread;
+
+    NioEventLoop(ServerConfig serverConfig, String name) {
+        this.serverConfig = serverConfig;
+        this.selector = createSelector();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.thread = createEventLoopThread(name);
+    }
+
+    protected Selector createSelector() {
+        try {
+            return Selector.open();
+        } catch (IOException e) {
+            throw new JMemcachedException("Can't open selector: " + e.getMessage(), e);
+        }
+    }
+
+    protected Thread createEventLoopThread(String name) {
+        Thread thread = new Thread(this, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        thread.interrupt();
+        selector.wakeup();
+    }
+
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    protected boolean interrupted() {
+        return Thread.currentThread().isInterrupted();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!interrupted()) {
+                selector.select();
+                registerPendingChannels();
+                processSelectedKeys();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOGGER.error("Event loop failed: " + e.getMessage(), e);
+        } finally {
+            closeSelector();
+        }
+    }
+
+    protected void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                SelectionKey selectionKey = channel.register(selector, SelectionKey.OP_READ);
+                selectionKey.attach(new NioConnection(selectionKey, serverConfig));
+            } catch (IOException e) {
+                LOGGER.error("Can't register client channel: " + e.getMessage(), e);
+                closeChannel(channel);
+            }
+        }
+    }
+
+    protected void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+            NioConnection connection = (NioConnection) selectionKey.attachment();
+            try {
+                if (selectionKey.isValid() && selectionKey.isWritable()) {
+                    connection.write();
+                }
+                if (selectionKey.isValid() && selectionKey.isReadable()) {
+                    connection.read();
+                }
+            } catch (RuntimeException e) {
+                // only the failed connection is closed, the others on this loop keep running
+                LOGGER.error("Handle client connection failed: " + e.getMessage(), e);
+                connection.close();
+            }
+        }
+    }
+
+    protected void closeSelector() {
+        for (SelectionKey selectionKey : selector.keys()) {
+            closeChannel(selectionKey.channel());
+        }
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            closeChannel(channel);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.error("Close selector failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void closeChannel(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.error("Close channel failed: " + e.getMessage(), e);
+        }
+    }
+}
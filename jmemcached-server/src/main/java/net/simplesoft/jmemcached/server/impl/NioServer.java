@@ -0,0 +1,153 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.server.Server;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class NioServer implements Server {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioServer.class);
+    private final ServerConfig serverConfig;
+    private final ServerSocketChannel serverSocketChannel;
+    private final NioEventLoop[] eventLoops;
+    private final Thread mainServerThread;
+    private volatile boolean serverStopped;
+    private int nextEventLoopIndex;
+
+    public NioServer(ServerConfig serverConfig) {
+        this.serverConfig = serverConfig;
+        this.serverSocketChannel = createServerSocketChannel();
+        this.eventLoops = createEventLoops();
+        this.mainServerThread = createMainServerThread(createServerRunnable());
+    }
+
+    protected ServerSocketChannel createServerSocketChannel() {
+        try {
+            ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+            serverSocketChannel.socket().setReuseAddress(true);
+            serverSocketChannel.bind(new InetSocketAddress(this.serverConfig.getServerPort()));
+            return serverSocketChannel;
+        } catch (IOException e) {
+            throw new JMemcachedException(
+                    "Can't create server socket channel with port: " + this.serverConfig.getServerPort(), e);
+        }
+    }
+
+    protected NioEventLoop[] createEventLoops() {
+        int eventLoopCount = this.serverConfig.getEventLoopCount();
+        NioEventLoop[] eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new NioEventLoop(this.serverConfig, "EventLoop-" + i);
+        }
+        return eventLoops;
+    }
+
+    protected Thread createMainServerThread(Runnable r) {
+        Thread thread = new Thread(r, "Main Server Thread");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.setDaemon(false);
+        return thread;
+    }
+
+    protected NioEventLoop nextEventLoop() {
+        NioEventLoop eventLoop = eventLoops[nextEventLoopIndex];
+        nextEventLoopIndex = (nextEventLoopIndex + 1) % eventLoops.length;
+        return eventLoop;
+    }
+
+    protected Runnable createServerRunnable() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                while (!mainServerThread.isInterrupted()) {
+                    SocketChannel clientChannel;
+                    try {
+                        clientChannel = serverSocketChannel.accept();
+                    } catch (IOException e) {
+                        if (serverSocketChannel.isOpen()) {
+                            LOGGER.error("Can't accept client socket: " + e.getMessage(), e);
+                        }
+                        destroyJMemCachedServer();
+                        break;
+                    }
+                    registerClientChannel(clientChannel);
+                }
+            }
+        };
+    }
+
+    // a failed client connection is closed alone, only accept failures stop the server
+    protected void registerClientChannel(SocketChannel clientChannel) {
+        try {
+            serverConfig.getServerMetrics().recordConnection();
+            clientChannel.configureBlocking(false);
+            // the event loop may close the channel as soon as it is registered
+            SocketAddress remoteAddress = clientChannel.getRemoteAddress();
+            nextEventLoop().register(clientChannel);
+            LOGGER.info("A new client connection established: " + remoteAddress);
+        } catch (IOException e) {
+            LOGGER.warn("Can't register client connection: " + e.getMessage());
+            try {
+                clientChannel.close();
+            } catch (IOException ex) {
+                LOGGER.error("Close client channel failed: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    protected Thread getShutdownHook() {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (!serverStopped) {
+                    destroyJMemCachedServer();
+                }
+            }
+        }, "ShutdownHook");
+    }
+
+    protected void destroyJMemCachedServer() {
+        try {
+            serverConfig.close();
+        } catch (Exception e) {
+            LOGGER.error("Close server config failed: " + e.getMessage(), e);
+        }
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        LOGGER.info("Server stopped");
+        serverStopped = true;
+    }
+
+    @Override
+    public void start() {
+        if (mainServerThread.getState() != Thread.State.NEW) {
+            throw new JMemcachedException("Current JMemcached server already started or stopped! Please create a new server instance");
+        }
+        Runtime.getRuntime().addShutdownHook(getShutdownHook());
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        mainServerThread.start();
+        LOGGER.info("Server started: " + serverConfig);
+    }
+
+    @Override
+    public void stop() {
+        LOGGER.info("Detected stop cmd");
+        mainServerThread.interrupt();
+        try {
+            serverSocketChannel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error during close server socket channel: " + e.getMessage(), e);
+        }
+    }
+}
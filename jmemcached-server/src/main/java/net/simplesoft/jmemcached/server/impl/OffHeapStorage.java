@@ -0,0 +1,801 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Keys and values live in direct memory pages split into memcached-like slab classes of fixed size chunks.
+// The heap holds only the pages list and an open addressing index of chunk addresses,
+// so its size does not depend on the volume of the stored data. Expired items are reclaimed by a sweep which locks
+// one page at a time. When all pages are assigned, a slab class without items of its own takes a page of the slab
+// class with the most pages, like the memcached slab rebalancer.
+class OffHeapStorage implements Storage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapStorage.class);
+
+    static final int DEFAULT_PAGE_SIZE = 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double CHUNK_GROWTH_FACTOR = 1.25;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    private static final int WRITTEN_KEYS_BATCH_SIZE = 1024;
+
+    // chunk header layout
+    private static final int PREV = 0;
+    private static final int NEXT = 8;
+    private static final int EXPIRES_AT = 16;
+    private static final int HASH = 24;
+    private static final int DATA_LENGTH = 28;
+    private static final int KEY_LENGTH = 32;
+    private static final int SLAB_CLASS = 34;
+    private static final int FLAGS = 35;
+    private static final int CAS = 43;
+    static final int HEADER_SIZE = 51;
+
+    private final long maxMemoryInBytes;
+    private final int pageSize;
+    private final SlabClass[] slabClasses;
+    // chunk address is (page id << 32 | offset), page id is an index in this list + 1, so 0 means no address
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private final Deque<Integer> freePages = new ArrayDeque<>();
+    // slab class of every page or null for a free page
+    private final List<SlabClass> pageOwners = new ArrayList<>();
+    // keys written during every running forEach
+    private final List<Set<String>> walkWrittenKeys = new ArrayList<>();
+    // null if expired items are reclaimed only when they are read or evicted
+    private final ExecutorService executorService;
+    private long[] index;
+    private int size;
+    private long evictionCount;
+    private long expiredCount;
+    private long casSequence;
+
+    OffHeapStorage(ServerConfig serverConfig) {
+        this(serverConfig.getMaxMemoryInBytes(), DEFAULT_PAGE_SIZE, serverConfig.getClearDataIntervalInMills());
+    }
+
+    OffHeapStorage(long maxMemoryInBytes, int pageSize) {
+        this(maxMemoryInBytes, pageSize, 0);
+    }
+
+    // no expiry sweep is started if clearDataIntervalInMs is 0
+    OffHeapStorage(long maxMemoryInBytes, int pageSize, int clearDataIntervalInMs) {
+        if (maxMemoryInBytes > 0 && maxMemoryInBytes < pageSize) {
+            throw new JMemcachedConfigException("jmemcached.storage.max.memory.bytes should be >= " + pageSize
+                    + " for offheap storage");
+        }
+        this.maxMemoryInBytes = maxMemoryInBytes;
+        this.pageSize = pageSize;
+        this.slabClasses = createSlabClasses(pageSize);
+        this.index = new long[INITIAL_INDEX_CAPACITY];
+        LOGGER.debug("Off heap storage created with {} slab classes, page size {} bytes", slabClasses.length, pageSize);
+        if (clearDataIntervalInMs > 0) {
+            this.executorService = createClearExpiredDataExecutorService();
+            this.executorService.submit(new ClearExpiredPagesJob(clearDataIntervalInMs));
+        } else {
+            this.executorService = null;
+        }
+    }
+
+    protected ExecutorService createClearExpiredDataExecutorService() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread clearExpiredDataJobThread = new Thread(runnable, "ClearExpiredPagesJobThread");
+                clearExpiredDataJobThread.setPriority(Thread.MIN_PRIORITY);
+                clearExpiredDataJobThread.setDaemon(true);
+                return clearExpiredDataJobThread;
+            }
+        });
+    }
+
+    protected SlabClass[] createSlabClasses(int pageSize) {
+        List<SlabClass> result = new ArrayList<>();
+        int chunkSize = MIN_CHUNK_SIZE;
+        while (chunkSize < pageSize / 2) {
+            result.add(new SlabClass(result.size(), chunkSize));
+            chunkSize = (int) (chunkSize * CHUNK_GROWTH_FACTOR + 7) & ~7;
+        }
+        result.add(new SlabClass(result.size(), pageSize));
+        return result.toArray(new SlabClass[result.size()]);
+    }
+
+    @Override
+    public Status put(String key, Long ttl, byte[] data) {
+        return put(key, ttl, data, 0);
+    }
+
+    @Override
+    public synchronized Status put(String key, Long ttl, byte[] data, long flags) {
+        return putItem(key, ttl != null ? ttl + System.currentTimeMillis() : 0, data, flags);
+    }
+
+    // expiresAt is an absolute time in ms or 0
+    private Status putItem(String key, long expiresAt, byte[] data, long flags) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int itemSize = HEADER_SIZE + keyBytes.length + (data == null ? 0 : data.length);
+        SlabClass slabClass = getSlabClass(itemSize);
+        if (slabClass == null) {
+            throw new JMemcachedException("Item size " + itemSize + " bytes exceeds slab page size for key: " + key);
+        }
+        int hash = hash(key);
+        int slot = findSlot(keyBytes, hash);
+        boolean replaced = index[slot] != 0;
+        if (replaced) {
+            freeChunk(index[slot]);
+            removeSlot(slot);
+        }
+        long address = allocateChunk(slabClass, key);
+        writeItem(address, slabClass, hash, keyBytes, expiresAt, data, flags);
+        insertSlot(address, keyBytes, hash);
+        linkFirst(slabClass, address);
+        for (Set<String> writtenKeys : walkWrittenKeys) {
+            writtenKeys.add(key);
+        }
+        return replaced ? Status.REPLACED : Status.ADDED;
+    }
+
+    @Override
+    public synchronized byte[] get(String key) {
+        long address = getAddress(key);
+        return address == 0 ? null : readData(address);
+    }
+
+    @Override
+    public synchronized StoredValue getValue(String key) {
+        long address = getAddress(key);
+        return address == 0 ? null : toStoredValue(address);
+    }
+
+    private StoredValue toStoredValue(long address) {
+        int offset = offset(address);
+        long expiresAt = page(address).getLong(offset + EXPIRES_AT);
+        return new StoredValue(readData(address), page(address).getLong(offset + FLAGS), expiresAt != 0 ? expiresAt : null,
+                page(address).getLong(offset + CAS));
+    }
+
+    // address of a live item moved to the head of its LRU list, or 0
+    private long getAddress(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(keyBytes, hash(key));
+        long address = index[slot];
+        if (address == 0) {
+            return 0;
+        }
+        if (isExpired(address)) {
+            freeChunk(address);
+            removeSlot(slot);
+            return 0;
+        }
+        SlabClass slabClass = slabClasses[page(address).get(offset(address) + SLAB_CLASS)];
+        unlink(slabClass, address);
+        linkFirst(slabClass, address);
+        return address;
+    }
+
+    // the counter is updated in place, because data is always copied out of the pages
+    @Override
+    public synchronized StoredValue updateCounter(String key, Long ttl, long delta, boolean increment) {
+        long address = getAddress(key);
+        if (address == 0) {
+            put(key, ttl, CounterValue.toByteArray(CounterValue.update(0, delta, increment)), CounterValue.ITEM_FLAG_COUNTER);
+            return toStoredValue(getAddress(key));
+        }
+        ByteBuffer page = page(address);
+        int offset = offset(address);
+        if ((page.getLong(offset + FLAGS) & CounterValue.ITEM_FLAG_COUNTER) == 0
+                || page.getInt(offset + DATA_LENGTH) != CounterValue.SIZE_IN_BYTES) {
+            return null;
+        }
+        int dataOffset = offset + HEADER_SIZE + page.getShort(offset + KEY_LENGTH);
+        long value = CounterValue.update(page.getLong(dataOffset), delta, increment);
+        page.putLong(dataOffset, value);
+        page.putLong(offset + CAS, ++casSequence);
+        return toStoredValue(address);
+    }
+
+    @Override
+    public synchronized StoredValue touch(String key, Long ttl) {
+        long address = getAddress(key);
+        if (address == 0) {
+            return null;
+        }
+        page(address).putLong(offset(address) + EXPIRES_AT, ttl != null ? ttl + System.currentTimeMillis() : 0);
+        return toStoredValue(address);
+    }
+
+    @Override
+    public synchronized Status add(String key, Long ttl, byte[] data, long flags) {
+        if (getAddress(key) != 0) {
+            return Status.EXISTS;
+        }
+        return put(key, ttl, data, flags);
+    }
+
+    @Override
+    public synchronized Status replace(String key, Long ttl, byte[] data, long flags) {
+        if (getAddress(key) == 0) {
+            return Status.NOT_FOUND;
+        }
+        return put(key, ttl, data, flags);
+    }
+
+    // the result may need a larger chunk, so the item is written anew with the same expiration time
+    @Override
+    public synchronized StoredValue concat(String key, byte[] data, boolean append) {
+        long address = getAddress(key);
+        if (address == 0) {
+            return null;
+        }
+        ByteBuffer page = page(address);
+        int offset = offset(address);
+        if (!DefaultStorage.isConcatenable(page.getLong(offset + FLAGS))) {
+            return toStoredValue(address);
+        }
+        putItem(key, page.getLong(offset + EXPIRES_AT), DefaultStorage.concat(readData(address), data, append),
+                page.getLong(offset + FLAGS));
+        return toStoredValue(getAddress(key));
+    }
+
+    @Override
+    public synchronized Status compareAndSet(String key, long cas, Long ttl, byte[] data, long flags) {
+        long address = getAddress(key);
+        if (address == 0) {
+            return Status.NOT_FOUND;
+        }
+        if (page(address).getLong(offset(address) + CAS) != cas) {
+            return Status.EXISTS;
+        }
+        return put(key, ttl, data, flags);
+    }
+
+    @Override
+    public synchronized Status remove(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(keyBytes, hash(key));
+        long address = index[slot];
+        if (address == 0) {
+            return Status.NOT_FOUND;
+        }
+        boolean expired = isExpired(address);
+        freeChunk(address);
+        removeSlot(slot);
+        return expired ? Status.NOT_FOUND : Status.REMOVED;
+    }
+
+    @Override
+    public synchronized Status clear() {
+        // pages stay allocated and are reused by any slab class
+        freePages.clear();
+        for (int pageId = 1; pageId <= pages.size(); pageId++) {
+            freePages.add(pageId);
+        }
+        Collections.fill(pageOwners, null);
+        for (SlabClass slabClass : slabClasses) {
+            slabClass.reset();
+        }
+        Arrays.fill(index, 0);
+        size = 0;
+        return Status.CLEARED;
+    }
+
+    // Only one page is locked at a time and only while its items are copied, the visitor is called without the lock.
+    // An item written during the walk may move to a page which was already copied, so the keys written meanwhile
+    // are visited again at the end with their latest values
+    @Override
+    public void forEach(StorageVisitor visitor) {
+        Set<String> writtenKeys = new HashSet<>();
+        synchronized (this) {
+            walkWrittenKeys.add(writtenKeys);
+        }
+        try {
+            for (int pageId = 1; pageId <= pageCount(); pageId++) {
+                visit(copyPage(pageId), visitor);
+            }
+            List<String> keys;
+            synchronized (this) {
+                removeWalk(writtenKeys);
+                keys = new ArrayList<>(writtenKeys);
+            }
+            for (int from = 0; from < keys.size(); from += WRITTEN_KEYS_BATCH_SIZE) {
+                visit(copyItems(keys.subList(from, Math.min(from + WRITTEN_KEYS_BATCH_SIZE, keys.size()))), visitor);
+            }
+        } finally {
+            synchronized (this) {
+                removeWalk(writtenKeys);
+            }
+        }
+    }
+
+    private void visit(List<ItemCopy> items, StorageVisitor visitor) {
+        for (ItemCopy item : items) {
+            visitor.visit(item.key, item.expiresAt, item.data, item.flags);
+        }
+    }
+
+    // the sets are removed by identity, sets of different walks may be equal
+    private void removeWalk(Set<String> writtenKeys) {
+        for (Iterator<Set<String>> iterator = walkWrittenKeys.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == writtenKeys) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    private synchronized List<ItemCopy> copyPage(int pageId) {
+        List<ItemCopy> items = new ArrayList<>();
+        SlabClass owner = pageOwners.get(pageId - 1);
+        if (owner == null) {
+            return items;
+        }
+        for (int offset = 0; offset < usedEnd(owner, pageId); offset += owner.chunkSize) {
+            long address = address(pageId, offset);
+            if (index[slotOf(address)] == address && !isExpired(address)) {
+                items.add(copyItem(address));
+            }
+        }
+        return items;
+    }
+
+    private synchronized List<ItemCopy> copyItems(List<String> keys) {
+        List<ItemCopy> items = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            long address = index[findSlot(key.getBytes(StandardCharsets.UTF_8), hash(key))];
+            if (address != 0 && !isExpired(address)) {
+                items.add(copyItem(address));
+            }
+        }
+        return items;
+    }
+
+    private ItemCopy copyItem(long address) {
+        long expiresAt = page(address).getLong(offset(address) + EXPIRES_AT);
+        return new ItemCopy(new String(readKey(address), StandardCharsets.UTF_8), expiresAt != 0 ? expiresAt : null,
+                readData(address), page(address).getLong(offset(address) + FLAGS));
+    }
+
+    // returns the number of reclaimed items, only one page is locked at a time
+    int removeExpired() {
+        int expired = 0;
+        for (int pageId = 1; pageId <= pageCount(); pageId++) {
+            expired += removeExpired(pageId);
+        }
+        return expired;
+    }
+
+    private synchronized int removeExpired(int pageId) {
+        SlabClass owner = pageOwners.get(pageId - 1);
+        if (owner == null) {
+            return 0;
+        }
+        int expired = 0;
+        for (int offset = 0; offset < usedEnd(owner, pageId); offset += owner.chunkSize) {
+            long address = address(pageId, offset);
+            int slot = slotOf(address);
+            if (index[slot] == address && isExpired(address)) {
+                freeChunk(address);
+                removeSlot(slot);
+                expired++;
+            }
+        }
+        expiredCount += expired;
+        return expired;
+    }
+
+    private synchronized int pageCount() {
+        return pages.size();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        clear();
+    }
+
+    @Override
+    public long getItemCount() {
+        return size();
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    // allocated pages, including free chunks of partially used pages
+    @Override
+    public synchronized long getUsedMemoryInBytes() {
+        return (long) (pages.size() - freePages.size()) * pageSize;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    protected SlabClass getSlabClass(int itemSize) {
+        for (SlabClass slabClass : slabClasses) {
+            if (slabClass.chunkSize >= itemSize) {
+                return slabClass;
+            }
+        }
+        return null;
+    }
+
+    private long allocateChunk(SlabClass slabClass, String key) {
+        if (slabClass.freeHead != 0) {
+            long address = slabClass.freeHead;
+            slabClass.freeHead = page(address).getLong(offset(address) + NEXT);
+            return address;
+        }
+        if (slabClass.currentPageId != 0 && slabClass.nextOffset + slabClass.chunkSize <= pageSize) {
+            long address = address(slabClass.currentPageId, slabClass.nextOffset);
+            slabClass.nextOffset += slabClass.chunkSize;
+            return address;
+        }
+        int pageId = allocatePage();
+        if (pageId == 0 && slabClass.lruTail != 0) {
+            long victim = slabClass.lruTail;
+            removeSlot(slotOf(victim));
+            unlink(slabClass, victim);
+            evictionCount++;
+            LOGGER.debug("evicted storage item from slab class {}", slabClass.id);
+            return victim;
+        }
+        if (pageId == 0) {
+            pageId = reassignPage(slabClass);
+        }
+        if (pageId == 0) {
+            throw new JMemcachedException("Not enough memory to store item: " + key);
+        }
+        pageOwners.set(pageId - 1, slabClass);
+        slabClass.currentPageId = pageId;
+        slabClass.nextOffset = slabClass.chunkSize;
+        return address(pageId, 0);
+    }
+
+    private int allocatePage() {
+        if (!freePages.isEmpty()) {
+            return freePages.poll();
+        }
+        if (maxMemoryInBytes > 0 && (long) (pages.size() + 1) * pageSize > maxMemoryInBytes) {
+            return 0;
+        }
+        pages.add(ByteBuffer.allocateDirect(pageSize));
+        pageOwners.add(null);
+        return pages.size();
+    }
+
+    // evicts the page of the least recently used item of the slab class with the most pages, returns 0 if no other
+    // slab class has pages
+    private int reassignPage(SlabClass slabClass) {
+        int[] pageCounts = new int[slabClasses.length];
+        for (SlabClass owner : pageOwners) {
+            if (owner != null) {
+                pageCounts[owner.id]++;
+            }
+        }
+        SlabClass victim = null;
+        for (SlabClass candidate : slabClasses) {
+            if (candidate != slabClass && pageCounts[candidate.id] > (victim == null ? 0 : pageCounts[victim.id])) {
+                victim = candidate;
+            }
+        }
+        if (victim == null) {
+            return 0;
+        }
+        int pageId = victim.lruTail != 0 ? pageId(victim.lruTail) : pageOwners.indexOf(victim) + 1;
+        releasePage(victim, pageId);
+        LOGGER.debug("moved page {} from slab class {} to slab class {}", pageId, victim.id, slabClass.id);
+        return pageId;
+    }
+
+    private void releasePage(SlabClass owner, int pageId) {
+        // free chunks of the page are dropped from the free list of its slab class
+        long previous = 0;
+        long free = owner.freeHead;
+        while (free != 0) {
+            long next = page(free).getLong(offset(free) + NEXT);
+            if (pageId(free) != pageId) {
+                previous = free;
+            } else if (previous == 0) {
+                owner.freeHead = next;
+            } else {
+                page(previous).putLong(offset(previous) + NEXT, next);
+            }
+            free = next;
+        }
+        for (int offset = 0; offset < usedEnd(owner, pageId); offset += owner.chunkSize) {
+            long address = address(pageId, offset);
+            int slot = slotOf(address);
+            if (index[slot] == address) {
+                removeSlot(slot);
+                unlink(owner, address);
+                evictionCount++;
+            }
+        }
+        if (owner.currentPageId == pageId) {
+            owner.currentPageId = 0;
+        }
+        pageOwners.set(pageId - 1, null);
+    }
+
+    // end of the chunks which were handed out from the page, every one of them holds an item or is on the free list
+    private int usedEnd(SlabClass owner, int pageId) {
+        return owner.currentPageId == pageId ? owner.nextOffset : pageSize / owner.chunkSize * owner.chunkSize;
+    }
+
+    // slot of the key of the chunk, it holds the chunk address only if the chunk is a stored item
+    private int slotOf(long address) {
+        return findSlot(readKey(address), page(address).getInt(offset(address) + HASH));
+    }
+
+    private void freeChunk(long address) {
+        SlabClass slabClass = slabClasses[page(address).get(offset(address) + SLAB_CLASS)];
+        unlink(slabClass, address);
+        page(address).putLong(offset(address) + NEXT, slabClass.freeHead);
+        slabClass.freeHead = address;
+    }
+
+    private void writeItem(long address, SlabClass slabClass, int hash, byte[] key, long expiresAt, byte[] data, long flags) {
+        ByteBuffer page = page(address);
+        int offset = offset(address);
+        page.putLong(offset + EXPIRES_AT, expiresAt);
+        page.putInt(offset + HASH, hash);
+        page.putInt(offset + DATA_LENGTH, data != null ? data.length : -1);
+        page.putShort(offset + KEY_LENGTH, (short) key.length);
+        page.put(offset + SLAB_CLASS, (byte) slabClass.id);
+        page.putLong(offset + FLAGS, flags);
+        page.putLong(offset + CAS, ++casSequence);
+        ByteBuffer buffer = page.duplicate();
+        buffer.position(offset + HEADER_SIZE);
+        buffer.put(key);
+        if (data != null) {
+            buffer.put(data);
+        }
+    }
+
+    private byte[] readKey(long address) {
+        ByteBuffer buffer = page(address).duplicate();
+        int offset = offset(address);
+        byte[] key = new byte[buffer.getShort(offset + KEY_LENGTH)];
+        buffer.position(offset + HEADER_SIZE);
+        buffer.get(key);
+        return key;
+    }
+
+    private byte[] readData(long address) {
+        ByteBuffer buffer = page(address).duplicate();
+        int offset = offset(address);
+        int dataLength = buffer.getInt(offset + DATA_LENGTH);
+        if (dataLength < 0) {
+            return null;
+        }
+        byte[] data = new byte[dataLength];
+        buffer.position(offset + HEADER_SIZE + buffer.getShort(offset + KEY_LENGTH));
+        buffer.get(data);
+        return data;
+    }
+
+    private boolean isExpired(long address) {
+        long expiresAt = page(address).getLong(offset(address) + EXPIRES_AT);
+        return expiresAt != 0 && expiresAt < System.currentTimeMillis();
+    }
+
+    private boolean keyEquals(long address, byte[] key, int hash) {
+        ByteBuffer page = page(address);
+        int offset = offset(address);
+        if (page.getInt(offset + HASH) != hash || page.getShort(offset + KEY_LENGTH) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (page.get(offset + HEADER_SIZE + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // slot of the key or the empty slot where it should be inserted
+    private int findSlot(byte[] key, int hash) {
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        while (index[slot] != 0 && !keyEquals(index[slot], key, hash)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insertSlot(long address, byte[] key, int hash) {
+        if ((size + 1) * 4L > index.length * 3L) {
+            resizeIndex();
+        }
+        index[findSlot(key, hash)] = address;
+        size++;
+    }
+
+    private void resizeIndex() {
+        long[] oldIndex = index;
+        index = new long[oldIndex.length * 2];
+        int mask = index.length - 1;
+        for (long address : oldIndex) {
+            if (address != 0) {
+                int slot = page(address).getInt(offset(address) + HASH) & mask;
+                while (index[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                index[slot] = address;
+            }
+        }
+    }
+
+    // backward shift deletion keeps linear probing chains without tombstones
+    private void removeSlot(int slot) {
+        int mask = index.length - 1;
+        int hole = slot;
+        index[hole] = 0;
+        int current = hole;
+        while (true) {
+            current = (current + 1) & mask;
+            long address = index[current];
+            if (address == 0) {
+                break;
+            }
+            int ideal = page(address).getInt(offset(address) + HASH) & mask;
+            boolean reachable = hole <= current ? (ideal <= hole || ideal > current) : (ideal <= hole && ideal > current);
+            if (reachable) {
+                index[hole] = address;
+                index[current] = 0;
+                hole = current;
+            }
+        }
+        size--;
+    }
+
+    private void linkFirst(SlabClass slabClass, long address) {
+        ByteBuffer page = page(address);
+        int offset = offset(address);
+        page.putLong(offset + PREV, 0);
+        page.putLong(offset + NEXT, slabClass.lruHead);
+        if (slabClass.lruHead != 0) {
+            page(slabClass.lruHead).putLong(offset(slabClass.lruHead) + PREV, address);
+        } else {
+            slabClass.lruTail = address;
+        }
+        slabClass.lruHead = address;
+    }
+
+    private void unlink(SlabClass slabClass, long address) {
+        ByteBuffer page = page(address);
+        int offset = offset(address);
+        long prev = page.getLong(offset + PREV);
+        long next = page.getLong(offset + NEXT);
+        if (prev != 0) {
+            page(prev).putLong(offset(prev) + NEXT, next);
+        } else {
+            slabClass.lruHead = next;
+        }
+        if (next != 0) {
+            page(next).putLong(offset(next) + PREV, prev);
+        } else {
+            slabClass.lruTail = prev;
+        }
+    }
+
+    private static int pageId(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private ByteBuffer page(long address) {
+        return pages.get((int) (address >>> 32) - 1);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static long address(int pageId, int offset) {
+        return ((long) pageId << 32) | offset;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    protected static class SlabClass {
+        private final int id;
+        private final int chunkSize;
+        private long freeHead;
+        private int currentPageId;
+        private int nextOffset;
+        // most recently used first
+        private long lruHead;
+        private long lruTail;
+
+        protected SlabClass(int id, int chunkSize) {
+            this.id = id;
+            this.chunkSize = chunkSize;
+        }
+
+        protected int getChunkSize() {
+            return chunkSize;
+        }
+
+        protected void reset() {
+            freeHead = 0;
+            currentPageId = 0;
+            nextOffset = 0;
+            lruHead = 0;
+            lruTail = 0;
+        }
+
+        @Override
+        public String toString() {
+            return "SlabClass " + id + ": chunkSize=" + chunkSize;
+        }
+    }
+
+    private static class ItemCopy {
+        private final String key;
+        private final Long expiresAt;
+        private final byte[] data;
+        private final long flags;
+
+        private ItemCopy(String key, Long expiresAt, byte[] data, long flags) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.data = data;
+            this.flags = flags;
+        }
+    }
+
+    protected class ClearExpiredPagesJob implements Runnable {
+
+        private final int clearDataIntervalInMs;
+
+        protected ClearExpiredPagesJob(int clearDataIntervalInMs) {
+            this.clearDataIntervalInMs = clearDataIntervalInMs;
+        }
+
+        @Override
+        public void run() {
+            LOGGER.debug("ClearExpiredPagesJobThread started with interval {} ms", clearDataIntervalInMs);
+            while (!Thread.interrupted()) {
+                LOGGER.trace("Invoke clear job");
+                removeExpired();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(clearDataIntervalInMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.EvictionPolicyType;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
+import net.simplesoft.jmemcached.server.impl.DefaultStorage.StorageItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Keys are spread over power of two segments. Every segment has its own lock, map, eviction queue,
+// expiry index and byte accounting, so writers and the expiration job contend only inside one segment.
+class SegmentedStorage implements Storage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedStorage.class);
+
+    protected final Segment[] segments;
+    protected final ExecutorService executorService;
+    protected final Runnable clearExpiredDataJob;
+    private final int segmentMask;
+    private final int segmentShift;
+
+    SegmentedStorage(ServerConfig serverConfig) {
+        int segmentCount = serverConfig.getSegmentCount();
+        long maxMemoryInBytes = serverConfig.getMaxMemoryInBytes();
+        if (maxMemoryInBytes > 0 && maxMemoryInBytes < segmentCount) {
+            // a zero budget would leave the segments unbounded
+            throw new JMemcachedConfigException("jmemcached.storage.max.memory.bytes should be at least one byte per segment");
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment(i, createEvictionPolicy(serverConfig, maxMemoryInBytes / segmentCount));
+        }
+        this.segmentMask = segmentCount - 1;
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.executorService = createClearExpiredDataExecutorService();
+        this.clearExpiredDataJob = new ClearExpiredSegmentsJob(this.segments, serverConfig.getClearDataIntervalInMills());
+        this.executorService.submit(this.clearExpiredDataJob);
+    }
+
+    protected EvictionPolicy createEvictionPolicy(ServerConfig serverConfig, long maxSegmentMemoryInBytes) {
+        if (maxSegmentMemoryInBytes <= 0) {
+            return null;
+        }
+        if (serverConfig.getEvictionPolicyType() == EvictionPolicyType.TINY_LFU) {
+            return new TinyLfuEvictionPolicy(maxSegmentMemoryInBytes);
+        }
+        return new LruEvictionPolicy(maxSegmentMemoryInBytes);
+    }
+
+    protected ExecutorService createClearExpiredDataExecutorService() {
+        return Executors.newSingleThreadExecutor(createClearExpiredDataThreadFactory());
+    }
+
+    protected ThreadFactory createClearExpiredDataThreadFactory() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread clearExpiredDataJobThread = new Thread(runnable, "ClearExpiredSegmentsJobThread");
+                clearExpiredDataJobThread.setPriority(Thread.MIN_PRIORITY);
+                clearExpiredDataJobThread.setDaemon(true);
+                return clearExpiredDataJobThread;
+            }
+        };
+    }
+
+    protected Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        // the map inside the segment uses the low bits, so the segment is selected by as many high bits as needed
+        return this.segments[((h * 0x9E3779B9) >>> this.segmentShift) & this.segmentMask];
+    }
+
+    @Override
+    public Status put(String key, Long ttl, byte[] data) {
+        return put(key, ttl, data, 0);
+    }
+
+    @Override
+    public Status put(String key, Long ttl, byte[] data, long flags) {
+        return segmentFor(key).put(key, ttl, data, flags);
+    }
+
+    @Override
+    public byte[] get(String key) {
+        StorageItem item = segmentFor(key).get(key);
+        return item == null ? null : item.getData();
+    }
+
+    @Override
+    public StoredValue getValue(String key) {
+        StorageItem item = segmentFor(key).get(key);
+        return item == null ? null : item.toStoredValue();
+    }
+
+    @Override
+    public Status remove(String key) {
+        return segmentFor(key).remove(key);
+    }
+
+    @Override
+    public StoredValue touch(String key, Long ttl) {
+        StorageItem item = segmentFor(key).touch(key, (ttl != null) ? ttl + System.currentTimeMillis() : null);
+        return item == null ? null : item.toStoredValue();
+    }
+
+    @Override
+    public Status add(String key, Long ttl, byte[] data, long flags) {
+        return segmentFor(key).add(key, ttl, data, flags);
+    }
+
+    @Override
+    public Status replace(String key, Long ttl, byte[] data, long flags) {
+        return segmentFor(key).replace(key, ttl, data, flags);
+    }
+
+    @Override
+    public StoredValue concat(String key, byte[] data, boolean append) {
+        StorageItem item = segmentFor(key).concat(key, data, append);
+        return item == null ? null : item.toStoredValue();
+    }
+
+    @Override
+    public StoredValue updateCounter(String key, Long ttl, long delta, boolean increment) {
+        StorageItem item = segmentFor(key).updateCounter(key, ttl, delta, increment);
+        return item == null ? null : item.toStoredValue();
+    }
+
+    @Override
+    public Status compareAndSet(String key, long cas, Long ttl, byte[] data, long flags) {
+        return segmentFor(key).compareAndSet(key, cas, ttl, data, flags);
+    }
+
+    @Override
+    public Status clear() {
+        for (Segment segment : this.segments) {
+            segment.clear();
+        }
+        return Status.CLEARED;
+    }
+
+    @Override
+    public void forEach(StorageVisitor visitor) {
+        for (Segment segment : this.segments) {
+            // only one segment is locked at a time and only while its items are copied
+            for (StorageItem item : segment.getItems()) {
+                if (!item.isExpired()) {
+                    visitor.visit(item.getKey(), item.getTtl(), item.getData(), item.getFlags());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.executorService.shutdownNow();
+    }
+
+    @Override
+    public long getItemCount() {
+        long itemCount = 0;
+        for (SegmentStatistics statistics : getStatistics()) {
+            itemCount += statistics.getItemCount();
+        }
+        return itemCount;
+    }
+
+    @Override
+    public long getUsedMemoryInBytes() {
+        long usedMemoryInBytes = 0;
+        for (SegmentStatistics statistics : getStatistics()) {
+            usedMemoryInBytes += statistics.getUsedMemoryInBytes();
+        }
+        return usedMemoryInBytes;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        long evictionCount = 0;
+        for (SegmentStatistics statistics : getStatistics()) {
+            evictionCount += statistics.getEvictionCount();
+        }
+        return evictionCount;
+    }
+
+    List<SegmentStatistics> getStatistics() {
+        List<SegmentStatistics> statistics = new ArrayList<>(this.segments.length);
+        for (Segment segment : this.segments) {
+            statistics.add(segment.getStatistics());
+        }
+        return statistics;
+    }
+
+    protected static class Segment {
+        private final int id;
+        private final Map<String, StorageItem> map = new HashMap<>();
+        private final ExpiryIndex expiryIndex = new ExpiryIndex();
+        // null if the memory is unbounded
+        private final EvictionPolicy evictionPolicy;
+        private long usedMemoryInBytes;
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+        private long expiredCount;
+        // a key always maps to the same segment, so the tokens of one key are ordered by the segment lock
+        private long casSequence;
+
+        protected Segment(int id, EvictionPolicy evictionPolicy) {
+            this.id = id;
+            this.evictionPolicy = evictionPolicy;
+        }
+
+        protected synchronized Status put(String key, Long ttl, byte[] data, long flags) {
+            return putItem(key, new StorageItem(key, ttl, data, flags, ++this.casSequence));
+        }
+
+        private Status putItem(String key, StorageItem item) {
+            StorageItem oldItem = this.map.put(key, item);
+            if (oldItem != null) {
+                release(key, oldItem);
+            }
+            this.usedMemoryInBytes += item.getWeight();
+            if (item.getTtl() != null) {
+                this.expiryIndex.add(key, item.getTtl());
+            }
+            if (this.evictionPolicy != null) {
+                for (String victim : this.evictionPolicy.recordPut(key, item.getWeight())) {
+                    StorageItem evicted = this.map.remove(victim);
+                    if (evicted != null) {
+                        release(victim, evicted);
+                        this.evictionCount++;
+                        LOGGER.debug("evicted storage item={} from segment {}", evicted, this.id);
+                    }
+                }
+            }
+            // TinyLFU may reject the new item itself if its key is used less often than the keys it would replace
+            if (this.map.get(key) != item) {
+                return Status.NOT_STORED;
+            }
+            return oldItem == null ? Status.ADDED : Status.REPLACED;
+        }
+
+        protected synchronized StorageItem get(String key) {
+            StorageItem item = this.map.get(key);
+            if (item == null || item.isExpired()) {
+                this.missCount++;
+                return null;
+            }
+            this.hitCount++;
+            if (this.evictionPolicy != null) {
+                this.evictionPolicy.recordAccess(key);
+            }
+            return item;
+        }
+
+        protected synchronized StorageItem touch(String key, Long expiresAt) {
+            StorageItem item = this.map.get(key);
+            if (item == null || item.isExpired()) {
+                this.missCount++;
+                return null;
+            }
+            this.hitCount++;
+            StorageItem newItem = item.withExpiresAt(expiresAt);
+            putItem(key, newItem);
+            return newItem;
+        }
+
+        protected synchronized Status add(String key, Long ttl, byte[] data, long flags) {
+            StorageItem item = this.map.get(key);
+            if (item != null && !item.isExpired()) {
+                return Status.EXISTS;
+            }
+            Status status = putItem(key, new StorageItem(key, ttl, data, flags, ++this.casSequence));
+            return status == Status.NOT_STORED ? status : Status.ADDED;
+        }
+
+        protected synchronized Status replace(String key, Long ttl, byte[] data, long flags) {
+            StorageItem item = this.map.get(key);
+            if (item == null || item.isExpired()) {
+                return Status.NOT_FOUND;
+            }
+            return putItem(key, new StorageItem(key, ttl, data, flags, ++this.casSequence));
+        }
+
+        protected synchronized StorageItem concat(String key, byte[] data, boolean append) {
+            StorageItem item = this.map.get(key);
+            if (item == null || item.isExpired()) {
+                return null;
+            }
+            if (!DefaultStorage.isConcatenable(item.getFlags())) {
+                return item;
+            }
+            StorageItem newItem = item.withData(DefaultStorage.concat(item.getData(), data, append), ++this.casSequence);
+            putItem(key, newItem);
+            return newItem;
+        }
+
+        protected synchronized StorageItem updateCounter(String key, Long ttl, long delta, boolean increment) {
+            StorageItem item = this.map.get(key);
+            StorageItem newItem;
+            if (item == null || item.isExpired()) {
+                byte[] data = CounterValue.toByteArray(CounterValue.update(0, delta, increment));
+                newItem = new StorageItem(key, ttl, data, CounterValue.ITEM_FLAG_COUNTER, ++this.casSequence);
+            } else if (CounterValue.isCounter(item.getData(), item.getFlags())) {
+                long value = CounterValue.update(CounterValue.toLong(item.getData()), delta, increment);
+                newItem = item.withData(CounterValue.toByteArray(value), ++this.casSequence);
+            } else {
+                return null;
+            }
+            putItem(key, newItem);
+            return newItem;
+        }
+
+        protected synchronized Status compareAndSet(String key, long cas, Long ttl, byte[] data, long flags) {
+            StorageItem item = this.map.get(key);
+            if (item == null || item.isExpired()) {
+                return Status.NOT_FOUND;
+            }
+            if (item.getCas() != cas) {
+                return Status.EXISTS;
+            }
+            return putItem(key, new StorageItem(key, ttl, data, flags, ++this.casSequence));
+        }
+
+        protected synchronized Status remove(String key) {
+            StorageItem item = this.map.remove(key);
+            if (item == null) {
+                return Status.NOT_FOUND;
+            }
+            release(key, item);
+            if (this.evictionPolicy != null) {
+                this.evictionPolicy.recordRemove(key);
+            }
+            return item.isExpired() ? Status.NOT_FOUND : Status.REMOVED;
+        }
+
+        protected synchronized List<StorageItem> getItems() {
+            return new ArrayList<>(this.map.values());
+        }
+
+        protected synchronized void clear() {
+            this.map.clear();
+            this.expiryIndex.clear();
+            if (this.evictionPolicy != null) {
+                this.evictionPolicy.clear();
+            }
+            this.usedMemoryInBytes = 0;
+        }
+
+        protected synchronized int removeExpired(long now) {
+            int expired = 0;
+            for (String key : this.expiryIndex.pollExpired(now)) {
+                StorageItem item = this.map.get(key);
+                if (item != null && item.isExpired()) {
+                    this.map.remove(key);
+                    this.usedMemoryInBytes -= item.getWeight();
+                    if (this.evictionPolicy != null) {
+                        this.evictionPolicy.recordRemove(key);
+                    }
+                    expired++;
+                    LOGGER.debug("removed expired storage item={} from segment {}", item, this.id);
+                }
+            }
+            this.expiredCount += expired;
+            return expired;
+        }
+
+        private void release(String key, StorageItem item) {
+            this.usedMemoryInBytes -= item.getWeight();
+            if (item.getTtl() != null) {
+                this.expiryIndex.remove(key, item.getTtl());
+            }
+        }
+
+        protected synchronized SegmentStatistics getStatistics() {
+            return new SegmentStatistics(this.id, this.map.size(), this.usedMemoryInBytes, this.hitCount,
+                    this.missCount, this.evictionCount, this.expiredCount);
+        }
+    }
+
+    static class SegmentStatistics {
+        private final int segment;
+        private final int itemCount;
+        private final long usedMemoryInBytes;
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expiredCount;
+
+        SegmentStatistics(int segment, int itemCount, long usedMemoryInBytes, long hitCount, long missCount,
+                          long evictionCount, long expiredCount) {
+            this.segment = segment;
+            this.itemCount = itemCount;
+            this.usedMemoryInBytes = usedMemoryInBytes;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expiredCount = expiredCount;
+        }
+
+        int getSegment() {
+            return segment;
+        }
+
+        int getItemCount() {
+            return itemCount;
+        }
+
+        long getUsedMemoryInBytes() {
+            return usedMemoryInBytes;
+        }
+
+        long getHitCount() {
+            return hitCount;
+        }
+
+        long getMissCount() {
+            return missCount;
+        }
+
+        long getEvictionCount() {
+            return evictionCount;
+        }
+
+        long getExpiredCount() {
+            return expiredCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Segment %s: items=%s, usedMemoryInBytes=%s, hits=%s, misses=%s, evictions=%s, expired=%s",
+                    segment, itemCount, usedMemoryInBytes, hitCount, missCount, evictionCount, expiredCount);
+        }
+    }
+
+    protected static class ClearExpiredSegmentsJob implements Runnable {
+
+        private final Segment[] segments;
+        private final int clearDataIntervalInMs;
+
+        public ClearExpiredSegmentsJob(Segment[] segments, int clearDataIntervalInMs) {
+            this.segments = segments;
+            this.clearDataIntervalInMs = clearDataIntervalInMs;
+        }
+
+        protected boolean interrupted() {
+            return Thread.interrupted();
+        }
+
+        protected void sleepClearExpiredDataJob() throws InterruptedException {
+            TimeUnit.MILLISECONDS.sleep(this.clearDataIntervalInMs);
+        }
+
+        @Override
+        public void run() {
+            LOGGER.debug("ClearExpiredSegmentsJobThread started with interval {} ms", clearDataIntervalInMs);
+            while (!interrupted()) {
+                LOGGER.trace("Invoke clear job");
+                long now = System.currentTimeMillis();
+                // one segment is locked at a time
+                for (Segment segment : this.segments) {
+                    segment.removeExpired(now);
+                }
+                try {
+                    sleepClearExpiredDataJob();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+}
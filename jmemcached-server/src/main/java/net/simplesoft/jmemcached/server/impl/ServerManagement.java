@@ -0,0 +1,84 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.server.ServerMBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ServerManagement implements ServerMBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerManagement.class);
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+    private final AtomicLong rejectedConnections;
+
+    ServerManagement(ThreadPoolExecutor threadPoolExecutor, AtomicLong rejectedConnections) {
+        this.threadPoolExecutor = threadPoolExecutor;
+        this.rejectedConnections = rejectedConnections;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return this.threadPoolExecutor.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedConnections() {
+        return this.threadPoolExecutor.getQueue().size();
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return this.threadPoolExecutor.getTaskCount();
+    }
+
+    @Override
+    public long getCompletedConnections() {
+        return this.threadPoolExecutor.getCompletedTaskCount();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return this.rejectedConnections.get();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return this.threadPoolExecutor.getPoolSize();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return this.threadPoolExecutor.getLargestPoolSize();
+    }
+
+    @Override
+    public int getInitThreadCount() {
+        return this.threadPoolExecutor.getCorePoolSize();
+    }
+
+    @Override
+    public synchronized void setInitThreadCount(int initThreadCount) {
+        if (initThreadCount < 1 || initThreadCount > this.threadPoolExecutor.getMaximumPoolSize()) {
+            throw new JMemcachedConfigException("initThreadCount should be >= 1 and <= maxThreadCount");
+        }
+        this.threadPoolExecutor.setCorePoolSize(initThreadCount);
+        LOGGER.info("Init thread count changed to {}", initThreadCount);
+    }
+
+    @Override
+    public int getMaxThreadCount() {
+        return this.threadPoolExecutor.getMaximumPoolSize();
+    }
+
+    @Override
+    public synchronized void setMaxThreadCount(int maxThreadCount) {
+        if (maxThreadCount < 1 || maxThreadCount < this.threadPoolExecutor.getCorePoolSize()) {
+            throw new JMemcachedConfigException("maxThreadCount should be >= 1 and >= initThreadCount");
+        }
+        this.threadPoolExecutor.setMaximumPoolSize(maxThreadCount);
+        LOGGER.info("Max thread count changed to {}", maxThreadCount);
+    }
+}
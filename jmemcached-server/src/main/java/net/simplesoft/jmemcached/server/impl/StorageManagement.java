@@ -0,0 +1,62 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.server.StorageMBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+class StorageManagement implements StorageMBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageManagement.class);
+
+    private final DefaultStorage storage;
+
+    StorageManagement(DefaultStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public long getItemCount() {
+        return this.storage.getItemCount();
+    }
+
+    @Override
+    public long getUsedMemoryInBytes() {
+        return this.storage.getUsedMemoryInBytes();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.storage.getEvictionCount();
+    }
+
+    @Override
+    public long getExpiredCount() {
+        return this.storage.getExpiredCount();
+    }
+
+    @Override
+    public double getExpiredPerSecond() {
+        return this.storage.clearExpiredDataJob.getExpiredPerSecond();
+    }
+
+    @Override
+    public double getLastSweepDurationInMs() {
+        return this.storage.clearExpiredDataJob.getLastSweepDurationInNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public int getClearDataIntervalInMs() {
+        return this.storage.clearExpiredDataJob.getClearDataIntervalInMs();
+    }
+
+    @Override
+    public void setClearDataIntervalInMs(int clearDataIntervalInMs) {
+        if (clearDataIntervalInMs < 1000) {
+            throw new JMemcachedConfigException("clearDataIntervalInMs should be >= 1000");
+        }
+        this.storage.clearExpiredDataJob.setClearDataIntervalInMs(clearDataIntervalInMs);
+        LOGGER.info("Clear data interval changed to {} ms", clearDataIntervalInMs);
+    }
+}
@@ -0,0 +1,184 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// File layout: magic, version, entries (1, key length, key, expires at or 0, flags, data length or -1, data),
+// end marker 0 and the entry count. Absolute expiration times are stored, so the remaining ttl is computed on load.
+// Version 1 snapshots have int flags like version 1 append only logs.
+class StorageSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageSnapshot.class);
+
+    static final int MAGIC = 0x4A4D534E;
+    static final byte VERSION = 2;
+    static final byte LEGACY_VERSION = 1;
+    private static final byte ENTRY = 1;
+    private static final byte END = 0;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+
+    StorageSnapshot(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    // the previous snapshot is replaced only when the new one is completely written
+    synchronized int save(Storage storage) throws IOException {
+        long start = System.currentTimeMillis();
+        File tempFile = new File(file.getPath() + ".tmp");
+        final int[] count = {0};
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), WRITE_BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            storage.forEach(new StorageVisitor() {
+                @Override
+                public void visit(String key, Long expiresAt, byte[] data, long flags) {
+                    try {
+                        writeEntry(out, key, expiresAt, data, flags);
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            out.writeByte(END);
+            out.writeInt(count[0]);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug("Saved {} items to snapshot {} in {} ms", count[0], file, System.currentTimeMillis() - start);
+        return count[0];
+    }
+
+    protected void writeEntry(DataOutputStream out, String key, Long expiresAt, byte[] data, long flags) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(ENTRY);
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        out.writeLong(expiresAt != null ? expiresAt : 0);
+        out.writeLong(flags);
+        if (data == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    // returns the number of loaded items, items expired while the server was down are skipped
+    int load(Storage storage) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long start = currentTimeMillis();
+        int loaded = 0;
+        int read = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel);
+            int magic = reader.getInt();
+            byte version = reader.get();
+            if (magic != MAGIC || (version != VERSION && version != LEGACY_VERSION)) {
+                throw new JMemcachedException("Unsupported snapshot file: " + file);
+            }
+            while (reader.get() == ENTRY) {
+                String key = new String(reader.getBytes(reader.getShort() & 0xFFFF), StandardCharsets.UTF_8);
+                long expiresAt = reader.getLong();
+                long flags = version == VERSION ? reader.getLong() : AppendOnlyLog.fromLegacyFlags(reader.getInt());
+                int dataLength = reader.getInt();
+                byte[] data = dataLength < 0 ? null : reader.getBytes(dataLength);
+                read++;
+                if (expiresAt == 0) {
+                    storage.put(key, null, data, flags);
+                    loaded++;
+                } else if (expiresAt > start) {
+                    storage.put(key, expiresAt - start, data, flags);
+                    loaded++;
+                }
+            }
+            if (reader.getInt() != read) {
+                throw new JMemcachedException("Corrupted snapshot file: " + file);
+            }
+        }
+        LOGGER.info("Loaded {} of {} items from snapshot {} in {} ms", loaded, read, file, currentTimeMillis() - start);
+        return loaded;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    // reads the file through read only mappings of up to REGION_SIZE bytes instead of copying it to the heap
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private long regionStart;
+        private MappedByteBuffer buffer;
+
+        private MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.buffer = map(0, 0);
+        }
+
+        private MappedByteBuffer map(long position, int minSize) throws IOException {
+            if (position + minSize > size) {
+                throw new EOFException("Snapshot file is truncated");
+            }
+            regionStart = position;
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(REGION_SIZE, minSize), size - position));
+        }
+
+        private MappedByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                buffer = map(regionStart + buffer.position(), bytes);
+            }
+            return buffer;
+        }
+
+        private byte get() throws IOException {
+            return ensure(1).get();
+        }
+
+        private short getShort() throws IOException {
+            return ensure(2).getShort();
+        }
+
+        private int getInt() throws IOException {
+            return ensure(4).getInt();
+        }
+
+        private long getLong() throws IOException {
+            return ensure(8).getLong();
+        }
+
+        private byte[] getBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            ensure(length).get(bytes);
+            return bytes;
+        }
+    }
+}
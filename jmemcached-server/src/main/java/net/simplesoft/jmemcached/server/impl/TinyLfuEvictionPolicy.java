@@ -0,0 +1,207 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Window TinyLFU: new keys enter a small LRU window, keys leaving the window are admitted
+// to the main LRU only if they are used more often than the main LRU victim
+class TinyLfuEvictionPolicy implements EvictionPolicy {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int SKETCH_WIDTH = 1 << 16;
+
+    private final long maxWeight;
+    private final long maxWindowWeight;
+    private final LinkedHashMap<String, Long> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long mainWeight;
+
+    TinyLfuEvictionPolicy(long maxWeight) {
+        this(maxWeight, SKETCH_WIDTH);
+    }
+
+    TinyLfuEvictionPolicy(long maxWeight, int sketchWidth) {
+        this.maxWeight = maxWeight;
+        this.maxWindowWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.sketch = new FrequencySketch(sketchWidth);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        sketch.increment(key);
+        if (window.get(key) == null) {
+            main.get(key);
+        }
+    }
+
+    @Override
+    public List<String> recordPut(String key, long weight) {
+        sketch.increment(key);
+        Long oldWeight = window.get(key);
+        if (oldWeight != null) {
+            window.put(key, weight);
+            windowWeight += weight - oldWeight;
+        } else if ((oldWeight = main.get(key)) != null) {
+            main.put(key, weight);
+            mainWeight += weight - oldWeight;
+        } else {
+            window.put(key, weight);
+            windowWeight += weight;
+        }
+        return evict();
+    }
+
+    protected List<String> evict() {
+        if (windowWeight <= maxWindowWeight && windowWeight + mainWeight <= maxWeight) {
+            return Collections.emptyList();
+        }
+        List<String> victims = new ArrayList<>();
+        while (windowWeight > maxWindowWeight && !window.isEmpty()) {
+            Map.Entry<String, Long> candidate = eldest(window);
+            window.remove(candidate.getKey());
+            windowWeight -= candidate.getValue();
+            admit(candidate.getKey(), candidate.getValue(), victims);
+        }
+        // items larger than the main space are not admitted by the loop above
+        while (windowWeight + mainWeight > maxWeight) {
+            LinkedHashMap<String, Long> segment = main.isEmpty() ? window : main;
+            Map.Entry<String, Long> victim = eldest(segment);
+            segment.remove(victim.getKey());
+            if (segment == main) {
+                mainWeight -= victim.getValue();
+            } else {
+                windowWeight -= victim.getValue();
+            }
+            victims.add(victim.getKey());
+        }
+        return victims;
+    }
+
+    private void admit(String candidate, long weight, List<String> victims) {
+        int candidateFrequency = sketch.frequency(candidate);
+        while (windowWeight + mainWeight + weight > maxWeight && !main.isEmpty()) {
+            Map.Entry<String, Long> victim = eldest(main);
+            if (candidateFrequency <= sketch.frequency(victim.getKey())) {
+                victims.add(candidate);
+                return;
+            }
+            main.remove(victim.getKey());
+            mainWeight -= victim.getValue();
+            victims.add(victim.getKey());
+        }
+        main.put(candidate, weight);
+        mainWeight += weight;
+    }
+
+    private Map.Entry<String, Long> eldest(LinkedHashMap<String, Long> segment) {
+        return segment.entrySet().iterator().next();
+    }
+
+    @Override
+    public void recordRemove(String key) {
+        Long weight = window.remove(key);
+        if (weight != null) {
+            windowWeight -= weight;
+        } else if ((weight = main.remove(key)) != null) {
+            mainWeight -= weight;
+        }
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        main.clear();
+        windowWeight = 0;
+        mainWeight = 0;
+        sketch.clear();
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return windowWeight + mainWeight;
+    }
+
+    int frequency(String key) {
+        return sketch.frequency(key);
+    }
+
+    // Count-min sketch with 4 rows of saturating counters; all counters are halved
+    // after every sample period so that old popularity fades away
+    static class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int size;
+
+        FrequencySketch(int width) {
+            if (Integer.bitCount(width) != 1) {
+                throw new IllegalArgumentException("Sketch width should be a power of two: " + width);
+            }
+            this.table = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++size == sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, table[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        void clear() {
+            for (byte[] row : table) {
+                Arrays.fill(row, (byte) 0);
+            }
+            size = 0;
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            size /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
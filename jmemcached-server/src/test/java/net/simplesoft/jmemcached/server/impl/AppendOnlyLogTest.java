@@ -0,0 +1,305 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadFactory;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AppendOnlyLogTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private AppendOnlyLog appendOnlyLog;
+    private LoggedStorage loggedStorage;
+
+    @Before
+    public void before() throws IOException {
+        file = new File(temporaryFolder.getRoot(), "storage.log");
+        loggedStorage = openLoggedStorage();
+    }
+
+    @After
+    public void after() throws Exception {
+        loggedStorage.close();
+    }
+
+    private LoggedStorage openLoggedStorage() throws IOException {
+        appendOnlyLog = new AppendOnlyLog(file);
+        OffHeapStorage storage = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        appendOnlyLog.replay(storage);
+        appendOnlyLog.open();
+        return new LoggedStorage(storage, appendOnlyLog);
+    }
+
+    private LoggedStorage reopenLoggedStorage() throws Exception {
+        loggedStorage.close();
+        return openLoggedStorage();
+    }
+
+    @Test
+    public void replayAfterRestart() throws Exception {
+        assertEquals(Status.ADDED, loggedStorage.put("key", null, new byte[]{1, 2, 3}, 5));
+        assertEquals(Status.ADDED, loggedStorage.put("ttl", 60000L, new byte[]{4}));
+        assertEquals(Status.ADDED, loggedStorage.put("removed", null, new byte[]{6}));
+        assertEquals(Status.REMOVED, loggedStorage.remove("removed"));
+
+        loggedStorage = reopenLoggedStorage();
+        StoredValue value = loggedStorage.getValue("key");
+        assertArrayEquals(new byte[]{1, 2, 3}, value.getData());
+        assertEquals(5, value.getFlags());
+        assertArrayEquals(new byte[]{4}, loggedStorage.get("ttl"));
+        assertNull(loggedStorage.get("removed"));
+    }
+
+    @Test
+    public void replayClear() throws Exception {
+        loggedStorage.put("key", null, new byte[]{1});
+        assertEquals(Status.CLEARED, loggedStorage.clear());
+        loggedStorage.put("after", null, new byte[]{2});
+
+        loggedStorage = reopenLoggedStorage();
+        assertNull(loggedStorage.get("key"));
+        assertArrayEquals(new byte[]{2}, loggedStorage.get("after"));
+    }
+
+    @Test
+    public void replayCounter() throws Exception {
+        loggedStorage.updateCounter("counter", 60000L, 5, true);
+        loggedStorage.updateCounter("counter", null, 2, false);
+        loggedStorage.put("value", null, new byte[]{1});
+        assertNull(loggedStorage.updateCounter("value", null, 1, true));
+
+        loggedStorage = reopenLoggedStorage();
+        StoredValue value = loggedStorage.getValue("counter");
+        assertEquals(3, CounterValue.toLong(value.getData()));
+        assertEquals(CounterValue.ITEM_FLAG_COUNTER, value.getFlags());
+        assertNotNull(value.getExpiresAt());
+        assertArrayEquals(new byte[]{1}, loggedStorage.get("value"));
+    }
+
+    @Test
+    public void replayCompareAndSet() throws Exception {
+        loggedStorage.put("key", null, new byte[]{1});
+        long cas = loggedStorage.getValue("key").getCas();
+        assertEquals(Status.REPLACED, loggedStorage.compareAndSet("key", cas, null, new byte[]{2}, 0));
+        assertEquals(Status.EXISTS, loggedStorage.compareAndSet("key", cas, null, new byte[]{3}, 0));
+        assertEquals(Status.NOT_FOUND, loggedStorage.compareAndSet("missing", cas, null, new byte[]{4}, 0));
+
+        loggedStorage = reopenLoggedStorage();
+        assertArrayEquals(new byte[]{2}, loggedStorage.get("key"));
+        assertNull(loggedStorage.get("missing"));
+    }
+
+    @Test
+    public void replayConditionalWrites() throws Exception {
+        assertEquals(Status.ADDED, loggedStorage.add("key", 60000L, new byte[]{1}, 0));
+        assertEquals(Status.EXISTS, loggedStorage.add("key", null, new byte[]{2}, 0));
+        assertEquals(Status.NOT_FOUND, loggedStorage.replace("missing", null, new byte[]{3}, 0));
+        assertNotNull(loggedStorage.concat("key", new byte[]{4}, true));
+        assertNull(loggedStorage.concat("missing", new byte[]{5}, false));
+
+        loggedStorage = reopenLoggedStorage();
+        StoredValue value = loggedStorage.getValue("key");
+        assertArrayEquals(new byte[]{1, 4}, value.getData());
+        assertNotNull(value.getExpiresAt());
+        assertNull(loggedStorage.get("missing"));
+    }
+
+    @Test
+    public void replayTouch() throws Exception {
+        loggedStorage.put("key", 60000L, new byte[]{1});
+        loggedStorage.put("expired", 60000L, new byte[]{2});
+        assertNotNull(loggedStorage.touch("key", null));
+        assertNotNull(loggedStorage.touch("expired", 1L));
+        assertNull(loggedStorage.touch("missing", null));
+        Thread.sleep(10);
+
+        loggedStorage = reopenLoggedStorage();
+        StoredValue value = loggedStorage.getValue("key");
+        assertArrayEquals(new byte[]{1}, value.getData());
+        assertNull(value.getExpiresAt());
+        assertNull(loggedStorage.get("expired"));
+    }
+
+    @Test
+    public void replayExpiredPutRemovesPreviousValue() throws Exception {
+        loggedStorage.put("key", null, new byte[]{1});
+        loggedStorage.put("key", 1L, new byte[]{2});
+        Thread.sleep(10);
+
+        loggedStorage = reopenLoggedStorage();
+        assertNull(loggedStorage.get("key"));
+    }
+
+    @Test
+    public void replayCutsPartiallyWrittenRecord() throws Exception {
+        loggedStorage.put("first", null, new byte[]{1});
+        loggedStorage.put("second", null, new byte[]{2});
+        loggedStorage.close();
+        long length = file.length();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length - 1);
+        }
+
+        loggedStorage = openLoggedStorage();
+        assertArrayEquals(new byte[]{1}, loggedStorage.get("first"));
+        assertNull(loggedStorage.get("second"));
+        assertEquals(length - AppendOnlyLog.putRecord("second", null, new byte[]{2}, 0).length, file.length());
+        loggedStorage.put("third", null, new byte[]{3});
+
+        loggedStorage = reopenLoggedStorage();
+        assertArrayEquals(new byte[]{3}, loggedStorage.get("third"));
+    }
+
+    @Test
+    public void replayLegacyVersion() throws Exception {
+        loggedStorage.close();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(AppendOnlyLog.MAGIC);
+            out.writeByte(AppendOnlyLog.LEGACY_VERSION);
+            writeLegacyPutRecord(out, "compressed", new byte[]{1}, 1 | 4);
+            writeLegacyPutRecord(out, "counter", CounterValue.toByteArray(7), 2);
+            out.writeByte(AppendOnlyLog.REMOVE);
+            out.writeShort(7);
+            out.writeBytes("removed");
+        }
+
+        loggedStorage = openLoggedStorage();
+        assertEquals(DefaultCommandHandler.ITEM_FLAG_COMPRESSED | 4, loggedStorage.getValue("compressed").getFlags());
+        assertEquals(CounterValue.ITEM_FLAG_COUNTER, loggedStorage.getValue("counter").getFlags());
+        // the legacy log is rewritten, so new records are not appended to it
+        assertEquals(AppendOnlyLog.VERSION, Files.readAllBytes(file.toPath())[4]);
+        loggedStorage.put("after", null, new byte[]{2});
+
+        loggedStorage = reopenLoggedStorage();
+        assertArrayEquals(new byte[]{1}, loggedStorage.get("compressed"));
+        assertEquals(7, CounterValue.toLong(loggedStorage.get("counter")));
+        assertArrayEquals(new byte[]{2}, loggedStorage.get("after"));
+        assertFalse(new File(file.getPath() + ".upgrade").exists());
+    }
+
+    private void writeLegacyPutRecord(DataOutputStream out, String key, byte[] data, int flags) throws IOException {
+        out.writeByte(AppendOnlyLog.PUT);
+        out.writeShort(key.length());
+        out.writeBytes(key);
+        out.writeLong(0);
+        out.writeInt(flags);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    @Test
+    public void replayUnsupportedFile() throws Exception {
+        loggedStorage.close();
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5});
+
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Unsupported append only log file: " + file));
+        new AppendOnlyLog(file).replay(mock(Storage.class));
+    }
+
+    @Test
+    public void compact() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            loggedStorage.put("key", null, new byte[100]);
+        }
+        loggedStorage.put("removed", null, new byte[]{1});
+        loggedStorage.remove("removed");
+        long size = appendOnlyLog.getSizeInBytes();
+        assertTrue(appendOnlyLog.shouldCompact(0));
+        assertFalse(appendOnlyLog.shouldCompact(size + 1));
+
+        assertEquals(1, appendOnlyLog.compact(loggedStorage.getStorage()));
+        assertEquals(AppendOnlyLog.putRecord("key", null, new byte[100], 0).length + 5, appendOnlyLog.getSizeInBytes());
+        assertFalse(appendOnlyLog.shouldCompact(0));
+        loggedStorage.put("after", null, new byte[]{2});
+
+        loggedStorage = reopenLoggedStorage();
+        assertArrayEquals(new byte[100], loggedStorage.get("key"));
+        assertArrayEquals(new byte[]{2}, loggedStorage.get("after"));
+        assertNull(loggedStorage.get("removed"));
+    }
+
+    @Test
+    public void compactSyncsDirectory() throws Exception {
+        loggedStorage.close();
+        final int[] syncs = {0};
+        appendOnlyLog = new AppendOnlyLog(file) {
+            @Override
+            protected void syncDirectory() throws IOException {
+                syncs[0]++;
+                super.syncDirectory();
+            }
+        };
+        OffHeapStorage storage = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        appendOnlyLog.replay(storage);
+        appendOnlyLog.open();
+        loggedStorage = new LoggedStorage(storage, appendOnlyLog);
+        loggedStorage.put("key", null, new byte[]{1});
+
+        appendOnlyLog.compact(storage);
+        assertEquals(1, syncs[0]);
+    }
+
+    @Test
+    public void compactKeepsRecordsAppendedDuringCopy() throws Exception {
+        loggedStorage.put("key", null, new byte[]{1});
+        final LoggedStorage storage = loggedStorage;
+        Storage copiedStorage = spy(loggedStorage.getStorage());
+        // a concurrent remove while the compaction copies the storage must survive the compaction
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                invocation.callRealMethod();
+                storage.remove("key");
+                return null;
+            }
+        }).when(copiedStorage).forEach(any(StorageVisitor.class));
+        appendOnlyLog.compact(copiedStorage);
+
+        loggedStorage = reopenLoggedStorage();
+        assertNull(loggedStorage.get("key"));
+    }
+
+    @Test
+    public void appendAfterClose() throws Exception {
+        loggedStorage.close();
+
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Append only log is closed"));
+        loggedStorage.put("key", null, new byte[]{1});
+    }
+
+    @Test
+    public void createWriterThreadFactory() {
+        ThreadFactory threadFactory = appendOnlyLog.createWriterThreadFactory();
+        Thread thread = threadFactory.newThread(mock(Runnable.class));
+        assertTrue(thread.isDaemon());
+        assertEquals("AppendOnlyLogWriterThread", thread.getName());
+    }
+}
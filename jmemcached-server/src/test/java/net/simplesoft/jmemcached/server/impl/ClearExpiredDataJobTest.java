@@ -1,34 +1,26 @@
 package net.simplesoft.jmemcached.server.impl;
 
-import net.simplesoft.TestUtils;
 import org.junit.Before;
 import org.junit.Test;
-import org.slf4j.Logger;
 
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class ClearExpiredDataJobTest {
 
-    private Logger logger;
     private DefaultStorage.ClearExpiredDataJob clearExpiredDataJob;
     private Map<String, DefaultStorage.StorageItem> map;
-    private Set<Map.Entry<String, DefaultStorage.StorageItem>> set;
-    private Iterator<Map.Entry<String, DefaultStorage.StorageItem>> iterator;
+    private ExpiryIndex expiryIndex;
     private int clearDataIntervalInMs = 10000;
 
     @Before
-    public void before() throws IllegalAccessException {
-        logger = mock(Logger.class);
-        map = mock(Map.class);
-        set = mock(Set.class);
-        when(map.entrySet()).thenReturn(set);
-        iterator = mock(Iterator.class);
-        when(set.iterator()).thenReturn(iterator);
-        clearExpiredDataJob = spy(new DefaultStorage.ClearExpiredDataJob(map, clearDataIntervalInMs) {
+    public void before() {
+        map = new ConcurrentHashMap<>();
+        expiryIndex = new ExpiryIndex();
+        clearExpiredDataJob = spy(new DefaultStorage.ClearExpiredDataJob(map, expiryIndex, clearDataIntervalInMs) {
             private boolean stop = true;
 
             @Override
@@ -42,57 +34,94 @@ public class ClearExpiredDataJobTest {
                 // do nothing
             }
         });
-        TestUtils.setLoggerViaReflection(DefaultStorage.class, logger);
     }
 
     @Test
     public void verifyWhenMapIsEmpty() throws InterruptedException {
-        when(iterator.hasNext()).thenReturn(false);
         clearExpiredDataJob.run();
 
         verifyCommonOperations();
+        assertEquals(0, clearExpiredDataJob.getExpiredCount());
     }
 
     @Test
     public void verifyWhenMapEntryIsNotExpired() throws InterruptedException {
-        when(iterator.hasNext()).thenReturn(true).thenReturn(false);
-        Map.Entry<String, DefaultStorage.StorageItem> entry = mock(Map.Entry.class);
-        when(iterator.next()).thenReturn(entry);
-        DefaultStorage.StorageItem storageItem = mock(DefaultStorage.StorageItem.class);
-        when(entry.getValue()).thenReturn(storageItem);
-        when(storageItem.isExpired()).thenReturn(false);
+        DefaultStorage.StorageItem storageItem = putItem("key", 10000L);
 
         clearExpiredDataJob.run();
+
         verifyCommonOperations();
-        verify(map, never()).remove(anyString());
-        verify(logger, never()).debug("removed expired storage item=" + storageItem);
+        assertSame(storageItem, map.get("key"));
+        assertEquals(1, expiryIndex.size());
+        assertEquals(0, clearExpiredDataJob.getExpiredCount());
     }
 
     @Test
     public void verifyWhenMapEntryIsExpired() throws InterruptedException {
-        when(iterator.hasNext()).thenReturn(true).thenReturn(false);
-        Map.Entry<String, DefaultStorage.StorageItem> entry = mock(Map.Entry.class);
-        when(iterator.next()).thenReturn(entry);
-        DefaultStorage.StorageItem storageItem = mock(DefaultStorage.StorageItem.class);
-
-        when(entry.getKey()).thenReturn("key");
-        when(entry.getValue()).thenReturn(storageItem);
-        when(storageItem.isExpired()).thenReturn(true);
-        when(map.remove("key")).thenReturn(storageItem);
+        putItem("key", -1000L);
 
         clearExpiredDataJob.run();
 
         verifyCommonOperations();
-        verify(map).remove(anyString());
-        verify(logger).debug("removed expired storage item=" + storageItem);
+        assertTrue(map.isEmpty());
+        assertEquals(0, expiryIndex.size());
+        assertEquals(1, clearExpiredDataJob.getExpiredCount());
+    }
+
+    @Test
+    public void verifyWhenExpiredEntryIsReplaced() throws InterruptedException {
+        putItem("key", -1000L);
+        DefaultStorage.StorageItem storageItem = new DefaultStorage.StorageItem("key", null, new byte[]{1});
+        map.put("key", storageItem);
 
+        clearExpiredDataJob.run();
+
+        assertSame(storageItem, map.get("key"));
+        assertEquals(0, expiryIndex.size());
+        assertEquals(0, clearExpiredDataJob.getExpiredCount());
     }
 
     @Test
-    public void verifyWhenInterruptedException() throws InterruptedException {
-        when(iterator.hasNext()).thenReturn(false);
+    public void sweepTouchesOnlyDueEntries() {
+        map = spy(new ConcurrentHashMap<String, DefaultStorage.StorageItem>());
+        clearExpiredDataJob = new DefaultStorage.ClearExpiredDataJob(map, expiryIndex, clearDataIntervalInMs);
+        for (int i = 0; i < 100; i++) {
+            putItem("key" + i, 10000L);
+        }
+        putItem("expired", -1000L);
+
+        clearExpiredDataJob.sweep();
+
+        verify(map).get("expired");
+        verify(map, never()).entrySet();
+        verify(map, never()).get("key0");
+        assertEquals(100, map.size());
+        assertEquals(100, expiryIndex.size());
+    }
 
-        clearExpiredDataJob = spy(new DefaultStorage.ClearExpiredDataJob(map, clearDataIntervalInMs) {
+    @Test
+    public void sweepMetrics() {
+        final long[] now = {10000};
+        clearExpiredDataJob = new DefaultStorage.ClearExpiredDataJob(map, expiryIndex, clearDataIntervalInMs) {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        clearExpiredDataJob.sweep();
+        putItem("1", -1000L);
+        putItem("2", -1000L);
+        now[0] = System.currentTimeMillis();
+        clearExpiredDataJob.sweep();
+
+        assertEquals(2, clearExpiredDataJob.getExpiredCount());
+        assertEquals(2000.0 / (now[0] - 10000), clearExpiredDataJob.getExpiredPerSecond(), 0.000001);
+        assertTrue(clearExpiredDataJob.getLastSweepDurationInNanos() > 0);
+    }
+
+    @Test
+    public void verifyWhenInterruptedException() throws InterruptedException {
+        clearExpiredDataJob = spy(new DefaultStorage.ClearExpiredDataJob(map, expiryIndex, clearDataIntervalInMs) {
             @Override
             protected void sleepClearExpiredDataJob() throws InterruptedException {
                 throw new InterruptedException();
@@ -101,17 +130,22 @@ public class ClearExpiredDataJobTest {
 
         clearExpiredDataJob.run();
 
-        verify(logger).trace("Invoke clear job");
-        verify(logger).debug("ClearExpiredDataJobThread started with interval {} ms", clearDataIntervalInMs);
+        verify(clearExpiredDataJob).sweep();
         verify(clearExpiredDataJob).sleepClearExpiredDataJob();
         verify(clearExpiredDataJob, times(1)).interrupted();
     }
 
+    private DefaultStorage.StorageItem putItem(String key, Long ttl) {
+        DefaultStorage.StorageItem storageItem = new DefaultStorage.StorageItem(key, ttl, new byte[]{1});
+        map.put(key, storageItem);
+        expiryIndex.add(key, System.currentTimeMillis() + ttl);
+        return storageItem;
+    }
+
     private void verifyCommonOperations() throws InterruptedException {
-        verify(logger).trace("Invoke clear job");
-        verify(logger).debug("ClearExpiredDataJobThread started with interval {} ms", clearDataIntervalInMs);
+        verify(clearExpiredDataJob).sweep();
         verify(clearExpiredDataJob).sleepClearExpiredDataJob();
         verify(clearExpiredDataJob, times(2)).interrupted();
     }
 
-}
\ No newline at end of file
+}
@@ -5,16 +5,24 @@ import net.simplesoft.jmemcached.protocol.RequestConverter;
 import net.simplesoft.jmemcached.protocol.ResponseConverter;
 import net.simplesoft.jmemcached.protocol.model.Request;
 import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
 import net.simplesoft.jmemcached.server.CommandHandler;
 import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import net.simplesoft.jmemcached.server.Storage;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.theories.DataPoints;
 import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
 import org.slf4j.Logger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -22,7 +30,9 @@ import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
@@ -32,7 +42,7 @@ public class DefaultClientSocketHandlerTest {
 
     @DataPoints
     public static Object[][] testDataForRunWithExceptionsMethod = new Object[][]{
-            {new RuntimeException("Test"), 2},
+            {new RuntimeException("Test"), 1},
             {new EOFException("Test"), 1},
             {new SocketException("Test"), 1},
             {new IOException("Test"), 1}
@@ -81,6 +91,16 @@ public class DefaultClientSocketHandlerTest {
         defaultClientSocketHandler = spy(new DefaultClientSocketHandler(socket, serverConfig) {
             private boolean stop = true;
 
+            @Override
+            protected InputStream createInputStream(Socket socket) throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            protected OutputStream createOutputStream(Socket socket) throws IOException {
+                return socket.getOutputStream();
+            }
+
             @Override
             protected boolean interrupted() {
                 stop = !stop;
@@ -113,9 +133,73 @@ public class DefaultClientSocketHandlerTest {
         verify(responseConverter).writeResponse(outputStream, response);
 
         verify(defaultClientSocketHandler, times(2)).interrupted();
+        verify(outputStream).flush();
         verify(logger).debug("Command {} -> {}", request, response);
     }
 
+    @Test
+    public void pipelinedRequestsRun() throws IOException {
+        defaultClientSocketHandler = spy(new DefaultClientSocketHandler(socket, serverConfig) {
+            private int iterations = 3;
+
+            @Override
+            protected InputStream createInputStream(Socket socket) throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            protected OutputStream createOutputStream(Socket socket) throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            protected boolean interrupted() {
+                return iterations-- == 0;
+            }
+        });
+        when(requestConverter.readRequest(inputStream)).thenReturn(request);
+        when(commandHandler.handle(request)).thenReturn(response);
+        // next pipelined requests are already available after the first and second read
+        when(inputStream.available()).thenReturn(7).thenReturn(3).thenReturn(0);
+
+        defaultClientSocketHandler.run();
+
+        verify(requestConverter, times(3)).readRequest(inputStream);
+        verify(responseConverter, times(3)).writeResponse(outputStream, response);
+        verify(outputStream, times(1)).flush();
+    }
+
+    @Test
+    public void memcachedTextRequestsRun() throws IOException {
+        when(serverConfig.getStorage()).thenReturn(mock(Storage.class));
+        when(serverConfig.getServerMetrics()).thenReturn(mock(ServerMetrics.class));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        defaultClientSocketHandler = new DefaultClientSocketHandler(socket, serverConfig) {
+            @Override
+            protected InputStream createInputStream(Socket socket) {
+                return new ByteArrayInputStream("version\r\nquit\r\nversion\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+
+            @Override
+            protected OutputStream createOutputStream(Socket socket) {
+                return output;
+            }
+        };
+
+        defaultClientSocketHandler.run();
+
+        verify(requestConverter, never()).readRequest(any(InputStream.class));
+        assertEquals("VERSION 1.0\r\n", output.toString("US-ASCII"));
+        verify(socket).close();
+    }
+
+    @Test
+    public void createBufferedStreams() throws IOException {
+        defaultClientSocketHandler = new DefaultClientSocketHandler(socket, serverConfig);
+        assertTrue(defaultClientSocketHandler.createInputStream(socket) instanceof DataInputStream);
+        assertTrue(defaultClientSocketHandler.createOutputStream(socket) instanceof DataOutputStream);
+    }
+
     @Theory
     public void runWithExceptions(final Object... testData) throws Exception {
         Exception exception = (Exception) testData[0];
@@ -136,8 +220,29 @@ public class DefaultClientSocketHandlerTest {
         RuntimeException ex = new RuntimeException("RuntimeException");
         when(requestConverter.readRequest(inputStream)).thenThrow(ex);
 
+        defaultClientSocketHandler.run();
+        verify(logger).error("Decode request failed: RuntimeException", ex);
+        // a partly decoded frame can't be answered, the connection is closed instead
+        verify(responseConverter, never()).writeResponse(eq(outputStream), any(Response.class));
+        verify(outputStream).flush();
+        verify(socket).close();
+    }
+
+    @Test
+    public void handleExceptionLoggerMessage() throws IOException {
+        RuntimeException ex = new RuntimeException("RuntimeException");
+        when(requestConverter.readRequest(inputStream)).thenReturn(request);
+        when(commandHandler.handle(request)).thenThrow(ex);
+
         defaultClientSocketHandler.run();
         verify(logger).error("Handle request failed: RuntimeException", ex);
+        verify(responseConverter).writeResponse(eq(outputStream), argThat(new ArgumentMatcher<Response>() {
+            @Override
+            public boolean matches(Response response) {
+                return response.getStatus() == Status.SERVER_ERROR;
+            }
+        }));
+        verify(defaultClientSocketHandler, times(2)).interrupted();
     }
 
     @Test
@@ -6,12 +6,19 @@ import net.simplesoft.jmemcached.protocol.model.Request;
 import net.simplesoft.jmemcached.protocol.model.Response;
 import net.simplesoft.jmemcached.protocol.model.Status;
 import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
 import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StoredValue;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -24,13 +31,16 @@ public class DefaultCommandHandlerTest {
     private Storage storage;
     private DefaultCommandHandler defaultCommandHandler;
     private ServerConfig serverConfig;
+    private ServerMetrics serverMetrics;
 
 
     @Before
     public void before() {
         storage = mock(Storage.class);
         serverConfig = mock(ServerConfig.class);
+        serverMetrics = mock(ServerMetrics.class);
         when(serverConfig.getStorage()).thenReturn(storage);
+        when(serverConfig.getServerMetrics()).thenReturn(serverMetrics);
         defaultCommandHandler = new DefaultCommandHandler(serverConfig);
     }
 
@@ -48,11 +58,19 @@ public class DefaultCommandHandlerTest {
         String key = "key";
         Long ttl = System.currentTimeMillis();
         byte[] data = {1, 2, 3};
-        when(storage.put(key, ttl, data)).thenReturn(Status.ADDED);
+        when(storage.put(key, ttl, data, 0)).thenReturn(Status.ADDED);
         Response response = defaultCommandHandler.handle(new Request(Command.PUT, key, ttl, data));
         assertEquals(Status.ADDED, response.getStatus());
         assertNull(response.getData());
-        verify(storage).put(key, ttl, data);
+        verify(storage).put(key, ttl, data, 0);
+    }
+
+    @Test
+    public void handleEchoCorrelationId() {
+        Request request = new Request(Command.GET, "key");
+        request.setCorrelationId(42);
+        Response response = defaultCommandHandler.handle(request);
+        assertEquals(Integer.valueOf(42), response.getCorrelationId());
     }
 
     @Test
@@ -68,22 +86,234 @@ public class DefaultCommandHandlerTest {
     @Test
     public void handleGetNotFound() {
         String key = "key";
-        when(storage.get(key)).thenReturn(null);
+        when(storage.getValue(key)).thenReturn(null);
         Response response = defaultCommandHandler.handle(new Request(Command.GET, key));
         assertEquals(Status.NOT_FOUND, response.getStatus());
         assertNull(response.getData());
-        verify(storage).get(key);
+        verify(storage).getValue(key);
+        verify(serverMetrics).recordGet(false);
     }
 
     @Test
     public void handleGetFound() {
         String key = "key";
         byte[] data = {1, 2, 3};
-        when(storage.get(key)).thenReturn(data);
+        when(storage.getValue(key)).thenReturn(new StoredValue(data, 0));
         Response response = defaultCommandHandler.handle(new Request(Command.GET, key));
         assertEquals(Status.GOTTEN, response.getStatus());
         assertArrayEquals(data, response.getData());
-        verify(storage).get(key);
+        verify(storage).getValue(key);
+        verify(serverMetrics).recordGet(true);
+        verify(serverMetrics).recordCommand(eq(Command.GET), anyLong());
+    }
+
+    @Test
+    public void handleStats() {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        statistics.put("items", "1");
+        statistics.put("get_hits", "2");
+        when(serverMetrics.getStatistics()).thenReturn(statistics);
+        Response response = defaultCommandHandler.handle(new Request(Command.STATS));
+        assertEquals(Status.GOTTEN, response.getStatus());
+        assertEquals("items=1\nget_hits=2\n", new String(response.getData(), StandardCharsets.UTF_8));
+        verify(serverMetrics).recordCommand(eq(Command.STATS), anyLong());
+    }
+
+    @Test
+    public void handlePutCompressed() {
+        byte[] data = {1, 2, 3};
+        Request request = new Request(Command.PUT, "key", null, data);
+        request.setCompressed(true);
+        when(storage.put("key", null, data, DefaultCommandHandler.ITEM_FLAG_COMPRESSED)).thenReturn(Status.ADDED);
+        assertEquals(Status.ADDED, defaultCommandHandler.handle(request).getStatus());
+    }
+
+    @Test
+    public void handleGetCompressed() {
+        byte[] data = {1, 2, 3};
+        when(storage.getValue("key")).thenReturn(new StoredValue(data, DefaultCommandHandler.ITEM_FLAG_COMPRESSED));
+        Response response = defaultCommandHandler.handle(new Request(Command.GET, "key"));
+        assertEquals(Status.GOTTEN, response.getStatus());
+        assertTrue(response.isCompressed());
+        assertArrayEquals(data, response.getData());
+    }
+
+    @Test
+    public void handleIncr() {
+        byte[] value = CounterValue.toByteArray(7);
+        when(storage.updateCounter("key", 5L, 2, true)).thenReturn(new StoredValue(value, CounterValue.ITEM_FLAG_COUNTER));
+        Response response = defaultCommandHandler.handle(new Request(Command.INCR, "key", 5L, CounterValue.toByteArray(2)));
+        assertEquals(Status.GOTTEN, response.getStatus());
+        assertTrue(response.isCounter());
+        assertArrayEquals(value, response.getData());
+        verify(serverMetrics).recordCommand(eq(Command.INCR), anyLong());
+    }
+
+    @Test
+    public void handleDecrNotNumeric() {
+        when(storage.updateCounter("key", null, 2, false)).thenReturn(null);
+        Response response = defaultCommandHandler.handle(new Request(Command.DECR, "key", null, CounterValue.toByteArray(2)));
+        assertEquals(Status.NOT_NUMERIC, response.getStatus());
+        assertFalse(response.hasData());
+    }
+
+    @Test
+    public void handleIncrWithoutDelta() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Counter delta should be 8 bytes for command: INCR"));
+        defaultCommandHandler.handle(new Request(Command.INCR, "key"));
+    }
+
+    @Test
+    public void handleGetCounter() {
+        byte[] value = CounterValue.toByteArray(7);
+        when(storage.getValue("key")).thenReturn(new StoredValue(value, CounterValue.ITEM_FLAG_COUNTER));
+        Response response = defaultCommandHandler.handle(new Request(Command.GET, "key"));
+        assertTrue(response.isCounter());
+        assertFalse(response.isCompressed());
+        assertArrayEquals(value, response.getData());
+    }
+
+    @Test
+    public void handleGetWithCas() {
+        byte[] data = {1, 2, 3};
+        when(storage.getValue("key")).thenReturn(new StoredValue(data, 0, null, 42));
+        Response response = defaultCommandHandler.handle(new Request(Command.GET, "key"));
+        assertEquals(Long.valueOf(42), response.getCas());
+    }
+
+    @Test
+    public void handleCas() {
+        byte[] data = {1, 2, 3};
+        Request request = new Request(Command.CAS, "key", 5L, data);
+        request.setCas(42L);
+        request.setCompressed(true);
+        when(storage.compareAndSet("key", 42, 5L, data, DefaultCommandHandler.ITEM_FLAG_COMPRESSED)).thenReturn(Status.EXISTS);
+        Response response = defaultCommandHandler.handle(request);
+        assertEquals(Status.EXISTS, response.getStatus());
+        assertFalse(response.hasCas());
+        verify(serverMetrics).recordCommand(eq(Command.CAS), anyLong());
+    }
+
+    @Test
+    public void handleCasWithoutToken() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("CAS token is required for command: CAS"));
+        defaultCommandHandler.handle(new Request(Command.CAS, "key", null, new byte[]{1}));
+    }
+
+    @Test
+    public void handleAddAndReplace() {
+        byte[] data = {1, 2, 3};
+        when(storage.add("key", 5L, data, 0)).thenReturn(Status.EXISTS);
+        when(storage.replace("key", null, data, 0)).thenReturn(Status.REPLACED);
+        assertEquals(Status.EXISTS, defaultCommandHandler.handle(new Request(Command.ADD, "key", 5L, data)).getStatus());
+        assertEquals(Status.REPLACED, defaultCommandHandler.handle(new Request(Command.REPLACE, "key", null, data)).getStatus());
+    }
+
+    @Test
+    public void handleAppendAndPrepend() {
+        byte[] data = {1, 2, 3};
+        when(storage.concat("key", data, true)).thenReturn(new StoredValue(data, 0));
+        when(storage.concat("missing", data, false)).thenReturn(null);
+        Response response = defaultCommandHandler.handle(new Request(Command.APPEND, "key", null, data));
+        assertEquals(Status.REPLACED, response.getStatus());
+        assertFalse(response.hasData());
+        assertEquals(Status.NOT_FOUND, defaultCommandHandler.handle(new Request(Command.PREPEND, "missing", null, data)).getStatus());
+    }
+
+    @Test
+    public void handleAppendToCompressedOrCounter() {
+        byte[] data = {1, 2, 3};
+        when(storage.concat("compressed", data, true))
+                .thenReturn(new StoredValue(new byte[]{4}, DefaultCommandHandler.ITEM_FLAG_COMPRESSED));
+        when(storage.concat("counter", data, false))
+                .thenReturn(new StoredValue(CounterValue.toByteArray(1), CounterValue.ITEM_FLAG_COUNTER));
+        assertEquals(Status.NOT_STORED,
+                defaultCommandHandler.handle(new Request(Command.APPEND, "compressed", null, data)).getStatus());
+        assertEquals(Status.NOT_STORED,
+                defaultCommandHandler.handle(new Request(Command.PREPEND, "counter", null, data)).getStatus());
+    }
+
+    @Test
+    public void handleAppendCompressed() {
+        Request request = new Request(Command.APPEND, "key", null, new byte[]{1});
+        request.setCompressed(true);
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Compressed data can't be concatenated for command: APPEND"));
+        defaultCommandHandler.handle(request);
+    }
+
+    @Test
+    public void handleTouch() {
+        when(storage.touch("key", 5L)).thenReturn(new StoredValue(new byte[]{1}, 0));
+        Response response = defaultCommandHandler.handle(new Request(Command.TOUCH, "key", 5L, null));
+        assertEquals(Status.TOUCHED, response.getStatus());
+        assertFalse(response.hasData());
+        assertEquals(Status.NOT_FOUND, defaultCommandHandler.handle(new Request(Command.TOUCH, "missing", 5L, null)).getStatus());
+    }
+
+    @Test
+    public void handleGetAndTouch() {
+        byte[] data = {1, 2, 3};
+        when(storage.touch("key", 5L)).thenReturn(new StoredValue(data, DefaultCommandHandler.ITEM_FLAG_COMPRESSED, null, 42));
+        Response response = defaultCommandHandler.handle(new Request(Command.GAT, "key", 5L, null));
+        assertEquals(Status.GOTTEN, response.getStatus());
+        assertArrayEquals(data, response.getData());
+        assertTrue(response.isCompressed());
+        assertEquals(Long.valueOf(42), response.getCas());
+        verify(storage, never()).getValue("key");
+        verify(serverMetrics).recordGet(true);
+    }
+
+    @Test
+    public void handleMGet() {
+        byte[] data = {1, 2, 3};
+        when(storage.getValue("1")).thenReturn(new StoredValue(data, 0));
+        when(storage.getValue("2")).thenReturn(null);
+        Request request = new Request(Command.MGET);
+        request.setBatch(Arrays.asList(new Request(Command.MGET, "1"), new Request(Command.MGET, "2")));
+        Response response = defaultCommandHandler.handle(request);
+        assertEquals(Status.PROCESSED, response.getStatus());
+        assertEquals(2, response.getBatch().size());
+        assertEquals(Status.GOTTEN, response.getBatch().get(0).getStatus());
+        assertArrayEquals(data, response.getBatch().get(0).getData());
+        assertEquals(Status.NOT_FOUND, response.getBatch().get(1).getStatus());
+        assertNull(response.getBatch().get(1).getData());
+    }
+
+    @Test
+    public void handleMSet() {
+        byte[] data = {1, 2, 3};
+        when(storage.put("1", 5L, data, 0)).thenReturn(Status.ADDED);
+        when(storage.put("2", null, data, 0)).thenReturn(Status.REPLACED);
+        Request request = new Request(Command.MSET);
+        request.setBatch(Arrays.asList(new Request(Command.MSET, "1", 5L, data), new Request(Command.MSET, "2", null, data)));
+        Response response = defaultCommandHandler.handle(request);
+        assertEquals(Status.PROCESSED, response.getStatus());
+        assertEquals(Status.ADDED, response.getBatch().get(0).getStatus());
+        assertEquals(Status.REPLACED, response.getBatch().get(1).getStatus());
+        verify(storage).put("1", 5L, data, 0);
+        verify(storage).put("2", null, data, 0);
+    }
+
+    @Test
+    public void handleMDel() {
+        when(storage.remove("1")).thenReturn(Status.REMOVED);
+        when(storage.remove("2")).thenReturn(Status.NOT_FOUND);
+        Request request = new Request(Command.MDEL);
+        request.setBatch(Arrays.asList(new Request(Command.MDEL, "1"), new Request(Command.MDEL, "2")));
+        Response response = defaultCommandHandler.handle(request);
+        assertEquals(Status.PROCESSED, response.getStatus());
+        assertEquals(Status.REMOVED, response.getBatch().get(0).getStatus());
+        assertEquals(Status.NOT_FOUND, response.getBatch().get(1).getStatus());
+    }
+
+    @Test
+    public void handleBatchWithoutEntries() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Batch is required for command: MGET"));
+        defaultCommandHandler.handle(new Request(Command.MGET));
     }
 
     @Test
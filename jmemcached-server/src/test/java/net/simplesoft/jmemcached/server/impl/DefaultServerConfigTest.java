@@ -4,18 +4,26 @@ import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
 import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
 import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
 import net.simplesoft.jmemcached.server.ClientSocketHandler;
+import net.simplesoft.jmemcached.server.EvictionPolicyType;
+import net.simplesoft.jmemcached.server.ServerMode;
+import net.simplesoft.jmemcached.server.StorageType;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
+import java.util.Properties;
 import java.util.concurrent.ThreadFactory;
 
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -24,6 +32,8 @@ public class DefaultServerConfigTest extends AbstractDefaultServerConfigTest {
 
     @Rule
     public ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
     private DefaultServerConfig defaultServerConfig;
 
     @Before
@@ -42,7 +52,20 @@ public class DefaultServerConfigTest extends AbstractDefaultServerConfigTest {
             assertEquals(9010, defaultServerConfig.getServerPort());
             assertEquals(1, defaultServerConfig.getInitThreadCount());
             assertEquals(10, defaultServerConfig.getMaxThreadCount());
+            assertEquals(ServerMode.BLOCKING, defaultServerConfig.getServerMode());
+            assertEquals(2, defaultServerConfig.getEventLoopCount());
+            assertEquals(64 * 1024 * 1024, defaultServerConfig.getMaxRequestSizeInBytes());
+            assertTrue(defaultServerConfig.isJmxEnabled());
             assertEquals(10000, defaultServerConfig.getClearDataIntervalInMills());
+            assertEquals(StorageType.HEAP, defaultServerConfig.getStorageType());
+            assertEquals(16, defaultServerConfig.getSegmentCount());
+            assertEquals(0, defaultServerConfig.getMaxMemoryInBytes());
+            assertEquals(EvictionPolicyType.LRU, defaultServerConfig.getEvictionPolicyType());
+            assertNull(defaultServerConfig.getSnapshotFile());
+            assertEquals(60000, defaultServerConfig.getSnapshotIntervalInMs());
+            assertNull(defaultServerConfig.getAppendOnlyLogFile());
+            assertEquals(60000, defaultServerConfig.getLogCompactionIntervalInMs());
+            assertEquals(64 * 1024 * 1024, defaultServerConfig.getLogCompactionMinSizeInBytes());
         }
     }
 
@@ -68,7 +91,164 @@ public class DefaultServerConfigTest extends AbstractDefaultServerConfigTest {
 
     @Test
     public void verifyToString() {
-        assertEquals("DefaultServerConfig: port=9010, initThreadCount=1, maxThreadCount=10, clearDataIntervalInMs=10000ms", defaultServerConfig.toString());
+        assertEquals("DefaultServerConfig: port=9010, mode=blocking, initThreadCount=1, maxThreadCount=10, eventLoopCount=2, maxRequestSizeInBytes=67108864, jmxEnabled=true, clearDataIntervalInMs=10000ms, storageType=heap, segmentCount=16, maxMemoryInBytes=0, evictionPolicy=lru, snapshotFile=null, snapshotIntervalInMs=60000ms, appendOnlyLogFile=null, logCompactionIntervalInMs=60000ms, logCompactionMinSizeInBytes=67108864", defaultServerConfig.toString());
+    }
+
+    @Test
+    public void getServerModeNio() {
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.server.mode", "NIO");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        assertEquals(ServerMode.NIO, defaultServerConfig.getServerMode());
+    }
+
+    @Test
+    public void getServerModeUnsupported() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("Unsupported server mode: async"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.server.mode", "async");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getServerMode();
+    }
+
+    @Test
+    public void createOffHeapStorage() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.type", "offheap");
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(properties)) {
+            assertEquals(StorageType.OFF_HEAP, defaultServerConfig.getStorageType());
+            assertEquals(OffHeapStorage.class, defaultServerConfig.getStorage().getClass());
+        }
+    }
+
+    @Test
+    public void createSegmentedStorage() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.type", "segmented");
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(properties)) {
+            assertEquals(SegmentedStorage.class, defaultServerConfig.getStorage().getClass());
+        }
+    }
+
+    @Test
+    public void getSegmentCountNotPowerOfTwo() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("jmemcached.storage.segment.count should be a power of two"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.segment.count", "12");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getSegmentCount();
+    }
+
+    @Test
+    public void getStorageTypeUnsupported() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("Unsupported storage type: disk"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.type", "disk");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getStorageType();
+    }
+
+    @Test
+    public void getEvictionPolicyTypeTinyLfu() {
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.eviction.policy", "TinyLFU");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        assertEquals(EvictionPolicyType.TINY_LFU, defaultServerConfig.getEvictionPolicyType());
+    }
+
+    @Test
+    public void getEvictionPolicyTypeUnsupported() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("Unsupported eviction policy: fifo"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.eviction.policy", "fifo");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getEvictionPolicyType();
+    }
+
+    @Test
+    public void getMaxMemoryInBytesNegative() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("jmemcached.storage.max.memory.bytes should be >= 0"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.max.memory.bytes", "-1");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getMaxMemoryInBytes();
+    }
+
+    @Test
+    public void getMaxRequestSizeInBytesTooSmall() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("jmemcached.server.max.request.bytes should be >= 1"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.server.max.request.bytes", "0");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getMaxRequestSizeInBytes();
+    }
+
+    @Test
+    public void getSnapshotIntervalInMsTooSmall() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("jmemcached.storage.snapshot.interval.ms should be >= 1000"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.snapshot.interval.ms", "999");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getSnapshotIntervalInMs();
+    }
+
+    @Test
+    public void saveSnapshotOnCloseAndLoadOnStartup() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.snapshot.file", temporaryFolder.getRoot() + "/storage.snapshot");
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(properties)) {
+            defaultServerConfig.getStorage().put("key", 60000L, new byte[]{1, 2, 3});
+        }
+        assertTrue(new File(temporaryFolder.getRoot(), "storage.snapshot").exists());
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(properties)) {
+            assertArrayEquals(new byte[]{1, 2, 3}, defaultServerConfig.getStorage().get("key"));
+        }
+    }
+
+    @Test
+    public void replayAppendOnlyLogOnStartup() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.log.file", temporaryFolder.getRoot() + "/storage.log");
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(properties)) {
+            assertEquals(LoggedStorage.class, defaultServerConfig.getStorage().getClass());
+            defaultServerConfig.getStorage().put("key", null, new byte[]{1, 2, 3});
+        }
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(properties)) {
+            assertArrayEquals(new byte[]{1, 2, 3}, defaultServerConfig.getStorage().get("key"));
+        }
+    }
+
+    @Test
+    public void getLogCompactionMinSizeInBytesNegative() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("jmemcached.storage.log.compaction.min.bytes should be >= 0"));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.storage.log.compaction.min.bytes", "-1");
+        defaultServerConfig = createDefaultServerConfigMock(properties);
+        defaultServerConfig.getLogCompactionMinSizeInBytes();
+    }
+
+    @Test
+    public void createSnapshotThreadFactory() {
+        Thread thread = defaultServerConfig.createSnapshotThreadFactory().newThread(mock(Runnable.class));
+        assertTrue(thread.isDaemon());
+        assertEquals(Thread.MIN_PRIORITY, thread.getPriority());
+        assertEquals("StorageSnapshotJobThread", thread.getName());
     }
 
     @Test
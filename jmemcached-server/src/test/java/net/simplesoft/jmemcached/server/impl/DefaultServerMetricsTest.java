@@ -0,0 +1,68 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.Storage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DefaultServerMetricsTest {
+
+    private Storage storage;
+    private long currentTimeMillis;
+    private DefaultServerMetrics serverMetrics;
+
+    @Before
+    public void before() {
+        storage = mock(Storage.class);
+        ServerConfig serverConfig = mock(ServerConfig.class);
+        when(serverConfig.getStorage()).thenReturn(storage);
+        currentTimeMillis = 1000000;
+        serverMetrics = new DefaultServerMetrics(serverConfig) {
+            @Override
+            protected long currentTimeMillis() {
+                return currentTimeMillis;
+            }
+        };
+    }
+
+    @Test
+    public void getStatistics() {
+        when(storage.getItemCount()).thenReturn(3L);
+        when(storage.getUsedMemoryInBytes()).thenReturn(300L);
+        when(storage.getEvictionCount()).thenReturn(1L);
+        serverMetrics.recordConnection();
+        serverMetrics.recordGet(true);
+        serverMetrics.recordGet(true);
+        serverMetrics.recordGet(true);
+        serverMetrics.recordGet(false);
+        for (int i = 0; i < 4; i++) {
+            serverMetrics.recordCommand(Command.GET, 2000);
+        }
+        serverMetrics.recordCommand(Command.PUT, 5000);
+        currentTimeMillis += 10000;
+
+        Map<String, String> statistics = serverMetrics.getStatistics();
+        assertEquals("10", statistics.get("uptime_seconds"));
+        assertEquals("1", statistics.get("total_connections"));
+        assertEquals("5", statistics.get("total_commands"));
+        assertEquals("0.50", statistics.get("commands_per_second"));
+        assertEquals("3", statistics.get("get_hits"));
+        assertEquals("1", statistics.get("get_misses"));
+        assertEquals("0.75", statistics.get("get_hit_ratio"));
+        assertEquals("3", statistics.get("items"));
+        assertEquals("300", statistics.get("bytes"));
+        assertEquals("1", statistics.get("evictions"));
+        assertEquals("4", statistics.get("cmd_get"));
+        assertEquals("2.00", statistics.get("cmd_get_mean_us"));
+        assertEquals("2.00", statistics.get("cmd_get_max_us"));
+        assertEquals("1", statistics.get("cmd_put"));
+        assertEquals("5.00", statistics.get("cmd_put_p99_us"));
+        assertFalse(statistics.containsKey("cmd_remove"));
+    }
+}
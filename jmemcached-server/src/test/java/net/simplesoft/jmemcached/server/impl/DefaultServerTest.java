@@ -4,6 +4,8 @@ import net.simplesoft.TestUtils;
 import net.simplesoft.jmemcached.exception.JMemcachedException;
 import net.simplesoft.jmemcached.server.ClientSocketHandler;
 import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import net.simplesoft.jmemcached.server.ServerMode;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.Before;
 import org.junit.Rule;
@@ -11,7 +13,11 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.slf4j.Logger;
 
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -38,6 +44,7 @@ public class DefaultServerTest {
         logger = mock(Logger.class);
         serverConfig = mock(ServerConfig.class);
         when(serverConfig.toString()).thenReturn("serverConfig");
+        when(serverConfig.getServerMetrics()).thenReturn(mock(ServerMetrics.class));
         serverSocket = mock(ServerSocket.class);
         executorService = mock(ExecutorService.class);
         mainServerThread = mock(Thread.class);
@@ -96,6 +103,44 @@ public class DefaultServerTest {
         verify(logger).info("Server started: serverConfig");
     }
 
+    @Test
+    public void startRegistersServerMBean() throws Exception {
+        when(mainServerThread.getState()).thenReturn(Thread.State.NEW);
+        when(serverConfig.isJmxEnabled()).thenReturn(true);
+        when(serverConfig.getInitThreadCount()).thenReturn(1);
+        when(serverConfig.getMaxThreadCount()).thenReturn(10);
+        when(serverConfig.getWorkerThreadFactory()).thenReturn(Executors.defaultThreadFactory());
+        defaultServer = new DefaultServer(serverConfig) {
+            @Override
+            protected Thread createMainServerThread(Runnable r) {
+                return mainServerThread;
+            }
+
+            @Override
+            protected ServerSocket createServerSocket() {
+                return serverSocket;
+            }
+
+            @Override
+            protected Thread getShutdownHook() {
+                return new Thread();
+            }
+        };
+        defaultServer.start();
+
+        ObjectName objectName = new ObjectName("net.simplesoft.jmemcached:type=Server");
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(10, mBeanServer.getAttribute(objectName, "MaxThreadCount"));
+        assertEquals(0L, mBeanServer.getAttribute(objectName, "RejectedConnections"));
+        mBeanServer.setAttribute(objectName, new Attribute("MaxThreadCount", 20));
+        ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor)
+                FieldUtils.getDeclaredField(DefaultServer.class, "executorService", true).get(defaultServer);
+        assertEquals(20, threadPoolExecutor.getMaximumPoolSize());
+
+        defaultServer.destroyJMemCachedServer();
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+
     @Test
     public void startFailed() {
         thrown.expect(JMemcachedException.class);
@@ -289,6 +334,50 @@ public class DefaultServerTest {
 
     }
 
+    @Test
+    public void createVirtualThreadExecutorService() throws Exception {
+        when(serverConfig.getServerMode()).thenReturn(ServerMode.VIRTUAL);
+        when(serverConfig.getWorkerThreadFactory()).thenReturn(Executors.defaultThreadFactory());
+
+        defaultServer = new DefaultServer(serverConfig) {
+            @Override
+            protected Thread createMainServerThread(Runnable r) {
+                return mainServerThread;
+            }
+
+            @Override
+            protected ServerSocket createServerSocket() {
+                return serverSocket;
+            }
+        };
+        ExecutorService virtualExecutorService = (ExecutorService)
+                FieldUtils.getDeclaredField(DefaultServer.class, "executorService", true).get(defaultServer);
+
+        // all connections are served at the same time: there is no max thread count ceiling
+        int connectionCount = 50;
+        final CountDownLatch started = new CountDownLatch(connectionCount);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < connectionCount; i++) {
+            virtualExecutorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        virtualExecutorService.shutdownNow();
+
+        verify(serverConfig, never()).getInitThreadCount();
+        verify(serverConfig, never()).getMaxThreadCount();
+    }
+
     @Test
     public void createServerRunnableSuccessRun() throws IOException {
         defaultServer = spy(new DefaultServer(serverConfig) {
@@ -362,6 +451,7 @@ public class DefaultServerTest {
         verify(serverConfig).buildNewClientSocketHandler(clientSocket);
         verify(clientSocket).close();
         verify(logger).error("All worker threads are busy. A new connection rejected: RejectedExecutionException");
+        assertEquals(1, defaultServer.getRejectedConnections());
 
         verify(logger, never()).info("A new client connection established: localhost");
         verify(defaultServer, never()).destroyJMemCachedServer();
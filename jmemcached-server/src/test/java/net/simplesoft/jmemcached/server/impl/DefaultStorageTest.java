@@ -1,7 +1,10 @@
 package net.simplesoft.jmemcached.server.impl;
 
 import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.EvictionPolicyType;
 import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,6 +14,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Mockito.*;
 
 public class DefaultStorageTest {
@@ -44,8 +48,7 @@ public class DefaultStorageTest {
     @Test
     public void close() throws Exception {
         defaultStorage.close();
-        verify(executorServiceMock, never()).shutdownNow();
-        verify(executorServiceMock, never()).shutdown();
+        verify(executorServiceMock).shutdownNow();
     }
 
     @Test
@@ -75,6 +78,16 @@ public class DefaultStorageTest {
         assertArrayEquals(new byte[]{5, 6, 7}, data);
     }
 
+    @Test
+    public void getValueWithFlags() {
+        defaultStorage.put("key", null, new byte[]{1, 2, 3}, 5);
+        StoredValue value = defaultStorage.getValue("key");
+        assertArrayEquals(new byte[]{1, 2, 3}, value.getData());
+        assertEquals(5, value.getFlags());
+        assertEquals(0, defaultStorage.getValue("test").getFlags());
+        assertNull(defaultStorage.getValue("not_found"));
+    }
+
     @Test
     public void getNotFound() {
         byte[] data = defaultStorage.get("not_found");
@@ -109,12 +122,317 @@ public class DefaultStorageTest {
         assertEquals(Status.NOT_FOUND, status);
     }
 
+    @Test
+    public void putIndexesExpiry() {
+        assertEquals(1, defaultStorage.expiryIndex.size());
+        defaultStorage.put("test", TimeUnit.SECONDS.toMillis(2), new byte[]{1});
+        assertEquals(1, defaultStorage.expiryIndex.size());
+        defaultStorage.put("test", null, new byte[]{1});
+        assertEquals(0, defaultStorage.expiryIndex.size());
+    }
+
+    @Test
+    public void removeAndClearExpiryIndex() {
+        defaultStorage.put("key", TimeUnit.SECONDS.toMillis(1), new byte[]{1});
+        defaultStorage.remove("test");
+        assertEquals(1, defaultStorage.expiryIndex.size());
+        defaultStorage.clear();
+        assertEquals(0, defaultStorage.expiryIndex.size());
+    }
+
+    @Test
+    public void clearExpiredDataJobRemovesExpired() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(1100);
+        defaultStorage.clearExpiredDataJob.sweep();
+        assertEquals(1, defaultStorage.getExpiredCount());
+        assertEquals(0, defaultStorage.expiryIndex.size());
+        assertEquals(Status.NOT_FOUND, defaultStorage.remove("test"));
+    }
+
+    @Test
+    public void updateCounter() {
+        StoredValue value = defaultStorage.updateCounter("counter", null, 5, true);
+        assertEquals(5, CounterValue.toLong(value.getData()));
+        assertEquals(CounterValue.ITEM_FLAG_COUNTER, value.getFlags());
+        assertEquals(8, CounterValue.toLong(defaultStorage.updateCounter("counter", null, 3, true).getData()));
+        assertEquals(2, CounterValue.toLong(defaultStorage.updateCounter("counter", null, 6, false).getData()));
+        // decrements stop at 0, increments wrap around as unsigned
+        assertEquals(0, CounterValue.toLong(defaultStorage.updateCounter("counter", null, 10, false).getData()));
+        assertEquals(0, CounterValue.toLong(defaultStorage.updateCounter("created", null, 1, false).getData()));
+        assertEquals(0, CounterValue.update(-1L, 1, true));
+        assertEquals(-2L, CounterValue.update(-1L, 1, false));
+        assertNull(defaultStorage.updateCounter("test", null, 1, true));
+        assertArrayEquals(new byte[]{5, 6, 7}, defaultStorage.get("test"));
+    }
+
+    @Test
+    public void updateCounterKeepsExpiration() {
+        StoredValue created = defaultStorage.updateCounter("counter", 60000L, 1, true);
+        assertNotNull(created.getExpiresAt());
+        StoredValue updated = defaultStorage.updateCounter("counter", null, 1, true);
+        assertEquals(created.getExpiresAt(), updated.getExpiresAt());
+        assertEquals(2, defaultStorage.expiryIndex.size());
+    }
+
+    @Test
+    public void updateCounterConcurrently() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        defaultStorage.updateCounter("counter", null, 1, true);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, CounterValue.toLong(defaultStorage.get("counter")));
+    }
+
+    @Test
+    public void compareAndSet() {
+        long cas = defaultStorage.getValue("test").getCas();
+        assertEquals(Status.REPLACED, defaultStorage.compareAndSet("test", cas, null, new byte[]{1}, 5));
+        StoredValue value = defaultStorage.getValue("test");
+        assertArrayEquals(new byte[]{1}, value.getData());
+        assertEquals(5, value.getFlags());
+        assertNotEquals(cas, value.getCas());
+        assertEquals(0, defaultStorage.expiryIndex.size());
+        assertEquals(Status.EXISTS, defaultStorage.compareAndSet("test", cas, null, new byte[]{2}, 0));
+        assertArrayEquals(new byte[]{1}, defaultStorage.get("test"));
+        assertEquals(Status.NOT_FOUND, defaultStorage.compareAndSet("not_found", cas, null, new byte[]{2}, 0));
+        assertNull(defaultStorage.get("not_found"));
+    }
+
+    @Test
+    public void writesChangeCas() {
+        long cas = defaultStorage.getValue("test").getCas();
+        defaultStorage.put("test", null, new byte[]{5, 6, 7});
+        assertNotEquals(cas, defaultStorage.getValue("test").getCas());
+        cas = defaultStorage.updateCounter("counter", null, 1, true).getCas();
+        assertNotEquals(cas, defaultStorage.updateCounter("counter", null, 1, true).getCas());
+    }
+
+    @Test
+    public void compareAndSetConcurrently() throws InterruptedException {
+        defaultStorage.put("counter", null, CounterValue.toByteArray(0));
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        Status status;
+                        do {
+                            StoredValue value = defaultStorage.getValue("counter");
+                            byte[] data = CounterValue.toByteArray(CounterValue.toLong(value.getData()) + 1);
+                            status = defaultStorage.compareAndSet("counter", value.getCas(), null, data, 0);
+                        } while (status == Status.EXISTS);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, CounterValue.toLong(defaultStorage.get("counter")));
+    }
+
+    @Test
+    public void touch() throws InterruptedException {
+        long cas = defaultStorage.getValue("test").getCas();
+        StoredValue value = defaultStorage.touch("test", TimeUnit.SECONDS.toMillis(3));
+        assertArrayEquals(new byte[]{5, 6, 7}, value.getData());
+        assertEquals(cas, value.getCas());
+        assertEquals(1, defaultStorage.expiryIndex.size());
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        defaultStorage.clearExpiredDataJob.sweep();
+        assertArrayEquals(new byte[]{5, 6, 7}, defaultStorage.get("test"));
+        assertNotNull(defaultStorage.touch("test", null));
+        assertEquals(0, defaultStorage.expiryIndex.size());
+        assertNull(defaultStorage.getValue("test").getExpiresAt());
+        assertNull(defaultStorage.touch("not_found", null));
+    }
+
+    @Test
+    public void add() throws InterruptedException {
+        assertEquals(Status.EXISTS, defaultStorage.add("test", null, new byte[]{1}, 0));
+        assertArrayEquals(new byte[]{5, 6, 7}, defaultStorage.get("test"));
+        assertEquals(Status.ADDED, defaultStorage.add("key", null, new byte[]{1}, 5));
+        assertEquals(5, defaultStorage.getValue("key").getFlags());
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertEquals(Status.ADDED, defaultStorage.add("test", null, new byte[]{2}, 0));
+        assertArrayEquals(new byte[]{2}, defaultStorage.get("test"));
+        assertEquals(0, defaultStorage.expiryIndex.size());
+    }
+
+    @Test
+    public void replace() {
+        assertEquals(Status.NOT_FOUND, defaultStorage.replace("key", null, new byte[]{1}, 0));
+        assertNull(defaultStorage.get("key"));
+        assertEquals(Status.REPLACED, defaultStorage.replace("test", null, new byte[]{1}, 5));
+        assertArrayEquals(new byte[]{1}, defaultStorage.get("test"));
+        assertEquals(0, defaultStorage.expiryIndex.size());
+    }
+
+    @Test
+    public void concat() {
+        byte[] data = defaultStorage.get("test");
+        StoredValue value = defaultStorage.concat("test", new byte[]{8, 9}, true);
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9}, value.getData());
+        assertNotNull(value.getExpiresAt());
+        assertArrayEquals(new byte[]{1, 5, 6, 7, 8, 9}, defaultStorage.concat("test", new byte[]{1}, false).getData());
+        // readers of the old value are not affected
+        assertArrayEquals(new byte[]{5, 6, 7}, data);
+        assertNull(defaultStorage.concat("key", new byte[]{1}, true));
+        assertNull(defaultStorage.get("key"));
+    }
+
+    @Test
+    public void concatCompressedOrCounter() {
+        defaultStorage.put("compressed", null, new byte[]{1, 2}, DefaultCommandHandler.ITEM_FLAG_COMPRESSED);
+        assertArrayEquals(new byte[]{1, 2}, defaultStorage.concat("compressed", new byte[]{3}, true).getData());
+        assertArrayEquals(new byte[]{1, 2}, defaultStorage.get("compressed"));
+        defaultStorage.updateCounter("counter", null, 5, true);
+        StoredValue value = defaultStorage.concat("counter", new byte[]{3}, false);
+        assertArrayEquals(CounterValue.toByteArray(5), value.getData());
+        assertArrayEquals(CounterValue.toByteArray(5), defaultStorage.get("counter"));
+    }
+
+    @Test
+    public void unboundedByDefault() {
+        assertNull(defaultStorage.evictionPolicy);
+        assertEquals(4 * 2 + 3 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES, defaultStorage.getUsedMemoryInBytes());
+        assertEquals(1, defaultStorage.getItemCount());
+    }
+
+    @Test
+    public void unboundedUsedMemoryFollowsWrites() {
+        long overhead = DefaultStorage.StorageItem.OVERHEAD_IN_BYTES;
+        defaultStorage.clear();
+        assertEquals(0, defaultStorage.getUsedMemoryInBytes());
+        defaultStorage.put("1", null, new byte[10]);
+        defaultStorage.put("1", null, new byte[20]);
+        assertEquals(20 + 2 + overhead, defaultStorage.getUsedMemoryInBytes());
+        defaultStorage.concat("1", new byte[5], true);
+        assertEquals(Status.ADDED, defaultStorage.add("2", null, new byte[10], 0));
+        assertEquals(Status.REPLACED, defaultStorage.replace("2", null, new byte[30], 0));
+        defaultStorage.updateCounter("3", null, 1, true);
+        assertEquals(25 + 30 + CounterValue.SIZE_IN_BYTES + 3 * (2 + overhead), defaultStorage.getUsedMemoryInBytes());
+        long cas = defaultStorage.getValue("2").getCas();
+        assertEquals(Status.REPLACED, defaultStorage.compareAndSet("2", cas, null, new byte[1], 0));
+        defaultStorage.remove("1");
+        assertEquals(1 + CounterValue.SIZE_IN_BYTES + 2 * (2 + overhead), defaultStorage.getUsedMemoryInBytes());
+        defaultStorage.clear();
+        assertEquals(0, defaultStorage.getUsedMemoryInBytes());
+    }
+
+    @Test
+    public void putEvictsLeastRecentlyUsed() {
+        defaultStorage = createBoundedStorage(EvictionPolicyType.LRU);
+        defaultStorage.put("1", null, new byte[100]);
+        defaultStorage.put("2", null, new byte[100]);
+        defaultStorage.get("1");
+        defaultStorage.put("3", null, new byte[100]);
+
+        assertNotNull(defaultStorage.get("1"));
+        assertNull(defaultStorage.get("2"));
+        assertNotNull(defaultStorage.get("3"));
+        assertEquals(1, defaultStorage.getEvictionCount());
+        assertEquals(2 * (100 + 2 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES), defaultStorage.getUsedMemoryInBytes());
+    }
+
+    @Test
+    public void putTinyLfuKeepsFrequentlyUsed() {
+        defaultStorage = createBoundedStorage(EvictionPolicyType.TINY_LFU);
+        defaultStorage.put("1", null, new byte[100]);
+        defaultStorage.put("2", null, new byte[100]);
+        defaultStorage.get("1");
+        defaultStorage.get("2");
+        assertEquals(Status.NOT_STORED, defaultStorage.put("3", null, new byte[100]));
+
+        assertNotNull(defaultStorage.get("1"));
+        assertNotNull(defaultStorage.get("2"));
+        assertNull(defaultStorage.get("3"));
+        assertEquals(1, defaultStorage.getEvictionCount());
+    }
+
+    @Test
+    public void getsAreRecordedInBatches() {
+        defaultStorage = createBoundedStorage(EvictionPolicyType.LRU);
+        defaultStorage.put("1", null, new byte[100]);
+        for (int i = 1; i < DefaultStorage.READ_BUFFER_DRAIN_THRESHOLD; i++) {
+            defaultStorage.get("1");
+        }
+        assertEquals(DefaultStorage.READ_BUFFER_DRAIN_THRESHOLD - 1, defaultStorage.readBufferSize.get());
+        defaultStorage.get("1");
+        assertEquals(0, defaultStorage.readBufferSize.get());
+        assertTrue(defaultStorage.readBuffer.isEmpty());
+    }
+
+    @Test
+    public void conditionalWritesEvict() {
+        defaultStorage = createBoundedStorage(EvictionPolicyType.LRU);
+        defaultStorage.put("1", null, new byte[100]);
+        assertEquals(Status.ADDED, defaultStorage.add("2", null, new byte[100], 0));
+        assertNotNull(defaultStorage.concat("2", new byte[10], true));
+        assertNull(defaultStorage.get("1"));
+        assertEquals(1, defaultStorage.getEvictionCount());
+        assertEquals(110 + 2 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES, defaultStorage.getUsedMemoryInBytes());
+    }
+
+    @Test
+    public void removeAndClearReleaseMemory() {
+        defaultStorage = createBoundedStorage(EvictionPolicyType.LRU);
+        defaultStorage.put("1", null, new byte[100]);
+        defaultStorage.put("2", null, new byte[100]);
+        defaultStorage.remove("1");
+        assertEquals(100 + 2 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES, defaultStorage.getUsedMemoryInBytes());
+        defaultStorage.clear();
+        assertEquals(0, defaultStorage.getUsedMemoryInBytes());
+        assertEquals(0, defaultStorage.getEvictionCount());
+    }
+
+    private DefaultStorage createBoundedStorage(EvictionPolicyType evictionPolicyType) {
+        // room for two items with 1 byte keys and 100 bytes of data
+        when(serverConfig.getMaxMemoryInBytes()).thenReturn(2L * (100 + 2 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES));
+        when(serverConfig.getEvictionPolicyType()).thenReturn(evictionPolicyType);
+        return new DefaultStorage(serverConfig) {
+            @Override
+            protected ExecutorService createClearExpiredDataExecutorService() {
+                return executorServiceMock;
+            }
+        };
+    }
+
     @Test
     public void clear() {
         Status status = defaultStorage.clear();
         assertEquals(Status.CLEARED, status);
         assertNull(defaultStorage.get("test"));
+        assertEquals(0, defaultStorage.expiryIndex.size());
     }
 
-
-}
\ No newline at end of file
+    @Test
+    public void forEachSkipsExpired() throws InterruptedException {
+        defaultStorage.put("key", null, new byte[]{1, 2, 3}, 5);
+        StorageVisitor visitor = mock(StorageVisitor.class);
+        defaultStorage.forEach(visitor);
+        verify(visitor).visit(eq("key"), (Long) isNull(), aryEq(new byte[]{1, 2, 3}), eq(5L));
+        verify(visitor).visit(eq("test"), (Long) notNull(), aryEq(new byte[]{5, 6, 7}), eq(0L));
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        visitor = mock(StorageVisitor.class);
+        defaultStorage.forEach(visitor);
+        verify(visitor).visit(eq("key"), (Long) isNull(), aryEq(new byte[]{1, 2, 3}), eq(5L));
+        verifyNoMoreInteractions(visitor);
+    }
+}
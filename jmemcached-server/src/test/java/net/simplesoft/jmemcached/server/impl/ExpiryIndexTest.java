@@ -0,0 +1,52 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExpiryIndexTest {
+
+    private ExpiryIndex expiryIndex;
+
+    @Before
+    public void before() {
+        expiryIndex = new ExpiryIndex();
+        expiryIndex.add("b", 100);
+        expiryIndex.add("a", 100);
+        expiryIndex.add("c", 200);
+    }
+
+    @Test
+    public void pollExpiredInOrder() {
+        assertEquals(Collections.emptyList(), expiryIndex.pollExpired(100));
+        assertEquals(Arrays.asList("a", "b"), expiryIndex.pollExpired(101));
+        assertEquals(1, expiryIndex.size());
+        assertEquals(Collections.singletonList("c"), expiryIndex.pollExpired(Long.MAX_VALUE));
+        assertEquals(0, expiryIndex.size());
+    }
+
+    @Test
+    public void remove() {
+        expiryIndex.remove("a", 100);
+        expiryIndex.remove("c", 100);
+        assertEquals(Collections.singletonList("b"), expiryIndex.pollExpired(101));
+        assertEquals(1, expiryIndex.size());
+    }
+
+    @Test
+    public void addSameKeyWithDifferentTime() {
+        expiryIndex.add("a", 50);
+        assertEquals(4, expiryIndex.size());
+        assertEquals(Collections.singletonList("a"), expiryIndex.pollExpired(51));
+    }
+
+    @Test
+    public void clear() {
+        expiryIndex.clear();
+        assertEquals(0, expiryIndex.size());
+    }
+}
@@ -0,0 +1,67 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LruEvictionPolicyTest {
+
+    private LruEvictionPolicy lruEvictionPolicy;
+
+    @Before
+    public void before() {
+        lruEvictionPolicy = new LruEvictionPolicy(100);
+        lruEvictionPolicy.recordPut("1", 40);
+        lruEvictionPolicy.recordPut("2", 40);
+    }
+
+    @Test
+    public void recordPutWithinLimit() {
+        assertTrue(lruEvictionPolicy.recordPut("3", 20).isEmpty());
+        assertEquals(100, lruEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void recordPutEvictsLeastRecentlyUsed() {
+        assertEquals(Collections.singletonList("1"), lruEvictionPolicy.recordPut("3", 40));
+        assertEquals(80, lruEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void recordAccessProtectsFromEviction() {
+        lruEvictionPolicy.recordAccess("1");
+        assertEquals(Collections.singletonList("2"), lruEvictionPolicy.recordPut("3", 40));
+    }
+
+    @Test
+    public void recordPutReplaceUpdatesWeight() {
+        assertTrue(lruEvictionPolicy.recordPut("1", 10).isEmpty());
+        assertEquals(50, lruEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void recordPutTooLarge() {
+        assertEquals(Arrays.asList("1", "2", "3"), lruEvictionPolicy.recordPut("3", 101));
+        assertEquals(0, lruEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void recordRemove() {
+        lruEvictionPolicy.recordRemove("1");
+        lruEvictionPolicy.recordRemove("not_found");
+        assertEquals(40, lruEvictionPolicy.getWeightedSize());
+        assertTrue(lruEvictionPolicy.recordPut("3", 60).isEmpty());
+    }
+
+    @Test
+    public void clear() {
+        lruEvictionPolicy.clear();
+        assertEquals(0, lruEvictionPolicy.getWeightedSize());
+        assertTrue(lruEvictionPolicy.recordPut("3", 100).isEmpty());
+    }
+}
@@ -0,0 +1,268 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+import static net.simplesoft.jmemcached.server.impl.MemcachedBinaryProtocol.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MemcachedBinaryProtocolTest {
+
+    private static final byte[] NONE = new byte[0];
+
+    private ExecutorService executorServiceMock;
+    private DefaultStorage storage;
+    private MemcachedBinaryProtocol protocol;
+
+    @Before
+    public void before() {
+        ServerConfig serverConfig = mock(ServerConfig.class);
+        when(serverConfig.getClearDataIntervalInMills()).thenReturn(10);
+        executorServiceMock = mock(ExecutorService.class);
+        storage = new DefaultStorage(serverConfig) {
+            @Override
+            protected ExecutorService createClearExpiredDataExecutorService() {
+                return executorServiceMock;
+            }
+        };
+        ServerMetrics serverMetrics = mock(ServerMetrics.class);
+        when(serverMetrics.getStatistics()).thenReturn(Collections.singletonMap("curr_items", "1"));
+        when(serverConfig.getStorage()).thenReturn(storage);
+        when(serverConfig.getServerMetrics()).thenReturn(serverMetrics);
+        protocol = new MemcachedBinaryProtocol(serverConfig);
+    }
+
+    @Test
+    public void setAndGet() throws IOException {
+        ByteBuffer response = execute(request(OPCODE_SET, 7, 0, extras(-1, 0), "key", bytes("hello")));
+        assertHeader(response, OPCODE_SET, STATUS_NO_ERROR, 0, 0, 0, 7);
+        assertEquals(0xFFFFFFFFL, storage.getValue("key").getFlags());
+        assertEquals(24, response.remaining());
+
+        response = execute(request(OPCODE_GETK, 8, 0, NONE, "key", NONE));
+        long cas = storage.getValue("key").getCas();
+        assertHeader(response, OPCODE_GETK, STATUS_NO_ERROR, 3, 4, 12, 8);
+        assertEquals(cas, response.getLong(16));
+        assertEquals(-1, response.getInt(24));
+        assertEquals("keyhello", string(response, 28, 8));
+    }
+
+    @Test
+    public void quietGetMiss() throws IOException {
+        byte[] requests = concat(request(OPCODE_GETQ, 1, 0, NONE, "missing", NONE),
+                request(OPCODE_NOOP, 2, 0, NONE, "", NONE));
+        ByteBuffer response = execute(requests);
+        assertHeader(response, OPCODE_NOOP, STATUS_NO_ERROR, 0, 0, 0, 2);
+        assertEquals(24, response.remaining());
+    }
+
+    @Test
+    public void getMiss() throws IOException {
+        ByteBuffer response = execute(request(OPCODE_GET, 1, 0, NONE, "missing", NONE));
+        assertHeader(response, OPCODE_GET, STATUS_KEY_NOT_FOUND, 0, 0, 9, 1);
+    }
+
+    @Test
+    public void getNullValue() throws IOException {
+        storage.put("key", null, null);
+        ByteBuffer response = execute(request(OPCODE_GET, 1, 0, NONE, "key", NONE));
+        assertHeader(response, OPCODE_GET, STATUS_NO_ERROR, 0, 4, 4, 1);
+        assertEquals(0, response.getInt(24));
+    }
+
+    @Test
+    public void conditionalStore() throws IOException {
+        assertStatus(STATUS_KEY_NOT_FOUND, request(OPCODE_REPLACE, 0, 0, extras(0, 0), "key", bytes("a")));
+        assertStatus(STATUS_NO_ERROR, request(OPCODE_ADD, 0, 0, extras(0, 0), "key", bytes("b")));
+        assertStatus(STATUS_KEY_EXISTS, request(OPCODE_ADD, 0, 0, extras(0, 0), "key", bytes("c")));
+        assertStatus(STATUS_NO_ERROR, request(OPCODE_APPEND, 0, 0, NONE, "key", bytes("c")));
+        assertStatus(STATUS_NO_ERROR, request(OPCODE_PREPEND, 0, 0, NONE, "key", bytes("a")));
+        assertStatus(STATUS_ITEM_NOT_STORED, request(OPCODE_APPEND, 0, 0, NONE, "missing", bytes("a")));
+        assertStatus(STATUS_NOT_SUPPORTED, request(OPCODE_APPEND, 0, 1, NONE, "key", bytes("a")));
+        assertArrayEquals(bytes("abc"), storage.get("key"));
+    }
+
+    @Test
+    public void cas() throws IOException {
+        storage.put("key", null, bytes("a"), 0);
+        long cas = storage.getValue("key").getCas();
+        assertStatus(STATUS_KEY_EXISTS, request(OPCODE_SET, 0, cas + 1, extras(0, 0), "key", bytes("b")));
+        assertStatus(STATUS_NO_ERROR, request(OPCODE_SET, 0, cas, extras(0, 0), "key", bytes("b")));
+        assertArrayEquals(bytes("b"), storage.get("key"));
+    }
+
+    @Test
+    public void quietSetAndDelete() throws IOException {
+        byte[] requests = concat(request(OPCODE_SETQ, 0, 0, extras(0, 0), "key", bytes("a")),
+                request(OPCODE_DELETEQ, 0, 0, NONE, "key", NONE));
+        assertEquals(0, execute(requests).remaining());
+        assertNull(storage.get("key"));
+        assertStatus(STATUS_KEY_NOT_FOUND, request(OPCODE_DELETEQ, 0, 0, NONE, "key", NONE));
+    }
+
+    @Test
+    public void incrAndDecr() throws IOException {
+        assertStatus(STATUS_KEY_NOT_FOUND, request(OPCODE_INCREMENT, 0, 0, counterExtras(1, 5, -1), "key", NONE));
+
+        ByteBuffer response = execute(request(OPCODE_INCREMENT, 0, 0, counterExtras(1, 5, 0), "key", NONE));
+        assertHeader(response, OPCODE_INCREMENT, STATUS_NO_ERROR, 0, 0, 8, 0);
+        assertEquals(5, response.getLong(24));
+
+        response = execute(request(OPCODE_DECREMENT, 0, 0, counterExtras(2, 0, 0), "key", NONE));
+        assertEquals(3, response.getLong(24));
+        assertArrayEquals(bytes("3"), storage.get("key"));
+
+        storage.put("key", null, bytes("a"), 0);
+        assertStatus(STATUS_NON_NUMERIC_VALUE, request(OPCODE_INCREMENT, 0, 0, counterExtras(1, 0, 0), "key", NONE));
+    }
+
+    @Test
+    public void touchAndGat() throws IOException {
+        storage.put("key", null, bytes("a"), 0);
+        assertStatus(STATUS_NO_ERROR, request(OPCODE_TOUCH, 0, 0, ByteBuffer.allocate(4).putInt(100).array(),
+                "key", NONE));
+        assertTrue(storage.getValue("key").getExpiresAt() > System.currentTimeMillis());
+
+        ByteBuffer response = execute(request(OPCODE_GAT, 0, 0, new byte[4], "key", NONE));
+        assertHeader(response, OPCODE_GAT, STATUS_NO_ERROR, 0, 4, 5, 0);
+        assertNull(storage.getValue("key").getExpiresAt());
+    }
+
+    @Test
+    public void flushVersionAndStat() throws IOException {
+        storage.put("key", null, bytes("a"), 0);
+        assertStatus(STATUS_NO_ERROR, request(OPCODE_FLUSH, 0, 0, NONE, "", NONE));
+        assertNull(storage.get("key"));
+        assertStatus(STATUS_NOT_SUPPORTED, request(OPCODE_FLUSH, 0, 0, ByteBuffer.allocate(4).putInt(10).array(),
+                "", NONE));
+
+        ByteBuffer response = execute(request(OPCODE_VERSION, 0, 0, NONE, "", NONE));
+        assertEquals(VERSION, string(response, 24, 3));
+
+        response = execute(request(OPCODE_STAT, 0, 0, NONE, "", NONE));
+        assertHeader(response, OPCODE_STAT, STATUS_NO_ERROR, 10, 0, 11, 0);
+        assertEquals("curr_items1", string(response, 24, 11));
+        assertEquals(35 + 24, response.remaining());
+    }
+
+    @Test
+    public void invalidRequests() throws IOException {
+        assertStatus(STATUS_UNKNOWN_COMMAND, request(0x50, 0, 0, NONE, "", NONE));
+        assertStatus(STATUS_INVALID_ARGUMENTS, request(OPCODE_SET, 0, 0, NONE, "key", bytes("a")));
+        assertStatus(STATUS_INVALID_ARGUMENTS, request(OPCODE_GET, 0, 0, NONE, "", NONE));
+    }
+
+    @Test
+    public void quit() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertFalse(protocol.handle(input(request(OPCODE_QUIT, 0, 0, NONE, "", NONE)), output));
+        assertEquals(24, output.size());
+    }
+
+    @Test
+    public void invalidMagicClosesConnection() throws IOException {
+        byte[] request = request(OPCODE_NOOP, 0, 0, NONE, "", NONE);
+        request[0] = (byte) 0x81;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertFalse(protocol.handle(input(request), output));
+        assertEquals(0, output.size());
+    }
+
+    @Test(expected = EOFException.class)
+    public void incompleteRequest() throws IOException {
+        byte[] request = request(OPCODE_SET, 0, 0, extras(0, 0), "key", bytes("hello"));
+        protocol.handle(input(Arrays.copyOf(request, request.length - 1)), new ByteArrayOutputStream());
+    }
+
+    private void assertStatus(int status, byte[] request) throws IOException {
+        ByteBuffer response = execute(request);
+        assertTrue(response.remaining() >= 24);
+        assertEquals(status, response.getShort(6));
+    }
+
+    private void assertHeader(ByteBuffer response, int opcode, int status, int keyLength, int extrasLength,
+                              int bodyLength, int opaque) {
+        assertEquals((byte) 0x81, response.get(0));
+        assertEquals((byte) opcode, response.get(1));
+        assertEquals(keyLength, response.getShort(2));
+        assertEquals(extrasLength, response.get(4));
+        assertEquals(status, response.getShort(6));
+        assertEquals(bodyLength, response.getInt(8));
+        assertEquals(opaque, response.getInt(12));
+    }
+
+    private ByteBuffer execute(byte[] requests) throws IOException {
+        InputStream inputStream = input(requests);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        while (inputStream.available() > 0) {
+            assertTrue(protocol.handle(inputStream, output));
+        }
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+
+    private InputStream input(byte[] requests) {
+        return new ByteArrayInputStream(requests);
+    }
+
+    private byte[] request(int opcode, int opaque, long cas, byte[] extras, String key, byte[] value)
+            throws IOException {
+        byte[] keyBytes = bytes(key);
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(request);
+        dataOutputStream.writeByte(0x80);
+        dataOutputStream.writeByte(opcode);
+        dataOutputStream.writeShort(keyBytes.length);
+        dataOutputStream.writeByte(extras.length);
+        dataOutputStream.writeByte(0);
+        dataOutputStream.writeShort(0);
+        dataOutputStream.writeInt(extras.length + keyBytes.length + value.length);
+        dataOutputStream.writeInt(opaque);
+        dataOutputStream.writeLong(cas);
+        dataOutputStream.write(extras);
+        dataOutputStream.write(keyBytes);
+        dataOutputStream.write(value);
+        return request.toByteArray();
+    }
+
+    private byte[] extras(int flags, int expiration) {
+        return ByteBuffer.allocate(8).putInt(flags).putInt(expiration).array();
+    }
+
+    private byte[] counterExtras(long delta, long initial, int expiration) {
+        return ByteBuffer.allocate(20).putLong(delta).putLong(initial).putInt(expiration).array();
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private String string(ByteBuffer buffer, int offset, int length) {
+        return new String(buffer.array(), offset, length, StandardCharsets.US_ASCII);
+    }
+
+    private byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,219 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MemcachedTextProtocolTest {
+
+    private ExecutorService executorServiceMock;
+    private DefaultStorage storage;
+    private ServerMetrics serverMetrics;
+    private MemcachedTextProtocol protocol;
+
+    @Before
+    public void before() {
+        ServerConfig serverConfig = mock(ServerConfig.class);
+        when(serverConfig.getClearDataIntervalInMills()).thenReturn(10);
+        executorServiceMock = mock(ExecutorService.class);
+        storage = new DefaultStorage(serverConfig) {
+            @Override
+            protected ExecutorService createClearExpiredDataExecutorService() {
+                return executorServiceMock;
+            }
+        };
+        serverMetrics = mock(ServerMetrics.class);
+        when(serverMetrics.getStatistics()).thenReturn(Collections.singletonMap("curr_items", "1"));
+        when(serverConfig.getStorage()).thenReturn(storage);
+        when(serverConfig.getServerMetrics()).thenReturn(serverMetrics);
+        protocol = new MemcachedTextProtocol(serverConfig);
+    }
+
+    @Test
+    public void setAndGet() throws IOException {
+        assertEquals("STORED\r\n", execute("set key 4294967295 0 5\r\nhello\r\n"));
+        assertEquals("VALUE key 4294967295 5\r\nhello\r\nEND\r\n", execute("get key missing\r\n"));
+        long cas = storage.getValue("key").getCas();
+        assertEquals("VALUE key 4294967295 5 " + cas + "\r\nhello\r\nEND\r\n", execute("gets key\r\n"));
+        verify(serverMetrics).recordGet(false);
+        verify(serverMetrics).recordCommand(eq(Command.PUT), anyLong());
+    }
+
+    @Test
+    public void getNullValue() throws IOException {
+        storage.put("key", null, null);
+        assertEquals("VALUE key 0 0\r\n\r\nEND\r\n", execute("get key\r\n"));
+    }
+
+    @Test
+    public void conditionalStore() throws IOException {
+        assertEquals("NOT_STORED\r\n", execute("replace key 0 0 1\r\na\r\n"));
+        assertEquals("NOT_STORED\r\n", execute("append key 0 0 1\r\na\r\n"));
+        assertEquals("STORED\r\n", execute("add key 3 0 1\r\nb\r\n"));
+        assertEquals("NOT_STORED\r\n", execute("add key 0 0 1\r\nc\r\n"));
+        assertEquals("STORED\r\n", execute("append key 0 0 1\r\nc\r\n"));
+        assertEquals("STORED\r\n", execute("prepend key 0 0 1\r\na\r\n"));
+        StoredValue value = storage.getValue("key");
+        assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII), value.getData());
+        assertEquals(3, value.getFlags());
+    }
+
+    @Test
+    public void clientFlagsAreNotServerFlags() throws IOException {
+        // client flags with the low bits set do not mark the value as compressed or as a counter
+        execute("set key 3 0 1\r\na\r\n");
+        StoredValue value = storage.getValue("key");
+        assertFalse((value.getFlags() & DefaultCommandHandler.ITEM_FLAG_COMPRESSED) != 0);
+        assertFalse(CounterValue.isCounter(value.getData(), value.getFlags()));
+        // server flags are not visible to memcached clients
+        storage.put("compressed", null, new byte[]{'b'}, DefaultCommandHandler.ITEM_FLAG_COMPRESSED);
+        assertEquals("VALUE compressed 0 1\r\nb\r\nEND\r\n", execute("get compressed\r\n"));
+        assertEquals("NOT_STORED\r\n", execute("append compressed 0 0 1\r\nc\r\n"));
+    }
+
+    @Test
+    public void cas() throws IOException {
+        assertEquals("NOT_FOUND\r\n", execute("cas key 0 0 1 1\r\na\r\n"));
+        execute("set key 0 0 1\r\na\r\n");
+        long cas = storage.getValue("key").getCas();
+        assertEquals("EXISTS\r\n", execute("cas key 0 0 1 " + (cas + 1) + "\r\nb\r\n"));
+        assertEquals("STORED\r\n", execute("cas key 0 0 1 " + cas + "\r\nb\r\n"));
+        assertArrayEquals(new byte[]{'b'}, storage.get("key"));
+    }
+
+    @Test
+    public void noreply() throws IOException {
+        assertEquals("", execute("set key 0 0 1 noreply\r\na\r\ndelete key noreply\r\n"));
+        assertNull(storage.get("key"));
+    }
+
+    @Test
+    public void delete() throws IOException {
+        execute("set key 0 0 1\r\na\r\n");
+        assertEquals("DELETED\r\nNOT_FOUND\r\n", execute("delete key 0\r\ndelete key\r\n"));
+    }
+
+    @Test
+    public void incrAndDecr() throws IOException {
+        assertEquals("NOT_FOUND\r\n", execute("incr key 1\r\n"));
+        execute("set key 0 0 20\r\n18446744073709551615\r\n");
+        assertEquals("0\r\n", execute("incr key 1\r\n"));
+        assertEquals("5\r\n", execute("incr key 5\r\n"));
+        assertEquals("0\r\n", execute("decr key 10\r\n"));
+        execute("set key 0 0 1\r\na\r\n");
+        assertEquals("CLIENT_ERROR cannot increment or decrement non-numeric value\r\n", execute("incr key 1\r\n"));
+        assertEquals("CLIENT_ERROR invalid numeric delta argument\r\n", execute("incr key -1\r\n"));
+    }
+
+    @Test
+    public void touchAndGat() throws IOException {
+        execute("set key 0 0 1\r\na\r\n");
+        assertEquals("TOUCHED\r\n", execute("touch key 100\r\n"));
+        assertTrue(storage.getValue("key").getExpiresAt() > System.currentTimeMillis());
+        assertEquals("VALUE key 0 1\r\na\r\nEND\r\n", execute("gat 0 key\r\n"));
+        assertNull(storage.getValue("key").getExpiresAt());
+        assertEquals("NOT_FOUND\r\n", execute("touch missing 100\r\n"));
+        // expiration time in the past
+        assertEquals("STORED\r\n", execute("set key 0 -1 1\r\na\r\n"));
+        assertNull(storage.get("key"));
+    }
+
+    @Test
+    public void flushStatsAndVersion() throws IOException {
+        execute("set key 0 0 1\r\na\r\n");
+        assertEquals("OK\r\n", execute("flush_all\r\n"));
+        assertNull(storage.get("key"));
+        assertEquals("CLIENT_ERROR delayed flush_all is not supported\r\n", execute("flush_all 10\r\n"));
+        assertEquals("STAT curr_items 1\r\nEND\r\n", execute("stats\r\n"));
+        assertEquals("VERSION 1.0\r\nOK\r\n", execute("version\r\nverbosity 1\r\n"));
+    }
+
+    @Test
+    public void errors() throws IOException {
+        assertEquals("ERROR\r\n", execute("unknown\r\n"));
+        assertEquals("CLIENT_ERROR bad command line format for command: set\r\n", execute("set key x 0 1\r\na\r\n"));
+        char[] key = new char[251];
+        Arrays.fill(key, 'k');
+        assertEquals("CLIENT_ERROR key is too long\r\n", execute("get " + new String(key) + "\r\n"));
+    }
+
+    @Test
+    public void invalidStoreSkipsData() throws IOException {
+        execute("set a 0 0 1\r\nx\r\n");
+        char[] key = new char[251];
+        Arrays.fill(key, 'k');
+        // the data block of a rejected command is not executed as a command
+        assertEquals("CLIENT_ERROR key is too long\r\nVALUE a 0 1\r\nx\r\nEND\r\n",
+                execute("set " + new String(key) + " 0 0 9\r\nflush_all\r\nget a\r\n"));
+    }
+
+    @Test
+    public void invalidLengthClosesConnection() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertFalse(protocol.handle(input("set key 0 0\r\nflush_all\r\n"), output));
+        assertEquals("CLIENT_ERROR bad command line format for command: set\r\n", output.toString("US-ASCII"));
+        assertFalse(protocol.handle(input("set key 0 0 -1\r\n"), output));
+    }
+
+    @Test
+    public void badDataChunkClosesConnection() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertFalse(protocol.handle(input("set key 0 0 1\r\nab\r\n"), output));
+        assertEquals("CLIENT_ERROR bad data chunk\r\n", output.toString("US-ASCII"));
+        assertNull(storage.get("key"));
+    }
+
+    @Test
+    public void quit() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertFalse(protocol.handle(input("quit\r\n"), output));
+        assertEquals(0, output.size());
+    }
+
+    @Test(expected = EOFException.class)
+    public void incompleteRequest() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            protocol.handle(input("set key 0 0 5\r\nhel"), output);
+        } finally {
+            assertEquals(0, output.size());
+        }
+    }
+
+    private String execute(String requests) throws IOException {
+        InputStream inputStream = input(requests);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        while (inputStream.available() > 0) {
+            assertTrue(protocol.handle(inputStream, output));
+        }
+        return output.toString("US-ASCII");
+    }
+
+    private InputStream input(String requests) {
+        return new ByteArrayInputStream(requests.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,318 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
+import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.CommandHandler;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import net.simplesoft.jmemcached.server.Storage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class NioConnectionTest {
+
+    private static final byte[] CLEAR = {16, 0, 0};
+    private static final byte[] GET = {16, 2, 1, 3, 49, 50, 51};
+    private static final byte[] CLEARED = {16, 5, 0};
+    private static final byte[] NOT_FOUND = {16, 3, 0};
+    private static final byte[] SERVER_ERROR = {16, 11, 0};
+
+    private SelectionKey selectionKey;
+    private SocketChannel channel;
+    private CommandHandler commandHandler;
+    private ServerConfig serverConfig;
+    private ByteArrayOutputStream written;
+    private NioConnection nioConnection;
+
+    @Before
+    public void before() throws IOException {
+        selectionKey = mock(SelectionKey.class);
+        // real constructor is required by the final close() method of the channel
+        channel = mock(SocketChannel.class, withSettings().useConstructor((SelectorProvider) null));
+        when(selectionKey.channel()).thenReturn(channel);
+
+        commandHandler = mock(CommandHandler.class);
+        when(commandHandler.handle(argThat(command(Command.CLEAR)))).thenReturn(new Response(Status.CLEARED));
+        when(commandHandler.handle(argThat(command(Command.GET)))).thenReturn(new Response(Status.NOT_FOUND));
+
+        serverConfig = mock(ServerConfig.class);
+        when(serverConfig.getMaxRequestSizeInBytes()).thenReturn(1024 * 1024);
+        when(serverConfig.getRequestConverter()).thenReturn(new DefaultRequestConverter());
+        when(serverConfig.getResponseConverter()).thenReturn(new DefaultResponseConverter());
+        when(serverConfig.getCommandHandler()).thenReturn(commandHandler);
+        when(serverConfig.getStorage()).thenReturn(mock(Storage.class));
+        when(serverConfig.getServerMetrics()).thenReturn(mock(ServerMetrics.class));
+
+        written = new ByteArrayOutputStream();
+        when(channel.write(any(ByteBuffer[].class), anyInt(), anyInt())).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                long count = 0;
+                for (ByteBuffer buffer : (ByteBuffer[]) invocation.getArgument(0)) {
+                    while (buffer.hasRemaining()) {
+                        written.write(buffer.get());
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+
+        nioConnection = new NioConnection(selectionKey, serverConfig);
+    }
+
+    @Test
+    public void readPipelinedRequests() throws IOException {
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(incoming(concat(CLEAR, GET)));
+
+        nioConnection.read();
+
+        verify(commandHandler, times(2)).handle(any(Request.class));
+        verify(channel, times(1)).write(any(ByteBuffer[].class), anyInt(), anyInt());
+        verify(selectionKey).interestOps(SelectionKey.OP_READ);
+        assertArrayEquals(concat(CLEARED, NOT_FOUND), written.toByteArray());
+    }
+
+    @Test
+    public void readPartialRequest() throws IOException {
+        when(channel.read(any(ByteBuffer.class)))
+                .thenAnswer(incoming(concat(CLEAR, Arrays.copyOf(GET, 4))))
+                .thenAnswer(incoming(Arrays.copyOfRange(GET, 4, GET.length)));
+
+        nioConnection.read();
+        verify(commandHandler, times(1)).handle(any(Request.class));
+        assertArrayEquals(CLEARED, written.toByteArray());
+
+        nioConnection.read();
+        verify(commandHandler, times(2)).handle(any(Request.class));
+        assertArrayEquals(concat(CLEARED, NOT_FOUND), written.toByteArray());
+    }
+
+    @Test
+    public void readInvalidRequest() throws IOException {
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(incoming(concat(CLEAR, concat(new byte[]{0}, CLEAR))));
+
+        nioConnection.read();
+
+        // the requests before the undecodable frame are answered, the bytes after it are not parsed
+        verify(commandHandler, times(1)).handle(any(Request.class));
+        assertArrayEquals(CLEARED, written.toByteArray());
+        verify(selectionKey).cancel();
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void handleRequestFailure() throws IOException {
+        when(commandHandler.handle(argThat(command(Command.CLEAR)))).thenThrow(new IllegalStateException("Test"));
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(incoming(concat(CLEAR, GET)));
+
+        nioConnection.read();
+
+        // the failed request is answered, so the connection stays in sync
+        assertArrayEquals(concat(SERVER_ERROR, NOT_FOUND), written.toByteArray());
+    }
+
+    @Test
+    public void readLargeRequest() throws IOException {
+        byte[] data = new byte[64 * 1024];
+        ByteArrayOutputStream put = new ByteArrayOutputStream();
+        new DefaultRequestConverter().writeRequest(put, new Request(Command.PUT, "key", null, data));
+        when(commandHandler.handle(argThat(command(Command.PUT)))).thenReturn(new Response(Status.ADDED));
+        final ByteBuffer incoming = ByteBuffer.wrap(put.toByteArray());
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                ByteBuffer buffer = invocation.getArgument(0);
+                int count = Math.min(buffer.remaining(), incoming.remaining());
+                for (int i = 0; i < count; i++) {
+                    buffer.put(incoming.get());
+                }
+                return count;
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            nioConnection.read();
+        }
+
+        verify(commandHandler, times(1)).handle(any(Request.class));
+        assertArrayEquals(new byte[]{16, 0, 0}, written.toByteArray());
+    }
+
+    @Test
+    public void readTooLargeRequest() throws IOException {
+        when(serverConfig.getMaxRequestSizeInBytes()).thenReturn(32 * 1024);
+        nioConnection = new NioConnection(selectionKey, serverConfig);
+        ByteArrayOutputStream put = new ByteArrayOutputStream();
+        new DefaultRequestConverter().writeRequest(put, new Request(Command.PUT, "key", null, new byte[64 * 1024]));
+        final ByteBuffer incoming = ByteBuffer.wrap(put.toByteArray());
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                ByteBuffer buffer = invocation.getArgument(0);
+                int count = Math.min(buffer.remaining(), incoming.remaining());
+                for (int i = 0; i < count; i++) {
+                    buffer.put(incoming.get());
+                }
+                return count;
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            nioConnection.read();
+        }
+
+        // the read buffer stops growing at the max request size
+        verify(commandHandler, never()).handle(any(Request.class));
+        verify(selectionKey).cancel();
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void writeLargeValueWithoutCopy() throws IOException {
+        final byte[] data = new byte[4096];
+        data[4095] = 7;
+        when(commandHandler.handle(argThat(command(Command.GET)))).thenReturn(new Response(Status.GOTTEN, data));
+        final List<ByteBuffer> gathered = new ArrayList<>();
+        when(channel.write(any(ByteBuffer[].class), anyInt(), anyInt())).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                long count = 0;
+                for (ByteBuffer buffer : (ByteBuffer[]) invocation.getArgument(0)) {
+                    gathered.add(buffer);
+                    while (buffer.hasRemaining()) {
+                        written.write(buffer.get());
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(incoming(concat(GET, CLEAR)));
+
+        nioConnection.read();
+
+        // header, stored array, CLEARED response
+        assertEquals(3, gathered.size());
+        assertSame(data, gathered.get(1).array());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new DefaultResponseConverter().writeResponse(expected, new Response(Status.GOTTEN, data));
+        expected.write(CLEARED);
+        assertArrayEquals(expected.toByteArray(), written.toByteArray());
+    }
+
+    @Test
+    public void readMemcachedTextRequests() throws IOException {
+        when(channel.read(any(ByteBuffer.class)))
+                .thenAnswer(incoming(ascii("version\r\nget ke")))
+                .thenAnswer(incoming(ascii("y\r\n")));
+
+        nioConnection.read();
+        assertArrayEquals(ascii("VERSION 1.0\r\n"), written.toByteArray());
+
+        nioConnection.read();
+        assertArrayEquals(ascii("VERSION 1.0\r\nEND\r\n"), written.toByteArray());
+        verify(commandHandler, never()).handle(any(Request.class));
+    }
+
+    @Test
+    public void readMemcachedBinaryRequest() throws IOException {
+        byte[] noop = new byte[24];
+        noop[0] = (byte) 0x80;
+        noop[1] = 0x0a;
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(incoming(noop));
+
+        nioConnection.read();
+
+        byte[] response = written.toByteArray();
+        assertEquals(24, response.length);
+        assertEquals((byte) 0x81, response[0]);
+        verify(commandHandler, never()).handle(any(Request.class));
+    }
+
+    @Test
+    public void memcachedQuitClosesConnection() throws IOException {
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(incoming(ascii("quit\r\nversion\r\n")));
+
+        nioConnection.read();
+
+        verify(selectionKey).cancel();
+        assertFalse(channel.isOpen());
+        assertEquals(0, written.size());
+    }
+
+    @Test
+    public void readEndOfStream() throws IOException {
+        when(channel.read(any(ByteBuffer.class))).thenReturn(-1);
+
+        nioConnection.read();
+
+        verify(selectionKey).cancel();
+        assertFalse(channel.isOpen());
+        verify(commandHandler, never()).handle(any(Request.class));
+    }
+
+    @Test
+    public void writeIncomplete() throws IOException {
+        reset(channel);
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(incoming(CLEAR));
+        when(channel.write(any(ByteBuffer[].class), anyInt(), anyInt())).thenReturn(0L);
+
+        nioConnection.read();
+        verify(selectionKey).interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private Answer<Integer> incoming(final byte[] bytes) {
+        return new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                ByteBuffer buffer = invocation.getArgument(0);
+                buffer.put(bytes);
+                return bytes.length;
+            }
+        };
+    }
+
+    private byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private ArgumentMatcher<Request> command(final Command command) {
+        return new ArgumentMatcher<Request>() {
+            @Override
+            public boolean matches(Request argument) {
+                return argument != null && argument.getCommand() == command;
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.server.ServerConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class NioEventLoopTest {
+
+    private Selector selector;
+    private NioEventLoop nioEventLoop;
+
+    @Before
+    public void before() {
+        selector = mock(Selector.class);
+        nioEventLoop = new NioEventLoop(mock(ServerConfig.class), "EventLoop-test") {
+            @Override
+            protected Selector createSelector() {
+                return selector;
+            }
+        };
+    }
+
+    @Test
+    public void failedConnectionIsClosedAlone() {
+        NioConnection failed = mock(NioConnection.class);
+        doThrow(new IllegalStateException("Test")).when(failed).read();
+        NioConnection healthy = mock(NioConnection.class);
+        Set<SelectionKey> selectedKeys = new HashSet<>();
+        selectedKeys.add(readableKey(failed));
+        selectedKeys.add(readableKey(healthy));
+        when(selector.selectedKeys()).thenReturn(selectedKeys);
+
+        nioEventLoop.processSelectedKeys();
+
+        verify(failed).close();
+        verify(healthy).read();
+        verify(healthy, never()).close();
+        assertTrue(selectedKeys.isEmpty());
+    }
+
+    private SelectionKey readableKey(NioConnection connection) {
+        SelectionKey selectionKey = mock(SelectionKey.class);
+        // attachment and readiness checks are final, they use the real attachment and the ready operations
+        selectionKey.attach(connection);
+        when(selectionKey.isValid()).thenReturn(true);
+        when(selectionKey.readyOps()).thenReturn(SelectionKey.OP_READ);
+        return selectionKey;
+    }
+}
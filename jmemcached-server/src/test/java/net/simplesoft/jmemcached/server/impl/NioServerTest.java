@@ -0,0 +1,138 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.impl.DefaultRequestConverter;
+import net.simplesoft.jmemcached.protocol.impl.DefaultResponseConverter;
+import net.simplesoft.jmemcached.protocol.model.Command;
+import net.simplesoft.jmemcached.protocol.model.Request;
+import net.simplesoft.jmemcached.protocol.model.Response;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.CommandHandler;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.ServerMetrics;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class NioServerTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private ServerConfig serverConfig;
+    private CommandHandler commandHandler;
+    private NioServer nioServer;
+
+    @Before
+    public void before() {
+        serverConfig = mock(ServerConfig.class);
+        commandHandler = mock(CommandHandler.class);
+        when(serverConfig.getRequestConverter()).thenReturn(new DefaultRequestConverter());
+        when(serverConfig.getResponseConverter()).thenReturn(new DefaultResponseConverter());
+        when(serverConfig.getCommandHandler()).thenReturn(commandHandler);
+        when(serverConfig.getEventLoopCount()).thenReturn(2);
+        when(serverConfig.getServerMetrics()).thenReturn(mock(ServerMetrics.class));
+
+        nioServer = new NioServer(serverConfig) {
+            @Override
+            protected ServerSocketChannel createServerSocketChannel() {
+                try {
+                    return ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+                } catch (IOException e) {
+                    throw new JMemcachedException(e);
+                }
+            }
+
+            @Override
+            protected Thread getShutdownHook() {
+                return new Thread();
+            }
+        };
+    }
+
+    @After
+    public void after() {
+        nioServer.stop();
+    }
+
+    @Test
+    public void nextEventLoopRoundRobin() {
+        NioEventLoop first = nioServer.nextEventLoop();
+        NioEventLoop second = nioServer.nextEventLoop();
+        assertEquals(first, nioServer.nextEventLoop());
+        assertEquals(second, nioServer.nextEventLoop());
+    }
+
+    @Test
+    public void handleClientsOnEventLoops() throws Exception {
+        when(commandHandler.handle(any(Request.class))).thenReturn(new Response(Status.GOTTEN, new byte[]{1, 2, 3}));
+        nioServer.start();
+
+        DefaultRequestConverter requestConverter = new DefaultRequestConverter();
+        DefaultResponseConverter responseConverter = new DefaultResponseConverter();
+        for (int i = 0; i < 3; i++) {
+            try (Socket socket = new Socket("localhost", getLocalPort())) {
+                OutputStream outputStream = socket.getOutputStream();
+                InputStream inputStream = socket.getInputStream();
+                requestConverter.writeRequest(outputStream, new Request(Command.GET, "key"));
+                requestConverter.writeRequest(outputStream, new Request(Command.GET, "key"));
+                for (int j = 0; j < 2; j++) {
+                    Response response = responseConverter.readResponse(inputStream);
+                    assertEquals(Status.GOTTEN, response.getStatus());
+                    assertArrayEquals(new byte[]{1, 2, 3}, response.getData());
+                }
+            }
+        }
+        verify(commandHandler, times(6)).handle(any(Request.class));
+    }
+
+    @Test
+    public void closedClientChannelDoesNotStopServer() throws Exception {
+        when(commandHandler.handle(any(Request.class))).thenReturn(new Response(Status.CLEARED));
+        SocketChannel closedChannel = SocketChannel.open();
+        closedChannel.close();
+
+        nioServer.registerClientChannel(closedChannel);
+        nioServer.start();
+
+        for (int i = 0; i < 10; i++) {
+            new Socket("localhost", getLocalPort()).close();
+        }
+        try (Socket socket = new Socket("localhost", getLocalPort())) {
+            new DefaultRequestConverter().writeRequest(socket.getOutputStream(), new Request(Command.CLEAR));
+            Response response = new DefaultResponseConverter().readResponse(socket.getInputStream());
+            assertEquals(Status.CLEARED, response.getStatus());
+        }
+        verify(serverConfig, never()).close();
+    }
+
+    @Test
+    public void startFailed() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Current JMemcached server already started or stopped! Please create a new server instance"));
+        nioServer.start();
+        nioServer.start();
+    }
+
+    private int getLocalPort() throws Exception {
+        ServerSocketChannel serverSocketChannel = (ServerSocketChannel) FieldUtils
+                .getDeclaredField(NioServer.class, "serverSocketChannel", true).get(nioServer);
+        return ((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort();
+    }
+}
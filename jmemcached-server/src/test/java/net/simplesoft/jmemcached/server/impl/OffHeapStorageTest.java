@@ -0,0 +1,330 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Mockito.*;
+
+public class OffHeapStorageTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private OffHeapStorage offHeapStorage;
+
+    @Before
+    public void before() {
+        offHeapStorage = new OffHeapStorage(2 * PAGE_SIZE, PAGE_SIZE);
+        offHeapStorage.put("test", TimeUnit.SECONDS.toMillis(1), new byte[]{5, 6, 7});
+    }
+
+    @Test
+    public void putAdded() {
+        assertEquals(Status.ADDED, offHeapStorage.put("key", null, new byte[]{1, 2, 3}));
+        assertArrayEquals(new byte[]{1, 2, 3}, offHeapStorage.get("key"));
+        assertEquals(2, offHeapStorage.size());
+    }
+
+    @Test
+    public void putReplaced() {
+        assertEquals(Status.REPLACED, offHeapStorage.put("test", null, new byte[1000]));
+        assertArrayEquals(new byte[1000], offHeapStorage.get("test"));
+        assertEquals(1, offHeapStorage.size());
+    }
+
+    @Test
+    public void putNullData() {
+        assertEquals(Status.ADDED, offHeapStorage.put("key", null, null));
+        assertNull(offHeapStorage.get("key"));
+        assertEquals(Status.REMOVED, offHeapStorage.remove("key"));
+    }
+
+    @Test
+    public void putTooLarge() {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Item size " + (PAGE_SIZE + 1) + " bytes exceeds slab page size for key: key"));
+        offHeapStorage.put("key", null, new byte[PAGE_SIZE + 1 - OffHeapStorage.HEADER_SIZE - 3]);
+    }
+
+    @Test
+    public void getValueWithFlags() {
+        offHeapStorage.put("key", null, new byte[]{1, 2, 3}, -2);
+        StoredValue value = offHeapStorage.getValue("key");
+        assertArrayEquals(new byte[]{1, 2, 3}, value.getData());
+        assertEquals(-2, value.getFlags());
+        assertEquals(0, offHeapStorage.getValue("test").getFlags());
+        assertNull(offHeapStorage.getValue("not_found"));
+    }
+
+    @Test
+    public void getNotFound() {
+        assertNull(offHeapStorage.get("not_found"));
+    }
+
+    @Test
+    public void getExpired() throws InterruptedException {
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertNull(offHeapStorage.get("test"));
+        assertEquals(0, offHeapStorage.size());
+    }
+
+    @Test
+    public void removeSuccess() {
+        assertEquals(Status.REMOVED, offHeapStorage.remove("test"));
+        assertNull(offHeapStorage.get("test"));
+    }
+
+    @Test
+    public void removeNotFound() {
+        assertEquals(Status.NOT_FOUND, offHeapStorage.remove("not_found"));
+    }
+
+    @Test
+    public void removeExpired() throws InterruptedException {
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertEquals(Status.NOT_FOUND, offHeapStorage.remove("test"));
+    }
+
+    @Test
+    public void clear() {
+        assertEquals(Status.CLEARED, offHeapStorage.clear());
+        assertNull(offHeapStorage.get("test"));
+        assertEquals(0, offHeapStorage.size());
+        assertEquals(0, offHeapStorage.getUsedMemoryInBytes());
+        assertEquals(Status.ADDED, offHeapStorage.put("test", null, new byte[]{1}));
+        assertEquals(PAGE_SIZE, offHeapStorage.getUsedMemoryInBytes());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedOfSlabClass() {
+        // each item takes a whole page, so only two of them fit into the memory
+        offHeapStorage = new OffHeapStorage(2 * PAGE_SIZE, PAGE_SIZE);
+        byte[] data = new byte[PAGE_SIZE - OffHeapStorage.HEADER_SIZE - 1];
+        offHeapStorage.put("1", null, data);
+        offHeapStorage.put("2", null, data);
+        offHeapStorage.get("1");
+        offHeapStorage.put("3", null, data);
+
+        assertNotNull(offHeapStorage.get("1"));
+        assertNull(offHeapStorage.get("2"));
+        assertNotNull(offHeapStorage.get("3"));
+        assertEquals(1, offHeapStorage.getEvictionCount());
+        assertEquals(2 * PAGE_SIZE, offHeapStorage.getUsedMemoryInBytes());
+    }
+
+    @Test
+    public void reassignPageOfAnotherSlabClass() {
+        // all pages belong to other slab classes, so the page of the smallest slab class with the most pages is taken
+        offHeapStorage.put("1", null, new byte[PAGE_SIZE / 2]);
+        assertEquals(Status.ADDED, offHeapStorage.put("2", null, new byte[PAGE_SIZE / 4]));
+        assertNull(offHeapStorage.get("test"));
+        assertNotNull(offHeapStorage.get("1"));
+        assertArrayEquals(new byte[PAGE_SIZE / 4], offHeapStorage.get("2"));
+        assertEquals(1, offHeapStorage.getEvictionCount());
+        assertEquals(2 * PAGE_SIZE, offHeapStorage.getUsedMemoryInBytes());
+
+        assertEquals(Status.ADDED, offHeapStorage.put("test", null, new byte[]{1}));
+        assertNull(offHeapStorage.get("2"));
+        assertArrayEquals(new byte[]{1}, offHeapStorage.get("test"));
+        assertEquals(2, offHeapStorage.size());
+    }
+
+    @Test
+    public void removeExpiredReclaimsChunks() throws InterruptedException {
+        offHeapStorage.put("key", null, new byte[]{1});
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertEquals(1, offHeapStorage.removeExpired());
+        assertEquals(1, offHeapStorage.size());
+        assertEquals(1, offHeapStorage.getExpiredCount());
+        assertArrayEquals(new byte[]{1}, offHeapStorage.get("key"));
+        // the reclaimed chunk is reused
+        assertEquals(Status.ADDED, offHeapStorage.put("test", null, new byte[]{2}));
+        assertEquals(PAGE_SIZE, offHeapStorage.getUsedMemoryInBytes());
+    }
+
+    @Test
+    public void clearExpiredDataJob() throws Exception {
+        final ExecutorService executorService = mock(ExecutorService.class);
+        ServerConfig serverConfig = mock(ServerConfig.class);
+        when(serverConfig.getClearDataIntervalInMills()).thenReturn(10);
+        OffHeapStorage storage = new OffHeapStorage(serverConfig) {
+            @Override
+            protected ExecutorService createClearExpiredDataExecutorService() {
+                return executorService;
+            }
+        };
+        verify(executorService).submit(any(OffHeapStorage.ClearExpiredPagesJob.class));
+        storage.close();
+        verify(executorService).shutdownNow();
+    }
+
+    @Test
+    public void growIndexAndRemoveKeys() {
+        offHeapStorage = new OffHeapStorage(0, PAGE_SIZE);
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(Status.ADDED, offHeapStorage.put("key" + i, null, new byte[]{(byte) i}));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            assertEquals(Status.REMOVED, offHeapStorage.remove("key" + i));
+        }
+        assertEquals(2500, offHeapStorage.size());
+        for (int i = 0; i < 5000; i++) {
+            byte[] data = offHeapStorage.get("key" + i);
+            if (i % 2 == 0) {
+                assertNull(data);
+            } else {
+                assertArrayEquals(new byte[]{(byte) i}, data);
+            }
+        }
+    }
+
+    @Test
+    public void maxMemoryLessThanPage() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("jmemcached.storage.max.memory.bytes should be >= 4096 for offheap storage"));
+        new OffHeapStorage(PAGE_SIZE - 1, PAGE_SIZE);
+    }
+
+    @Test
+    public void forEachSkipsExpired() throws InterruptedException {
+        offHeapStorage.put("key", null, new byte[]{1, 2, 3}, 5);
+        StorageVisitor visitor = mock(StorageVisitor.class);
+        offHeapStorage.forEach(visitor);
+        verify(visitor).visit(eq("key"), (Long) isNull(), aryEq(new byte[]{1, 2, 3}), eq(5L));
+        verify(visitor).visit(eq("test"), (Long) notNull(), aryEq(new byte[]{5, 6, 7}), eq(0L));
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        visitor = mock(StorageVisitor.class);
+        offHeapStorage.forEach(visitor);
+        verify(visitor).visit(eq("key"), (Long) isNull(), aryEq(new byte[]{1, 2, 3}), eq(5L));
+        verifyNoMoreInteractions(visitor);
+    }
+
+    @Test
+    public void forEachVisitsWithoutLock() throws Exception {
+        offHeapStorage.put("key", null, new byte[]{1});
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final List<String> keys = new ArrayList<>();
+        try {
+            offHeapStorage.forEach(new StorageVisitor() {
+                @Override
+                public void visit(String key, Long expiresAt, byte[] data, long flags) {
+                    keys.add(key);
+                    if ("test".equals(key)) {
+                        // a write from another thread is not blocked, its key is visited after the copied pages
+                        put(executorService, "added");
+                    }
+                }
+            });
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(Arrays.asList("test", "key", "added"), keys);
+    }
+
+    private void put(ExecutorService executorService, final String key) {
+        try {
+            executorService.submit(new Callable<Status>() {
+                @Override
+                public Status call() {
+                    return offHeapStorage.put(key, null, new byte[]{2});
+                }
+            }).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void updateCounter() {
+        assertEquals(2, CounterValue.toLong(offHeapStorage.updateCounter("counter", 60000L, 2, true).getData()));
+        StoredValue value = offHeapStorage.updateCounter("counter", null, 1, false);
+        assertEquals(1, CounterValue.toLong(value.getData()));
+        assertEquals(CounterValue.ITEM_FLAG_COUNTER, value.getFlags());
+        assertNotNull(value.getExpiresAt());
+        assertEquals(1, CounterValue.toLong(offHeapStorage.get("counter")));
+        assertNull(offHeapStorage.updateCounter("test", null, 1, true));
+        assertEquals(2, offHeapStorage.size());
+    }
+
+    @Test
+    public void compareAndSet() {
+        long cas = offHeapStorage.getValue("test").getCas();
+        assertEquals(Status.REPLACED, offHeapStorage.compareAndSet("test", cas, null, new byte[]{1}, 5));
+        StoredValue value = offHeapStorage.getValue("test");
+        assertArrayEquals(new byte[]{1}, value.getData());
+        assertEquals(5, value.getFlags());
+        assertNull(value.getExpiresAt());
+        assertNotEquals(cas, value.getCas());
+        assertEquals(Status.EXISTS, offHeapStorage.compareAndSet("test", cas, null, new byte[]{2}, 0));
+        assertArrayEquals(new byte[]{1}, offHeapStorage.get("test"));
+        assertEquals(Status.NOT_FOUND, offHeapStorage.compareAndSet("not_found", cas, null, new byte[]{2}, 0));
+        assertNull(offHeapStorage.get("not_found"));
+        long counterCas = offHeapStorage.updateCounter("counter", null, 1, true).getCas();
+        assertNotEquals(counterCas, offHeapStorage.updateCounter("counter", null, 1, true).getCas());
+    }
+
+    @Test
+    public void conditionalWrites() {
+        assertEquals(Status.EXISTS, offHeapStorage.add("test", null, new byte[]{1}, 0));
+        assertEquals(Status.ADDED, offHeapStorage.add("key", null, new byte[]{1}, 4));
+        assertEquals(Status.NOT_FOUND, offHeapStorage.replace("missing", null, new byte[]{1}, 0));
+        assertEquals(Status.REPLACED, offHeapStorage.replace("key", null, new byte[]{2}, 4));
+        StoredValue value = offHeapStorage.concat("test", new byte[]{8, 9}, true);
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9}, value.getData());
+        assertNotNull(value.getExpiresAt());
+        value = offHeapStorage.concat("key", new byte[]{1}, false);
+        assertArrayEquals(new byte[]{1, 2}, value.getData());
+        assertEquals(4, value.getFlags());
+        assertNull(offHeapStorage.concat("missing", new byte[]{1}, true));
+        assertEquals(2, offHeapStorage.size());
+    }
+
+    @Test
+    public void concatCompressedOrCounter() {
+        offHeapStorage.put("compressed", null, new byte[]{1, 2}, DefaultCommandHandler.ITEM_FLAG_COMPRESSED);
+        assertArrayEquals(new byte[]{1, 2}, offHeapStorage.concat("compressed", new byte[]{3}, true).getData());
+        assertArrayEquals(new byte[]{1, 2}, offHeapStorage.get("compressed"));
+        offHeapStorage.updateCounter("counter", null, 5, true);
+        StoredValue value = offHeapStorage.concat("counter", new byte[]{3}, false);
+        assertArrayEquals(CounterValue.toByteArray(5), value.getData());
+        assertArrayEquals(CounterValue.toByteArray(5), offHeapStorage.get("counter"));
+    }
+
+    @Test
+    public void touch() throws InterruptedException {
+        long cas = offHeapStorage.getValue("test").getCas();
+        StoredValue value = offHeapStorage.touch("test", TimeUnit.SECONDS.toMillis(3));
+        assertArrayEquals(new byte[]{5, 6, 7}, value.getData());
+        assertEquals(cas, value.getCas());
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertArrayEquals(new byte[]{5, 6, 7}, offHeapStorage.get("test"));
+        assertNull(offHeapStorage.touch("test", null).getExpiresAt());
+        assertNull(offHeapStorage.touch("not_found", null));
+    }
+}
@@ -0,0 +1,299 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.protocol.model.Status;
+import net.simplesoft.jmemcached.server.EvictionPolicyType;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import net.simplesoft.jmemcached.server.StorageVisitor;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Mockito.*;
+
+public class SegmentedStorageTest {
+
+    private ExecutorService executorServiceMock;
+    private ServerConfig serverConfig;
+    private SegmentedStorage segmentedStorage;
+
+    @Before
+    public void before() {
+        executorServiceMock = mock(ExecutorService.class);
+        serverConfig = mock(ServerConfig.class);
+        when(serverConfig.getClearDataIntervalInMills()).thenReturn(10);
+        when(serverConfig.getSegmentCount()).thenReturn(4);
+        segmentedStorage = createSegmentedStorage();
+
+        segmentedStorage.put("test", TimeUnit.SECONDS.toMillis(1), new byte[]{5, 6, 7});
+    }
+
+    private SegmentedStorage createSegmentedStorage() {
+        return new SegmentedStorage(serverConfig) {
+            @Override
+            protected ExecutorService createClearExpiredDataExecutorService() {
+                return executorServiceMock;
+            }
+        };
+    }
+
+    @Test
+    public void startClearExpiredDataExecutorService() {
+        verify(executorServiceMock).submit(segmentedStorage.clearExpiredDataJob);
+    }
+
+    @Test
+    public void close() throws Exception {
+        segmentedStorage.close();
+        verify(executorServiceMock).shutdownNow();
+    }
+
+    @Test
+    public void createClearExpiredDataThreadFactory() {
+        ThreadFactory threadFactory = segmentedStorage.createClearExpiredDataThreadFactory();
+        Thread thread = threadFactory.newThread(mock(Runnable.class));
+        assertTrue(thread.isDaemon());
+        assertEquals(Thread.MIN_PRIORITY, thread.getPriority());
+        assertEquals("ClearExpiredSegmentsJobThread", thread.getName());
+    }
+
+    @Test
+    public void segmentForIsStable() {
+        assertEquals(4, segmentedStorage.segments.length);
+        assertSame(segmentedStorage.segmentFor("test"), segmentedStorage.segmentFor("test"));
+    }
+
+    @Test
+    public void keysAreSpreadOverSegments() {
+        for (int i = 0; i < 1000; i++) {
+            segmentedStorage.put("key" + i, null, new byte[]{1});
+        }
+        for (SegmentedStorage.SegmentStatistics statistics : segmentedStorage.getStatistics()) {
+            assertTrue(statistics.toString(), statistics.getItemCount() > 150);
+        }
+    }
+
+    @Test
+    public void keysReachSegmentsAboveSixteenBits() {
+        when(serverConfig.getSegmentCount()).thenReturn(1 << 17);
+        segmentedStorage = createSegmentedStorage();
+        int upperItems = 0;
+        for (int i = 0; i < 1000; i++) {
+            segmentedStorage.put("key" + i, null, new byte[]{1});
+        }
+        List<SegmentedStorage.SegmentStatistics> statistics = segmentedStorage.getStatistics();
+        for (int i = 1 << 16; i < statistics.size(); i++) {
+            upperItems += statistics.get(i).getItemCount();
+        }
+        assertTrue(upperItems > 0);
+    }
+
+    @Test
+    public void singleSegment() {
+        when(serverConfig.getSegmentCount()).thenReturn(1);
+        segmentedStorage = createSegmentedStorage();
+        assertSame(segmentedStorage.segments[0], segmentedStorage.segmentFor("key"));
+    }
+
+    @Test(expected = JMemcachedConfigException.class)
+    public void maxMemoryBelowSegmentCount() {
+        when(serverConfig.getSegmentCount()).thenReturn(8);
+        when(serverConfig.getMaxMemoryInBytes()).thenReturn(7L);
+        createSegmentedStorage();
+    }
+
+    @Test
+    public void putAdded() {
+        assertEquals(Status.ADDED, segmentedStorage.put("key", null, new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void putReplaced() {
+        assertEquals(Status.REPLACED, segmentedStorage.put("test", null, new byte[]{1, 2, 3}));
+        assertArrayEquals(new byte[]{1, 2, 3}, segmentedStorage.get("test"));
+    }
+
+    @Test
+    public void getValueWithFlags() {
+        segmentedStorage.put("key", null, new byte[]{1, 2, 3}, 5);
+        StoredValue value = segmentedStorage.getValue("key");
+        assertArrayEquals(new byte[]{1, 2, 3}, value.getData());
+        assertEquals(5, value.getFlags());
+        assertNull(segmentedStorage.getValue("not_found"));
+    }
+
+    @Test
+    public void getNotFound() {
+        assertNull(segmentedStorage.get("not_found"));
+    }
+
+    @Test
+    public void getExpired() throws InterruptedException {
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertNull(segmentedStorage.get("test"));
+    }
+
+    @Test
+    public void removeSuccess() {
+        assertEquals(Status.REMOVED, segmentedStorage.remove("test"));
+        assertEquals(Status.NOT_FOUND, segmentedStorage.remove("test"));
+    }
+
+    @Test
+    public void removeExpired() throws InterruptedException {
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertEquals(Status.NOT_FOUND, segmentedStorage.remove("test"));
+    }
+
+    @Test
+    public void clear() {
+        assertEquals(Status.CLEARED, segmentedStorage.clear());
+        assertNull(segmentedStorage.get("test"));
+        assertEquals(0, totalUsedMemory());
+    }
+
+    @Test
+    public void segmentStatistics() {
+        segmentedStorage.get("test");
+        segmentedStorage.get("test2");
+        SegmentedStorage.SegmentStatistics statistics = segmentedStorage.segmentFor("test").getStatistics();
+        assertEquals(1, statistics.getItemCount());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(4 * 2 + 3 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES, statistics.getUsedMemoryInBytes());
+        assertEquals(1, segmentedStorage.segmentFor("test2").getStatistics().getMissCount());
+    }
+
+    @Test
+    public void removeExpiredFromSegment() throws InterruptedException {
+        segmentedStorage.put("key", null, new byte[]{1});
+        TimeUnit.MILLISECONDS.sleep(1100);
+        int expired = 0;
+        for (SegmentedStorage.Segment segment : segmentedStorage.segments) {
+            expired += segment.removeExpired(System.currentTimeMillis());
+        }
+        assertEquals(1, expired);
+        assertEquals(1, segmentedStorage.segmentFor("test").getStatistics().getExpiredCount());
+        assertEquals(3 * 2 + 1 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES, totalUsedMemory());
+    }
+
+    @Test
+    public void evictPerSegment() {
+        long itemWeight = 6 * 2 + 100 + DefaultStorage.StorageItem.OVERHEAD_IN_BYTES;
+        // every segment has room for two items
+        when(serverConfig.getMaxMemoryInBytes()).thenReturn(4 * 2 * itemWeight);
+        when(serverConfig.getEvictionPolicyType()).thenReturn(EvictionPolicyType.LRU);
+        segmentedStorage = createSegmentedStorage();
+        for (int i = 10000; i < 10100; i++) {
+            segmentedStorage.put("k" + i, null, new byte[100]);
+        }
+        long evictions = 0;
+        for (SegmentedStorage.SegmentStatistics statistics : segmentedStorage.getStatistics()) {
+            assertTrue(statistics.getUsedMemoryInBytes() <= 2 * itemWeight);
+            assertTrue(statistics.getItemCount() <= 2);
+            evictions += statistics.getEvictionCount();
+        }
+        assertEquals(100 - 8, evictions);
+        assertNotNull(segmentedStorage.get("k10099"));
+    }
+
+    private long totalUsedMemory() {
+        long usedMemory = 0;
+        List<SegmentedStorage.SegmentStatistics> statistics = segmentedStorage.getStatistics();
+        for (SegmentedStorage.SegmentStatistics segmentStatistics : statistics) {
+            usedMemory += segmentStatistics.getUsedMemoryInBytes();
+        }
+        return usedMemory;
+    }
+
+    @Test
+    public void forEachSkipsExpired() throws InterruptedException {
+        segmentedStorage.put("key", null, new byte[]{1, 2, 3}, 5);
+        StorageVisitor visitor = mock(StorageVisitor.class);
+        segmentedStorage.forEach(visitor);
+        verify(visitor).visit(eq("key"), (Long) isNull(), aryEq(new byte[]{1, 2, 3}), eq(5L));
+        verify(visitor).visit(eq("test"), (Long) notNull(), aryEq(new byte[]{5, 6, 7}), eq(0L));
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        visitor = mock(StorageVisitor.class);
+        segmentedStorage.forEach(visitor);
+        verify(visitor).visit(eq("key"), (Long) isNull(), aryEq(new byte[]{1, 2, 3}), eq(5L));
+        verifyNoMoreInteractions(visitor);
+    }
+
+    @Test
+    public void updateCounter() {
+        assertEquals(2, CounterValue.toLong(segmentedStorage.updateCounter("counter", 60000L, 2, true).getData()));
+        StoredValue value = segmentedStorage.updateCounter("counter", null, 1, false);
+        assertEquals(1, CounterValue.toLong(value.getData()));
+        assertEquals(CounterValue.ITEM_FLAG_COUNTER, value.getFlags());
+        assertNotNull(value.getExpiresAt());
+        assertNull(segmentedStorage.updateCounter("test", null, 1, true));
+        assertEquals(2, segmentedStorage.getItemCount());
+    }
+
+    @Test
+    public void compareAndSet() {
+        long cas = segmentedStorage.getValue("test").getCas();
+        assertEquals(Status.REPLACED, segmentedStorage.compareAndSet("test", cas, null, new byte[]{1}, 5));
+        StoredValue value = segmentedStorage.getValue("test");
+        assertArrayEquals(new byte[]{1}, value.getData());
+        assertEquals(5, value.getFlags());
+        assertNull(value.getExpiresAt());
+        assertNotEquals(cas, value.getCas());
+        assertEquals(Status.EXISTS, segmentedStorage.compareAndSet("test", cas, null, new byte[]{2}, 0));
+        assertArrayEquals(new byte[]{1}, segmentedStorage.get("test"));
+        assertEquals(Status.NOT_FOUND, segmentedStorage.compareAndSet("not_found", cas, null, new byte[]{2}, 0));
+        assertNull(segmentedStorage.get("not_found"));
+        long counterCas = segmentedStorage.updateCounter("counter", null, 1, true).getCas();
+        assertNotEquals(counterCas, segmentedStorage.updateCounter("counter", null, 1, true).getCas());
+    }
+
+    @Test
+    public void conditionalWrites() {
+        assertEquals(Status.EXISTS, segmentedStorage.add("test", null, new byte[]{1}, 0));
+        assertEquals(Status.ADDED, segmentedStorage.add("key", null, new byte[]{1}, 4));
+        assertEquals(Status.NOT_FOUND, segmentedStorage.replace("missing", null, new byte[]{1}, 0));
+        assertEquals(Status.REPLACED, segmentedStorage.replace("key", null, new byte[]{2}, 4));
+        StoredValue value = segmentedStorage.concat("test", new byte[]{8, 9}, true);
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9}, value.getData());
+        assertNotNull(value.getExpiresAt());
+        value = segmentedStorage.concat("key", new byte[]{1}, false);
+        assertArrayEquals(new byte[]{1, 2}, value.getData());
+        assertEquals(4, value.getFlags());
+        assertNull(segmentedStorage.concat("missing", new byte[]{1}, true));
+        assertEquals(2, segmentedStorage.getItemCount());
+    }
+
+    @Test
+    public void concatCompressedOrCounter() {
+        segmentedStorage.put("compressed", null, new byte[]{1, 2}, DefaultCommandHandler.ITEM_FLAG_COMPRESSED);
+        assertArrayEquals(new byte[]{1, 2}, segmentedStorage.concat("compressed", new byte[]{3}, true).getData());
+        assertArrayEquals(new byte[]{1, 2}, segmentedStorage.get("compressed"));
+        segmentedStorage.updateCounter("counter", null, 5, true);
+        StoredValue value = segmentedStorage.concat("counter", new byte[]{3}, false);
+        assertArrayEquals(CounterValue.toByteArray(5), value.getData());
+        assertArrayEquals(CounterValue.toByteArray(5), segmentedStorage.get("counter"));
+    }
+
+    @Test
+    public void touch() throws InterruptedException {
+        long cas = segmentedStorage.getValue("test").getCas();
+        StoredValue value = segmentedStorage.touch("test", TimeUnit.SECONDS.toMillis(3));
+        assertArrayEquals(new byte[]{5, 6, 7}, value.getData());
+        assertEquals(cas, value.getCas());
+        // Default test value ttl is 1 SECOND
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertArrayEquals(new byte[]{5, 6, 7}, segmentedStorage.get("test"));
+        assertNull(segmentedStorage.touch("test", null).getExpiresAt());
+        assertNull(segmentedStorage.touch("not_found", null));
+    }
+}
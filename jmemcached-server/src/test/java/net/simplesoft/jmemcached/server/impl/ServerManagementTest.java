@@ -0,0 +1,78 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
+
+public class ServerManagementTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private ThreadPoolExecutor threadPoolExecutor;
+    private AtomicLong rejectedConnections;
+    private ServerManagement serverManagement;
+
+    @Before
+    public void before() {
+        threadPoolExecutor = new ThreadPoolExecutor(2, 4, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        rejectedConnections = new AtomicLong();
+        serverManagement = new ServerManagement(threadPoolExecutor, rejectedConnections);
+    }
+
+    @After
+    public void after() {
+        threadPoolExecutor.shutdownNow();
+    }
+
+    @Test
+    public void attributes() throws Exception {
+        rejectedConnections.set(3);
+        threadPoolExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+
+        assertEquals(3, serverManagement.getRejectedConnections());
+        assertEquals(1, serverManagement.getAcceptedConnections());
+        assertEquals(1, serverManagement.getPoolSize());
+        assertEquals(1, serverManagement.getLargestPoolSize());
+        assertEquals(0, serverManagement.getQueuedConnections());
+        assertEquals(2, serverManagement.getInitThreadCount());
+        assertEquals(4, serverManagement.getMaxThreadCount());
+    }
+
+    @Test
+    public void setThreadCounts() {
+        serverManagement.setMaxThreadCount(8);
+        serverManagement.setInitThreadCount(8);
+        assertEquals(8, threadPoolExecutor.getMaximumPoolSize());
+        assertEquals(8, threadPoolExecutor.getCorePoolSize());
+    }
+
+    @Test
+    public void setMaxThreadCountLessThanInitThreadCount() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("maxThreadCount should be >= 1 and >= initThreadCount"));
+        serverManagement.setMaxThreadCount(1);
+    }
+
+    @Test
+    public void setInitThreadCountGreaterThanMaxThreadCount() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("initThreadCount should be >= 1 and <= maxThreadCount"));
+        serverManagement.setInitThreadCount(5);
+    }
+}
@@ -0,0 +1,110 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedConfigException;
+import net.simplesoft.jmemcached.server.ServerConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class StorageManagementTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private DefaultStorage defaultStorage;
+    private StorageManagement storageManagement;
+
+    @Before
+    public void before() {
+        ServerConfig serverConfig = mock(ServerConfig.class);
+        when(serverConfig.getClearDataIntervalInMills()).thenReturn(10000);
+        defaultStorage = new DefaultStorage(serverConfig) {
+            @Override
+            protected ExecutorService createClearExpiredDataExecutorService() {
+                return mock(ExecutorService.class);
+            }
+        };
+        storageManagement = new StorageManagement(defaultStorage);
+    }
+
+    @After
+    public void after() throws Exception {
+        defaultStorage.close();
+    }
+
+    @Test
+    public void attributes() throws InterruptedException {
+        defaultStorage.put("key", null, new byte[]{1, 2, 3});
+        defaultStorage.put("expired", 100L, new byte[]{1});
+        TimeUnit.MILLISECONDS.sleep(200);
+        defaultStorage.clearExpiredDataJob.sweep();
+
+        assertEquals(1, storageManagement.getItemCount());
+        assertEquals(defaultStorage.getUsedMemoryInBytes(), storageManagement.getUsedMemoryInBytes());
+        assertEquals(0, storageManagement.getEvictionCount());
+        assertEquals(1, storageManagement.getExpiredCount());
+        assertTrue(storageManagement.getLastSweepDurationInMs() > 0);
+        assertEquals(10000, storageManagement.getClearDataIntervalInMs());
+    }
+
+    @Test
+    public void setClearDataIntervalWakesUpSleepingJob() throws Exception {
+        Thread sleepingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    defaultStorage.clearExpiredDataJob.sleepClearExpiredDataJob();
+                } catch (InterruptedException e) {
+                    // the test fails on timeout
+                }
+            }
+        });
+        sleepingThread.start();
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        storageManagement.setClearDataIntervalInMs(1000);
+        sleepingThread.join(5000);
+        assertFalse(sleepingThread.isAlive());
+        assertEquals(1000, defaultStorage.clearExpiredDataJob.getClearDataIntervalInMs());
+    }
+
+    @Test
+    public void setClearDataIntervalTooShort() {
+        thrown.expect(JMemcachedConfigException.class);
+        thrown.expectMessage(is("clearDataIntervalInMs should be >= 1000"));
+        storageManagement.setClearDataIntervalInMs(999);
+    }
+
+    @Test
+    public void registeredByServerConfig() throws Exception {
+        ObjectName objectName = new ObjectName("net.simplesoft.jmemcached:type=Storage");
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(null)) {
+            defaultServerConfig.getStorage().put("key", null, new byte[]{1});
+            assertEquals(1L, mBeanServer.getAttribute(objectName, "ItemCount"));
+            mBeanServer.setAttribute(objectName, new Attribute("ClearDataIntervalInMs", 20000));
+            assertEquals(20000, mBeanServer.getAttribute(objectName, "ClearDataIntervalInMs"));
+        }
+        assertFalse(mBeanServer.isRegistered(objectName));
+
+        Properties properties = new Properties();
+        properties.setProperty("jmemcached.server.jmx.enabled", "false");
+        try (DefaultServerConfig defaultServerConfig = new DefaultServerConfig(properties)) {
+            assertFalse(mBeanServer.isRegistered(objectName));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import net.simplesoft.jmemcached.exception.JMemcachedException;
+import net.simplesoft.jmemcached.server.Storage;
+import net.simplesoft.jmemcached.server.StoredValue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Mockito.*;
+
+public class StorageSnapshotTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private StorageSnapshot storageSnapshot;
+
+    @Before
+    public void before() throws IOException {
+        file = new File(temporaryFolder.getRoot(), "storage.snapshot");
+        storageSnapshot = new StorageSnapshot(file);
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        OffHeapStorage source = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        source.put("key", null, new byte[]{1, 2, 3}, 5);
+        source.put("ttl", 60000L, new byte[100000], 0);
+        source.put("null", null, null);
+        assertEquals(3, storageSnapshot.save(source));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        OffHeapStorage target = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        assertEquals(3, storageSnapshot.load(target));
+        StoredValue value = target.getValue("key");
+        assertArrayEquals(new byte[]{1, 2, 3}, value.getData());
+        assertEquals(5, value.getFlags());
+        assertArrayEquals(new byte[100000], target.get("ttl"));
+        assertNull(target.get("null"));
+        assertEquals(3, target.size());
+    }
+
+    @Test
+    public void loadKeepsRemainingTtlAndSkipsExpired() throws IOException {
+        OffHeapStorage source = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        source.put("short", 1000L, new byte[]{1});
+        source.put("long", 60000L, new byte[]{2});
+        final long saveTime = System.currentTimeMillis();
+        storageSnapshot.save(source);
+
+        storageSnapshot = new StorageSnapshot(file) {
+            @Override
+            protected long currentTimeMillis() {
+                return saveTime + 30000;
+            }
+        };
+        Storage target = mock(Storage.class);
+        assertEquals(1, storageSnapshot.load(target));
+        ArgumentCaptor<Long> ttl = ArgumentCaptor.forClass(Long.class);
+        verify(target).put(eq("long"), ttl.capture(), aryEq(new byte[]{2}), eq(0L));
+        verifyNoMoreInteractions(target);
+        assertTrue(ttl.getValue() > 29000 && ttl.getValue() <= 30000);
+    }
+
+    @Test
+    public void saveReplacesPreviousSnapshot() throws IOException {
+        OffHeapStorage source = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        source.put("first", null, new byte[]{1});
+        storageSnapshot.save(source);
+        source.clear();
+        source.put("second", null, new byte[]{2});
+        storageSnapshot.save(source);
+
+        Storage target = mock(Storage.class);
+        assertEquals(1, storageSnapshot.load(target));
+        verify(target).put(eq("second"), (Long) isNull(), aryEq(new byte[]{2}), eq(0L));
+        verifyNoMoreInteractions(target);
+    }
+
+    @Test
+    public void loadNotExistingFile() throws IOException {
+        Storage target = mock(Storage.class);
+        assertEquals(0, storageSnapshot.load(target));
+        verifyZeroInteractions(target);
+    }
+
+    @Test
+    public void loadLegacyVersion() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(StorageSnapshot.MAGIC);
+            out.writeByte(StorageSnapshot.LEGACY_VERSION);
+            out.writeByte(1);
+            out.writeShort(3);
+            out.writeBytes("key");
+            out.writeLong(0);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.write(7);
+            out.writeByte(0);
+            out.writeInt(1);
+        }
+
+        OffHeapStorage target = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        assertEquals(1, storageSnapshot.load(target));
+        StoredValue value = target.getValue("key");
+        assertArrayEquals(new byte[]{7}, value.getData());
+        assertEquals(DefaultCommandHandler.ITEM_FLAG_COMPRESSED, value.getFlags());
+    }
+
+    @Test
+    public void loadUnsupportedFile() throws IOException {
+        thrown.expect(JMemcachedException.class);
+        thrown.expectMessage(is("Unsupported snapshot file: " + file));
+
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5});
+        storageSnapshot.load(mock(Storage.class));
+    }
+
+    @Test
+    public void loadTruncatedFile() throws IOException {
+        thrown.expect(EOFException.class);
+        thrown.expectMessage(is("Snapshot file is truncated"));
+
+        OffHeapStorage source = new OffHeapStorage(0, OffHeapStorage.DEFAULT_PAGE_SIZE);
+        source.put("key", null, new byte[]{1, 2, 3});
+        storageSnapshot.save(source);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 6);
+        }
+        storageSnapshot.load(mock(Storage.class));
+    }
+}
@@ -0,0 +1,104 @@
+package net.simplesoft.jmemcached.server.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuEvictionPolicyTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private TinyLfuEvictionPolicy tinyLfuEvictionPolicy;
+
+    @Before
+    public void before() {
+        // window is 1% = 10 bytes
+        tinyLfuEvictionPolicy = new TinyLfuEvictionPolicy(1000, 64);
+    }
+
+    @Test
+    public void recordPutWithinLimit() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(tinyLfuEvictionPolicy.recordPut("key" + i, 100).isEmpty());
+        }
+        assertEquals(1000, tinyLfuEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void rejectRarelyUsedCandidate() {
+        for (int i = 0; i < 10; i++) {
+            tinyLfuEvictionPolicy.recordPut("hot" + i, 100);
+            tinyLfuEvictionPolicy.recordAccess("hot" + i);
+        }
+        List<String> victims = tinyLfuEvictionPolicy.recordPut("cold", 100);
+        assertEquals(Collections.singletonList("cold"), victims);
+        assertEquals(1000, tinyLfuEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void admitFrequentlyUsedCandidate() {
+        for (int i = 0; i < 10; i++) {
+            tinyLfuEvictionPolicy.recordPut("key" + i, 100);
+        }
+        for (int i = 0; i < 3; i++) {
+            tinyLfuEvictionPolicy.recordAccess("hot");
+        }
+        List<String> victims = tinyLfuEvictionPolicy.recordPut("hot", 100);
+        assertEquals(Collections.singletonList("key0"), victims);
+        assertEquals(1000, tinyLfuEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void recordPutTooLarge() {
+        tinyLfuEvictionPolicy.recordPut("key", 100);
+        assertEquals(Collections.singletonList("large"), tinyLfuEvictionPolicy.recordPut("large", 1001));
+        assertEquals(100, tinyLfuEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void recordRemove() {
+        tinyLfuEvictionPolicy.recordPut("1", 5);
+        tinyLfuEvictionPolicy.recordPut("2", 100);
+        tinyLfuEvictionPolicy.recordRemove("1");
+        tinyLfuEvictionPolicy.recordRemove("2");
+        tinyLfuEvictionPolicy.recordRemove("not_found");
+        assertEquals(0, tinyLfuEvictionPolicy.getWeightedSize());
+    }
+
+    @Test
+    public void clear() {
+        tinyLfuEvictionPolicy.recordPut("key", 100);
+        tinyLfuEvictionPolicy.clear();
+        assertEquals(0, tinyLfuEvictionPolicy.getWeightedSize());
+        assertEquals(0, tinyLfuEvictionPolicy.frequency("key"));
+    }
+
+    @Test
+    public void sketchFrequencyIsSaturatedAndAged() {
+        TinyLfuEvictionPolicy.FrequencySketch sketch = new TinyLfuEvictionPolicy.FrequencySketch(16);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("key");
+        }
+        assertEquals(15, sketch.frequency("key"));
+        for (int i = 0; sketch.frequency("key") == 15 && i < 1000; i++) {
+            sketch.increment("other" + i);
+        }
+        assertTrue(sketch.frequency("key") < 15);
+    }
+
+    @Test
+    public void sketchWidthShouldBePowerOfTwo() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(is("Sketch width should be a power of two: 10"));
+        new TinyLfuEvictionPolicy.FrequencySketch(10);
+    }
+}